@@ -124,7 +124,7 @@ public class Money extends BigDecimal {
    * @throws IllegalArgumentException if currency code is not recognized 
    */
   public Money(BigDecimal oVal, String sCur) {
-    super(oVal.toString());
+    super(oVal.unscaledValue(), oVal.scale());
     oCurrCode = CurrencyCode.currencyCodeFor(sCur);
   }
 
@@ -136,7 +136,7 @@ public class Money extends BigDecimal {
    * @param oCur CurrencyCode
    */
   public Money(BigDecimal oVal, CurrencyCode oCur) {
-    super(oVal.toString());
+    super(oVal.unscaledValue(), oVal.scale());
     oCurrCode = oCur;
   }
   
@@ -0,0 +1,339 @@
+package com.knowgate.debug;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Asynchronous sink for DebugFile traces</p>
+ * <p>Producer threads put their traces into a bounded lock-free ring buffer
+ * and a single daemon thread drains it in batches into long-lived per-thread files.
+ * Each slot of the ring carries a sequence number which tells producers whether
+ * the slot is free and tells the writer thread whether it has been published,
+ * so neither side takes a lock.</p>
+ * <p>Files are kept open in a least recently used table of at most MAX_OPEN_FILES entries,
+ * they are flushed each time that the buffer becomes empty and at least once per second under load.
+ * A shutdown hook drains the buffer and closes the files when the virtual machine exits.
+ * When DebugFile has a rolling policy or multiplexes threads the files are RollingTraceWriters.</p>
+ * @version 9.1
+ */
+final class AsyncTraceWriter {
+
+	static final int DEFAULT_CAPACITY = 8192;
+	static final int DEFAULT_SAMPLE_RATE = 10;
+	static final int MAX_OPEN_FILES = 64;
+
+	private static final int BATCH_SIZE = 256;
+	private static final long FLUSH_INTERVAL_NANOS = 1000000000l;
+	private static final long IDLE_WAIT_NANOS = 10000000l;
+	private static final long FULL_WAIT_NANOS = 100000l;
+	private static final long CLOSE_TIMEOUT_MILLIS = 5000l;
+
+	private final int iCapacity;
+	private final int iMask;
+	private final int iHighWater;
+	private final TraceBackPressure eBackPressure;
+	private final int iSampleRate;
+
+	private final AtomicLongArray aSequence; // Slot i is free for ticket t when it holds t and published when it holds t+1
+	private final long[] aThreads;
+	private final String[] aTexts;
+	private final AtomicLong oTail;          // Next ticket to be claimed by a producer
+	private volatile long lHead;             // Next ticket to be consumed, only written by the writer thread
+	private volatile long lFlushed;          // Tickets written and flushed to disk
+	private final AtomicLong oDropped;
+	private final AtomicLong oSampled;
+
+	private final Map<Long,Writer> mFiles;
+	private final Thread oWriter;
+	private final Thread oHook;
+	private volatile boolean bClosed;
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @param iSize Capacity of the ring buffer, it will be rounded up to a power of two
+	 * @param eMode What to do when the buffer is full
+	 * @param iRate Keep one of every iRate traces when eMode is SAMPLE and the buffer is three quarters full
+	 * @throws IllegalArgumentException If iSize or iRate are less than 1
+	 */
+	AsyncTraceWriter(int iSize, TraceBackPressure eMode, int iRate) {
+		if (iSize<1)
+			throw new IllegalArgumentException("AsyncTraceWriter capacity must be greater than zero");
+		if (iRate<1)
+			throw new IllegalArgumentException("AsyncTraceWriter sample rate must be greater than zero");
+		int iPow2 = 2;
+		while (iPow2<iSize && iPow2<(1<<30)) iPow2 <<= 1;
+		iCapacity = iPow2;
+		iMask = iPow2-1;
+		iHighWater = iPow2 - (iPow2>>2);
+		eBackPressure = null==eMode ? TraceBackPressure.BLOCK : eMode;
+		iSampleRate = iRate;
+
+		aSequence = new AtomicLongArray(iPow2);
+		for (int s=0; s<iPow2; s++)
+			aSequence.set(s, s);
+		aThreads = new long[iPow2];
+		aTexts = new String[iPow2];
+		oTail = new AtomicLong(0l);
+		lHead = lFlushed = 0l;
+		oDropped = new AtomicLong(0l);
+		oSampled = new AtomicLong(0l);
+
+		mFiles = new LinkedHashMap<Long,Writer>(16, 0.75f, true);
+		bClosed = false;
+
+		oWriter = new Thread("DebugFile async writer") {
+			@Override
+			public void run() {
+				drainLoop();
+			}
+		};
+		oWriter.setDaemon(true);
+		oHook = new Thread("DebugFile async writer shutdown") {
+			@Override
+			public void run() {
+				shutdown();
+			}
+		};
+		oWriter.start();
+		Runtime.getRuntime().addShutdownHook(oHook);
+	}
+
+	// ----------------------------------------------------------
+
+	int capacity() {
+		return iCapacity;
+	}
+
+	TraceBackPressure backPressure() {
+		return eBackPressure;
+	}
+
+	int sampleRate() {
+		return iSampleRate;
+	}
+
+	/**
+	 * @return Number of traces discarded because the buffer was full or by sampling
+	 */
+	long dropped() {
+		return oDropped.get();
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return <b>false</b> if the buffer is full
+	 */
+	private boolean enqueue(long lThreadId, String sText) {
+		long lTicket = oTail.get();
+		for (;;) {
+			final int iSlot = (int) lTicket & iMask;
+			final long lDiff = aSequence.get(iSlot) - lTicket;
+			if (lDiff==0l) {
+				if (oTail.compareAndSet(lTicket, lTicket+1l)) {
+					aThreads[iSlot] = lThreadId;
+					aTexts[iSlot] = sText;
+					aSequence.set(iSlot, lTicket+1l);
+					return true;
+				}
+				lTicket = oTail.get();
+			} else if (lDiff<0l) {
+				return false;
+			} else {
+				lTicket = oTail.get();
+			}
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Put a trace into the ring buffer
+	 * @param lThreadId Id of the thread whose file will receive the trace, -1 for the multiplexed file
+	 * @param sText Trace text
+	 * @return <b>true</b> if the trace was accepted or intentionally discarded,
+	 * <b>false</b> if this writer is closed and the caller must write the trace by itself
+	 */
+	boolean offer(long lThreadId, String sText) {
+		if (bClosed)
+			return false;
+		if (eBackPressure==TraceBackPressure.SAMPLE && oTail.get()-lHead>=iHighWater
+			&& oSampled.incrementAndGet() % iSampleRate != 0) {
+			oDropped.incrementAndGet();
+			return true;
+		}
+		while (!enqueue(lThreadId, sText)) {
+			if (eBackPressure!=TraceBackPressure.BLOCK) {
+				oDropped.incrementAndGet();
+				return true;
+			}
+			if (bClosed || !oWriter.isAlive())
+				return false;
+			LockSupport.unpark(oWriter);
+			LockSupport.parkNanos(this, FULL_WAIT_NANOS);
+		}
+		return true;
+	} // offer
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Wait until every trace accepted before this call has been written and flushed
+	 */
+	void flush() {
+		final long lTarget = oTail.get();
+		while (lFlushed<lTarget && oWriter.isAlive()) {
+			LockSupport.unpark(oWriter);
+			LockSupport.parkNanos(this, FULL_WAIT_NANOS);
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Write pending traces, close the files and stop the writer thread
+	 */
+	void close() {
+		try {
+			Runtime.getRuntime().removeShutdownHook(oHook);
+		} catch (IllegalStateException shuttingdown) { }
+		shutdown();
+	}
+
+	// ----------------------------------------------------------
+
+	private void shutdown() {
+		bClosed = true;
+		LockSupport.unpark(oWriter);
+		try {
+			oWriter.join(CLOSE_TIMEOUT_MILLIS);
+		} catch (InterruptedException xcpt) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	private void drainLoop() {
+		long lLastFlush = System.nanoTime();
+		for (;;) {
+			final int nWritten = drain();
+			if (nWritten<BATCH_SIZE || System.nanoTime()-lLastFlush>FLUSH_INTERVAL_NANOS) {
+				flushFiles();
+				lFlushed = lHead;
+				lLastFlush = System.nanoTime();
+			}
+			if (0==nWritten) {
+				if (bClosed && oTail.get()==lHead)
+					break;
+				LockSupport.parkNanos(this, IDLE_WAIT_NANOS);
+			}
+		}
+		closeFiles();
+	} // drainLoop
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Write up to BATCH_SIZE published traces
+	 * @return Number of traces taken from the buffer
+	 */
+	private int drain() {
+		int nWritten = 0;
+		long lTicket = lHead;
+		while (nWritten<BATCH_SIZE) {
+			final int iSlot = (int) lTicket & iMask;
+			if (aSequence.get(iSlot)!=lTicket+1l)
+				break;
+			final long lThreadId = aThreads[iSlot];
+			final String sText = aTexts[iSlot];
+			aTexts[iSlot] = null;
+			aSequence.set(iSlot, lTicket+iCapacity);
+			lHead = ++lTicket;
+			nWritten++;
+			append(lThreadId, sText);
+		}
+		return nWritten;
+	} // drain
+
+	// ----------------------------------------------------------
+
+	private void append(long lThreadId, String sText) {
+		final Long oThId = Long.valueOf(lThreadId);
+		Writer oOut = mFiles.get(oThId);
+		try {
+			if (null==oOut) {
+				final String sFile = DebugFile.getFile(lThreadId);
+				if (null==sFile) {
+					System.out.print(sText);
+					return;
+				}
+				final RollingTraceWriter.Policy oPolicy = DebugFile.getRollingPolicy();
+				oOut = null==oPolicy ? new BufferedWriter(new FileWriter(sFile, true), 8192) : new RollingTraceWriter(sFile, oPolicy);
+				mFiles.put(oThId, oOut);
+				if (mFiles.size()>MAX_OPEN_FILES)
+					closeEldest();
+			}
+			oOut.write(sText);
+		} catch (IOException ioe) {
+			mFiles.remove(oThId);
+			System.out.print(sText);
+		}
+	} // append
+
+	// ----------------------------------------------------------
+
+	private void closeEldest() {
+		Iterator<Writer> oIter = mFiles.values().iterator();
+		final Writer oOut = oIter.next();
+		oIter.remove();
+		try {
+			oOut.close();
+		} catch (IOException ignore) { }
+	}
+
+	// ----------------------------------------------------------
+
+	private void flushFiles() {
+		Iterator<Writer> oIter = mFiles.values().iterator();
+		while (oIter.hasNext()) {
+			try {
+				oIter.next().flush();
+			} catch (IOException ioe) {
+				oIter.remove();
+			}
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	private void closeFiles() {
+		for (Writer oOut : mFiles.values()) {
+			try {
+				oOut.close();
+			} catch (IOException ignore) { }
+		}
+		mFiles.clear();
+	}
+
+}
@@ -0,0 +1,263 @@
+package com.knowgate.debug;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * <p>Writer of binary DebugFile traces for a single thread</p>
+ * <p>Each thread owns one instance which keeps its file open and interns the message
+ * templates given to DebugFile.writeln(template, args), so a repeated template is written as a small integer.
+ * Other messages are written inline. No date nor indentation is formatted, the timestamp and depth are written
+ * as numbers and turned back into text by TraceDecoder.</p>
+ * <p>At most MAX_OPEN_FILES instances are open at the same time. Opening one more first closes
+ * those whose thread has finished and then, if needed, the least recently opened one.
+ * A thread whose writer was closed opens it again on its next trace.</p>
+ * <p>All the open instances are flushed by DebugFile.flush() and closed by a shutdown hook.</p>
+ * @see TraceFormat
+ * @version 9.1
+ */
+final class BinaryTraceWriter {
+
+	static final int MAX_TEMPLATES = 4096;
+
+	static final int MAX_OPEN_FILES = RollingTraceWriter.MAX_OPEN_FILES;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// In the order that the writers were opened
+	private static final LinkedHashSet<BinaryTraceWriter> oOpen = new LinkedHashSet<BinaryTraceWriter>();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread("DebugFile binary writers shutdown") {
+			@Override
+			public void run() {
+				closeAll();
+			}
+		});
+	}
+
+	private final OutputStream oOut;
+	private final WeakReference<Thread> oOwner;
+	private final HashMap<String,Integer> mTemplates;
+	private boolean bClosed;
+
+	// ----------------------------------------------------------
+
+	private BinaryTraceWriter(File oFile, Thread oThread) throws IOException {
+		final boolean bAppend = oFile.exists() && oFile.length()>0;
+		oOut = new BufferedOutputStream(new FileOutputStream(oFile, true), 8192);
+		oOwner = new WeakReference<Thread>(oThread);
+		mTemplates = new HashMap<String,Integer>();
+		bClosed = false;
+		if (bAppend)
+			oOut.write(TraceFormat.REC_RESET);
+		else
+			oOut.write(TraceFormat.MAGIC);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Open or create a binary trace file for appending
+	 * @param sFilePath Full path to the file
+	 * @param oThread Thread that will write to the file
+	 * @throws IOException
+	 */
+	static BinaryTraceWriter open(String sFilePath, Thread oThread) throws IOException {
+		ArrayList<BinaryTraceWriter> aEvicted = new ArrayList<BinaryTraceWriter>();
+		synchronized (oOpen) {
+			Iterator<BinaryTraceWriter> oIter = oOpen.iterator();
+			while (oIter.hasNext()) {
+				final BinaryTraceWriter oWrt = oIter.next();
+				if (!oWrt.ownerAlive()) {
+					oIter.remove();
+					aEvicted.add(oWrt);
+				}
+			}
+			oIter = oOpen.iterator();
+			while (oOpen.size()>=MAX_OPEN_FILES) {
+				aEvicted.add(oIter.next());
+				oIter.remove();
+			}
+		}
+		// Closed outside the lock of oOpen because close() takes the lock of the writer first
+		for (BinaryTraceWriter oWrt : aEvicted) {
+			try {
+				oWrt.close();
+			} catch (IOException ignore) { }
+		}
+		BinaryTraceWriter oWrt = new BinaryTraceWriter(new File(sFilePath), oThread);
+		synchronized (oOpen) {
+			oOpen.add(oWrt);
+		}
+		return oWrt;
+	}
+
+	/**
+	 * @return Copy of the open writers
+	 */
+	private static BinaryTraceWriter[] opened() {
+		synchronized (oOpen) {
+			return oOpen.toArray(new BinaryTraceWriter[oOpen.size()]);
+		}
+	}
+
+	private boolean ownerAlive() {
+		final Thread oThread = oOwner.get();
+		return null!=oThread && oThread.isAlive();
+	}
+
+	// ----------------------------------------------------------
+
+	synchronized boolean isClosed() {
+		return bClosed;
+	}
+
+	// ----------------------------------------------------------
+
+	private void writeVarLong(long lValue) throws IOException {
+		while ((lValue & ~0x7fl) != 0l) {
+			oOut.write((int) ((lValue & 0x7fl) | 0x80l));
+			lValue >>>= 7;
+		}
+		oOut.write((int) lValue);
+	}
+
+	private void writeString(String sStr) throws IOException {
+		final byte[] aBytes = sStr.getBytes(UTF8);
+		writeVarLong(aBytes.length);
+		oOut.write(aBytes);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Write a line record
+	 * @param lTimestamp Milliseconds since the epoch
+	 * @param lThreadId Id of the thread which writes the trace
+	 * @param iDepth Indentation level
+	 * @param sTemplate Message or message template with {} placeholders
+	 * @param aArgs Template arguments or <b>null</b>
+	 * @param bIntern Whether sTemplate must be added to the template table, <b>false</b> writes it inline
+	 * @throws IOException If the file could not be written or this writer is closed
+	 */
+	synchronized void line(long lTimestamp, long lThreadId, int iDepth, String sTemplate, Object[] aArgs, boolean bIntern) throws IOException {
+		if (bClosed)
+			throw new IOException("BinaryTraceWriter is closed");
+		if (null==sTemplate)
+			sTemplate = "null";
+		Integer oId = mTemplates.get(sTemplate);
+		if (null==oId && bIntern && mTemplates.size()<MAX_TEMPLATES) {
+			oId = Integer.valueOf(mTemplates.size()+1);
+			mTemplates.put(sTemplate, oId);
+			oOut.write(TraceFormat.REC_TEMPLATE);
+			writeVarLong(oId.longValue());
+			writeString(sTemplate);
+		}
+		oOut.write(TraceFormat.REC_LINE);
+		writeVarLong(lTimestamp);
+		writeVarLong(lThreadId);
+		writeVarLong(iDepth);
+		if (null==oId) {
+			writeVarLong(TraceFormat.INLINE);
+			writeString(sTemplate);
+		} else {
+			writeVarLong(oId.longValue());
+		}
+		final int nArgs = null==aArgs ? 0 : aArgs.length;
+		writeVarLong(nArgs);
+		for (int a=0; a<nArgs; a++)
+			writeString(String.valueOf(aArgs[a]));
+	} // line
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Write text as is
+	 * @param sText String
+	 * @throws IOException If the file could not be written or this writer is closed
+	 */
+	synchronized void raw(String sText) throws IOException {
+		if (bClosed)
+			throw new IOException("BinaryTraceWriter is closed");
+		oOut.write(TraceFormat.REC_RAW);
+		writeString(null==sText ? "null" : sText);
+	}
+
+	// ----------------------------------------------------------
+
+	synchronized void flush() throws IOException {
+		if (!bClosed)
+			oOut.flush();
+	}
+
+	// ----------------------------------------------------------
+
+	void close() throws IOException {
+		synchronized (oOpen) {
+			oOpen.remove(this);
+		}
+		synchronized (this) {
+			if (!bClosed) {
+				bClosed = true;
+				oOut.close();
+			}
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Flush all open writers and close the ones whose thread has finished
+	 */
+	static void flushAll() {
+		for (BinaryTraceWriter oWrt : opened()) {
+			try {
+				if (oWrt.ownerAlive())
+					oWrt.flush();
+				else
+					oWrt.close();
+			} catch (IOException ioe) {
+				synchronized (oOpen) {
+					oOpen.remove(oWrt);
+				}
+			}
+		}
+	} // flushAll
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Close all open writers, threads will open a new one the next time that they write a trace
+	 */
+	static void closeAll() {
+		for (BinaryTraceWriter oWrt : opened()) {
+			try {
+				oWrt.close();
+			} catch (IOException ignore) {
+				// close() has already removed it from the open writers
+			}
+		}
+	} // closeAll
+
+}
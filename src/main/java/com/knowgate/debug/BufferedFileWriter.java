@@ -12,53 +12,354 @@ package com.knowgate.debug;
  */
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.BufferedOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Write to file using BufferedOutputStream
+ * <p>Write lines to a file through a FileChannel</p>
+ * <p>Lines are encoded with a reusable CharsetEncoder straight into a direct ByteBuffer,
+ * so writing a line does not allocate. The buffer is written to the channel when it is full
+ * and when the flush policy says so: after a number of lines, after some time, or both.</p>
+ * <p>When pipelined, a second buffer is filled while a background thread writes the first one,
+ * so that encoding and disk output overlap.</p>
+ * <p>Instances are not thread safe.</p>
  * @author Sergio Montoro Ten
- * @version 1.0
+ * @version 9.1
  */
 public class BufferedFileWriter {
+
+  public static final int DEFAULT_BUFFER_SIZE = 262144;
+
+  private static final int CHAR_CHUNK = 8192;
+  private static final ByteBuffer EOF = ByteBuffer.allocate(0);
+
+  private final Charset oCharset;
+  private final CharsetEncoder oEncoder;
+  private final CharBuffer oChars;
+  private final int iBufferSize;
+  private final int iFlushLines;
+  private final long lFlushNanos;
+  private final boolean bPipelined;
+
   private FileOutputStream fos;
-  private BufferedOutputStream bos;
-  
+  private FileChannel oChannel;
+  private ByteBuffer oBytes;
+  private ArrayBlockingQueue<ByteBuffer> qFull;
+  private ArrayBlockingQueue<ByteBuffer> qFree;
+  private Thread oPipe;
+  private volatile IOException oPipeError;
+
+  private int iPending;
+  private long lLastFlush;
+  private long lOpened;
+  private long lClosed;
+  private long lBytes;
+  private long lLines;
+
+  /**
+   * Create writer using the default charset and buffer size which only flushes when its buffer is full
+   */
   public BufferedFileWriter() {
-  	fos = null;
-  	bos = null;
+    this(Charset.defaultCharset(), DEFAULT_BUFFER_SIZE, 0, 0l, false);
   }
 
   /**
-   * Open file for write.
+   * Create writer with no flush policy which only flushes when its buffer is full
+   * @param oCharset Charset
+   * @since 9.1
+   */
+  public BufferedFileWriter(Charset oCharset) {
+    this(oCharset, DEFAULT_BUFFER_SIZE, 0, 0l, false);
+  }
+
+  /**
+   * Create writer
+   * @param oCharset Charset used for encoding lines
+   * @param iBufferSize Size in bytes of each direct buffer
+   * @param iFlushLines Flush after this number of lines, zero for not flushing by number of lines
+   * @param lFlushMillis Flush when a line is written this number of milliseconds after the last flush, zero for not flushing by time
+   * @param bPipelined Whether buffers must be written by a background thread
+   * @throws IllegalArgumentException If iBufferSize is less than 16
+   * @since 9.1
+   */
+  public BufferedFileWriter(Charset oCharset, int iBufferSize, int iFlushLines, long lFlushMillis, boolean bPipelined) {
+    if (iBufferSize<16)
+      throw new IllegalArgumentException("BufferedFileWriter buffer size must be at least 16 bytes");
+    this.oCharset = oCharset;
+    this.oEncoder = oCharset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.oChars = CharBuffer.allocate(CHAR_CHUNK);
+    this.iBufferSize = iBufferSize;
+    this.iFlushLines = Math.max(0, iFlushLines);
+    this.lFlushNanos = Math.max(0l, lFlushMillis) * 1000000l;
+    this.bPipelined = bPipelined;
+    fos = null;
+    oChannel = null;
+  }
+
+  /**
+   * Open file for write truncating it if it already exists.
    * @param sFilePath String File path
    * @throws FileNotFoundException
    * @throws IOException
    */
   public void open (String sFilePath) throws FileNotFoundException, IOException {
-  	fos = new FileOutputStream(sFilePath);
-  	bos = new BufferedOutputStream(fos);
+    open(sFilePath, false);
   }
 
   /**
-   * Close file output stream  
+   * Open file for write.
+   * @param sFilePath String File path
+   * @param bAppend boolean Whether to write at the end of the file if it already exists
+   * @throws FileNotFoundException
+   * @throws IOException
+   * @since 9.1
+   */
+  public void open (String sFilePath, boolean bAppend) throws FileNotFoundException, IOException {
+    fos = new FileOutputStream(sFilePath, bAppend);
+    oChannel = fos.getChannel();
+    oBytes = ByteBuffer.allocateDirect(iBufferSize);
+    oPipeError = null;
+    iPending = 0;
+    lBytes = lLines = 0l;
+    lOpened = lLastFlush = System.nanoTime();
+    lClosed = 0l;
+    if (bPipelined) {
+      qFull = new ArrayBlockingQueue<ByteBuffer>(2);
+      qFree = new ArrayBlockingQueue<ByteBuffer>(2);
+      qFree.add(ByteBuffer.allocateDirect(iBufferSize));
+      oPipe = new Thread("BufferedFileWriter " + sFilePath) {
+        @Override
+        public void run() {
+          pipe();
+        }
+      };
+      oPipe.setDaemon(true);
+      oPipe.start();
+    }
+  }
+
+  /**
+   * Flush and close file output stream
    * @throws IOException
    */
   public void close () throws IOException {
-  	bos.close();
-  	fos.close();
+    IOException oError = null;
+    boolean bInterrupted = false;
+    try {
+      flush();
+    } catch (IOException ioe) {
+      oError = ioe;
+    } finally {
+      // Stop the background thread even if flush failed, otherwise it would wait forever for another buffer
+      if (bPipelined)
+        bInterrupted = stopPipe();
+      lClosed = System.nanoTime();
+      try {
+        oChannel.close();
+        fos.close();
+      } catch (IOException ioe) {
+        if (null==oError)
+          oError = ioe;
+      }
+    }
+    if (null!=oError)
+      throw oError;
+    if (bInterrupted)
+      throw new InterruptedIOException("BufferedFileWriter interrupted while closing");
+    checkPipe();
   }
 
   /**
-   * Append line to file  
+   * Append line to file
    * @param lin String
    * @throws IOException
    */
   public void writeln(String lin) throws IOException  {
-  	final String nl = "\n";
-  	bos.write(lin.getBytes());
-  	bos.write(nl.getBytes());
+    encode(lin, true);
+    lLines++;
+    if ((iFlushLines>0 && ++iPending>=iFlushLines) || (lFlushNanos>0l && System.nanoTime()-lLastFlush>=lFlushNanos))
+      flush();
+  }
+
+  /**
+   * Write all buffered lines to the file
+   * @throws IOException
+   * @since 9.1
+   */
+  public void flush() throws IOException {
+    drain();
+    if (bPipelined) {
+      // The other buffer is free again once the background thread has written it
+      put(qFree, take(qFree));
+      checkPipe();
+    }
+    iPending = 0;
+    lLastFlush = System.nanoTime();
+  }
+
+  // ----------------------------------------------------------
+
+  /**
+   * @return Charset used for encoding lines
+   * @since 9.1
+   */
+  public Charset getCharset() {
+    return oCharset;
+  }
+
+  /**
+   * @return Bytes handed to the file since it was opened
+   * @since 9.1
+   */
+  public long getBytesWritten() {
+    return lBytes;
+  }
+
+  /**
+   * @return Lines written since the file was opened
+   * @since 9.1
+   */
+  public long getLinesWritten() {
+    return lLines;
+  }
+
+  /**
+   * @return Bytes written per second from the time that the file was opened until it was closed or until now if it is still open
+   * @since 9.1
+   */
+  public double getBytesPerSecond() {
+    final long lElapsed = (0l==lClosed ? System.nanoTime() : lClosed) - lOpened;
+    return lElapsed<=0l ? 0d : (lBytes + oBytes.position()) * 1000000000d / lElapsed;
+  }
+
+  // ----------------------------------------------------------
+
+  private void encode(String sLine, boolean bNewLine) throws IOException {
+    final int iLen = sLine.length();
+    int iPos = 0;
+    oEncoder.reset();
+    oChars.clear();
+    for (;;) {
+      final int iCount = Math.min(iLen-iPos, oChars.remaining() - (bNewLine ? 1 : 0));
+      sLine.getChars(iPos, iPos+iCount, oChars.array(), oChars.arrayOffset()+oChars.position());
+      oChars.position(oChars.position()+iCount);
+      iPos += iCount;
+      final boolean bEnd = iPos==iLen;
+      if (bEnd && bNewLine)
+        oChars.put('\n');
+      oChars.flip();
+      CoderResult oResult;
+      while ((oResult = oEncoder.encode(oChars, oBytes, bEnd)).isOverflow())
+        drain();
+      if (oResult.isError())
+        oResult.throwException();
+      oChars.compact();
+      if (bEnd)
+        break;
+    }
+    while (oEncoder.flush(oBytes).isOverflow())
+      drain();
+  }
+
+  // ----------------------------------------------------------
+
+  private void drain() throws IOException {
+    if (oBytes.position()==0)
+      return;
+    oBytes.flip();
+    lBytes += oBytes.remaining();
+    if (bPipelined) {
+      put(qFull, oBytes);
+      oBytes = take(qFree);
+      checkPipe();
+    } else {
+      while (oBytes.hasRemaining())
+        oChannel.write(oBytes);
+      oBytes.clear();
+    }
+  }
+
+  // ----------------------------------------------------------
+
+  private void pipe() {
+    for (;;) {
+      final ByteBuffer oFull;
+      try {
+        oFull = qFull.take();
+      } catch (InterruptedException xcpt) {
+        oPipeError = new InterruptedIOException("BufferedFileWriter background thread interrupted");
+        return;
+      }
+      if (oFull==EOF)
+        break;
+      try {
+        while (oFull.hasRemaining())
+          oChannel.write(oFull);
+      } catch (IOException ioe) {
+        oPipeError = ioe;
+      }
+      oFull.clear();
+      qFree.add(oFull);
+    }
+  } // pipe
+
+  /**
+   * Queue EOF and wait for the background thread to end without giving up on interrupts
+   * @return Whether the calling thread was interrupted, its interrupt status is restored
+   */
+  private boolean stopPipe() {
+    boolean bInterrupted = false;
+    boolean bQueued = false;
+    for (;;) {
+      try {
+        // The thread only ends early if it was interrupted, then nobody would take EOF
+        while (!bQueued && oPipe.isAlive())
+          bQueued = qFull.offer(EOF, 100l, TimeUnit.MILLISECONDS);
+        oPipe.join();
+        break;
+      } catch (InterruptedException xcpt) {
+        bInterrupted = true;
+      }
+    }
+    if (bInterrupted)
+      Thread.currentThread().interrupt();
+    return bInterrupted;
+  }
+
+  private void checkPipe() throws IOException {
+    final IOException oError = oPipeError;
+    if (oError!=null) {
+      oPipeError = null;
+      throw oError;
+    }
+  }
+
+  private ByteBuffer take(ArrayBlockingQueue<ByteBuffer> qBuffers) throws IOException {
+    try {
+      return qBuffers.take();
+    } catch (InterruptedException xcpt) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("BufferedFileWriter interrupted while waiting for a buffer");
+    }
+  }
+
+  private void put(ArrayBlockingQueue<ByteBuffer> qBuffers, ByteBuffer oBuffer) throws IOException {
+    try {
+      qBuffers.put(oBuffer);
+    } catch (InterruptedException xcpt) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("BufferedFileWriter interrupted while handing over a buffer");
+    }
   }
 
 }
@@ -33,6 +33,7 @@ public final class Chronometer {
   
   public void start() {
     tmStart = System.nanoTime();
+    tmStop = -1l;
   }
   
   /**
@@ -51,7 +52,16 @@ public final class Chronometer {
    * @return long milliseconds elapsed since chronometer was started
    */
   public long elapsed() {
-	return ((tmStop==-1l ? System.nanoTime() : tmStop) - tmStart) / 1000l;
+	return elapsedNanos() / 1000l;
+  }
+
+  /**
+   * Get nanoseconds elapsed between start and stop calls or between start and now if stop() has not been called.
+   * @return long nanoseconds elapsed since chronometer was started
+   * @since 9.1
+   */
+  public long elapsedNanos() {
+	return (tmStop==-1l ? System.nanoTime() : tmStop) - tmStart;
   }
   
 } // Chronometer
@@ -0,0 +1,323 @@
+package com.knowgate.debug;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * <p>Immutable snapshot of the DebugFile configuration read from debugfile.conf</p>
+ * <p>DebugFile publishes each new snapshot through a volatile reference,
+ * so a thread calling DebugFile.getConfig() sees all the settings of the same reload.</p>
+ * @version 9.1
+ */
+public final class DebugConfig {
+
+	private static final String DEFAULT_TMP_LINUX = "/tmp/";
+	private static final String DEFAULT_TMP_WIN32 = "C:\\TEMP\\Debug\\";
+
+	private final Properties oProps;
+	private final boolean bTrace;
+	private final short iDumpTo;
+	private final String sDebugDir;
+	private final boolean bBinary;
+	private final boolean bAsync;
+	private final int iAsyncCapacity;
+	private final TraceBackPressure eBackPressure;
+	private final int iSampleRate;
+	private final TraceLevel eDefaultLevel;
+	private final Map<String,TraceLevel> mLevels;
+	private final boolean bWatch;
+	private final TraceSampling eSampling;
+	private final int iSamplingRatio;
+	private final int iSamplingBurst;
+	private final long lSamplingInterval;
+	private final int iSamplingRate;
+	private final long lRollingMaxSize;
+	private final long lRollingMaxAge;
+	private final int iRollingKeep;
+	private final boolean bRollingGzip;
+	private final boolean bMultiplexed;
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Parse configuration properties
+	 * @param oProperties Properties read from debugfile.conf, <b>null</b> is the same as empty properties
+	 */
+	public DebugConfig(Properties oProperties) {
+		oProps = new Properties();
+		if (oProperties!=null)
+			oProps.putAll(oProperties);
+
+		bTrace = isTrue(oProps.getProperty("debug", "false"));
+
+		final String sink = oProps.getProperty("sink", "file");
+		if (sink.equalsIgnoreCase("file"))
+			iDumpTo = DebugFile.DUMP_TO_FILE;
+		else if (sink.equalsIgnoreCase("log4j"))
+			iDumpTo = DebugFile.DUMP_TO_LOG4J;
+		else
+			iDumpTo = DebugFile.DUMP_TO_STDOUT;
+
+		int iCapacity = AsyncTraceWriter.DEFAULT_CAPACITY;
+		int iRate = AsyncTraceWriter.DEFAULT_SAMPLE_RATE;
+		if (iDumpTo==DebugFile.DUMP_TO_FILE) {
+			if (System.getProperty("os.name").startsWith("Windows"))
+				sDebugDir = oProps.getProperty("debugdir_win32", DEFAULT_TMP_WIN32);
+			else
+				sDebugDir = oProps.getProperty("debugdir_linux", DEFAULT_TMP_LINUX);
+			bBinary = oProps.getProperty("format", "text").trim().equalsIgnoreCase("binary");
+			eBackPressure = TraceBackPressure.parse(oProps.getProperty("async_backpressure"), TraceBackPressure.BLOCK);
+			try {
+				iCapacity = Integer.parseInt(oProps.getProperty("async_capacity", String.valueOf(AsyncTraceWriter.DEFAULT_CAPACITY)).trim());
+				iRate = Integer.parseInt(oProps.getProperty("async_sample_rate", String.valueOf(AsyncTraceWriter.DEFAULT_SAMPLE_RATE)).trim());
+			} catch (NumberFormatException nfe) {
+				System.err.println("NumberFormatException at DebugConfig "+nfe.getMessage());
+			}
+			bAsync = isTrue(oProps.getProperty("async", "false")) && iCapacity>0 && iRate>0;
+		} else {
+			sDebugDir = null;
+			bBinary = false;
+			bAsync = false;
+			eBackPressure = TraceBackPressure.BLOCK;
+		}
+		iAsyncCapacity = iCapacity;
+		iSampleRate = iRate;
+
+		eDefaultLevel = TraceLevel.parse(oProps.getProperty("level"), TraceLevel.TRACE);
+		HashMap<String,TraceLevel> oLevels = new HashMap<String,TraceLevel>();
+		for (String name : oProps.stringPropertyNames())
+			if (name.startsWith("level.") && name.length()>6)
+				oLevels.put(name.substring(6), TraceLevel.parse(oProps.getProperty(name), eDefaultLevel));
+		mLevels = Collections.unmodifiableMap(oLevels);
+
+		bWatch = isTrue(oProps.getProperty("watch", "false"));
+
+		TraceSampling eMode = TraceSampling.parse(oProps.getProperty("sampling"), TraceSampling.ALL);
+		int iRatio = 100, iBurst = 10, iLines = 1000;
+		long lInterval = 60000l;
+		try {
+			iRatio = Integer.parseInt(oProps.getProperty("sampling_ratio", "100").trim());
+			iBurst = Integer.parseInt(oProps.getProperty("sampling_burst", "10").trim());
+			lInterval = Long.parseLong(oProps.getProperty("sampling_interval", "60000").trim());
+			iLines = Integer.parseInt(oProps.getProperty("sampling_rate", "1000").trim());
+		} catch (NumberFormatException nfe) {
+			System.err.println("NumberFormatException at DebugConfig "+nfe.getMessage());
+		}
+		if ((eMode==TraceSampling.RATIO && iRatio<1) || (eMode==TraceSampling.BURST && (iBurst<1 || lInterval<1l)) || (eMode==TraceSampling.RATE && iLines<1)) {
+			System.err.println("DebugConfig invalid parameters for sampling "+eMode.name()+", all call trees will be traced");
+			eMode = TraceSampling.ALL;
+		}
+		eSampling = eMode;
+		iSamplingRatio = iRatio;
+		iSamplingBurst = iBurst;
+		lSamplingInterval = lInterval;
+		iSamplingRate = iLines;
+
+		long lMaxSize = 0l, lMaxAge = 0l;
+		int iKeep = 10;
+		try {
+			lMaxSize = parseSize(oProps.getProperty("rolling_max_size", "0"));
+			lMaxAge = Long.parseLong(oProps.getProperty("rolling_max_age", "0").trim()) * 60000l;
+			iKeep = Integer.parseInt(oProps.getProperty("rolling_keep", "10").trim());
+		} catch (NumberFormatException nfe) {
+			System.err.println("NumberFormatException at DebugConfig "+nfe.getMessage());
+		}
+		lRollingMaxSize = Math.max(0l, lMaxSize);
+		lRollingMaxAge = Math.max(0l, lMaxAge);
+		iRollingKeep = Math.max(0, iKeep);
+		bRollingGzip = isTrue(oProps.getProperty("rolling_gzip", "true"));
+		bMultiplexed = iDumpTo==DebugFile.DUMP_TO_FILE && isTrue(oProps.getProperty("multiplex", "false"));
+	}
+
+	// ----------------------------------------------------------
+
+	private static boolean isTrue(String sValue) {
+		final String v = sValue.trim();
+		return v.equalsIgnoreCase("true") || v.equalsIgnoreCase("yes") || v.equalsIgnoreCase("on") || v.equals("1");
+	}
+
+	/**
+	 * @param sValue Number of bytes optionally followed by K, M or G
+	 * @throws NumberFormatException
+	 */
+	private static long parseSize(String sValue) throws NumberFormatException {
+		final String v = sValue.trim().toUpperCase();
+		final int iLast = v.length()-1;
+		if (iLast>0 && v.charAt(iLast)=='K')
+			return Long.parseLong(v.substring(0, iLast).trim()) << 10;
+		else if (iLast>0 && v.charAt(iLast)=='M')
+			return Long.parseLong(v.substring(0, iLast).trim()) << 20;
+		else if (iLast>0 && v.charAt(iLast)=='G')
+			return Long.parseLong(v.substring(0, iLast).trim()) << 30;
+		else
+			return Long.parseLong(v);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Value of debug property
+	 */
+	public boolean isTrace() {
+		return bTrace;
+	}
+
+	/**
+	 * @return One of DebugFile.DUMP_TO_LOG4J, DUMP_TO_FILE or DUMP_TO_STDOUT
+	 */
+	public short getDumpTo() {
+		return iDumpTo;
+	}
+
+	/**
+	 * @return Directory for trace files of the current operating system or <b>null</b> if sink is not file
+	 */
+	public String getDebugDir() {
+		return sDebugDir;
+	}
+
+	/**
+	 * @return <b>true</b> if format is binary
+	 */
+	public boolean isBinary() {
+		return bBinary;
+	}
+
+	/**
+	 * @return <b>true</b> if async is on
+	 */
+	public boolean isAsync() {
+		return bAsync;
+	}
+
+	public int getAsyncCapacity() {
+		return iAsyncCapacity;
+	}
+
+	public TraceBackPressure getBackPressure() {
+		return eBackPressure;
+	}
+
+	public int getSampleRate() {
+		return iSampleRate;
+	}
+
+	/**
+	 * @return Level for classes and packages without a level of their own
+	 */
+	public TraceLevel getDefaultLevel() {
+		return eDefaultLevel;
+	}
+
+	/**
+	 * @return Unmodifiable map of class and package names to their levels
+	 */
+	public Map<String,TraceLevel> getLevels() {
+		return mLevels;
+	}
+
+	/**
+	 * @return <b>true</b> if the configuration file must be watched for changes
+	 */
+	public boolean isWatch() {
+		return bWatch;
+	}
+
+	/**
+	 * @return Value of sampling property
+	 */
+	public TraceSampling getSampling() {
+		return eSampling;
+	}
+
+	public int getSamplingRatio() {
+		return iSamplingRatio;
+	}
+
+	public int getSamplingBurst() {
+		return iSamplingBurst;
+	}
+
+	/**
+	 * @return Burst interval in milliseconds
+	 */
+	public long getSamplingInterval() {
+		return lSamplingInterval;
+	}
+
+	/**
+	 * @return Lines per second
+	 */
+	public int getSamplingRate() {
+		return iSamplingRate;
+	}
+
+	/**
+	 * @return Maximum size in bytes of a text trace file before rolling it, zero for no limit
+	 */
+	public long getRollingMaxSize() {
+		return lRollingMaxSize;
+	}
+
+	/**
+	 * @return Maximum age in milliseconds of a text trace file before rolling it, zero for no limit
+	 */
+	public long getRollingMaxAge() {
+		return lRollingMaxAge;
+	}
+
+	/**
+	 * @return Number of rolled files to keep for each trace file, zero for keeping all of them
+	 */
+	public int getRollingKeep() {
+		return iRollingKeep;
+	}
+
+	/**
+	 * @return <b>true</b> if rolled files must be compressed
+	 */
+	public boolean isRollingGzip() {
+		return bRollingGzip;
+	}
+
+	/**
+	 * @return <b>true</b> if multiplex is on and sink is file
+	 */
+	public boolean isMultiplexed() {
+		return bMultiplexed;
+	}
+
+	/**
+	 * @param sName Property name
+	 * @return Value of the property as read from debugfile.conf or <b>null</b>
+	 */
+	public String getProperty(String sName) {
+		return oProps.getProperty(sName);
+	}
+
+	// ----------------------------------------------------------
+
+	@Override
+	public boolean equals(Object oObj) {
+		return oObj instanceof DebugConfig && oProps.equals(((DebugConfig) oObj).oProps);
+	}
+
+	@Override
+	public int hashCode() {
+		return oProps.hashCode();
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.knowgate.debug;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * <p>Reload DebugFile configuration when debugfile.conf changes</p>
+ * <p>The directory of the configuration file is registered at a WatchService and a daemon thread
+ * waits for events on the file. Editors may write a file in several steps or replace it by renaming
+ * a temporary file, so events are collected for DEBOUNCE_MILLIS before reloading
+ * and events happening while the file does not exist are ignored.</p>
+ * @version 9.1
+ */
+final class DebugConfigWatcher {
+
+	static final long DEBOUNCE_MILLIS = 100l;
+
+	private final File oConf;
+	private final WatchService oWatcher;
+	private final Thread oThread;
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @param oConfFile debugfile.conf
+	 * @throws IOException If the directory of the file can not be watched
+	 */
+	DebugConfigWatcher(File oConfFile) throws IOException {
+		oConf = oConfFile.getAbsoluteFile();
+		final Path oDir = oConf.getParentFile().toPath();
+		oWatcher = FileSystems.getDefault().newWatchService();
+		try {
+			oDir.register(oWatcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException ioe) {
+			oWatcher.close();
+			throw ioe;
+		}
+		oThread = new Thread("DebugFile configuration watcher") {
+			@Override
+			public void run() {
+				watch();
+			}
+		};
+		oThread.setDaemon(true);
+		oThread.start();
+	}
+
+	// ----------------------------------------------------------
+
+	File file() {
+		return oConf;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Stop watching, an ongoing reload is not interrupted
+	 */
+	void close() {
+		try {
+			oWatcher.close();
+		} catch (IOException ignore) { }
+	}
+
+	// ----------------------------------------------------------
+
+	private boolean affectsConf(WatchKey oKey) {
+		boolean bHit = false;
+		for (WatchEvent<?> oEvent : oKey.pollEvents()) {
+			final Object oCtx = oEvent.context();
+			if (oEvent.kind()==StandardWatchEventKinds.OVERFLOW || (oCtx instanceof Path && ((Path) oCtx).toString().equals(oConf.getName())))
+				bHit = true;
+		}
+		oKey.reset();
+		return bHit;
+	}
+
+	// ----------------------------------------------------------
+
+	private void watch() {
+		try {
+			for (;;) {
+				if (affectsConf(oWatcher.take())) {
+					Thread.sleep(DEBOUNCE_MILLIS);
+					WatchKey oKey;
+					while ((oKey = oWatcher.poll())!=null)
+						affectsConf(oKey);
+					if (oConf.isFile())
+						DebugFile.reload(this);
+				}
+			}
+		} catch (ClosedWatchServiceException closed) {
+		} catch (InterruptedException interrupted) {
+			close();
+		}
+	} // watch
+
+}
@@ -11,6 +11,7 @@ package com.knowgate.debug;
  * KIND, either express or implied.
  */
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
@@ -76,6 +77,66 @@ import java.net.UnknownHostException;
  * debugdir_win32=C:\\TEMP\\Debug\\<br>
  * debugdir_linux=/var/log/knowgate/<br>
  * </code>
+ * <h2>Asynchronous file output</h2>
+ * <p>By default each trace written to a file opens, appends and closes the file at the calling thread.
+ * When <code>async=true</code> traces are put into a bounded ring buffer and a background thread
+ * writes them in batches into long-lived per-thread files. Pending traces are flushed on shutdown or by calling flush().</p>
+ * <code>
+ * # Only applies if sink is file<br>
+ * async=true<br><br>
+ * # Size of the ring buffer, rounded up to a power of two<br>
+ * async_capacity=8192<br><br>
+ * # What to do when the buffer is full: block, drop or sample<br>
+ * async_backpressure=block<br><br>
+ * # When sampling keep one of every N traces once the buffer is three quarters full<br>
+ * async_sample_rate=10<br>
+ * </code>
+ * <h2>Binary file output</h2>
+ * <p>When <code>format=binary</code> each thread keeps a javatrc.&lt;threadId&gt;.bin file open
+ * and writes compact records holding the timestamp, thread id, indentation depth, an interned message template and its arguments.
+ * No date nor indentation is formatted while tracing. Binary files are turned back into the text layout with
+ * <code>java com.knowgate.debug.TraceDecoder [-o output.txt] javatrc.1.bin [javatrc.2.bin ...]</code>
+ * Binary records are buffered by each thread, so the async setting does not apply to them.</p>
+ * <code>
+ * # Only applies if sink is file. Accepted values are text and binary<br>
+ * format=binary<br>
+ * </code>
+ * <h2>Lazy messages and levels</h2>
+ * <p>writeln(String, Object...) and writeln(TraceMessage) check whether tracing is on by themselves
+ * and only format the message if it is actually written, {} placeholders are replaced by the arguments.
+ * The overloads taking a class and a TraceLevel also filter out the traces more verbose than the level
+ * configured for that class or its closest package.</p>
+ * <code>
+ * # Default level for classes without a level of their own, accepted values are off info debug and trace<br>
+ * level=trace<br>
+ * level.com.knowgate.stringutils=info<br>
+ * level.com.knowgate.typeutils.ObjectFactory=off<br>
+ * </code>
+ * <h2>Live reconfiguration</h2>
+ * <p>When debugfile.conf contains <code>watch=true</code>, or after calling setWatching(true), changes made to the file
+ * are applied without restarting. Each configuration read is published as an immutable DebugConfig snapshot
+ * and trace and dumpTo are volatile, so all threads see the new values.</p>
+ * <code>
+ * # Only applies to external configuration files<br>
+ * watch=true<br>
+ * </code>
+ * <h2>Sampling</h2>
+ * <p>Under load it may be enough to trace some call trees. A call tree starts with the first trace written
+ * at indentation level zero, usually a Begin trace followed by incIdent(), and ends with the first trace of level zero
+ * written after the outermost decIdent(). The sampling decision is taken once for the whole tree.
+ * Callers can check isTracing() instead of trace for not building messages of skipped trees,
+ * but incIdent() and decIdent() must still be called whenever trace is on, so that skipped trees are delimited too.</p>
+ * <code>
+ * # Accepted values are all, ratio, burst and rate<br>
+ * sampling=ratio<br><br>
+ * # ratio: trace one of every N call trees<br>
+ * sampling_ratio=100<br><br>
+ * # burst: trace the first N call trees of each thread every interval milliseconds<br>
+ * sampling_burst=10<br>
+ * sampling_interval=60000<br><br>
+ * # rate: token bucket of lines per second, a call tree is traced if there are tokens left when it starts<br>
+ * sampling_rate=1000<br>
+ * </code>
  * @author Sergio Montoro Ten
  * @version 9.0
  */
@@ -85,31 +146,112 @@ public final class DebugFile {
 	public static final short DUMP_TO_STDOUT = (short) 2;
 	public static final short DUMP_TO_LOG4J = (short) 4;
 	
-	private static final String DEFAULT_TMP_LINUX = "/tmp/";
-	private static final String DEFAULT_TMP_WIN32 = "C:\\TEMP\\Debug\\";
-
 	private static String confFile;
 
 	private static String debugPath;
 	
 	private static String filePath;
 
+	private static boolean explicitFilePath = false;
+
+	/**
+	 * Last configuration read from debugfile.conf
+	 */
+	private static volatile DebugConfig config;
+
+	/**
+	 * Watcher of debugfile.conf or <b>null</b>
+	 */
+	private static DebugConfigWatcher watcher;
+
 	/**
 	 * One of DUMP_TO_LOG4J, DUMP_TO_FILE or DUMP_TO_STDOUT constants
 	 */
-	public static short dumpTo;
+	public static volatile short dumpTo;
 
 	/**
 	 * Activate/Deactivate debug output
 	 */
-	public static boolean trace;
+	public static volatile boolean trace;
 	
 	/**
-	 * Number of ident spaces currently on each file
+	 * Indentation level after which it is automatically set back to one
+	 */
+	private static final int MAX_DEPTH = 41;
+
+	/**
+	 * Ident strings for each level, two spaces per level
 	 */
-	private static ConcurrentHashMap<Long, String> mIdent = new ConcurrentHashMap<Long, String>();
+	private static final String[] IDENTS = new String[MAX_DEPTH+1];
+
+	/**
+	 * Trace state of each thread
+	 */
+	private static final ThreadLocal<ThreadState> tState = new ThreadLocal<ThreadState>() {
+		@Override
+		protected ThreadState initialValue() {
+			return new ThreadState();
+		}
+	};
+
+	static final class ThreadState {
+		int depth = 0;
+		BinaryTraceWriter binary = null;
+		// Sampling decision for the current call tree
+		boolean decided = false;
+		boolean sampled = true;
+		boolean closing = false;
+		boolean peeked = false;
+		// Start time and call trees traced in the current burst
+		long burstStart = 0l;
+		int burstCount = 0;
+	}
+
+	/**
+	 * Sampler of call trees or <b>null</b> if all traces are written
+	 */
+	private static volatile TraceSampler sampler;
+
+	/**
+	 * Whether file traces are written in binary format
+	 */
+	private static volatile boolean binaryFormat = false;
+
+	/**
+	 * Limits of text trace files or <b>null</b> if they grow without limit
+	 */
+	private static volatile RollingTraceWriter.Policy rolling;
+
+	/**
+	 * Whether all threads write their text traces into the same file
+	 */
+	private static volatile boolean multiplexed = false;
+
+	/**
+	 * Level for classes and packages without a level of their own
+	 */
+	private static volatile TraceLevel defaultLevel = TraceLevel.TRACE;
+
+	/**
+	 * Levels set for classes and packages
+	 */
+	private static final ConcurrentHashMap<String, TraceLevel> mLevels = new ConcurrentHashMap<String, TraceLevel>();
+
+	/**
+	 * Levels already resolved for each class name
+	 */
+	private static final ConcurrentHashMap<String, TraceLevel> mClassLevels = new ConcurrentHashMap<String, TraceLevel>();
+
+	/**
+	 * Asynchronous file writer or <b>null</b> if traces are written synchronously
+	 */
+	private static volatile AsyncTraceWriter oAsync;
 	
 	static {
+		final char[] spaces = new char[MAX_DEPTH*2];
+		Arrays.fill(spaces, ' ');
+		for (int d=0; d<=MAX_DEPTH; d++)
+			IDENTS[d] = new String(spaces, 0, d*2);
 		refresh();
 	}
 	
@@ -145,6 +287,8 @@ public final class DebugFile {
 
 	/**
 	 * <p>Refresh DebugFile and here on use changes made in configuration.</p>
+	 * <p>The new configuration is applied as a whole and published as an immutable DebugConfig.
+	 * See setWatching() for applying changes automatically.</p>
 	 */
 	public static void refresh() {
 		File etc = new File(getConfFile());
@@ -156,6 +300,8 @@ public final class DebugFile {
 				try {
 					readDebugConfFromPropertiesInputStream(fInStrm);
 					fInStrm.close();
+					if (null!=config.getProperty("watch"))
+						setWatching(config.isWatch());
 				} catch (IOException ioe) {
 					System.err.println("IOException at com.knowgate.debug.DebugFile "+ioe.getMessage());
 				}
@@ -174,41 +320,392 @@ public final class DebugFile {
 	} // getDebugPath
 
 	private static void readDebugConfFromPropertiesInputStream(InputStream oInStrm) {
-		String sWin32DebugDir = DEFAULT_TMP_WIN32;
-		String sLinuxDebugDir = DEFAULT_TMP_LINUX;
+		Properties oProps = new Properties();
 		try {
 			if (oInStrm != null) {
-				
-				Properties oProps = new Properties();
 				oProps.load(oInStrm);
-				
-				final String debug = oProps.getProperty("debug", "false");
-				trace = debug.equalsIgnoreCase("true") || debug.equalsIgnoreCase("yes") || debug.equalsIgnoreCase("on") || debug.equalsIgnoreCase("1");
-				
-				final String sink = oProps.getProperty("sink", "file");
-				if (sink.equalsIgnoreCase("file"))
-					dumpTo = DUMP_TO_FILE;
-				else if (sink.equalsIgnoreCase("log4j"))
-					dumpTo = DUMP_TO_LOG4J;
-				else
-					dumpTo = DUMP_TO_STDOUT;
-
-				if (dumpTo==DUMP_TO_FILE) {
-					sWin32DebugDir = oProps.getProperty("debugdir_win32", DEFAULT_TMP_WIN32);
-					sLinuxDebugDir = oProps.getProperty("debugdir_linux", DEFAULT_TMP_LINUX);
-				} else {
-					sWin32DebugDir = sLinuxDebugDir = null;
-				}
-
 				oInStrm.close();
 			}
 		} catch (IOException ioe) {
 			System.err.println("IOException at DebugFile.readDebugConfFromPropertiesInputStream() "+ioe.getMessage());			
 		}
-		if (System.getProperty("os.name").startsWith("Windows"))
-			debugPath = sWin32DebugDir;
+		apply(new DebugConfig(oProps));
+	}
+
+	/**
+	 * <p>Apply a configuration snapshot</p>
+	 * Writers are only restarted if their settings or the trace directory have changed.
+	 * @param cfg DebugConfig
+	 */
+	private static synchronized void apply(DebugConfig cfg) {
+		final DebugConfig old = config;
+		final boolean dirChanged = null==old || !String.valueOf(old.getDebugDir()).equals(String.valueOf(cfg.getDebugDir()));
+		debugPath = cfg.getDebugDir();
+		if (dirChanged && !explicitFilePath)
+			filePath = null;
+		dumpTo = cfg.getDumpTo();
+		mLevels.clear();
+		mLevels.putAll(cfg.getLevels());
+		setDefaultLevel(cfg.getDefaultLevel());
+		if (dirChanged || old.isBinary()!=cfg.isBinary())
+			setBinary(cfg.isBinary());
+		if (null==old || old.getRollingMaxSize()!=cfg.getRollingMaxSize() || old.getRollingMaxAge()!=cfg.getRollingMaxAge()
+			|| old.getRollingKeep()!=cfg.getRollingKeep() || old.isRollingGzip()!=cfg.isRollingGzip())
+			setRolling(cfg.getRollingMaxSize(), cfg.getRollingMaxAge(), cfg.getRollingKeep(), cfg.isRollingGzip());
+		if (null==old || old.isMultiplexed()!=cfg.isMultiplexed())
+			setMultiplexed(cfg.isMultiplexed());
+		if (dirChanged || old.isAsync()!=cfg.isAsync() || old.getAsyncCapacity()!=cfg.getAsyncCapacity()
+			|| old.getBackPressure()!=cfg.getBackPressure() || old.getSampleRate()!=cfg.getSampleRate())
+			setAsync(cfg.isAsync(), cfg.getAsyncCapacity(), cfg.getBackPressure(), cfg.getSampleRate());
+		if (null==old || old.getSampling()!=cfg.getSampling() || old.getSamplingRatio()!=cfg.getSamplingRatio() || old.getSamplingBurst()!=cfg.getSamplingBurst()
+			|| old.getSamplingInterval()!=cfg.getSamplingInterval() || old.getSamplingRate()!=cfg.getSamplingRate())
+			setSampling(cfg.getSampling(), cfg.getSamplingRatio(), cfg.getSamplingBurst(), cfg.getSamplingInterval(), cfg.getSamplingRate());
+		trace = cfg.isTrace();
+		config = cfg;
+	}
+
+	/**
+	 * <p>Get the configuration last read from debugfile.conf</p>
+	 * Settings changed afterwards by calling setters or assigning trace or dumpTo are not reflected.
+	 * @return DebugConfig
+	 * @since 9.1
+	 */
+	public static DebugConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * <p>Start or stop watching debugfile.conf for changes</p>
+	 * <p>While watching, each change of the file is applied as if refresh() had been called.
+	 * Watching also starts by itself when the file contains watch=true and stops if it contains watch=false.</p>
+	 * @param bWatch boolean
+	 * @throws IOException If the configuration file does not exist or its directory can not be watched
+	 * @since 9.1
+	 */
+	public static synchronized void setWatching(boolean bWatch) throws IOException {
+		if (bWatch) {
+			final File conf = new File(getConfFile()).getAbsoluteFile();
+			if (!conf.isFile())
+				throw new FileNotFoundException("DebugFile configuration file not found " + conf.getPath());
+			if (null!=watcher && watcher.file().equals(conf))
+				return;
+			if (null!=watcher)
+				watcher.close();
+			watcher = new DebugConfigWatcher(conf);
+		} else if (null!=watcher) {
+			watcher.close();
+			watcher = null;
+		}
+	}
+
+	/**
+	 * @return <b>true</b> if debugfile.conf is being watched for changes
+	 * @since 9.1
+	 */
+	public static synchronized boolean isWatching() {
+		return null!=watcher;
+	}
+
+	static synchronized void reload(DebugConfigWatcher changed) {
+		if (changed==watcher)
+			refresh();
+	}
+
+	/**
+	 * <p>Switch between synchronous and asynchronous file output</p>
+	 * <p>Any previous asynchronous writer is flushed and closed before creating the new one.
+	 * This setting only has effect when dumpTo is DUMP_TO_FILE.</p>
+	 * @param bEnabled boolean Whether traces must be written by a background thread
+	 * @param iCapacity int Size of the ring buffer, it will be rounded up to a power of two
+	 * @param eBackPressure TraceBackPressure What to do when the ring buffer is full
+	 * @param iSampleRate int When eBackPressure is SAMPLE keep one of every iSampleRate traces
+	 * once the ring buffer is three quarters full
+	 * @throws IllegalArgumentException If bEnabled is true and iCapacity or iSampleRate are less than 1
+	 * @since 9.1
+	 */
+	public static synchronized void setAsync(boolean bEnabled, int iCapacity, TraceBackPressure eBackPressure, int iSampleRate) {
+		final AsyncTraceWriter oOld = oAsync;
+		oAsync = bEnabled ? new AsyncTraceWriter(iCapacity, eBackPressure, iSampleRate) : null;
+		if (oOld!=null)
+			oOld.close();
+	}
+
+	/**
+	 * <p>Set the level of the classes and packages without a level of their own</p>
+	 * @param eLevel TraceLevel
+	 * @since 9.1
+	 */
+	public static void setDefaultLevel(TraceLevel eLevel) {
+		defaultLevel = null==eLevel ? TraceLevel.TRACE : eLevel;
+		mClassLevels.clear();
+	}
+
+	/**
+	 * <p>Set the level of a class or package</p>
+	 * @param sName String Fully qualified class or package name
+	 * @param eLevel TraceLevel or <b>null</b> for using the level of the enclosing package
+	 * @since 9.1
+	 */
+	public static void setLevel(String sName, TraceLevel eLevel) {
+		if (null==eLevel)
+			mLevels.remove(sName);
+		else
+			mLevels.put(sName, eLevel);
+		mClassLevels.clear();
+	}
+
+	/**
+	 * <p>Get the level in effect for a class</p>
+	 * The level set for the class itself is used if any, else the level of its closest package,
+	 * else the default level.
+	 * @param oClass Class&lt;?&gt;
+	 * @return TraceLevel
+	 * @since 9.1
+	 */
+	public static TraceLevel getLevel(Class<?> oClass) {
+		final String sClassName = oClass.getName();
+		TraceLevel eLevel = mClassLevels.get(sClassName);
+		if (null==eLevel) {
+			String sName = sClassName;
+			while (null==eLevel && sName.length()>0) {
+				eLevel = mLevels.get(sName);
+				sName = sName.substring(0, Math.max(0, Math.max(sName.lastIndexOf('.'), sName.lastIndexOf('$'))));
+			}
+			if (null==eLevel)
+				eLevel = defaultLevel;
+			mClassLevels.put(sClassName, eLevel);
+		}
+		return eLevel;
+	}
+
+	/**
+	 * @param oClass Class&lt;?&gt; Class which writes the trace
+	 * @param eLevel TraceLevel Level of the trace
+	 * @return <b>true</b> if tracing is on and the level set for the class enables eLevel
+	 * @since 9.1
+	 */
+	public static boolean isEnabled(Class<?> oClass, TraceLevel eLevel) {
+		return trace && eLevel!=TraceLevel.OFF && eLevel.compareTo(getLevel(oClass))<=0;
+	}
+
+	/**
+	 * <p>Choose which call trees are traced</p>
+	 * The decision for each tree is taken at its first trace of level zero or at its outermost incIdent(),
+	 * so a whole call tree is either written or skipped.
+	 * @param mode TraceSampling
+	 * @param ratio int For RATIO mode trace one of every ratio call trees
+	 * @param burst int For BURST mode number of call trees traced by each thread per interval
+	 * @param intervalMillis long For BURST mode interval length in milliseconds
+	 * @param linesPerSecond int For RATE mode average number of lines per second
+	 * @throws IllegalArgumentException If the parameters used by mode are less than 1
+	 * @since 9.1
+	 */
+	public static void setSampling(TraceSampling mode, int ratio, int burst, long intervalMillis, int linesPerSecond) {
+		if (null==mode || TraceSampling.ALL==mode)
+			sampler = null;
 		else
-			debugPath = sLinuxDebugDir;
+			sampler = new TraceSampler(mode, ratio, burst, intervalMillis, linesPerSecond);
+	}
+
+	/**
+	 * @return Current sampling mode
+	 * @since 9.1
+	 */
+	public static TraceSampling getSampling() {
+		final TraceSampler traceSampler = sampler;
+		return null==traceSampler ? TraceSampling.ALL : traceSampler.mode();
+	}
+
+	/**
+	 * @return Number of call trees skipped since sampling was last set
+	 * @since 9.1
+	 */
+	public static long getSkippedTrees() {
+		final TraceSampler traceSampler = sampler;
+		return null==traceSampler ? 0l : traceSampler.skipped();
+	}
+
+	/**
+	 * <p>Switch between text and binary file output</p>
+	 * <p>Binary files already open are flushed and closed.
+	 * This setting only has effect when dumpTo is DUMP_TO_FILE.</p>
+	 * @param bBinary boolean Whether traces must be written in binary format
+	 * @see TraceDecoder
+	 * @since 9.1
+	 */
+	public static void setBinary(boolean bBinary) {
+		binaryFormat = bBinary;
+		BinaryTraceWriter.closeAll();
+	}
+
+	/**
+	 * @return <b>true</b> if file traces are written in binary format
+	 * @since 9.1
+	 */
+	public static boolean isBinary() {
+		return binaryFormat;
+	}
+
+	/**
+	 * <p>Roll text trace files when they grow too big or too old</p>
+	 * <p>The current file is renamed by appending a timestamp to its name before the extension
+	 * and a new one is started. Rolled files are compressed and pruned by a background thread.
+	 * Files already open are closed. Binary trace files are not rolled.
+	 * This setting only has effect when dumpTo is DUMP_TO_FILE.</p>
+	 * @param lMaxBytes long Maximum size of a file in bytes, zero for no limit
+	 * @param lMaxAgeMillis long Maximum age of a file in milliseconds, zero for no limit
+	 * @param iKeep int Number of rolled files to keep for each trace file, zero for keeping all of them
+	 * @param bGzip boolean Whether rolled files must be compressed with gzip
+	 * @since 9.1
+	 */
+	public static synchronized void setRolling(long lMaxBytes, long lMaxAgeMillis, int iKeep, boolean bGzip) {
+		final RollingTraceWriter.Policy policy = new RollingTraceWriter.Policy(lMaxBytes, lMaxAgeMillis, iKeep, bGzip);
+		rolling = policy.rolls() ? policy : null;
+		reopenFiles();
+	}
+
+	/**
+	 * @return <b>true</b> if text trace files are rolled
+	 * @since 9.1
+	 */
+	public static boolean isRolling() {
+		return null!=rolling;
+	}
+
+	/**
+	 * <p>Write the text traces of all threads into a single file</p>
+	 * <p>The file is javatrc.txt at the trace directory and the id of the thread starts each trace,
+	 * including those written with write(). Binary traces are still written into one file per thread.
+	 * This setting only has effect when dumpTo is DUMP_TO_FILE.</p>
+	 * @param bMultiplexed boolean
+	 * @since 9.1
+	 */
+	public static synchronized void setMultiplexed(boolean bMultiplexed) {
+		if (multiplexed!=bMultiplexed) {
+			multiplexed = bMultiplexed;
+			reopenFiles();
+		}
+	}
+
+	/**
+	 * @return <b>true</b> if the text traces of all threads are written into a single file
+	 * @since 9.1
+	 */
+	public static boolean isMultiplexed() {
+		return multiplexed;
+	}
+
+	/**
+	 * @return Policy of the text trace files or <b>null</b> if they can be written without keeping them open
+	 */
+	static RollingTraceWriter.Policy getRollingPolicy() {
+		return getRollingPolicy(multiplexed);
+	}
+
+	/**
+	 * @param shared boolean Whether the file is the multiplexed one, which is always written through a shared RollingTraceWriter
+	 * @return Policy of the text trace file or <b>null</b> if it can be written without keeping it open
+	 */
+	private static RollingTraceWriter.Policy getRollingPolicy(final boolean shared) {
+		final RollingTraceWriter.Policy policy = rolling;
+		return null==policy && shared ? RollingTraceWriter.NEVER : policy;
+	}
+
+	/**
+	 * Close the trace files kept open, they will be opened again by the next trace
+	 */
+	private static synchronized void reopenFiles() {
+		BinaryTraceWriter.closeAll();
+		RollingTraceWriter.closeAll();
+		final AsyncTraceWriter oWrt = oAsync;
+		if (oWrt!=null)
+			setAsync(true, oWrt.capacity(), oWrt.backPressure(), oWrt.sampleRate());
+	}
+
+	/**
+	 * @return <b>true</b> if file traces are being written by a background thread
+	 * @since 9.1
+	 */
+	public static boolean isAsync() {
+		return oAsync!=null;
+	}
+
+	/**
+	 * <p>Wait until all the traces written before this call have reached their files</p>
+	 * Does nothing if file traces are written synchronously.
+	 * @since 9.1
+	 */
+	public static void flush() {
+		final AsyncTraceWriter oWrt = oAsync;
+		if (oWrt!=null)
+			oWrt.flush();
+		BinaryTraceWriter.flushAll();
+	}
+
+	/**
+	 * @return Number of traces discarded by the current asynchronous writer because of back pressure
+	 * @since 9.1
+	 */
+	public static long getDroppedTraces() {
+		final AsyncTraceWriter oWrt = oAsync;
+		return null==oWrt ? 0l : oWrt.dropped();
+	}
+
+	private static boolean writeAsync(final long threadId, final String str) {
+		final AsyncTraceWriter oWrt = oAsync;
+		return oWrt!=null && oWrt.offer(threadId, str);
+	}
+
+	/**
+	 * Write text into the trace file of a thread, asynchronously if possible
+	 * @param threadId long
+	 * @param str String
+	 * @param raw boolean Whether the text does not begin with the thread id
+	 * @throws IOException
+	 */
+	private static void writeFile(final long threadId, final String str, final boolean raw) throws IOException {
+		final boolean shared = multiplexed;
+		final long fileId = shared ? -1l : threadId;
+		final String text = shared && raw ? String.valueOf(threadId) + " " + str : str;
+		if (writeAsync(fileId, text))
+			return;
+		// Use the flag read above, a FileWriter per line is only safe for files written by a single thread
+		final RollingTraceWriter.Policy policy = getRollingPolicy(shared);
+		if (null==policy) {
+			FileWriter oDebugWriter = new FileWriter(getFile(fileId, "txt"), true);
+			oDebugWriter.write(text);
+			oDebugWriter.close();
+		} else {
+			RollingTraceWriter.append(getFile(fileId, "txt"), policy, text);
+		}
+	}
+
+	private static BinaryTraceWriter getBinaryWriter(final ThreadState state) throws IOException {
+		if (null==state.binary || state.binary.isClosed())
+			state.binary = BinaryTraceWriter.open(getFile(Thread.currentThread().getId(), "bin"), Thread.currentThread());
+		return state.binary;
+	}
+
+	/**
+	 * @return <b>false</b> if the binary file could not be written and the trace must be written as text
+	 */
+	private static boolean writeBinary(final String template, final Object[] args, final boolean intern) {
+		final ThreadState state = tState.get();
+		try {
+			getBinaryWriter(state).line(System.currentTimeMillis(), Thread.currentThread().getId(), state.depth, template, args, intern);
+			return true;
+		} catch (IOException ioe) {
+			return false;
+		}
+	}
+
+	private static boolean writeBinaryRaw(final String str) {
+		try {
+			getBinaryWriter(tState.get()).raw(str);
+			return true;
+		} catch (IOException ioe) {
+			return false;
+		}
 	}
 
 	private static String chomp(String sSource, String cEndsWith) {
@@ -221,6 +718,9 @@ public final class DebugFile {
 	 */
 	public static void setFile(String sDebugFilePath) {
 		filePath = sDebugFilePath;
+		explicitFilePath = null!=sDebugFilePath;
+		// Files already open by the asynchronous, rolling and binary writers belong to the former path
+		reopenFiles();
 	}
 
 	/**
@@ -230,62 +730,80 @@ public final class DebugFile {
 	 * package. If knowgate.debugdir is not set and debugdir.cnf is not found or
 	 * empty the return /tmp on Unix systems and C:\Temp\Debug on Windows
 	 * @param threadId long Files are generated per thread, so inform which one is dumping the traces
-	 * @return String Full path to the file where the current thread will write its traces
+	 * @return String Full path to the file where the current thread will write its traces,
+	 * the same for all threads if traces are multiplexed
 	 */
 	public static String getFile(final long threadId) {
+		return getFile(multiplexed ? -1l : threadId, "txt");
+	} // getFile()
+
+	private static String getFile(final long threadId, final String extension) {
 		if (dumpTo == DUMP_TO_FILE) {
 			if (null == filePath)
 				filePath = chomp(System.getProperty("knowgate.debugdir", debugPath), File.separator) + "javatrc.";
 			if (-1l==threadId)
-				return filePath + "txt";
+				return filePath + extension;
 			else
-				return filePath + String.valueOf(threadId) + ".txt";
+				return filePath + String.valueOf(threadId) + "." + extension;
 		} else {
 			return  null;
 		}
-	} // getFile()
+	}
 
 	/**
 	 * Increment indentation level Maximum indentation level is 80, after
 	 * reaching that limit Indentation is automatically set to zero
 	 */
 	public static void incIdent() {
-		Long oThId = new Long(Thread.currentThread().getId());
-		String sIdent = "";
-		if (mIdent.containsKey(oThId)) {
-			sIdent = mIdent.get(oThId);
-			mIdent.remove(oThId);
-			if (sIdent.length() > 80)
-				sIdent = "";
-
-		}
-		mIdent.put(oThId, sIdent + "  ");
+		final ThreadState state = tState.get();
+		final TraceSampler traceSampler = sampler;
+		if (null!=traceSampler)
+			traceSampler.open(state);
+		state.depth = state.depth >= MAX_DEPTH ? 1 : state.depth + 1;
 	} // incIdent()
 
 	/**
 	 * Decrement indentation level
 	 */
 	public static void decIdent() {
-		Long oThId = new Long(Thread.currentThread().getId());
-		String sIdent = "";
-		if (mIdent.containsKey(oThId)) {
-			sIdent = mIdent.get(oThId);
-			if (sIdent.length() > 2)
-				sIdent = sIdent.substring(0, sIdent.length() - 2);
-			else
-				sIdent = "";
-			mIdent.remove(oThId);
-		} // fi
-		mIdent.put(oThId, sIdent);
+		final ThreadState state = tState.get();
+		if (state.depth > 0)
+			state.depth--;
+		final TraceSampler traceSampler = sampler;
+		if (null!=traceSampler)
+			traceSampler.close(state);
+	}
+
+	/**
+	 * @return Current indentation level of the calling thread
+	 * @since 9.1
+	 */
+	public static int getDepth() {
+		return tState.get().depth;
+	}
+
+	/**
+	 * <p>Whether the calling thread is tracing</p>
+	 * Use this method instead of reading the trace field for skipping the building of messages
+	 * which would be discarded because the current call tree is not sampled.
+	 * Calls to incIdent() and decIdent() must keep being guarded by the trace field.
+	 * @return <b>true</b> if trace is on and the current call tree of the calling thread is sampled
+	 * @since 9.1
+	 */
+	public static boolean isTracing() {
+		if (!trace)
+			return false;
+		final TraceSampler traceSampler = sampler;
+		return null==traceSampler || traceSampler.peek(tState.get());
+	}
+
+	private static boolean sampled() {
+		final TraceSampler traceSampler = sampler;
+		return null==traceSampler || traceSampler.line(tState.get());
 	}
 
 	private static String getIdent() {
-		Long oThId = new Long(Thread.currentThread().getId());
-		String sIdent = "";
-		if (mIdent.containsKey(oThId)) {
-			sIdent = mIdent.get(oThId);
-		}
-		return sIdent;
+		return IDENTS[tState.get().depth];
 	} // getIdent()
 
 	/**
@@ -295,7 +813,8 @@ public final class DebugFile {
 	 * @param str Characters to be written
 	 */
 	public static void write(char[] str) {
-		FileWriter oDebugWriter;
+		if (!sampled())
+			return;
 
 		try {
 
@@ -304,9 +823,8 @@ public final class DebugFile {
 
 			switch (dumpTo) {
 			case DUMP_TO_FILE:
-				oDebugWriter = new FileWriter(getFile(Thread.currentThread().getId()), true);
-				oDebugWriter.write(str);
-				oDebugWriter.close();
+				if (!(binaryFormat && writeBinaryRaw(new String(str))))
+					writeFile(Thread.currentThread().getId(), new String(str), true);
 				break;
 			case DUMP_TO_STDOUT:
 				System.out.print(str);
@@ -326,7 +844,8 @@ public final class DebugFile {
 	 * @param str String to be written
 	 */
 	public static void write(String str) {
-		FileWriter oDebugWriter;
+		if (!sampled())
+			return;
 
 		try {
 
@@ -335,9 +854,8 @@ public final class DebugFile {
 
 			switch (dumpTo) {
 			case DUMP_TO_FILE:
-				oDebugWriter = new FileWriter(getFile(Thread.currentThread().getId()), true);
-				oDebugWriter.write(str);
-				oDebugWriter.close();
+				if (!(binaryFormat && writeBinaryRaw(str)))
+					writeFile(Thread.currentThread().getId(), str, true);
 				break;
 			case DUMP_TO_STDOUT:
 				System.out.print(str);
@@ -356,7 +874,13 @@ public final class DebugFile {
 	 * @param str String to be written
 	 */
 	public static void writeln(String str) {
-		FileWriter oDebugWriter;
+		if (sampled())
+			writeLine(str);
+	}
+
+	private static void writeLine(String str) {
+		if (binaryFormat && dumpTo==DUMP_TO_FILE && writeBinary(str, null, false))
+			return;
 		Date dt = new Date(System.currentTimeMillis());
 
 		try {
@@ -365,9 +889,7 @@ public final class DebugFile {
 			line .append(String.valueOf(threadId)).append(" ").append(dt.toString()).append(" ").append(getIdent()).append(str).append("\n");
 			switch (dumpTo) {
 			case DUMP_TO_FILE:
-				oDebugWriter = new FileWriter(getFile(threadId), true);
-				oDebugWriter.write(line.toString());
-				oDebugWriter.close();
+				writeFile(threadId, line.toString(), false);
 				break;
 			case DUMP_TO_STDOUT:
 				System.out.print(line.toString());
@@ -386,7 +908,10 @@ public final class DebugFile {
 	 * @param str String to be written
 	 */
 	public static void writeln(char[] str) {
-		FileWriter oDebugWriter;
+		if (!sampled())
+			return;
+		if (binaryFormat && dumpTo==DUMP_TO_FILE && writeBinary(new String(str), null, false))
+			return;
 		Date dt = new Date();
 
 		try {
@@ -395,9 +920,7 @@ public final class DebugFile {
 			line .append(String.valueOf(threadId)).append(" ").append(dt.toString()).append(" ").append(getIdent()).append(str).append("\n");
 			switch (dumpTo) {
 			case DUMP_TO_FILE:
-				oDebugWriter = new FileWriter(getFile(threadId), true);
-				oDebugWriter.write(line.toString());
-				oDebugWriter.close();
+				writeFile(threadId, line.toString(), false);
 				break;
 			case DUMP_TO_STDOUT:
 				System.out.print(line.toString());
@@ -411,6 +934,64 @@ public final class DebugFile {
 		}
 	} // write
 
+	/**
+	 * <p>Write trace formatted from a template and append line feed</p>
+	 * Nothing is done if tracing is off. Otherwise each {} placeholder is replaced by the next argument.
+	 * In binary format the template is interned and only the arguments are written.
+	 * @param fmt String Message template
+	 * @param args Object... Template arguments
+	 * @since 9.1
+	 */
+	public static void writeln(String fmt, Object... args) {
+		if (trace && sampled())
+			writeTemplate(fmt, args, true);
+	}
+
+	/**
+	 * <p>Write trace built on demand and append line feed</p>
+	 * msg.get() is not called if tracing is off.
+	 * @param msg TraceMessage
+	 * @since 9.1
+	 */
+	public static void writeln(TraceMessage msg) {
+		if (trace && sampled())
+			writeTemplate(msg.get(), null, false);
+	}
+
+	/**
+	 * <p>Write trace formatted from a template if the level of a class enables it</p>
+	 * @param cls Class&lt;?&gt; Class which writes the trace
+	 * @param level TraceLevel Level of the trace
+	 * @param fmt String Message template
+	 * @param args Object... Template arguments
+	 * @since 9.1
+	 */
+	public static void writeln(Class<?> cls, TraceLevel level, String fmt, Object... args) {
+		if (isEnabled(cls, level) && sampled())
+			writeTemplate(fmt, args, true);
+	}
+
+	/**
+	 * <p>Write trace built on demand if the level of a class enables it</p>
+	 * @param cls Class&lt;?&gt; Class which writes the trace
+	 * @param level TraceLevel Level of the trace
+	 * @param msg TraceMessage
+	 * @since 9.1
+	 */
+	public static void writeln(Class<?> cls, TraceLevel level, TraceMessage msg) {
+		if (isEnabled(cls, level) && sampled())
+			writeTemplate(msg.get(), null, false);
+	}
+
+	/**
+	 * @param intern boolean Whether template is a constant worth interning in binary files,
+	 * messages built at run time are written inline so that they do not fill the template table
+	 */
+	private static void writeTemplate(String template, Object[] args, boolean intern) {
+		if (!(binaryFormat && dumpTo==DUMP_TO_FILE && writeBinary(template, args, intern)))
+			writeLine(TraceFormat.format(template, args));
+	}
+
 	/**
 	 * <p>Write stack trace for an exception to debug output</p
 	 * @param t Throwable
@@ -94,6 +94,35 @@ public class JavaInfo {
         out.println("total memory " + r.totalMemory());
     }
 
+    /**
+     * Read GC, memory pool, direct buffer, thread, safepoint and JIT metrics from the platform MXBeans
+     * @return RuntimeSnapshot
+     * @see RuntimeSampler
+     * @since 9.1
+     */
+    public static RuntimeSnapshot snapshot() {
+        return RuntimeSnapshot.take(true);
+    }
+
+    /**
+     * Read runtime metrics from the platform MXBeans
+     * @param threadStates Whether to count threads by state, which needs a ThreadInfo per live thread
+     * @return RuntimeSnapshot
+     * @since 9.1
+     */
+    public static RuntimeSnapshot snapshot(boolean threadStates) {
+        return RuntimeSnapshot.take(threadStates);
+    }
+
+    /**
+     * Print runtime metrics, one per line
+     * @since 9.1
+     */
+    public void printRuntimeSnapshot() {
+        for (Entry<String,Number> metric : snapshot().toMap().entrySet())
+            out.println(metric.getKey()+" "+metric.getValue());
+    }
+
     public void printCommandLineArguments() {
         out.print("JVM arguments");
         for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments())
@@ -222,6 +251,9 @@ public class JavaInfo {
         out.println("MEMORY");
         i.printRuntimeMemory();
         out.println("");
+        out.println("RUNTIME METRICS");
+        i.printRuntimeSnapshot();
+        out.println("");
         out.println("CPU");
         i.printCPUUsage();
         out.println("");
@@ -251,4 +283,4 @@ public class JavaInfo {
         i.printLocaleInfo();
     }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,131 @@
+package com.knowgate.debug;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Lock-free histogram of latencies in nanoseconds</p>
+ * <p>Buckets follow the layout of HDR histograms: values below 128 have a bucket each
+ * and each power of two above is split in 64 sub-buckets, so any value is reported with
+ * a relative error below 1/64 whatever its magnitude, using a fixed table of 3712 counters.</p>
+ * <p>Recording is a couple of atomic increments and does not allocate.
+ * Several threads may record at the same time as another thread takes a snapshot,
+ * in that case the snapshot may miss the values being recorded.</p>
+ * @version 9.1
+ */
+public final class LatencyHistogram {
+
+	static final int SUB_BITS = 6;
+	static final int SUB_BUCKETS = 1 << SUB_BITS;
+	static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray aCounts;
+	private final AtomicLong oCount;
+	private final AtomicLong oSum;
+	private final AtomicLong oMin;
+	private final AtomicLong oMax;
+
+	// ----------------------------------------------------------
+
+	public LatencyHistogram() {
+		aCounts = new AtomicLongArray(BUCKETS);
+		oCount = new AtomicLong(0l);
+		oSum = new AtomicLong(0l);
+		oMin = new AtomicLong(Long.MAX_VALUE);
+		oMax = new AtomicLong(0l);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @param lValue Non negative value
+	 * @return Index of the bucket for the value
+	 */
+	static int bucketOf(long lValue) {
+		if (lValue < (SUB_BUCKETS<<1))
+			return (int) lValue;
+		final int iShift = 63 - Long.numberOfLeadingZeros(lValue) - SUB_BITS;
+		return (iShift << SUB_BITS) + (int) (lValue >>> iShift);
+	}
+
+	/**
+	 * @param iBucket Index of bucket
+	 * @return Highest value that falls into the bucket
+	 */
+	static long highestValueOf(int iBucket) {
+		if (iBucket < (SUB_BUCKETS<<1))
+			return iBucket;
+		final int iShift = (iBucket >>> SUB_BITS) - 1;
+		final long lSub = iBucket - (iShift << SUB_BITS);
+		return ((lSub + 1l) << iShift) - 1l;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Add a value to the histogram
+	 * @param lNanos Latency in nanoseconds, negative values are recorded as zero
+	 */
+	public void record(long lNanos) {
+		if (lNanos<0l) lNanos = 0l;
+		aCounts.incrementAndGet(bucketOf(lNanos));
+		oCount.incrementAndGet();
+		oSum.addAndGet(lNanos);
+		long lCur;
+		while (lNanos > (lCur = oMax.get()) && !oMax.compareAndSet(lCur, lNanos)) ;
+		while (lNanos < (lCur = oMin.get()) && !oMin.compareAndSet(lCur, lNanos)) ;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Number of values recorded
+	 */
+	public long count() {
+		return oCount.get();
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Remove all recorded values
+	 */
+	public void reset() {
+		for (int b=0; b<BUCKETS; b++)
+			aCounts.set(b, 0l);
+		oCount.set(0l);
+		oSum.set(0l);
+		oMin.set(Long.MAX_VALUE);
+		oMax.set(0l);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Take a consistent copy of the counters
+	 * @param sName Name given to the snapshot
+	 * @return LatencySnapshot
+	 */
+	public LatencySnapshot snapshot(String sName) {
+		final long[] aCopy = new long[BUCKETS];
+		long lCount = 0l;
+		for (int b=0; b<BUCKETS; b++) {
+			aCopy[b] = aCounts.get(b);
+			lCount += aCopy[b];
+		}
+		final long lMin = oMin.get();
+		return new LatencySnapshot(sName, aCopy, lCount, oSum.get(), lCount==0l ? 0l : Math.min(lMin, oMax.get()), oMax.get());
+	}
+
+}
@@ -0,0 +1,122 @@
+package com.knowgate.debug;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+/**
+ * <p>Immutable copy of a LatencyHistogram</p>
+ * All values are in nanoseconds. Percentiles are the highest value of the bucket
+ * where they fall, capped by the maximum recorded value.
+ * @version 9.1
+ */
+public final class LatencySnapshot {
+
+	private final String sName;
+	private final long[] aCounts;
+	private final long lCount;
+	private final long lSum;
+	private final long lMin;
+	private final long lMax;
+
+	// ----------------------------------------------------------
+
+	LatencySnapshot(String sName, long[] aCounts, long lCount, long lSum, long lMin, long lMax) {
+		this.sName = sName;
+		this.aCounts = aCounts;
+		this.lCount = lCount;
+		this.lSum = lSum;
+		this.lMin = lMin;
+		this.lMax = lMax;
+	}
+
+	// ----------------------------------------------------------
+
+	public String getName() {
+		return sName;
+	}
+
+	public long getCount() {
+		return lCount;
+	}
+
+	/**
+	 * @return Sum of all recorded values
+	 */
+	public long getTotal() {
+		return lSum;
+	}
+
+	public long getMin() {
+		return lMin;
+	}
+
+	public long getMax() {
+		return lMax;
+	}
+
+	public long getMean() {
+		return lCount==0l ? 0l : lSum / lCount;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @param dPercentile Percentile between 0 and 100
+	 * @return Value below or at which dPercentile percent of the recorded values are, zero if there are no values
+	 */
+	public long percentile(double dPercentile) {
+		if (lCount==0l)
+			return 0l;
+		long lRank = (long) Math.ceil(Math.max(0d, Math.min(100d, dPercentile)) * lCount / 100d);
+		if (lRank<1l) lRank = 1l;
+		long lSeen = 0l;
+		for (int b=0; b<aCounts.length; b++) {
+			lSeen += aCounts[b];
+			if (lSeen>=lRank)
+				return Math.min(LatencyHistogram.highestValueOf(b), lMax);
+		}
+		return lMax;
+	}
+
+	public long getP50() {
+		return percentile(50d);
+	}
+
+	public long getP99() {
+		return percentile(99d);
+	}
+
+	public long getP999() {
+		return percentile(99.9d);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return name count=n p50=µs p99=µs p999=µs max=µs
+	 */
+	@Override
+	public String toString() {
+		StringBuilder oStr = new StringBuilder(128);
+		oStr.append(sName).append(" count=").append(lCount)
+			.append(" mean=").append(micros(getMean()))
+			.append(" p50=").append(micros(getP50()))
+			.append(" p99=").append(micros(getP99()))
+			.append(" p999=").append(micros(getP999()))
+			.append(" max=").append(micros(lMax)).append("us");
+		return oStr.toString();
+	}
+
+	private static String micros(long lNanos) {
+		return String.valueOf(lNanos/1000l) + "." + String.valueOf((lNanos%1000l)/100l);
+	}
+
+}
@@ -0,0 +1,218 @@
+package com.knowgate.debug;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Registry of named latency timers</p>
+ * <p>Each operation name has its own LatencyHistogram. Scopes opened while another scope
+ * is open at the same thread are nested, and their latencies are recorded under the path
+ * of names from the outermost scope separated by '/'. Use try-with-resources:</p>
+ * <code>
+ * try (Profiler.Scope s = Profiler.start("csv.import")) {<br>
+ * &nbsp;&nbsp;try (Profiler.Scope p = Profiler.start("parse")) {<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;// recorded as csv.import/parse<br>
+ * &nbsp;&nbsp;}<br>
+ * }<br>
+ * </code>
+ * <p>Once a name has been seen at a given path no String is built for it again,
+ * so opening and closing a scope only allocates the Scope itself and its Chronometer.
+ * When the profiler is disabled start() returns a shared scope which does nothing.</p>
+ * @version 9.1
+ */
+public final class Profiler {
+
+	private static final String SEPARATOR = "/";
+
+	private static volatile boolean enabled = true;
+
+	private static final Node ROOT = new Node("");
+
+	private static final ThreadLocal<Scope> tCurrent = new ThreadLocal<Scope>();
+
+	private static final Scope NONE = new Scope(null, null);
+
+	private Profiler() { }
+
+	// ----------------------------------------------------------
+
+	private static final class Node {
+		final String path;
+		final LatencyHistogram histogram;
+		final ConcurrentHashMap<String,Node> children;
+
+		Node(String sPath) {
+			path = sPath;
+			histogram = new LatencyHistogram();
+			children = new ConcurrentHashMap<String,Node>();
+		}
+
+		Node child(String sName) {
+			Node oChild = children.get(sName);
+			if (null==oChild) {
+				final Node oNew = new Node(path.length()==0 ? sName : path + SEPARATOR + sName);
+				oChild = children.putIfAbsent(sName, oNew);
+				if (null==oChild)
+					oChild = oNew;
+			}
+			return oChild;
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Timed scope of an operation</p>
+	 * Closing it records its elapsed time and makes its parent the current scope again.
+	 */
+	public static final class Scope implements AutoCloseable {
+		private final Node oNode;
+		private final Scope oParent;
+		private final Chronometer oChrono;
+		private boolean bClosed;
+
+		private Scope(Node oNode, Scope oParent) {
+			this.oNode = oNode;
+			this.oParent = oParent;
+			this.oChrono = null==oNode ? null : new Chronometer();
+			this.bClosed = null==oNode;
+		}
+
+		/**
+		 * @return Path of this scope or <b>null</b> if the profiler was disabled when it was opened
+		 */
+		public String getPath() {
+			return null==oNode ? null : oNode.path;
+		}
+
+		/**
+		 * Stop this scope and record its latency, calling it more than once has no effect
+		 */
+		@Override
+		public void close() {
+			if (!bClosed) {
+				bClosed = true;
+				oNode.histogram.record(oChrono.elapsedNanos());
+				if (null==oParent)
+					tCurrent.remove();
+				else
+					tCurrent.set(oParent);
+			}
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @param bEnabled Whether new scopes are timed, scopes already open are not affected
+	 */
+	public static void setEnabled(boolean bEnabled) {
+		enabled = bEnabled;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Open a timed scope nested into the current scope of the calling thread if any
+	 * @param sName Operation name, it must not contain '/'
+	 * @return Scope that must be closed when the operation finishes
+	 */
+	public static Scope start(String sName) {
+		if (!enabled)
+			return NONE;
+		final Scope oParent = tCurrent.get();
+		final Scope oScope = new Scope((null==oParent ? ROOT : oParent.oNode).child(sName), oParent);
+		tCurrent.set(oScope);
+		return oScope;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Record a latency measured elsewhere, it is not nested into the current scope
+	 * @param sPath Operation name or path of names separated by '/'
+	 * @param lNanos Latency in nanoseconds
+	 */
+	public static void record(String sPath, long lNanos) {
+		if (enabled) {
+			Node oNode = ROOT;
+			for (String sName : sPath.split(SEPARATOR))
+				oNode = oNode.child(sName);
+			oNode.histogram.record(lNanos);
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	private static void collect(Node oNode, Map<String,LatencySnapshot> oSnapshots) {
+		for (Node oChild : oNode.children.values()) {
+			if (oChild.histogram.count()>0l)
+				oSnapshots.put(oChild.path, oChild.histogram.snapshot(oChild.path));
+			collect(oChild, oSnapshots);
+		}
+	}
+
+	/**
+	 * Take a snapshot of every operation with at least one recorded value
+	 * @return Map of operation paths to their latencies sorted by path
+	 */
+	public static Map<String,LatencySnapshot> snapshot() {
+		TreeMap<String,LatencySnapshot> oSnapshots = new TreeMap<String,LatencySnapshot>();
+		collect(ROOT, oSnapshots);
+		return oSnapshots;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Write a tab separated table with a header line and one line per operation.
+	 * Columns are path, count, mean, p50, p99, p999 and max, latencies in microseconds.
+	 * @param oOut Appendable
+	 * @throws IOException
+	 */
+	public static void export(Appendable oOut) throws IOException {
+		oOut.append("operation\tcount\tmean_us\tp50_us\tp99_us\tp999_us\tmax_us\n");
+		for (LatencySnapshot oSnap : snapshot().values()) {
+			oOut.append(oSnap.getName()).append('\t').append(String.valueOf(oSnap.getCount()))
+				.append('\t').append(String.valueOf(oSnap.getMean()/1000l))
+				.append('\t').append(String.valueOf(oSnap.getP50()/1000l))
+				.append('\t').append(String.valueOf(oSnap.getP99()/1000l))
+				.append('\t').append(String.valueOf(oSnap.getP999()/1000l))
+				.append('\t').append(String.valueOf(oSnap.getMax()/1000l)).append('\n');
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Clear the values recorded for every operation
+	 */
+	public static void reset() {
+		reset(ROOT);
+	}
+
+	private static void reset(Node oNode) {
+		for (Node oChild : oNode.children.values()) {
+			oChild.histogram.reset();
+			reset(oChild);
+		}
+	}
+
+}
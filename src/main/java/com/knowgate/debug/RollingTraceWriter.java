@@ -0,0 +1,410 @@
+package com.knowgate.debug;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>Text trace file which is rolled when it grows too big or too old</p>
+ * <p>Rolling renames the current segment javatrc.<i>n</i>.txt to javatrc.<i>n</i>.<i>yyyyMMdd-HHmmss-SSS</i>.txt
+ * and starts a new empty one. Rolled segments are compressed to .gz and the oldest ones beyond
+ * the number to keep are deleted by a single daemon thread, so the thread writing traces never waits for them.</p>
+ * <p>Sizes are counted in bytes as they leave the encoder, so a segment may exceed
+ * its maximum size by the size of the last trace written plus the encoder buffer.
+ * Files are only rolled between traces, never in the middle of one.</p>
+ * <p>Instances are not thread safe. The synchronous path of DebugFile shares them through append()
+ * and the asynchronous writer only uses them from its own thread.</p>
+ * @version 9.1
+ */
+final class RollingTraceWriter extends Writer {
+
+	static final int MAX_OPEN_FILES = 64;
+
+	private static final String STAMP_FORMAT = "yyyyMMdd-HHmmss-SSS";
+	private static final String STAMP_PATTERN = "(\\d{8}-\\d{6}-\\d{3})(?:-(\\d+))?";
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Limits of a trace file segment</p>
+	 */
+	static final class Policy {
+		final long maxBytes;
+		final long maxAge;
+		final int keep;
+		final boolean gzip;
+
+		/**
+		 * @param lMaxBytes Maximum size of a segment in bytes, zero for no limit
+		 * @param lMaxAge Maximum age of a segment in milliseconds, zero for no limit
+		 * @param iKeep Number of rolled segments to keep per file, zero for keeping all of them
+		 * @param bGzip Whether rolled segments must be compressed
+		 */
+		Policy(long lMaxBytes, long lMaxAge, int iKeep, boolean bGzip) {
+			maxBytes = Math.max(0l, lMaxBytes);
+			maxAge = Math.max(0l, lMaxAge);
+			keep = Math.max(0, iKeep);
+			gzip = bGzip;
+		}
+
+		boolean rolls() {
+			return maxBytes>0l || maxAge>0l;
+		}
+	}
+
+	/**
+	 * Segments are never rolled, used for sharing the multiplexed file without limits
+	 */
+	static final Policy NEVER = new Policy(0l, 0l, 0, false);
+
+	private static final LinkedHashMap<String,RollingTraceWriter> mShared = new LinkedHashMap<String,RollingTraceWriter>(16, 0.75f, true);
+
+	private static ExecutorService oCompressor;
+
+	// Absolute paths of rolled segments handed to the compressor and not yet compressed
+	private static final Set<String> oPendingGzip = new HashSet<String>();
+
+	// ----------------------------------------------------------
+
+	private final File oFile;
+	private final Policy oPolicy;
+	private Writer oOut;
+	private long lBytes;
+	private long lOpened;
+	private boolean bClosed;
+
+	/**
+	 * @param sPath Path of the current segment, it is appended to if it already exists
+	 * @param oLimits Policy
+	 * @throws IOException
+	 */
+	RollingTraceWriter(String sPath, Policy oLimits) throws IOException {
+		oFile = new File(sPath);
+		oPolicy = oLimits;
+		bClosed = false;
+		open();
+	}
+
+	// ----------------------------------------------------------
+
+	private void open() throws IOException {
+		long lCreated = System.currentTimeMillis();
+		lBytes = 0l;
+		if (oFile.exists()) {
+			lBytes = oFile.length();
+			try {
+				lCreated = Math.min(lCreated, Files.readAttributes(oFile.toPath(), BasicFileAttributes.class).creationTime().toMillis());
+			} catch (IOException ignore) { }
+		}
+		lOpened = lCreated;
+		oOut = new OutputStreamWriter(new FilterOutputStream(new FileOutputStream(oFile, true)) {
+			@Override
+			public void write(int iByte) throws IOException {
+				out.write(iByte);
+				lBytes++;
+			}
+			@Override
+			public void write(byte[] aBytes, int iOff, int iLen) throws IOException {
+				out.write(aBytes, iOff, iLen);
+				lBytes += iLen;
+			}
+		});
+	}
+
+	// ----------------------------------------------------------
+
+	private boolean full() {
+		return (oPolicy.maxBytes>0l && lBytes>=oPolicy.maxBytes)
+			|| (oPolicy.maxAge>0l && System.currentTimeMillis()-lOpened>=oPolicy.maxAge);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Rename the current segment, hand it to the compressor and start a new one
+	 * @throws IOException
+	 */
+	void roll() throws IOException {
+		oOut.close();
+		final File oRolled = rolledName(oFile);
+		if (oFile.renameTo(oRolled)) {
+			compress(oRolled, oFile, oPolicy);
+			open();
+		} else {
+			// The segment may be locked by another process, keep on writing to it until it is full again
+			open();
+			lBytes = 0l;
+			lOpened = System.currentTimeMillis();
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	@Override
+	public void write(char[] aChars, int iOff, int iLen) throws IOException {
+		if (bClosed)
+			throw new IOException("RollingTraceWriter is closed");
+		if (full())
+			roll();
+		oOut.write(aChars, iOff, iLen);
+	}
+
+	@Override
+	public void write(String sText, int iOff, int iLen) throws IOException {
+		if (bClosed)
+			throw new IOException("RollingTraceWriter is closed");
+		if (full())
+			roll();
+		oOut.write(sText, iOff, iLen);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (!bClosed)
+			oOut.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!bClosed) {
+			bClosed = true;
+			oOut.close();
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	private static String[] split(File oFile) {
+		final String sName = oFile.getName();
+		final int iDot = sName.lastIndexOf('.');
+		return iDot<0 ? new String[]{sName, ""} : new String[]{sName.substring(0, iDot), sName.substring(iDot)};
+	}
+
+	/**
+	 * @return javatrc.<i>n</i>.<i>stamp</i>.txt for javatrc.<i>n</i>.txt
+	 */
+	private static File rolledName(File oFile) {
+		final String[] aParts = split(oFile);
+		final String sStamp = new SimpleDateFormat(STAMP_FORMAT).format(new Date());
+		File oRolled = new File(oFile.getParentFile(), aParts[0] + "." + sStamp + aParts[1]);
+		for (int n=1; oRolled.exists() || new File(oRolled.getPath()+".gz").exists(); n++)
+			oRolled = new File(oFile.getParentFile(), aParts[0] + "." + sStamp + "-" + String.valueOf(n) + aParts[1]);
+		return oRolled;
+	}
+
+	// ----------------------------------------------------------
+
+	private static synchronized void compress(final File oRolled, final File oCurrent, final Policy oLimits) {
+		if (!oLimits.gzip && 0==oLimits.keep)
+			return;
+		if (oLimits.gzip) {
+			synchronized (oPendingGzip) {
+				oPendingGzip.add(oRolled.getAbsolutePath());
+			}
+		}
+		if (null==oCompressor) {
+			oCompressor = new ThreadPoolExecutor(1, 1, 0l, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable oTask) {
+					Thread oThread = new Thread(oTask, "DebugFile trace compressor");
+					oThread.setDaemon(true);
+					return oThread;
+				}
+			});
+		}
+		oCompressor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (oLimits.gzip) {
+					try {
+						gzip(oRolled);
+					} finally {
+						synchronized (oPendingGzip) {
+							oPendingGzip.remove(oRolled.getAbsolutePath());
+						}
+					}
+				}
+				if (oLimits.keep>0)
+					prune(oCurrent, oLimits.keep);
+			}
+		});
+	}
+
+	// ----------------------------------------------------------
+
+	static void gzip(File oRolled) {
+		final File oGz = new File(oRolled.getPath()+".gz");
+		boolean bDone = false;
+		try {
+			InputStream oIn = new FileInputStream(oRolled);
+			try {
+				OutputStream oOut = new GZIPOutputStream(new FileOutputStream(oGz), 8192);
+				try {
+					final byte[] aBuffer = new byte[8192];
+					int iRead;
+					while ((iRead = oIn.read(aBuffer))>0)
+						oOut.write(aBuffer, 0, iRead);
+				} finally {
+					oOut.close();
+				}
+				bDone = true;
+			} finally {
+				oIn.close();
+			}
+		} catch (IOException ioe) {
+			System.err.println("IOException at RollingTraceWriter.gzip() "+ioe.getMessage());
+		}
+		if (bDone)
+			oRolled.delete();
+		else
+			oGz.delete();
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Rolled segment ordered by its stamp and then by the suffix added to segments rolled in the same millisecond</p>
+	 */
+	private static final class Segment implements Comparable<Segment> {
+		final File file;
+		final String stamp;
+		final int suffix;
+
+		Segment(File oFile, String sStamp, String sSuffix) {
+			file = oFile;
+			stamp = sStamp;
+			suffix = null==sSuffix ? 0 : Integer.parseInt(sSuffix);
+		}
+
+		@Override
+		public int compareTo(Segment oOther) {
+			final int iCmp = stamp.compareTo(oOther.stamp);
+			return 0!=iCmp ? iCmp : (suffix<oOther.suffix ? -1 : (suffix==oOther.suffix ? 0 : 1));
+		}
+	}
+
+	/**
+	 * Delete the oldest rolled segments of a file.
+	 * Segments still waiting to be compressed are neither counted nor deleted.
+	 * @param oCurrent Current segment
+	 * @param iKeep Number of rolled segments to keep
+	 */
+	static void prune(File oCurrent, int iKeep) {
+		final String[] aParts = split(oCurrent);
+		final Pattern oRolled = Pattern.compile(Pattern.quote(aParts[0] + ".") + STAMP_PATTERN + Pattern.quote(aParts[1]) + "(\\.gz)?");
+		final File oDir = oCurrent.getAbsoluteFile().getParentFile();
+		final String[] aNames = oDir.list();
+		if (null==aNames)
+			return;
+		ArrayList<Segment> aSegments = new ArrayList<Segment>();
+		synchronized (oPendingGzip) {
+			for (String sName : aNames) {
+				final Matcher oMatch = oRolled.matcher(sName);
+				if (oMatch.matches()) {
+					final File oSegment = new File(oDir, sName);
+					if (!oPendingGzip.contains(oSegment.getAbsolutePath()))
+						aSegments.add(new Segment(oSegment, oMatch.group(1), oMatch.group(2)));
+				}
+			}
+		}
+		if (aSegments.size()>iKeep) {
+			Collections.sort(aSegments);
+			for (int s=aSegments.size()-iKeep-1; s>=0; s--)
+				aSegments.get(s).file.delete();
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Write a trace to a file shared by all the threads</p>
+	 * The trace is flushed before returning. At most MAX_OPEN_FILES files are kept open,
+	 * the least recently used ones are closed and reopened when needed.
+	 * @param sPath File path
+	 * @param oLimits Policy used if the file is not already open
+	 * @param sText Trace
+	 * @throws IOException
+	 */
+	static void append(String sPath, Policy oLimits, String sText) throws IOException {
+		for (;;) {
+			RollingTraceWriter oWrt;
+			synchronized (mShared) {
+				oWrt = mShared.get(sPath);
+				if (null==oWrt) {
+					oWrt = new RollingTraceWriter(sPath, oLimits);
+					mShared.put(sPath, oWrt);
+					if (mShared.size()>MAX_OPEN_FILES) {
+						Iterator<RollingTraceWriter> oIter = mShared.values().iterator();
+						final RollingTraceWriter oEldest = oIter.next();
+						oIter.remove();
+						synchronized (oEldest) {
+							oEldest.close();
+						}
+					}
+				}
+			}
+			synchronized (oWrt) {
+				// A writer closed by another thread after being looked up must be opened again
+				if (!oWrt.bClosed) {
+					oWrt.write(sText);
+					oWrt.flush();
+					return;
+				}
+			}
+		}
+	} // append
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Close the files opened by append()
+	 */
+	static void closeAll() {
+		synchronized (mShared) {
+			for (RollingTraceWriter oWrt : mShared.values()) {
+				synchronized (oWrt) {
+					try {
+						oWrt.close();
+					} catch (IOException ignore) { }
+				}
+			}
+			mShared.clear();
+		}
+	}
+
+}
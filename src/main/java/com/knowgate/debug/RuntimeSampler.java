@@ -0,0 +1,181 @@
+package com.knowgate.debug;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Take a RuntimeSnapshot periodically and keep the most recent ones</p>
+ * <p>Snapshots are taken by a daemon thread at a fixed rate and stored into a ring buffer,
+ * so the memory used by the history does not grow once it is full.
+ * Readers get the latest snapshot or a copy of the history without stopping the sampler.</p>
+ * <code>
+ * RuntimeSampler sampler = new RuntimeSampler(1000l, 300, false);<br>
+ * sampler.start();<br>
+ * ...<br>
+ * RuntimeSnapshot last = sampler.latest();<br>
+ * </code>
+ * @version 9.1
+ */
+public final class RuntimeSampler implements AutoCloseable {
+
+	private static final long STOP_TIMEOUT_MILLIS = 5000l;
+
+	private final long lPeriodMillis;
+	private final boolean bThreadStates;
+	private final RuntimeSnapshot[] aHistory;
+	private int iNext;
+	private int iSize;
+	private ScheduledExecutorService oTimer;
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @param lPeriodMillis Milliseconds between snapshots
+	 * @param iHistory Number of snapshots to keep
+	 * @param bThreadStates Whether to count threads by state at each snapshot
+	 * @throws IllegalArgumentException If lPeriodMillis or iHistory are less than 1
+	 */
+	public RuntimeSampler(long lPeriodMillis, int iHistory, boolean bThreadStates) {
+		if (lPeriodMillis<1l)
+			throw new IllegalArgumentException("RuntimeSampler period must be greater than zero");
+		if (iHistory<1)
+			throw new IllegalArgumentException("RuntimeSampler history must be greater than zero");
+		this.lPeriodMillis = lPeriodMillis;
+		this.bThreadStates = bThreadStates;
+		this.aHistory = new RuntimeSnapshot[iHistory];
+		this.iNext = 0;
+		this.iSize = 0;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Start taking snapshots, the first one is taken immediately. Calling it when already started has no effect.
+	 */
+	public synchronized void start() {
+		if (null==oTimer) {
+			oTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable oTask) {
+					Thread oThread = new Thread(oTask, "RuntimeSampler");
+					oThread.setDaemon(true);
+					return oThread;
+				}
+			});
+			oTimer.scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					// An exception escaping from run() would cancel the following snapshots
+					try {
+						sample();
+					} catch (RuntimeException xcpt) {
+						System.err.println(xcpt.getClass().getName()+" at RuntimeSampler.sample() "+xcpt.getMessage());
+					}
+				}
+			}, 0l, lPeriodMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Stop taking snapshots and wait for a snapshot being taken to finish, the history is kept
+	 */
+	public synchronized void stop() {
+		if (null!=oTimer) {
+			oTimer.shutdownNow();
+			try {
+				oTimer.awaitTermination(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException xcpt) {
+				Thread.currentThread().interrupt();
+			}
+			oTimer = null;
+		}
+	}
+
+	public synchronized boolean isStarted() {
+		return null!=oTimer;
+	}
+
+	/**
+	 * Same as stop()
+	 */
+	@Override
+	public void close() {
+		stop();
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Take a snapshot now and add it to the history
+	 * @return RuntimeSnapshot
+	 */
+	public RuntimeSnapshot sample() {
+		final RuntimeSnapshot oSnapshot = RuntimeSnapshot.take(bThreadStates);
+		synchronized (aHistory) {
+			aHistory[iNext] = oSnapshot;
+			iNext = (iNext+1) % aHistory.length;
+			if (iSize<aHistory.length)
+				iSize++;
+		}
+		return oSnapshot;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Most recent snapshot or <b>null</b> if none has been taken yet
+	 */
+	public RuntimeSnapshot latest() {
+		synchronized (aHistory) {
+			return 0==iSize ? null : aHistory[(iNext+aHistory.length-1) % aHistory.length];
+		}
+	}
+
+	/**
+	 * @return Snapshots kept from the oldest to the most recent
+	 */
+	public List<RuntimeSnapshot> history() {
+		synchronized (aHistory) {
+			ArrayList<RuntimeSnapshot> oList = new ArrayList<RuntimeSnapshot>(iSize);
+			for (int s=iSize; s>0; s--)
+				oList.add(aHistory[(iNext+aHistory.length-s) % aHistory.length]);
+			return oList;
+		}
+	}
+
+	/**
+	 * @return Number of snapshots kept
+	 */
+	public int size() {
+		synchronized (aHistory) {
+			return iSize;
+		}
+	}
+
+	/**
+	 * @return Maximum number of snapshots kept
+	 */
+	public int capacity() {
+		return aHistory.length;
+	}
+
+	public long getPeriod() {
+		return lPeriodMillis;
+	}
+
+}
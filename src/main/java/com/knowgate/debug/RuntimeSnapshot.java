@@ -0,0 +1,481 @@
+package com.knowgate.debug;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.RuntimeMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Immutable set of runtime metrics read from the platform MXBeans</p>
+ * <p>The MXBeans are looked up once per class load, so taking a snapshot only calls their getters.
+ * Counters such as collection counts and times are cumulative since the virtual machine started,
+ * subtract two snapshots for getting rates. Metrics not supported by the virtual machine are -1.</p>
+ * <p>Safepoint statistics are read from the HotSpot internal runtime bean when it is accessible,
+ * which is the case for Java 8 and for later versions run with
+ * <code>--add-exports java.management/sun.management=ALL-UNNAMED</code>.</p>
+ * @see JavaInfo#snapshot()
+ * @version 9.1
+ */
+public final class RuntimeSnapshot {
+
+	private static final MemoryMXBean oMemory = ManagementFactory.getMemoryMXBean();
+	private static final RuntimeMXBean oRuntime = ManagementFactory.getRuntimeMXBean();
+	private static final ThreadMXBean oThreads = ManagementFactory.getThreadMXBean();
+	private static final ClassLoadingMXBean oClasses = ManagementFactory.getClassLoadingMXBean();
+	private static final CompilationMXBean oCompiler = ManagementFactory.getCompilationMXBean();
+	private static final OperatingSystemMXBean oOs = ManagementFactory.getOperatingSystemMXBean();
+	private static final GarbageCollectorMXBean[] aCollectors;
+	private static final MemoryPoolMXBean[] aPools;
+	private static final String[] aCollectorNames;
+	private static final String[] aPoolNames;
+	private static final BufferPoolMXBean oDirect;
+	private static final BufferPoolMXBean oMapped;
+	private static final Thread.State[] aStates = Thread.State.values();
+
+	private static final Object oHotspotRuntime;
+	private static final Method mSafepointCount;
+	private static final Method mSafepointTime;
+	private static final Method mSafepointSyncTime;
+
+	static {
+		final List<GarbageCollectorMXBean> oGcs = ManagementFactory.getGarbageCollectorMXBeans();
+		aCollectors = oGcs.toArray(new GarbageCollectorMXBean[oGcs.size()]);
+		aCollectorNames = new String[aCollectors.length];
+		for (int c=0; c<aCollectors.length; c++)
+			aCollectorNames[c] = aCollectors[c].getName();
+
+		final List<MemoryPoolMXBean> oMps = ManagementFactory.getMemoryPoolMXBeans();
+		aPools = oMps.toArray(new MemoryPoolMXBean[oMps.size()]);
+		aPoolNames = new String[aPools.length];
+		for (int p=0; p<aPools.length; p++)
+			aPoolNames[p] = aPools[p].getName();
+
+		BufferPoolMXBean oDirectPool = null, oMappedPool = null;
+		for (BufferPoolMXBean oPool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if ("direct".equals(oPool.getName()))
+				oDirectPool = oPool;
+			else if ("mapped".equals(oPool.getName()))
+				oMappedPool = oPool;
+		}
+		oDirect = oDirectPool;
+		oMapped = oMappedPool;
+
+		Object oHotspot = null;
+		Method mCount = null, mTime = null, mSync = null;
+		try {
+			oHotspot = Class.forName("sun.management.ManagementFactoryHelper").getMethod("getHotspotRuntimeMBean").invoke(null);
+			final Class<?> oIface = Class.forName("sun.management.HotspotRuntimeMBean");
+			mCount = oIface.getMethod("getSafepointCount");
+			mTime = oIface.getMethod("getTotalSafepointTime");
+			mSync = oIface.getMethod("getSafepointSyncTime");
+			mCount.invoke(oHotspot);
+		} catch (Throwable notaccessible) {
+			oHotspot = null;
+		}
+		oHotspotRuntime = oHotspot;
+		mSafepointCount = mCount;
+		mSafepointTime = mTime;
+		mSafepointSyncTime = mSync;
+	}
+
+	// ----------------------------------------------------------
+
+	private final long lTimestamp;
+	private final long lUptime;
+
+	private final long lHeapUsed;
+	private final long lHeapCommitted;
+	private final long lHeapMax;
+	private final long lNonHeapUsed;
+	private final long lNonHeapCommitted;
+	private final long[] aPoolUsed;
+	private final long[] aPoolCommitted;
+	private final long[] aPoolMax;
+	private final long lDirectCount;
+	private final long lDirectUsed;
+	private final long lDirectCapacity;
+	private final long lMappedCount;
+	private final long lMappedUsed;
+
+	private final long[] aCollectionCount;
+	private final long[] aCollectionTime;
+
+	private final int iThreadCount;
+	private final int iDaemonThreadCount;
+	private final int iPeakThreadCount;
+	private final long lStartedThreadCount;
+	private final int[] aThreadStates;
+
+	private final long lSafepointCount;
+	private final long lSafepointTime;
+	private final long lSafepointSyncTime;
+
+	private final long lCompilationTime;
+	private final int iLoadedClassCount;
+	private final double dLoadAverage;
+
+	// ----------------------------------------------------------
+
+	private RuntimeSnapshot(boolean bThreadStates) {
+		lTimestamp = System.currentTimeMillis();
+		lUptime = oRuntime.getUptime();
+
+		final MemoryUsage oHeap = oMemory.getHeapMemoryUsage();
+		lHeapUsed = oHeap.getUsed();
+		lHeapCommitted = oHeap.getCommitted();
+		lHeapMax = oHeap.getMax();
+		final MemoryUsage oNonHeap = oMemory.getNonHeapMemoryUsage();
+		lNonHeapUsed = oNonHeap.getUsed();
+		lNonHeapCommitted = oNonHeap.getCommitted();
+
+		aPoolUsed = new long[aPools.length];
+		aPoolCommitted = new long[aPools.length];
+		aPoolMax = new long[aPools.length];
+		for (int p=0; p<aPools.length; p++) {
+			final MemoryUsage oUsage = aPools[p].getUsage();
+			if (null==oUsage) {
+				aPoolUsed[p] = aPoolCommitted[p] = aPoolMax[p] = -1l;
+			} else {
+				aPoolUsed[p] = oUsage.getUsed();
+				aPoolCommitted[p] = oUsage.getCommitted();
+				aPoolMax[p] = oUsage.getMax();
+			}
+		}
+
+		lDirectCount = null==oDirect ? -1l : oDirect.getCount();
+		lDirectUsed = null==oDirect ? -1l : oDirect.getMemoryUsed();
+		lDirectCapacity = null==oDirect ? -1l : oDirect.getTotalCapacity();
+		lMappedCount = null==oMapped ? -1l : oMapped.getCount();
+		lMappedUsed = null==oMapped ? -1l : oMapped.getMemoryUsed();
+
+		aCollectionCount = new long[aCollectors.length];
+		aCollectionTime = new long[aCollectors.length];
+		for (int c=0; c<aCollectors.length; c++) {
+			aCollectionCount[c] = aCollectors[c].getCollectionCount();
+			aCollectionTime[c] = aCollectors[c].getCollectionTime();
+		}
+
+		iThreadCount = oThreads.getThreadCount();
+		iDaemonThreadCount = oThreads.getDaemonThreadCount();
+		iPeakThreadCount = oThreads.getPeakThreadCount();
+		lStartedThreadCount = oThreads.getTotalStartedThreadCount();
+		if (bThreadStates) {
+			aThreadStates = new int[aStates.length];
+			for (ThreadInfo oInfo : oThreads.getThreadInfo(oThreads.getAllThreadIds(), 0))
+				if (oInfo!=null)
+					aThreadStates[oInfo.getThreadState().ordinal()]++;
+		} else {
+			aThreadStates = null;
+		}
+
+		lSafepointCount = safepoints(mSafepointCount);
+		lSafepointTime = safepoints(mSafepointTime);
+		lSafepointSyncTime = safepoints(mSafepointSyncTime);
+
+		lCompilationTime = null!=oCompiler && oCompiler.isCompilationTimeMonitoringSupported() ? oCompiler.getTotalCompilationTime() : -1l;
+		iLoadedClassCount = oClasses.getLoadedClassCount();
+		dLoadAverage = oOs.getSystemLoadAverage();
+	}
+
+	private static long safepoints(Method mGetter) {
+		if (null==oHotspotRuntime)
+			return -1l;
+		try {
+			return ((Number) mGetter.invoke(oHotspotRuntime)).longValue();
+		} catch (Exception xcpt) {
+			return -1l;
+		}
+	}
+
+	/**
+	 * Read the current metrics
+	 * @param bThreadStates Whether to count threads by state, which needs a ThreadInfo per live thread
+	 * @return RuntimeSnapshot
+	 */
+	static RuntimeSnapshot take(boolean bThreadStates) {
+		return new RuntimeSnapshot(bThreadStates);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return System time in milliseconds when the snapshot was taken
+	 */
+	public long getTimestamp() {
+		return lTimestamp;
+	}
+
+	/**
+	 * @return Milliseconds since the virtual machine started
+	 */
+	public long getUptime() {
+		return lUptime;
+	}
+
+	public long getHeapUsed() {
+		return lHeapUsed;
+	}
+
+	public long getHeapCommitted() {
+		return lHeapCommitted;
+	}
+
+	/**
+	 * @return Maximum heap size or -1 if undefined
+	 */
+	public long getHeapMax() {
+		return lHeapMax;
+	}
+
+	public long getNonHeapUsed() {
+		return lNonHeapUsed;
+	}
+
+	public long getNonHeapCommitted() {
+		return lNonHeapCommitted;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Number of memory pools such as eden, survivor, old generation or metaspace
+	 */
+	public int getPoolCount() {
+		return aPoolNames.length;
+	}
+
+	public String getPoolName(int iPool) {
+		return aPoolNames[iPool];
+	}
+
+	public long getPoolUsed(int iPool) {
+		return aPoolUsed[iPool];
+	}
+
+	public long getPoolCommitted(int iPool) {
+		return aPoolCommitted[iPool];
+	}
+
+	public long getPoolMax(int iPool) {
+		return aPoolMax[iPool];
+	}
+
+	/**
+	 * @return Number of direct ByteBuffers
+	 */
+	public long getDirectCount() {
+		return lDirectCount;
+	}
+
+	/**
+	 * @return Native memory used by direct ByteBuffers
+	 */
+	public long getDirectUsed() {
+		return lDirectUsed;
+	}
+
+	public long getDirectCapacity() {
+		return lDirectCapacity;
+	}
+
+	/**
+	 * @return Number of memory mapped files
+	 */
+	public long getMappedCount() {
+		return lMappedCount;
+	}
+
+	public long getMappedUsed() {
+		return lMappedUsed;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Number of garbage collectors
+	 */
+	public int getCollectorCount() {
+		return aCollectorNames.length;
+	}
+
+	public String getCollectorName(int iCollector) {
+		return aCollectorNames[iCollector];
+	}
+
+	public long getCollectionCount(int iCollector) {
+		return aCollectionCount[iCollector];
+	}
+
+	/**
+	 * @return Accumulated collection time in milliseconds
+	 */
+	public long getCollectionTime(int iCollector) {
+		return aCollectionTime[iCollector];
+	}
+
+	/**
+	 * @return Sum of the collection counts of all collectors
+	 */
+	public long getTotalCollectionCount() {
+		long lTotal = 0l;
+		for (long lCount : aCollectionCount)
+			if (lCount>0l) lTotal += lCount;
+		return lTotal;
+	}
+
+	/**
+	 * @return Sum of the collection times in milliseconds of all collectors
+	 */
+	public long getTotalCollectionTime() {
+		long lTotal = 0l;
+		for (long lTime : aCollectionTime)
+			if (lTime>0l) lTotal += lTime;
+		return lTotal;
+	}
+
+	// ----------------------------------------------------------
+
+	public int getThreadCount() {
+		return iThreadCount;
+	}
+
+	public int getDaemonThreadCount() {
+		return iDaemonThreadCount;
+	}
+
+	public int getPeakThreadCount() {
+		return iPeakThreadCount;
+	}
+
+	public long getStartedThreadCount() {
+		return lStartedThreadCount;
+	}
+
+	/**
+	 * @param eState Thread.State
+	 * @return Number of live threads in the given state or -1 if thread states were not collected
+	 */
+	public int getThreadCount(Thread.State eState) {
+		return null==aThreadStates ? -1 : aThreadStates[eState.ordinal()];
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Number of safepoints or -1 if not available
+	 */
+	public long getSafepointCount() {
+		return lSafepointCount;
+	}
+
+	/**
+	 * @return Accumulated milliseconds spent at safepoints or -1 if not available
+	 */
+	public long getSafepointTime() {
+		return lSafepointTime;
+	}
+
+	/**
+	 * @return Accumulated milliseconds spent reaching safepoints or -1 if not available
+	 */
+	public long getSafepointSyncTime() {
+		return lSafepointSyncTime;
+	}
+
+	/**
+	 * @return Accumulated milliseconds spent by the JIT compiler or -1 if not available
+	 */
+	public long getCompilationTime() {
+		return lCompilationTime;
+	}
+
+	public int getLoadedClassCount() {
+		return iLoadedClassCount;
+	}
+
+	/**
+	 * @return System load average for the last minute or a negative value if not available
+	 */
+	public double getSystemLoadAverage() {
+		return dLoadAverage;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Get metrics as name value pairs. Memory pool and collector names may contain spaces.
+	 * @return Unmodifiable Map of metric names to their values in a stable order
+	 * @since 9.1
+	 */
+	public Map<String,Number> toMap() {
+		LinkedHashMap<String,Number> oMap = new LinkedHashMap<String,Number>(64);
+		oMap.put("uptime", lUptime);
+		oMap.put("heap.used", lHeapUsed);
+		oMap.put("heap.committed", lHeapCommitted);
+		oMap.put("heap.max", lHeapMax);
+		oMap.put("nonheap.used", lNonHeapUsed);
+		oMap.put("nonheap.committed", lNonHeapCommitted);
+		oMap.put("direct.count", lDirectCount);
+		oMap.put("direct.used", lDirectUsed);
+		oMap.put("mapped.count", lMappedCount);
+		oMap.put("mapped.used", lMappedUsed);
+		for (int p=0; p<aPoolNames.length; p++)
+			oMap.put("pool[" + aPoolNames[p] + "].used", aPoolUsed[p]);
+		for (int c=0; c<aCollectorNames.length; c++) {
+			oMap.put("gc[" + aCollectorNames[c] + "].count", aCollectionCount[c]);
+			oMap.put("gc[" + aCollectorNames[c] + "].time", aCollectionTime[c]);
+		}
+		oMap.put("threads", iThreadCount);
+		oMap.put("threads.daemon", iDaemonThreadCount);
+		oMap.put("threads.peak", iPeakThreadCount);
+		if (aThreadStates!=null)
+			for (Thread.State eState : aStates)
+				oMap.put("threads." + eState.name().toLowerCase(), aThreadStates[eState.ordinal()]);
+		oMap.put("safepoint.count", lSafepointCount);
+		oMap.put("safepoint.time", lSafepointTime);
+		oMap.put("safepoint.sync", lSafepointSyncTime);
+		oMap.put("jit.time", lCompilationTime);
+		oMap.put("classes", iLoadedClassCount);
+		oMap.put("load", dLoadAverage);
+		return Collections.unmodifiableMap(oMap);
+	}
+
+	/**
+	 * @return Space separated list of name=value pairs in a single line
+	 */
+	@Override
+	public String toString() {
+		StringBuilder oStr = new StringBuilder(512);
+		for (Map.Entry<String,Number> oMetric : toMap().entrySet()) {
+			if (oStr.length()>0)
+				oStr.append(' ');
+			oStr.append(oMetric.getKey()).append('=').append(oMetric.getValue());
+		}
+		return oStr.toString();
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.knowgate.debug;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+/**
+ * <p>What asynchronous DebugFile traces do when the ring buffer cannot keep up with producers</p>
+ * @version 9.1
+ */
+public enum TraceBackPressure {
+
+	/**
+	 * The calling thread waits until there is room for its trace
+	 */
+	BLOCK,
+
+	/**
+	 * Traces that do not fit in the buffer are discarded and counted
+	 */
+	DROP,
+
+	/**
+	 * Once the buffer is three quarters full only one of every N traces is kept,
+	 * traces that do not fit are discarded and counted
+	 */
+	SAMPLE;
+
+	/**
+	 * @param sName One of "block", "drop" or "sample" (case insensitive)
+	 * @param eDefault Value returned if sName is <b>null</b> or is not recognized
+	 * @return TraceBackPressure
+	 */
+	public static TraceBackPressure parse(String sName, TraceBackPressure eDefault) {
+		if (sName!=null)
+			for (TraceBackPressure eMode : values())
+				if (eMode.name().equalsIgnoreCase(sName.trim()))
+					return eMode;
+		return eDefault;
+	}
+
+}
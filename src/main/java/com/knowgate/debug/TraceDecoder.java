@@ -0,0 +1,219 @@
+package com.knowgate.debug;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * <p>Turn binary DebugFile traces back into the text layout of javatrc.&lt;threadId&gt;.txt files</p>
+ * <p>Each line is written as threadId date indentation message, the same as DebugFile.writeln() does
+ * in text mode. Dates are formatted using the default time zone of the decoding machine.
+ * A record truncated at the end of the file, for example because the process was killed
+ * before flushing, is silently ignored.</p>
+ * <p>Command line usage:</p>
+ * <code>java com.knowgate.debug.TraceDecoder [-o output.txt] javatrc.1.bin [javatrc.2.bin ...]</code>
+ * @see TraceFormat
+ * @version 9.1
+ */
+public final class TraceDecoder implements Closeable {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final InputStream oIn;
+	private final HashMap<Long,String> mTemplates;
+	private byte[] aBuffer;
+	private String sSpaces;
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @param oInStrm Binary trace input
+	 * @throws IOException If the input does not start with a binary trace header
+	 */
+	public TraceDecoder(InputStream oInStrm) throws IOException {
+		oIn = oInStrm instanceof BufferedInputStream ? oInStrm : new BufferedInputStream(oInStrm, 8192);
+		mTemplates = new HashMap<Long,String>();
+		aBuffer = new byte[256];
+		sSpaces = "";
+		for (int b=0; b<TraceFormat.MAGIC.length; b++)
+			if (oIn.read()!=TraceFormat.MAGIC[b])
+				throw new IOException("Input is not a binary DebugFile trace");
+	}
+
+	// ----------------------------------------------------------
+
+	private int readByte() throws IOException {
+		final int iByte = oIn.read();
+		if (iByte<0)
+			throw new EOFException();
+		return iByte;
+	}
+
+	private long readVarLong() throws IOException {
+		long lValue = 0l;
+		int iShift = 0;
+		int iByte;
+		do {
+			if (iShift>63)
+				throw new IOException("Malformed binary trace, variable length integer too long");
+			iByte = readByte();
+			lValue |= ((long) (iByte & 0x7f)) << iShift;
+			iShift += 7;
+		} while ((iByte & 0x80)!=0);
+		return lValue;
+	}
+
+	private String readString() throws IOException {
+		final long lLen = readVarLong();
+		if (lLen>Integer.MAX_VALUE)
+			throw new IOException("Malformed binary trace, string too long");
+		final int iLen = (int) lLen;
+		if (aBuffer.length<iLen)
+			aBuffer = new byte[Math.max(iLen, aBuffer.length*2)];
+		int iRead = 0;
+		while (iRead<iLen) {
+			final int n = oIn.read(aBuffer, iRead, iLen-iRead);
+			if (n<0)
+				throw new EOFException();
+			iRead += n;
+		}
+		return new String(aBuffer, 0, iLen, UTF8);
+	}
+
+	private void appendIdent(Appendable oOut, int iDepth) throws IOException {
+		if (sSpaces.length()<iDepth*2) {
+			char[] aSpaces = new char[iDepth*2];
+			Arrays.fill(aSpaces, ' ');
+			sSpaces = new String(aSpaces);
+		}
+		oOut.append(sSpaces, 0, iDepth*2);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Decode the next line or raw text record
+	 * @param oOut Where decoded text is appended
+	 * @return <b>false</b> if the end of the input has been reached
+	 * @throws IOException If the input is malformed or it could not be read
+	 */
+	public boolean decode(Appendable oOut) throws IOException {
+		try {
+			for (;;) {
+				final int iTag = oIn.read();
+				switch (iTag) {
+				case -1:
+					return false;
+				case TraceFormat.REC_TEMPLATE:
+					final long lId = readVarLong();
+					mTemplates.put(Long.valueOf(lId), readString());
+					break;
+				case TraceFormat.REC_RESET:
+					mTemplates.clear();
+					break;
+				case TraceFormat.REC_RAW:
+					oOut.append(readString());
+					return true;
+				case TraceFormat.REC_LINE:
+					final long lTimestamp = readVarLong();
+					final long lThreadId = readVarLong();
+					final int iDepth = (int) readVarLong();
+					final long lTemplateId = readVarLong();
+					String sTemplate;
+					if (lTemplateId==TraceFormat.INLINE) {
+						sTemplate = readString();
+					} else {
+						sTemplate = mTemplates.get(Long.valueOf(lTemplateId));
+						if (null==sTemplate)
+							throw new IOException("Malformed binary trace, undefined template "+String.valueOf(lTemplateId));
+					}
+					final int nArgs = (int) readVarLong();
+					Object[] aArgs = null;
+					if (nArgs>0) {
+						aArgs = new Object[nArgs];
+						for (int a=0; a<nArgs; a++)
+							aArgs[a] = readString();
+					}
+					oOut.append(String.valueOf(lThreadId)).append(' ').append(new Date(lTimestamp).toString()).append(' ');
+					appendIdent(oOut, iDepth);
+					oOut.append(TraceFormat.format(sTemplate, aArgs)).append('\n');
+					return true;
+				default:
+					throw new IOException("Malformed binary trace, unknown record type "+String.valueOf(iTag));
+				}
+			}
+		} catch (EOFException truncated) {
+			return false;
+		}
+	} // decode
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Decode all the remaining records
+	 * @param oOut Where decoded text is appended
+	 * @return Number of records decoded
+	 * @throws IOException If the input is malformed or it could not be read
+	 */
+	public long decodeAll(Appendable oOut) throws IOException {
+		long lCount = 0l;
+		while (decode(oOut))
+			lCount++;
+		return lCount;
+	}
+
+	// ----------------------------------------------------------
+
+	@Override
+	public void close() throws IOException {
+		oIn.close();
+	}
+
+	// ----------------------------------------------------------
+
+	public static void main(String[] argv) throws IOException {
+		if (argv.length==0 || (argv[0].equals("-o") && argv.length<3)) {
+			System.err.println("Usage: java com.knowgate.debug.TraceDecoder [-o output.txt] javatrc.1.bin [javatrc.2.bin ...]");
+			System.exit(1);
+		}
+		final int iFirst = argv[0].equals("-o") ? 2 : 0;
+		Writer oOut = new BufferedWriter(iFirst==2 ? new OutputStreamWriter(new FileOutputStream(argv[1])) : new OutputStreamWriter(System.out), 65536);
+		try {
+			for (int f=iFirst; f<argv.length; f++) {
+				TraceDecoder oDec = new TraceDecoder(new FileInputStream(argv[f]));
+				try {
+					oDec.decodeAll(oOut);
+				} finally {
+					oDec.close();
+				}
+			}
+		} finally {
+			oOut.flush();
+			if (iFirst==2)
+				oOut.close();
+		}
+	} // main
+
+}
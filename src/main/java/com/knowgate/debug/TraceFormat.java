@@ -0,0 +1,70 @@
+package com.knowgate.debug;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+/**
+ * <p>Layout of binary DebugFile traces</p>
+ * <p>A binary trace file starts with the four MAGIC bytes followed by a sequence of records.
+ * Each record starts with a one byte tag. Integers are written as unsigned variable length
+ * quantities of seven bits per byte, least significant group first. Strings are written
+ * as their UTF-8 length followed by their UTF-8 bytes.</p>
+ * <ul>
+ * <li>REC_TEMPLATE id string: assigns an id to a message template.</li>
+ * <li>REC_LINE timestamp threadId depth templateId [string] argCount arg*: a line written by DebugFile.writeln().
+ * A template id of zero means that the message follows inline instead of being interned.</li>
+ * <li>REC_RAW string: text written by DebugFile.write() as is.</li>
+ * <li>REC_RESET: template ids defined before this record are no longer valid.
+ * It is written each time that a process starts appending to an existing file.</li>
+ * </ul>
+ * @version 9.1
+ */
+final class TraceFormat {
+
+	static final byte[] MAGIC = new byte[]{'K','G','T','1'};
+
+	static final int REC_TEMPLATE = 1;
+	static final int REC_LINE = 2;
+	static final int REC_RAW = 3;
+	static final int REC_RESET = 4;
+
+	static final int INLINE = 0;
+
+	private TraceFormat() { }
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Replace each {} placeholder of a message template with the next argument</p>
+	 * Placeholders without a matching argument are kept as they are.
+	 * @param sTemplate Message template
+	 * @param aArgs Arguments, may be <b>null</b>
+	 * @return Formatted message
+	 */
+	static String format(String sTemplate, Object[] aArgs) {
+		if (null==aArgs || aArgs.length==0 || null==sTemplate)
+			return sTemplate;
+		final int iLen = sTemplate.length();
+		StringBuilder oMsg = new StringBuilder(iLen + 16*aArgs.length);
+		int a = 0;
+		for (int c=0; c<iLen; c++) {
+			final char ch = sTemplate.charAt(c);
+			if (ch=='{' && c+1<iLen && sTemplate.charAt(c+1)=='}' && a<aArgs.length) {
+				oMsg.append(String.valueOf(aArgs[a++]));
+				c++;
+			} else {
+				oMsg.append(ch);
+			}
+		}
+		return oMsg.toString();
+	} // format
+
+}
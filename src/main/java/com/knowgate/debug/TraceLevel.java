@@ -0,0 +1,42 @@
+package com.knowgate.debug;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+/**
+ * <p>Verbosity of DebugFile traces, from less to more verbose</p>
+ * <p>A level set for a class or package enables the traces of that level and of all the less verbose ones.</p>
+ * @version 9.1
+ */
+public enum TraceLevel {
+
+	OFF,
+
+	INFO,
+
+	DEBUG,
+
+	TRACE;
+
+	/**
+	 * @param sName One of "off", "info", "debug" or "trace" (case insensitive)
+	 * @param eDefault Value returned if sName is <b>null</b> or is not recognized
+	 * @return TraceLevel
+	 */
+	public static TraceLevel parse(String sName, TraceLevel eDefault) {
+		if (sName!=null)
+			for (TraceLevel eLevel : values())
+				if (eLevel.name().equalsIgnoreCase(sName.trim()))
+					return eLevel;
+		return eDefault;
+	}
+
+}
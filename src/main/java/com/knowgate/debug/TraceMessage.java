@@ -0,0 +1,27 @@
+package com.knowgate.debug;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+/**
+ * <p>Trace message built only if it is going to be written</p>
+ * <p>Pass an instance to DebugFile.writeln(TraceMessage) when building the message is expensive,
+ * get() will not be called if tracing is off or the message is filtered out by level.</p>
+ * @version 9.1
+ */
+public interface TraceMessage {
+
+	/**
+	 * @return Message text
+	 */
+	String get();
+
+}
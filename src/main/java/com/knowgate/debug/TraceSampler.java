@@ -0,0 +1,204 @@
+package com.knowgate.debug;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.knowgate.debug.DebugFile.ThreadState;
+
+/**
+ * <p>Decide which DebugFile call trees are traced</p>
+ * <p>The decision is taken by each trace of level zero written outside a call tree, which is usually
+ * the Begin trace, or else by the outermost incIdent(). It is kept in the ThreadState of the calling
+ * thread until the first trace of level zero written after the tree is closed by decIdent().
+ * Only RATE mode keeps state shared by all threads besides a counter, and it is updated with
+ * compare and set, so no lock is taken.</p>
+ * @version 9.1
+ */
+final class TraceSampler {
+
+	private final TraceSampling eMode;
+	private final int iRatio;
+	private final int iBurst;
+	private final long lInterval;
+	private final long lRate;
+	private final long lNanosPerToken;
+
+	private final AtomicLong oTrees;
+	private final AtomicLong oSkipped;
+	private final AtomicLong oTokens;     // Available lines, negative when call trees have used more than available
+	private final AtomicLong oLastRefill; // Nanoseconds of last refill
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @param eSampling Sampling mode
+	 * @param iOneOf For RATIO mode, trace one of every iOneOf call trees
+	 * @param iTrees For BURST mode, number of call trees traced by each thread per interval
+	 * @param lMillis For BURST mode, interval length in milliseconds
+	 * @param iLinesPerSecond For RATE mode, average lines per second
+	 * @throws IllegalArgumentException If the parameters used by eSampling are less than 1
+	 */
+	TraceSampler(TraceSampling eSampling, int iOneOf, int iTrees, long lMillis, int iLinesPerSecond) {
+		eMode = eSampling;
+		if (eMode==TraceSampling.RATIO && iOneOf<1)
+			throw new IllegalArgumentException("Sampling ratio must be greater than zero");
+		if (eMode==TraceSampling.BURST && (iTrees<1 || lMillis<1))
+			throw new IllegalArgumentException("Sampling burst and interval must be greater than zero");
+		if (eMode==TraceSampling.RATE && iLinesPerSecond<1)
+			throw new IllegalArgumentException("Sampling rate must be greater than zero");
+		iRatio = iOneOf;
+		iBurst = iTrees;
+		lInterval = lMillis;
+		lRate = iLinesPerSecond;
+		lNanosPerToken = Math.max(1l, 1000000000l / Math.max(1l, lRate));
+		oTrees = new AtomicLong(0l);
+		oSkipped = new AtomicLong(0l);
+		oTokens = new AtomicLong(lRate);
+		oLastRefill = new AtomicLong(System.nanoTime());
+	}
+
+	// ----------------------------------------------------------
+
+	TraceSampling mode() {
+		return eMode;
+	}
+
+	/**
+	 * @return Number of call trees not traced
+	 */
+	long skipped() {
+		return oSkipped.get();
+	}
+
+	// ----------------------------------------------------------
+
+	private void refill() {
+		final long lNow = System.nanoTime();
+		final long lLast = oLastRefill.get();
+		final long lNew = (lNow-lLast) / lNanosPerToken;
+		if (lNew>0l && oLastRefill.compareAndSet(lLast, lLast + lNew * lNanosPerToken)) {
+			long lTokens;
+			do {
+				lTokens = oTokens.get();
+			} while (!oTokens.compareAndSet(lTokens, Math.min(lRate, lTokens+lNew)));
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	private boolean admit(ThreadState oState) {
+		boolean bAdmit;
+		switch (eMode) {
+		case RATIO:
+			bAdmit = oTrees.getAndIncrement() % iRatio == 0l;
+			break;
+		case BURST:
+			final long lNow = System.currentTimeMillis();
+			if (lNow - oState.burstStart >= lInterval) {
+				oState.burstStart = lNow;
+				oState.burstCount = 0;
+			}
+			bAdmit = oState.burstCount < iBurst;
+			if (bAdmit)
+				oState.burstCount++;
+			break;
+		case RATE:
+			refill();
+			bAdmit = oTokens.get() > 0l;
+			break;
+		default:
+			bAdmit = true;
+		}
+		if (!bAdmit)
+			oSkipped.incrementAndGet();
+		return bAdmit;
+	} // admit
+
+	// ----------------------------------------------------------
+
+	private void decide(ThreadState oState) {
+		if (!oState.decided) {
+			oState.sampled = admit(oState);
+			oState.decided = true;
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Called by incIdent() before incrementing the level
+	 */
+	void open(ThreadState oState) {
+		if (0==oState.depth) {
+			decide(oState);
+			oState.closing = false;
+			oState.peeked = false;
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Called by decIdent() after decrementing the level
+	 */
+	void close(ThreadState oState) {
+		if (0==oState.depth && oState.decided)
+			oState.closing = true;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Whether a trace line must be written, RATE mode takes one token for each line written
+	 * @return <b>true</b> if the current call tree is traced
+	 */
+	boolean line(ThreadState oState) {
+		boolean bSampled;
+		if (0==oState.depth && oState.closing) {
+			// Last trace of the call tree
+			bSampled = oState.sampled;
+			oState.closing = false;
+			oState.decided = false;
+			oState.peeked = false;
+		} else {
+			// A trace of level zero outside a call tree starts a new one unless
+			// the decision has just been taken by isTracing() for this same trace
+			if (0==oState.depth) {
+				if (oState.peeked)
+					oState.peeked = false;
+				else
+					oState.decided = false;
+			}
+			decide(oState);
+			bSampled = oState.sampled;
+		}
+		if (bSampled && eMode==TraceSampling.RATE)
+			oTokens.decrementAndGet();
+		return bSampled;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return <b>true</b> if the current call tree is traced, without taking any token
+	 */
+	boolean peek(ThreadState oState) {
+		if (0==oState.depth && !oState.closing && !oState.peeked) {
+			oState.decided = false;
+			oState.peeked = true;
+		}
+		decide(oState);
+		return oState.sampled;
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.knowgate.debug;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+/**
+ * <p>How DebugFile chooses which call trees are traced</p>
+ * <p>A call tree starts with the first trace written at indentation level zero and ends with the first
+ * trace written at level zero after the outermost decIdent(). The decision is taken once for the whole tree.</p>
+ * @version 9.1
+ */
+public enum TraceSampling {
+
+	/**
+	 * Trace everything
+	 */
+	ALL,
+
+	/**
+	 * Trace one of every N call trees of all threads
+	 */
+	RATIO,
+
+	/**
+	 * Trace the first N call trees of each thread in every time interval
+	 */
+	BURST,
+
+	/**
+	 * Limit the average number of lines per second with a token bucket,
+	 * a call tree is traced if there is at least one token left when it starts
+	 */
+	RATE;
+
+	/**
+	 * @param sName One of "all", "ratio", "burst" or "rate" (case insensitive)
+	 * @param eDefault Value returned if sName is <b>null</b> or is not recognized
+	 * @return TraceSampling
+	 */
+	public static TraceSampling parse(String sName, TraceSampling eDefault) {
+		if (sName!=null)
+			for (TraceSampling eMode : values())
+				if (eMode.name().equalsIgnoreCase(sName.trim()))
+					return eMode;
+		return eDefault;
+	}
+
+}
@@ -0,0 +1,147 @@
+package com.knowgate.encryption;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * CRC-32C (Castagnoli) checksum as used by iSCSI, ext4 and cloud storage services
+ * <p>Software implementation processing eight bytes per step with eight lookup tables.
+ * Final() returns the four bytes of the checksum in big-endian order.</p>
+ * <p>Instances are not thread safe.</p>
+ * @version 9.1
+ */
+public class CRC32C implements HashProvider {
+
+	private static final int POLYNOMIAL = 0x82F63B78;
+
+	private static final int CHUNK_SIZE = 8192;
+
+	private static final int[][] T = new int[8][256];
+
+	static {
+		for (int n = 0; n < 256; n++) {
+			int c = n;
+			for (int k = 0; k < 8; k++)
+				c = (c & 1) != 0 ? (c >>> 1) ^ POLYNOMIAL : c >>> 1;
+			T[0][n] = c;
+		}
+		for (int n = 0; n < 256; n++)
+			for (int k = 1; k < 8; k++)
+				T[k][n] = (T[k-1][n] >>> 8) ^ T[0][T[k-1][n] & 0xff];
+	}
+
+	private int crc;
+
+	private byte[] chunk;
+
+	public CRC32C() {
+		crc = 0xffffffff;
+	}
+
+	/**
+	 * Start a new checksum
+	 */
+	public void reset() {
+		crc = 0xffffffff;
+	}
+
+	/**
+	 * Same as reset()
+	 */
+	@Override
+	public void Init() {
+		reset();
+	}
+
+	/**
+	 * @return Checksum of the bytes given so far as an unsigned 32 bits value
+	 */
+	public long getValue() {
+		return (~crc) & 0xffffffffl;
+	}
+
+	@Override
+	public void Update(byte[] buffer, int offset, int length)
+		throws NullPointerException {
+		if (null == buffer)
+			throw new NullPointerException("CRC32C array of bytes to be hashed may not be null");
+		final int[] t0 = T[0], t1 = T[1], t2 = T[2], t3 = T[3], t4 = T[4], t5 = T[5], t6 = T[6], t7 = T[7];
+		int c = crc;
+		int i = offset;
+		final int end = offset + length;
+		for (; i + 7 < end; i += 8) {
+			c ^= (buffer[i] & 0xff) | ((buffer[i+1] & 0xff) << 8) | ((buffer[i+2] & 0xff) << 16) | (buffer[i+3] << 24);
+			final int hi = (buffer[i+4] & 0xff) | ((buffer[i+5] & 0xff) << 8) | ((buffer[i+6] & 0xff) << 16) | (buffer[i+7] << 24);
+			c = t7[c & 0xff] ^ t6[(c >>> 8) & 0xff] ^ t5[(c >>> 16) & 0xff] ^ t4[c >>> 24]
+				^ t3[hi & 0xff] ^ t2[(hi >>> 8) & 0xff] ^ t1[(hi >>> 16) & 0xff] ^ t0[hi >>> 24];
+		}
+		for (; i < end; i++)
+			c = (c >>> 8) ^ t0[(c ^ buffer[i]) & 0xff];
+		crc = c;
+	}
+
+	@Override
+	public void Update(ByteBuffer buffer)
+		throws NullPointerException {
+		if (null == buffer)
+			throw new NullPointerException("CRC32C buffer to be hashed may not be null");
+		if (buffer.hasArray()) {
+			Update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			buffer.position(buffer.limit());
+		} else {
+			if (null == chunk)
+				chunk = new byte[CHUNK_SIZE];
+			while (buffer.hasRemaining()) {
+				final int len = Math.min(chunk.length, buffer.remaining());
+				buffer.get(chunk, 0, len);
+				Update(chunk, 0, len);
+			}
+		}
+	}
+
+	@Override
+	public long Update(InputStream input)
+		throws IOException, NullPointerException {
+		if (null == input)
+			throw new NullPointerException("CRC32C stream to be hashed may not be null");
+		if (null == chunk)
+			chunk = new byte[CHUNK_SIZE];
+		long total = 0l;
+		int read;
+		while ((read = input.read(chunk)) >= 0) {
+			Update(chunk, 0, read);
+			total += read;
+		}
+		return total;
+	}
+
+	@Override
+	public void Update(String s)
+		throws NullPointerException, IllegalStateException {
+		if (null == s)
+			throw new NullPointerException("CRC32C no input value provided");
+		else if (s.length() == 0)
+			throw new IllegalStateException("CRC32C empty input value provided");
+		final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		Update(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * @return byte[] 4 bytes of the checksum, most significant first
+	 */
+	@Override
+	public byte[] Final() {
+		final int value = ~crc;
+		return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+	}
+
+	/**
+	 * @return 8 hexadecimal digits
+	 */
+	@Override
+	public String asHex() {
+		return HexCodec.encode(Final());
+	}
+}
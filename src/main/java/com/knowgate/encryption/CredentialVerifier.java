@@ -0,0 +1,412 @@
+package com.knowgate.encryption;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Verify a password against its stored value and return an AuthenticationOutcome</p>
+ * <p>The stored value is interpreted according to its PasswordEncryption:</p>
+ * <ul>
+ * <li>CLEAR_TEXT: the password itself.</li>
+ * <li>MD5: hexadecimal MD5 hash of the password encoded as UTF-8, in lowercase or uppercase.</li>
+ * <li>RC4: the password encrypted with RC4, one ISO-8859-1 character per byte.
+ * The password is encoded with the charset given to the constructor, which defaults to
+ * the platform default charset used by RC4.rc4(String) when the value was stored.</li>
+ * <li>RC4_64: the same encrypted bytes as RC4 encoded as Base64.</li>
+ * </ul>
+ * <p>By default every scheme is verified in the calling thread. MD5 and RC4 take less time
+ * than the salted digest needed to look them up in a cache, or than handing them to another thread.</p>
+ * <p>Encryptions passed as pooled to the constructor run instead on a fixed pool of daemon threads.
+ * At most twice as many of them as there are threads are in flight, further callers wait for a free slot,
+ * so a login storm can not take more CPU than the pool has. Their successful verifications are remembered
+ * for a short time in a size-bounded cache. Its keys are salted SHA-512 digests of the user, the password
+ * and its stored value, so the cache does not keep any password and a changed stored value is a cache miss.
+ * Failed verifications are never cached. CLEAR_TEXT comparisons are always done in the calling
+ * thread and are not cached.</p>
+ * <code>
+ * try (CredentialVerifier verifier = new CredentialVerifier(rc4Key)) {<br>
+ * &nbsp;&nbsp;AuthenticationOutcome outcome = verifier.verify(user, password, storedPassword, PasswordEncryption.MD5);<br>
+ * }<br>
+ * </code>
+ * @version 9.1
+ */
+public class CredentialVerifier implements AutoCloseable {
+
+	public static final int DEFAULT_CACHE_SIZE = 10000;
+
+	public static final long DEFAULT_CACHE_TTL = 60000l;
+
+	private static final Charset ISO_8859_1 = StandardCharsets.ISO_8859_1;
+
+	private static final AtomicInteger iPoolNumber = new AtomicInteger(0);
+
+	private static final byte[] BASE64 = new byte[128];
+
+	static {
+		Arrays.fill(BASE64, (byte) -1);
+		final String sAlphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+		for (int b=0; b<sAlphabet.length(); b++)
+			BASE64[sAlphabet.charAt(b)] = (byte) b;
+	}
+
+	private final byte[] aRC4Key;
+	private final Charset oRC4Charset;
+	private final Set<PasswordEncryption> oPooled;
+	private final int nThreads;
+	private final int iCacheSize;
+	private final long lCacheTtlNanos;
+	private final ExecutorService oPool;
+	private final Semaphore oSlots;
+	private final HashProviderFactory oMd5;
+	private final HashProviderFactory oKeys;
+	private final LinkedHashMap<String,Long> mCache;
+	private final AtomicLong lHits;
+	private final AtomicLong lMisses;
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Create verifier which checks every scheme in the calling thread
+	 * and encodes RC4 passwords with the platform default charset
+	 * @param aRC4Key Key of RC4 and RC4_64 stored values, <b>null</b> if they must not be accepted
+	 */
+	public CredentialVerifier(byte[] aRC4Key) {
+		this(aRC4Key, Charset.defaultCharset());
+	}
+
+	/**
+	 * Create verifier which checks every scheme in the calling thread
+	 * @param aRC4Key Key of RC4 and RC4_64 stored values, <b>null</b> if they must not be accepted
+	 * @param oRC4Charset Charset used to encode passwords before encrypting them with RC4
+	 */
+	public CredentialVerifier(byte[] aRC4Key, Charset oRC4Charset) {
+		this(aRC4Key, oRC4Charset, Runtime.getRuntime().availableProcessors(), DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL, EnumSet.noneOf(PasswordEncryption.class));
+	}
+
+	/**
+	 * @param aRC4Key Key of RC4 and RC4_64 stored values, <b>null</b> if they must not be accepted
+	 * @param oRC4Charset Charset used to encode passwords before encrypting them with RC4
+	 * @param nThreads Number of worker threads
+	 * @param iCacheSize Maximum number of successful verifications remembered, zero for not caching them
+	 * @param lCacheTtlMillis Milliseconds that a successful verification is remembered
+	 * @param oPooled Encryptions verified on the worker pool and cached. CLEAR_TEXT is ignored.
+	 * No threads are started if it is empty.
+	 * @throws NullPointerException If oRC4Charset or oPooled are <b>null</b>
+	 * @throws IllegalArgumentException If nThreads is less than 1 or iCacheSize or lCacheTtlMillis are negative
+	 */
+	public CredentialVerifier(byte[] aRC4Key, Charset oRC4Charset, int nThreads, final int iCacheSize, long lCacheTtlMillis, Set<PasswordEncryption> oPooled) {
+		if (null==oRC4Charset)
+			throw new NullPointerException("CredentialVerifier RC4 charset may not be null");
+		if (null==oPooled)
+			throw new NullPointerException("CredentialVerifier pooled encryptions may not be null");
+		if (nThreads<1)
+			throw new IllegalArgumentException("CredentialVerifier number of threads must be greater than zero");
+		if (iCacheSize<0)
+			throw new IllegalArgumentException("CredentialVerifier cache size may not be negative");
+		if (lCacheTtlMillis<0l)
+			throw new IllegalArgumentException("CredentialVerifier cache time to live may not be negative");
+		this.aRC4Key = null==aRC4Key || aRC4Key.length==0 ? null : aRC4Key.clone();
+		this.oRC4Charset = oRC4Charset;
+		this.oPooled = oPooled.isEmpty() ? EnumSet.noneOf(PasswordEncryption.class) : EnumSet.copyOf(oPooled);
+		this.oPooled.remove(PasswordEncryption.CLEAR_TEXT);
+		this.nThreads = nThreads;
+		this.iCacheSize = 0l==lCacheTtlMillis ? 0 : iCacheSize;
+		this.lCacheTtlNanos = lCacheTtlMillis * 1000000l;
+		this.oSlots = new Semaphore(nThreads * 2);
+		this.oMd5 = new HashProviderFactory(HashAlgorithm.MD5, null, true);
+		final byte[] aSalt = new byte[16];
+		new SecureRandom().nextBytes(aSalt);
+		this.oKeys = new HashProviderFactory(HashAlgorithm.SHA512, HexCodec.encode(aSalt), true);
+		this.mCache = new LinkedHashMap<String,Long>(16, 0.75f, false) {
+			private static final long serialVersionUID = 1l;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,Long> oEldest) {
+				return size()>iCacheSize;
+			}
+		};
+		this.lHits = new AtomicLong(0l);
+		this.lMisses = new AtomicLong(0l);
+		if (this.oPooled.isEmpty()) {
+			oPool = null;
+			return;
+		}
+		final String sPoolName = "CredentialVerifier-" + String.valueOf(iPoolNumber.incrementAndGet()) + "-";
+		oPool = new ThreadPoolExecutor(nThreads, nThreads, 0l, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			private final AtomicInteger iThreadNumber = new AtomicInteger(0);
+			@Override
+			public Thread newThread(Runnable oTask) {
+				Thread oThread = new Thread(oTask, sPoolName + String.valueOf(iThreadNumber.incrementAndGet()));
+				oThread.setDaemon(true);
+				return oThread;
+			}
+		});
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Verify a password
+	 * @param sUser User identifier, it is only used as part of the cache key
+	 * @param sPassword Password given by the user
+	 * @param sStored Stored value of the password, <b>null</b> if the user was not found
+	 * @param eEncryption How sStored was computed from the password
+	 * @return AuthenticationOutcome
+	 * <ul>
+	 * <li>OK if the password matches.</li>
+	 * <li>USER_NOT_FOUND if sStored is <b>null</b>.</li>
+	 * <li>INVALID_PASSWORD if sPassword is <b>null</b> or empty, does not match or sStored is malformed.</li>
+	 * <li>INVALID_KEY for RC4 and RC4_64 if this verifier has no RC4 key.</li>
+	 * <li>INTERNAL_ERROR if the verifier is closed, the calling thread is interrupted or verification fails unexpectedly.</li>
+	 * </ul>
+	 * @throws NullPointerException If eEncryption is <b>null</b>
+	 */
+	public AuthenticationOutcome verify(String sUser, final String sPassword, final String sStored, final PasswordEncryption eEncryption) throws NullPointerException {
+		if (null==eEncryption)
+			throw new NullPointerException("CredentialVerifier password encryption may not be null");
+		if (null==sStored)
+			return AuthenticationOutcome.USER_NOT_FOUND;
+		if (null==sPassword || sPassword.length()==0)
+			return AuthenticationOutcome.INVALID_PASSWORD;
+		if (null==aRC4Key && (PasswordEncryption.RC4==eEncryption || PasswordEncryption.RC4_64==eEncryption))
+			return AuthenticationOutcome.INVALID_KEY;
+		if (!oPooled.contains(eEncryption))
+			return check(sPassword, sStored, eEncryption);
+
+		final String sKey = iCacheSize>0 ? oKeys.hashHex(eEncryption.name() + "\u0000" + sUser + "\u0000" + sStored + "\u0000" + sPassword) : null;
+		if (null!=sKey && cached(sKey)) {
+			lHits.incrementAndGet();
+			return AuthenticationOutcome.OK;
+		}
+		lMisses.incrementAndGet();
+
+		final AuthenticationOutcome eOutcome = submit(sPassword, sStored, eEncryption);
+		if (null!=sKey && AuthenticationOutcome.OK==eOutcome)
+			remember(sKey);
+		return eOutcome;
+	}
+
+	// ----------------------------------------------------------
+
+	private AuthenticationOutcome submit(final String sPassword, final String sStored, final PasswordEncryption eEncryption) {
+		try {
+			oSlots.acquire();
+		} catch (InterruptedException xcpt) {
+			Thread.currentThread().interrupt();
+			return AuthenticationOutcome.INTERNAL_ERROR;
+		}
+		final Future<AuthenticationOutcome> oFuture;
+		try {
+			oFuture = oPool.submit(new Callable<AuthenticationOutcome>() {
+				@Override
+				public AuthenticationOutcome call() {
+					try {
+						return check(sPassword, sStored, eEncryption);
+					} finally {
+						oSlots.release();
+					}
+				}
+			});
+		} catch (RejectedExecutionException closed) {
+			oSlots.release();
+			return AuthenticationOutcome.INTERNAL_ERROR;
+		}
+		try {
+			return oFuture.get();
+		} catch (InterruptedException xcpt) {
+			Thread.currentThread().interrupt();
+			return AuthenticationOutcome.INTERNAL_ERROR;
+		} catch (ExecutionException xcpt) {
+			return AuthenticationOutcome.INTERNAL_ERROR;
+		}
+	}
+
+	private AuthenticationOutcome check(String sPassword, String sStored, PasswordEncryption eEncryption) {
+		final byte[] aExpected;
+		final byte[] aActual;
+		try {
+			switch (eEncryption) {
+			case CLEAR_TEXT:
+				aExpected = sStored.getBytes(StandardCharsets.UTF_8);
+				aActual = sPassword.getBytes(StandardCharsets.UTF_8);
+				break;
+			case MD5:
+				aExpected = HexCodec.decode(sStored);
+				aActual = oMd5.hash(sPassword.getBytes(StandardCharsets.UTF_8));
+				break;
+			case RC4:
+				aExpected = sStored.getBytes(ISO_8859_1);
+				aActual = new RC4(aRC4Key).rc4(sPassword, oRC4Charset);
+				break;
+			case RC4_64:
+				aExpected = decodeBase64(sStored);
+				aActual = new RC4(aRC4Key).rc4(sPassword, oRC4Charset);
+				break;
+			default:
+				return AuthenticationOutcome.INTERNAL_ERROR;
+			}
+		} catch (IllegalArgumentException malformed) {
+			return AuthenticationOutcome.INVALID_PASSWORD;
+		} catch (NoSuchAlgorithmException nsae) {
+			return AuthenticationOutcome.INTERNAL_ERROR;
+		}
+		// Constant time comparison
+		return MessageDigest.isEqual(aExpected, aActual) ? AuthenticationOutcome.OK : AuthenticationOutcome.INVALID_PASSWORD;
+	}
+
+	// ----------------------------------------------------------
+
+	private boolean cached(String sKey) {
+		synchronized (mCache) {
+			final Long lExpires = mCache.get(sKey);
+			if (null==lExpires)
+				return false;
+			if (System.nanoTime()-lExpires.longValue()<0l)
+				return true;
+			mCache.remove(sKey);
+			return false;
+		}
+	}
+
+	private void remember(String sKey) {
+		final Long lExpires = Long.valueOf(System.nanoTime()+lCacheTtlNanos);
+		synchronized (mCache) {
+			// Re-insert so that the entry moves to the end of the eviction order
+			mCache.remove(sKey);
+			mCache.put(sKey, lExpires);
+		}
+	}
+
+	/**
+	 * Remove expired entries from the cache. Expired entries are also removed when they are looked up
+	 * or when the cache is full, so calling this method is only needed to release memory sooner.
+	 * @return Number of entries removed
+	 */
+	public int purgeCache() {
+		int nPurged = 0;
+		final long lNow = System.nanoTime();
+		synchronized (mCache) {
+			// Entries are in insertion order, so they expire in that order too
+			Iterator<Long> oIter = mCache.values().iterator();
+			while (oIter.hasNext() && lNow-oIter.next().longValue()>=0l) {
+				oIter.remove();
+				nPurged++;
+			}
+		}
+		return nPurged;
+	}
+
+	/**
+	 * Forget all successful verifications
+	 */
+	public void clearCache() {
+		synchronized (mCache) {
+			mCache.clear();
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	private static byte[] decodeBase64(String sEncoded) throws IllegalArgumentException {
+		final int iLen = sEncoded.length();
+		final byte[] aDecoded = new byte[iLen*3/4];
+		int iBits = 0, nBits = 0, nDecoded = 0;
+		for (int c=0; c<iLen; c++) {
+			final char cChar = sEncoded.charAt(c);
+			if ('='==cChar)
+				break;
+			if (Character.isWhitespace(cChar))
+				continue;
+			final int iValue = cChar<128 ? BASE64[cChar] : -1;
+			if (iValue<0)
+				throw new IllegalArgumentException("CredentialVerifier invalid Base64 character at position " + String.valueOf(c));
+			iBits = (iBits<<6) | iValue;
+			nBits += 6;
+			if (nBits>=8) {
+				nBits -= 8;
+				aDecoded[nDecoded++] = (byte) (iBits>>>nBits);
+			}
+		}
+		return Arrays.copyOf(aDecoded, nDecoded);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Number of worker threads, zero if no encryption is pooled
+	 */
+	public int getThreads() {
+		return null==oPool ? 0 : nThreads;
+	}
+
+	/**
+	 * @return Number of successful verifications currently remembered, including expired ones not yet removed
+	 */
+	public int getCacheSize() {
+		synchronized (mCache) {
+			return mCache.size();
+		}
+	}
+
+	/**
+	 * @return Number of verifications answered from the cache
+	 */
+	public long getCacheHits() {
+		return lHits.get();
+	}
+
+	/**
+	 * @return Number of verifications of pooled encryptions which had to be computed
+	 */
+	public long getCacheMisses() {
+		return lMisses.get();
+	}
+
+	/**
+	 * Stop the worker threads once the verifications in flight are done.
+	 * Further calls to verify() return INTERNAL_ERROR for pooled encryptions.
+	 */
+	@Override
+	public void close() {
+		if (null==oPool)
+			return;
+		oPool.shutdown();
+		try {
+			oPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException xcpt) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -3,6 +3,7 @@ package com.knowgate.encryption;
 public enum HashAlgorithm {
 
 	MD5,
-	SHA512;
+	SHA512,
+	CRC32C;
 
 }
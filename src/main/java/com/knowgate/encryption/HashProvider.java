@@ -1,5 +1,8 @@
 package com.knowgate.encryption;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 
 public interface HashProvider {
@@ -12,6 +15,43 @@ public interface HashProvider {
 	 */
 	void Update(String inputValue) throws NullPointerException, IllegalStateException;
 
+	/**
+	 * Update hash with a slice of an array of bytes.
+	 * @param buffer Array of bytes to be hashed
+	 * @param offset int Index of first byte to be hashed
+	 * @param length int Number of bytes to be hashed
+	 * @throws NullPointerException if buffer is null
+	 * @since 9.1
+	 */
+	void Update(byte[] buffer, int offset, int length) throws NullPointerException;
+
+	/**
+	 * Update hash with the remaining bytes of a buffer, which is left at its limit.
+	 * @param buffer ByteBuffer, either heap or direct
+	 * @throws NullPointerException if buffer is null
+	 * @since 9.1
+	 */
+	void Update(ByteBuffer buffer) throws NullPointerException;
+
+	/**
+	 * Update hash with all the bytes read from a stream until its end.
+	 * The stream is read in chunks, so memory used does not depend on its length.
+	 * The stream is not closed.
+	 * @param input InputStream
+	 * @return long Number of bytes read
+	 * @throws IOException
+	 * @throws NullPointerException if input is null
+	 * @since 9.1
+	 */
+	long Update(InputStream input) throws IOException, NullPointerException;
+
+	/**
+	 * Discard all the values given so far and start a new hash,
+	 * so that the same provider can be reused for hashing another value.
+	 * @since 9.1
+	 */
+	void Init();
+
 	/**
 	 * Returns hash value for input String
 	 * @return byte[]
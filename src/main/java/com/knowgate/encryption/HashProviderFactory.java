@@ -1,27 +1,146 @@
 package com.knowgate.encryption;
 
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Create HashProvider instances for an algorithm and salt
+ * <p>By default each call to createProvider() returns a new instance.
+ * A pooled factory returns instead the provider confined to the calling thread,
+ * after calling Init() on it, so that hashing many values does not allocate
+ * nor look up the security provider again for each one.</p>
+ * <p>The one-shot methods hash() and hashHex() always reuse a provider of the calling thread
+ * which is never handed out, so they are safe to call while holding a pooled provider.</p>
+ * <code>
+ * HashProviderFactory sha = new HashProviderFactory(HashAlgorithm.SHA512, salt, true);<br>
+ * boolean matches = sha.hashHex(password).equals(storedHash);<br>
+ * </code>
+ */
 public class HashProviderFactory {
 
 	public HashAlgorithm algo;
 	public String salt;
 
+	private final boolean pooled;
+	private final ThreadLocal<Slot> pool;
+	private final ThreadLocal<Slot> oneShot;
+
 	public HashProviderFactory(HashAlgorithm algorithmEnum, String salt) {
-		this.algo = algorithmEnum;
-		this.salt = salt;
+		this(algorithmEnum, salt, false);
 	}
 
 	public HashProviderFactory(String algorithmName, String salt) {
-		this.algo = HashAlgorithm.valueOf(algorithmName);
+		this(HashAlgorithm.valueOf(algorithmName), salt, false);
+	}
+
+	/**
+	 * @param algorithmEnum HashAlgorithm
+	 * @param salt String Salt used by SHA512, may be null
+	 * @param pooled boolean Whether createProvider() must return the provider confined to the calling thread
+	 * @since 9.1
+	 */
+	public HashProviderFactory(HashAlgorithm algorithmEnum, String salt, boolean pooled) {
+		this.algo = algorithmEnum;
 		this.salt = salt;
+		this.pooled = pooled;
+		this.pool = new ThreadLocal<Slot>();
+		this.oneShot = new ThreadLocal<Slot>();
 	}
 
+	/**
+	 * @return boolean Whether createProvider() returns the provider confined to the calling thread
+	 * @since 9.1
+	 */
+	public boolean isPooled() {
+		return pooled;
+	}
+
+	/**
+	 * Get a provider ready for hashing a new value.
+	 * When the factory is pooled the same instance is returned to each thread on every call,
+	 * so it must not be kept nor shared with other threads once a new value has to be hashed.
+	 * @return HashProvider
+	 */
 	public HashProvider createProvider(){
+		if (pooled)
+			return threadProvider(pool);
+		else
+			return newProvider();
+	}
+
+	/**
+	 * Hash an array of bytes using a provider of the calling thread.
+	 * @param data byte[]
+	 * @return byte[]
+	 * @throws NullPointerException if data is null
+	 * @throws NoSuchAlgorithmException
+	 * @since 9.1
+	 */
+	public byte[] hash(byte[] data) throws NullPointerException, NoSuchAlgorithmException {
+		final HashProvider provider = threadProvider(oneShot);
+		provider.Update(data, 0, data.length);
+		return finish(provider);
+	}
+
+	/**
+	 * Hash a String using a provider of the calling thread.
+	 * The result is the same as calling Update(value) and asHex() on a new provider.
+	 * @param value String
+	 * @return String Hexadecimal representation of the hash
+	 * @throws NullPointerException if value is null
+	 * @throws IllegalStateException if value is an empty String
+	 * @since 9.1
+	 */
+	public String hashHex(String value) throws NullPointerException, IllegalStateException {
+		final HashProvider provider = threadProvider(oneShot);
+		provider.Update(value);
+		try {
+			return HexCodec.encode(finish(provider));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("No such algorithm " + algo);
+		}
+	}
+
+	private static byte[] finish(HashProvider provider) throws NoSuchAlgorithmException {
+		// One-shot providers are never updated after Final(), so SHA512 can skip cloning its digest
+		if (provider instanceof SHA512)
+			return ((SHA512) provider).digestOnce();
+		else
+			return provider.Final();
+	}
+
+	private HashProvider newProvider() {
 		switch(algo) {
 		case MD5:
 			return new MD5();
 		case SHA512:
 			return new SHA512(salt);
+		case CRC32C:
+			return new CRC32C();
 		}
 		return null;
 	}
+
+	private HashProvider threadProvider(ThreadLocal<Slot> slots) {
+		Slot slot = slots.get();
+		// algo and salt are public, so cached providers are discarded if they have changed
+		if (null==slot || slot.algo!=algo || !(null==salt ? null==slot.salt : salt.equals(slot.salt))) {
+			slot = new Slot(algo, salt, newProvider());
+			slots.set(slot);
+		} else {
+			slot.provider.Init();
+		}
+		return slot.provider;
+	}
+
+	private static final class Slot {
+		final HashAlgorithm algo;
+		final String salt;
+		final HashProvider provider;
+
+		Slot(HashAlgorithm algo, String salt, HashProvider provider) {
+			this.algo = algo;
+			this.salt = salt;
+			this.provider = provider;
+		}
+	}
 }
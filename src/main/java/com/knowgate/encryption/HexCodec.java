@@ -0,0 +1,224 @@
+package com.knowgate.encryption;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encode arrays of bytes as lowercase hexadecimal digits and decode them back
+ * <p>Encoding looks up both digits of each byte at once in a 512 entries table,
+ * so there are no branches nor divisions per byte. Besides the methods returning
+ * a new String or array there are variants which write into a char[], a byte[],
+ * a StringBuilder or a ByteBuffer supplied by the caller and do not allocate.</p>
+ * <p>Decoding accepts both lowercase and uppercase digits.</p>
+ * @version 9.1
+ */
+public final class HexCodec {
+
+	private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 * High and low digit of each byte value at positions 2*b and 2*b+1
+	 */
+	private static final char[] CHARS = new char[512];
+
+	/**
+	 * Same as CHARS but as ASCII bytes
+	 */
+	private static final byte[] BYTES = new byte[512];
+
+	/**
+	 * Value of each ASCII hexadecimal digit or -1 if the character is not a digit
+	 */
+	private static final byte[] VALUES = new byte[128];
+
+	static {
+		for (int b = 0; b < 256; b++) {
+			CHARS[b<<1] = DIGITS[b >>> 4];
+			CHARS[(b<<1) + 1] = DIGITS[b & 0x0f];
+			BYTES[b<<1] = (byte) CHARS[b<<1];
+			BYTES[(b<<1) + 1] = (byte) CHARS[(b<<1) + 1];
+		}
+		for (int c = 0; c < 128; c++)
+			VALUES[c] = (byte) Character.digit((char) c, 16);
+	}
+
+	private HexCodec() { }
+
+	/**
+	 * @param data byte[]
+	 * @return String of 2*data.length lowercase hexadecimal digits
+	 * @throws NullPointerException if data is null
+	 */
+	public static String encode(byte[] data)
+		throws NullPointerException {
+		return encode(data, 0, data.length);
+	}
+
+	/**
+	 * @param data byte[]
+	 * @param offset int Index of first byte to be encoded
+	 * @param length int Number of bytes to be encoded
+	 * @return String of 2*length lowercase hexadecimal digits
+	 * @throws NullPointerException if data is null
+	 */
+	public static String encode(byte[] data, int offset, int length)
+		throws NullPointerException {
+		final char[] out = new char[length<<1];
+		encode(data, offset, length, out, 0);
+		return new String(out);
+	}
+
+	/**
+	 * Write the hexadecimal digits of a slice of an array of bytes into an array of chars
+	 * @param data byte[]
+	 * @param offset int Index of first byte to be encoded
+	 * @param length int Number of bytes to be encoded
+	 * @param out char[] Must have room for 2*length chars from outOffset
+	 * @param outOffset int Index of out where the first digit is written
+	 * @return int Index of out following the last digit written
+	 * @throws NullPointerException if data or out are null
+	 * @throws ArrayIndexOutOfBoundsException if out is too short
+	 */
+	public static int encode(byte[] data, int offset, int length, char[] out, int outOffset)
+		throws NullPointerException, ArrayIndexOutOfBoundsException {
+		final int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			final int t = (data[i] & 0xff) << 1;
+			out[outOffset++] = CHARS[t];
+			out[outOffset++] = CHARS[t + 1];
+		}
+		return outOffset;
+	}
+
+	/**
+	 * Write the hexadecimal digits of a slice of an array of bytes into an array of bytes as ASCII characters
+	 * @param data byte[]
+	 * @param offset int Index of first byte to be encoded
+	 * @param length int Number of bytes to be encoded
+	 * @param out byte[] Must have room for 2*length bytes from outOffset
+	 * @param outOffset int Index of out where the first digit is written
+	 * @return int Index of out following the last digit written
+	 * @throws NullPointerException if data or out are null
+	 * @throws ArrayIndexOutOfBoundsException if out is too short
+	 */
+	public static int encode(byte[] data, int offset, int length, byte[] out, int outOffset)
+		throws NullPointerException, ArrayIndexOutOfBoundsException {
+		final int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			final int t = (data[i] & 0xff) << 1;
+			out[outOffset++] = BYTES[t];
+			out[outOffset++] = BYTES[t + 1];
+		}
+		return outOffset;
+	}
+
+	/**
+	 * Append the hexadecimal digits of a slice of an array of bytes to a StringBuilder
+	 * @param data byte[]
+	 * @param offset int Index of first byte to be encoded
+	 * @param length int Number of bytes to be encoded
+	 * @param out StringBuilder
+	 * @return out
+	 * @throws NullPointerException if data or out are null
+	 */
+	public static StringBuilder encode(byte[] data, int offset, int length, StringBuilder out)
+		throws NullPointerException {
+		out.ensureCapacity(out.length() + (length<<1));
+		final int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			final int t = (data[i] & 0xff) << 1;
+			out.append(CHARS[t]).append(CHARS[t + 1]);
+		}
+		return out;
+	}
+
+	/**
+	 * Write the hexadecimal digits of the remaining bytes of a buffer into another buffer as ASCII characters.
+	 * data is left at its limit and out is advanced by twice the number of bytes encoded.
+	 * @param data ByteBuffer
+	 * @param out ByteBuffer Must have at least 2*data.remaining() bytes remaining
+	 * @throws NullPointerException if data or out are null
+	 * @throws BufferOverflowException if out does not have enough room, in which case no byte is written
+	 */
+	public static void encode(ByteBuffer data, ByteBuffer out)
+		throws NullPointerException {
+		if (out.remaining() < data.remaining()<<1)
+			throw new BufferOverflowException();
+		if (data.hasArray() && out.hasArray()) {
+			final int length = data.remaining();
+			encode(data.array(), data.arrayOffset()+data.position(), length, out.array(), out.arrayOffset()+out.position());
+			data.position(data.limit());
+			out.position(out.position() + (length<<1));
+		} else {
+			while (data.hasRemaining()) {
+				final int t = (data.get() & 0xff) << 1;
+				out.put(BYTES[t]).put(BYTES[t + 1]);
+			}
+		}
+	}
+
+	/**
+	 * @param hex CharSequence of an even number of hexadecimal digits
+	 * @return byte[] of hex.length()/2 bytes
+	 * @throws NullPointerException if hex is null
+	 * @throws IllegalArgumentException if hex has an odd length or contains a character which is not a hexadecimal digit
+	 */
+	public static byte[] decode(CharSequence hex)
+		throws NullPointerException, IllegalArgumentException {
+		final int length = hex.length();
+		if ((length & 1) != 0)
+			throw new IllegalArgumentException("HexCodec odd number of hexadecimal digits");
+		final byte[] out = new byte[length>>1];
+		decode(hex, 0, length, out, 0);
+		return out;
+	}
+
+	/**
+	 * Decode a slice of a CharSequence of hexadecimal digits into an array of bytes
+	 * @param hex CharSequence
+	 * @param offset int Index of first digit to be decoded
+	 * @param length int Number of digits to be decoded, must be even
+	 * @param out byte[] Must have room for length/2 bytes from outOffset
+	 * @param outOffset int Index of out where the first byte is written
+	 * @return int Index of out following the last byte written
+	 * @throws NullPointerException if hex or out are null
+	 * @throws IllegalArgumentException if length is odd or the slice contains a character which is not a hexadecimal digit
+	 * @throws ArrayIndexOutOfBoundsException if out is too short
+	 */
+	public static int decode(CharSequence hex, int offset, int length, byte[] out, int outOffset)
+		throws NullPointerException, IllegalArgumentException, ArrayIndexOutOfBoundsException {
+		if ((length & 1) != 0)
+			throw new IllegalArgumentException("HexCodec odd number of hexadecimal digits");
+		final int end = offset + length;
+		for (int i = offset; i < end; i += 2)
+			out[outOffset++] = (byte) ((value(hex.charAt(i), i) << 4) | value(hex.charAt(i + 1), i + 1));
+		return outOffset;
+	}
+
+	/**
+	 * Decode the remaining ASCII hexadecimal digits of a buffer into another buffer.
+	 * hex is left at its limit and out is advanced by half the number of digits decoded.
+	 * @param hex ByteBuffer with an even number of remaining bytes
+	 * @param out ByteBuffer Must have at least hex.remaining()/2 bytes remaining
+	 * @throws NullPointerException if hex or out are null
+	 * @throws IllegalArgumentException if hex has an odd number of remaining bytes or contains a byte which is not a hexadecimal digit
+	 * @throws BufferOverflowException if out does not have enough room, in which case no byte is written
+	 */
+	public static void decode(ByteBuffer hex, ByteBuffer out)
+		throws NullPointerException, IllegalArgumentException {
+		if ((hex.remaining() & 1) != 0)
+			throw new IllegalArgumentException("HexCodec odd number of hexadecimal digits");
+		if (out.remaining() < hex.remaining()>>1)
+			throw new BufferOverflowException();
+		for (int i = 0; hex.hasRemaining(); i += 2)
+			out.put((byte) ((value((char) (hex.get() & 0xff), i) << 4) | value((char) (hex.get() & 0xff), i + 1)));
+	}
+
+	private static int value(char c, int position)
+		throws IllegalArgumentException {
+		final int v = c < 128 ? VALUES[c] : -1;
+		if (v < 0)
+			throw new IllegalArgumentException("HexCodec invalid hexadecimal digit at position " + String.valueOf(position));
+		return v;
+	}
+}
@@ -37,7 +37,9 @@ package com.knowgate.encryption;
 *
 */
 
-import com.knowgate.debug.DebugFile;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Contains internal state of the MD5 class
@@ -45,52 +47,46 @@ import com.knowgate.debug.DebugFile;
 
 class MD5State {
   /**
-   * 128-byte state
+   * 128-bit state
    */
-  int	state[];
+  final int	state[];
 
   /**
-   * 64-bit character count (could be true Java long?)
+   * Number of bytes hashed
    */
-  int	count[];
+  long	count;
 
   /**
    * 64-byte buffer (512 bits) for storing to-be-hashed characters
    */
-  byte	buffer[];
+  final byte	buffer[];
 
   public MD5State() {
     buffer = new byte[64];
-    count = new int[2];
-    state = new int[4];
+    state = new int[] { 0x67452301, 0xefcdab89, 0x98badcfe, 0x10325476 };
+    count = 0l;
+  }
 
+  /** Set this State back to its initial value without allocating */
+  void reset() {
     state[0] = 0x67452301;
     state[1] = 0xefcdab89;
     state[2] = 0x98badcfe;
     state[3] = 0x10325476;
-
-    count[0] = count[1] = 0;
+    count = 0l;
   }
 
   /** Create this State as a copy of another state */
   public MD5State (MD5State from) {
-    this();
-
-    int i;
-
-    for (i = 0; i < buffer.length; i++)
-      this.buffer[i] = from.buffer[i];
-
-    for (i = 0; i < state.length; i++)
-      this.state[i] = from.state[i];
-
-    for (i = 0; i < count.length; i++)
-      this.count[i] = from.count[i];
+    buffer = from.buffer.clone();
+    state = from.state.clone();
+    count = from.count;
   }
 }
 
 /**
  * Implementation of RSA's MD5 hash generator
+ * <p>Instances are not thread safe, each thread must use its own MD5 object.</p>
  *
  * @version $Revision: 1.1.1.1 $
  * @author	Santeri Paavolainen &lt;sjpaavol@cc.helsinki.fi&gt;
@@ -108,6 +104,21 @@ public class MD5 implements HashProvider {
    */
   MD5State 	finals;
 
+  /**
+   * Message schedule of the block being transformed
+   */
+  private final int	x[] = new int[16];
+
+  /**
+   * Size of the chunks read from streams
+   */
+  private static final int CHUNK_SIZE = 8192;
+
+  /**
+   * Copy of the chunks read from direct buffers and streams, allocated on first use
+   */
+  private byte chunk[];
+
   /**
    * Padding for Final()
    */
@@ -121,8 +132,11 @@ public class MD5 implements HashProvider {
    * Initialize MD5 internal state (object can be reused just by
    * calling Init() after every Final()
    */
-  public synchronized void Init () {
-    state = new MD5State();
+  public void Init () {
+    if (state == null)
+      state = new MD5State();
+    else
+      state.reset();
     finals = null;
   }
 
@@ -144,77 +158,33 @@ public class MD5 implements HashProvider {
     Update(ob.toString());
   }
 
-  private int rotate_left (int x, int n) {
-    return (x << n) | (x >>> (32 - n));
-  }
-
-  /* I wonder how many loops and hoops you'll have to go through to
-     get unsigned add for longs in java */
-
-  private int uadd (int a, int b) {
-    long aa, bb;
-    aa = ((long) a) & 0xffffffffL;
-    bb = ((long) b) & 0xffffffffL;
-
-    aa += bb;
-
-    return (int) (aa & 0xffffffffL);
-  }
-
-  private int uadd (int a, int b, int c) {
-    return uadd(uadd(a, b), c);
-  }
-
-  private int uadd (int a, int b, int c, int d) {
-    return uadd(uadd(a, b, c), d);
-  }
-
-  private int FF (int a, int b, int c, int d, int x, int s, int ac) {
-    a = uadd(a, ((b & c) | (~b & d)), x, ac);
-    return uadd(rotate_left(a, s), b);
-  }
-
-  private int GG (int a, int b, int c, int d, int x, int s, int ac) {
-    a = uadd(a, ((b & d) | (c & ~d)), x, ac);
-    return uadd(rotate_left(a, s), b);
+  private static int FF (int a, int b, int c, int d, int x, int s, int ac) {
+    return Integer.rotateLeft(a + ((b & c) | (~b & d)) + x + ac, s) + b;
   }
 
-  private int HH (int a, int b, int c, int d, int x, int s, int ac) {
-    a = uadd(a, (b ^ c ^ d), x, ac);
-    return uadd(rotate_left(a, s) , b);
+  private static int GG (int a, int b, int c, int d, int x, int s, int ac) {
+    return Integer.rotateLeft(a + ((b & d) | (c & ~d)) + x + ac, s) + b;
   }
 
-  private int II (int a, int b, int c, int d, int x, int s, int ac) {
-    a = uadd(a, (c ^ (b | ~d)), x, ac);
-    return uadd(rotate_left(a, s), b);
+  private static int HH (int a, int b, int c, int d, int x, int s, int ac) {
+    return Integer.rotateLeft(a + (b ^ c ^ d) + x + ac, s) + b;
   }
 
-  private int[] Decode (byte buffer[], int len, int shift) {
-    int		out[];
-    int 	i, j;
-
-    out = new int[16];
-
-    for (i = j = 0; j < len; i++, j += 4) {
-      out[i] = ((int) (buffer[j + shift] & 0xff)) |
-	(((int) (buffer[j + 1 + shift] & 0xff)) << 8) |
-	(((int) (buffer[j + 2 + shift] & 0xff)) << 16) |
-	(((int) (buffer[j + 3 + shift] & 0xff)) << 24);
-
-    }
-
-    return out;
+  private static int II (int a, int b, int c, int d, int x, int s, int ac) {
+    return Integer.rotateLeft(a + (c ^ (b | ~d)) + x + ac, s) + b;
   }
 
   private void Transform (MD5State state, byte buffer[], int shift) {
+    final int x[] = this.x;
     int
       a = state.state[0],
       b = state.state[1],
       c = state.state[2],
-      d = state.state[3],
-      x[];
+      d = state.state[3];
 
-    x = Decode(buffer, 64, shift);
+    for (int i = 0, j = shift; i < 16; i++, j += 4)
+      x[i] = (buffer[j] & 0xff) | ((buffer[j + 1] & 0xff) << 8) |
+	((buffer[j + 2] & 0xff) << 16) | (buffer[j + 3] << 24);
 
     /* Round 1 */
     a = FF (a, b, c, d, x[ 0],   7, 0xd76aa478); /* 1 */
@@ -306,56 +276,41 @@ public class MD5 implements HashProvider {
    */
   public void Update (MD5State stat, byte buffer[], int offset, int length)
     throws NullPointerException {
-    int	index, partlen, i, start;
+    int	index, partlen, i;
 
     if (null==buffer) throw new NullPointerException("MD5 Array of bytes to be hashed may not be null");
 
-    if (DebugFile.trace) {
-      DebugFile.writeln("Begin MD5.Update([MD5State],byte[],"+String.valueOf(offset)+","+String.valueOf(length)+")");
-      DebugFile.incIdent();
-    }
-
     finals = null;
 
-    /* Length can be told to be shorter, but not inter */
-    if ((length - offset)> buffer.length)
+    /* Length can be told to be shorter, but not longer */
+    if (offset + length > buffer.length)
       length = buffer.length - offset;
 
-    /* compute number of bytes mod 64 */
-    index = (int) (stat.count[0] >>> 3) & 0x3f;
+    if (length <= 0)
+      return;
 
-    if ((stat.count[0] += (length << 3)) <
-	(length << 3))
-      stat.count[1]++;
+    /* compute number of bytes mod 64 */
+    index = (int) stat.count & 0x3f;
 
-    stat.count[1] += length >>> 29;
+    stat.count += length;
 
     partlen = 64 - index;
 
     if (length >= partlen) {
-      for (i = 0; i < partlen; i++)
-	stat.buffer[i + index] = buffer[i + offset];
+      System.arraycopy(buffer, offset, stat.buffer, index, partlen);
 
       Transform(stat, stat.buffer, 0);
 
       for (i = partlen; (i + 63) < length; i+= 64)
-	Transform(stat, buffer, i);
+	Transform(stat, buffer, i + offset);
 
       index = 0;
     } else
       i = 0;
 
     /* buffer remaining input */
-    if (i < length) {
-      start = i;
-      for (; i < length; i++)
-	stat.buffer[index + i - start] = buffer[i + offset];
-    }
-
-    if (DebugFile.trace) {
-      DebugFile.decIdent();
-      DebugFile.writeln("End MD5.Update()");
-    }
+    if (i < length)
+      System.arraycopy(buffer, i + offset, stat.buffer, index, length - i);
   } // Update
 
   /*
@@ -369,11 +324,54 @@ public class MD5 implements HashProvider {
    * @param offset int
    * @param length int
    */
-
+  @Override
   public void Update (byte buffer[], int offset, int length) {
       Update(this.state, buffer, offset, length);
   }
 
+  /**
+   * Updates hash with the remaining bytes of a buffer
+   * @param buffer ByteBuffer, it is left at its limit
+   * @since 9.1
+   */
+  @Override
+  public void Update (ByteBuffer buffer) throws NullPointerException {
+      if (null==buffer) throw new NullPointerException("MD5 buffer to be hashed may not be null");
+
+      if (buffer.hasArray()) {
+        Update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        buffer.position(buffer.limit());
+      } else {
+        if (null==chunk) chunk = new byte[CHUNK_SIZE];
+        while (buffer.hasRemaining()) {
+          final int len = Math.min(chunk.length, buffer.remaining());
+          buffer.get(chunk, 0, len);
+          Update(chunk, 0, len);
+        }
+      }
+  }
+
+  /**
+   * Updates hash with all the bytes read from a stream until its end
+   * @param input InputStream, it is not closed
+   * @return Number of bytes read
+   * @throws IOException
+   * @since 9.1
+   */
+  @Override
+  public long Update (InputStream input) throws IOException, NullPointerException {
+      if (null==input) throw new NullPointerException("MD5 stream to be hashed may not be null");
+
+      if (null==chunk) chunk = new byte[CHUNK_SIZE];
+      long total = 0l;
+      int read;
+      while ((read = input.read(chunk)) >= 0) {
+        Update(chunk, 0, read);
+        total += read;
+      }
+      return total;
+  }
+
   /**
    * Plain update, updates this object with offset zero
    * @param buffer Array of bytes to use for updating the hash
@@ -400,10 +398,13 @@ public class MD5 implements HashProvider {
    * @param b		Single byte to update the hash
    */
   public void Update (byte b) {
-    byte buffer[] = new byte[1];
-    buffer[0] = b;
+    final int index = (int) state.count & 0x3f;
 
-    Update(buffer, 1);
+    finals = null;
+    state.buffer[index] = b;
+    state.count++;
+    if (index == 63)
+      Transform(state, state.buffer, 0);
   }
 
   /**
@@ -464,7 +465,7 @@ public class MD5 implements HashProvider {
    * state which is finalized.
    * @return Array of 16 bytes, the hash of all updated bytes
    */
-  public synchronized byte[] Final () {
+  public byte[] Final () {
     byte	bits[];
     int		index, padlen;
     MD5State	fin;
@@ -472,9 +473,9 @@ public class MD5 implements HashProvider {
     if (finals == null) {
       fin = new MD5State(state);
 
-      bits = Encode(fin.count, 8);
+      bits = Encode(new int[] { (int) (fin.count << 3), (int) (fin.count >>> 29) }, 8);
 
-      index = (int) ((fin.count[0] >>> 3) & 0x3f);
+      index = (int) fin.count & 0x3f;
       padlen = (index < 56) ? (56 - index) : (120 - index);
 
       Update(fin, padding, 0, padlen);
@@ -498,17 +499,7 @@ public class MD5 implements HashProvider {
    * @return	Generated hex string
    */
   public static String asHex (byte hash[]) {
-    StringBuffer buf = new StringBuffer(hash.length * 2);
-    int i;
-
-    for (i = 0; i < hash.length; i++) {
-      if (((int) hash[i] & 0xff) < 0x10)
-	buf.append("0");
-
-      buf.append(Long.toString((int) hash[i] & 0xff, 16));
-    }
-
-    return buf.toString();
+    return HexCodec.encode(hash);
   }
 
   /**
@@ -34,6 +34,9 @@ package com.knowgate.encryption;
  * THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 /**
  * This is a simple implementation of the RC4 (tm) encryption algorithm.  The
@@ -52,6 +55,10 @@ package com.knowgate.encryption;
  * Please check your local law.  The author is not
  * responsible for any illegal use of this code.
  * <p>
+ * Instances keep the keystream position, so successive calls continue
+ * where the previous one stopped and large payloads can be processed
+ * in chunks.  Instances are not thread safe.
+ * <p>
  * @author  Clarence Ho
  */
  
@@ -127,6 +134,27 @@ public class RC4 {
         return rc4(tmp);
     }
 
+    /** 
+     * RC4 encryption/decryption of a string encoded with the given charset.
+     *
+     * @param data  the data to be encrypted/decrypted
+     * @param charset  the charset used for encoding data into bytes
+     * @return the result of the encryption/decryption
+     * @since 9.1
+     */
+    public byte[] rc4(String data, Charset charset) {
+
+        if (data == null) {
+            return null;
+        }
+
+        byte[] tmp = data.getBytes(charset);
+
+        process(tmp, 0, tmp.length);
+
+        return tmp;
+    }
+
     /** 
      * RC4 encryption/decryption.
      *
@@ -135,29 +163,130 @@ public class RC4 {
      */
     public byte[] rc4(byte[] buf) {
 
-        int xorIndex;
-        byte tmp;
-
         if (buf == null) {
             return null;
         }
 
-        byte[] result = new byte[buf.length];
-        
-        for (int i=0; i < buf.length; i++) {
+        byte[] result = buf.clone();
 
-            x = (x + 1) & 0xff;
-            y = ((state[x] & 0xff) + y) & 0xff;
+        process(result, 0, result.length);
 
-            tmp = state[x];
-            state[x] = state[y];
-            state[y] = tmp;
-            
-            xorIndex = ((state[x] &0xff) + (state[y] & 0xff)) & 0xff;
-            result[i] = (byte)(buf[i] ^ state[xorIndex]);
+        return result;
+    }
+
+    /** 
+     * RC4 encryption/decryption in place.
+     *
+     * @param buf  the data to be encrypted/decrypted, it is overwritten with the result
+     * @param offset  index of the first byte to be processed
+     * @param length  number of bytes to be processed
+     * @throws NullPointerException if buf is null
+     * @throws ArrayIndexOutOfBoundsException if offset and length are outside buf
+     * @since 9.1
+     */
+    public void process(byte[] buf, int offset, int length)
+        throws NullPointerException, ArrayIndexOutOfBoundsException {
+
+        if (offset < 0 || length < 0 || offset + length > buf.length) {
+            throw new ArrayIndexOutOfBoundsException("RC4 slice " + offset + "+" + length + " is outside an array of " + buf.length + " bytes");
         }
 
-        return result;
+        final byte[] s = state;
+        int i = x;
+        int j = y;
+        byte tmp;
+
+        for (int n = offset, end = offset + length; n < end; n++) {
+
+            i = (i + 1) & 0xff;
+            tmp = s[i];
+            j = (j + tmp) & 0xff;
+
+            s[i] = s[j];
+            s[j] = tmp;
+
+            buf[n] ^= s[(s[i] + tmp) & 0xff];
+        }
+
+        x = i;
+        y = j;
+    }
+
+    /** 
+     * RC4 encryption/decryption of the remaining bytes of a buffer.
+     * src is left at its limit and dst is advanced by the same number of bytes.
+     * Passing the same buffer as src and dst processes it in place.
+     *
+     * @param src  the data to be encrypted/decrypted
+     * @param dst  the buffer where the result is written
+     * @throws NullPointerException if src or dst are null
+     * @throws BufferOverflowException if dst has less remaining bytes than src,
+     *         in which case no byte is processed
+     * @since 9.1
+     */
+    public void process(ByteBuffer src, ByteBuffer dst)
+        throws NullPointerException, BufferOverflowException {
+
+        final int length = src.remaining();
+
+        if (src == dst) {
+            if (src.hasArray()) {
+                process(src.array(), src.arrayOffset() + src.position(), length);
+            } else {
+                for (int n = src.position(), end = src.limit(); n < end; n++) {
+                    src.put(n, (byte) (src.get(n) ^ next()));
+                }
+            }
+            src.position(src.limit());
+            return;
+        }
+
+        if (dst.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+
+        if (src.hasArray() && dst.hasArray()) {
+            final byte[] out = dst.array();
+            final int outOffset = dst.arrayOffset() + dst.position();
+            System.arraycopy(src.array(), src.arrayOffset() + src.position(), out, outOffset, length);
+            process(out, outOffset, length);
+            src.position(src.limit());
+            dst.position(dst.position() + length);
+        } else {
+            while (src.hasRemaining()) {
+                dst.put((byte) (src.get() ^ next()));
+            }
+        }
+    }
+
+    /** 
+     * Advance the keystream as if length bytes had been processed.
+     *
+     * @param length  number of keystream bytes to discard
+     * @since 9.1
+     */
+    public void skip(long length) {
+
+        for (long n = 0; n < length; n++) {
+            next();
+        }
+    }
+
+    /** 
+     * Next byte of the keystream.
+     */
+    private byte next() {
+
+        byte tmp;
+
+        x = (x + 1) & 0xff;
+        tmp = state[x];
+        y = (y + tmp) & 0xff;
+
+        state[x] = state[y];
+        state[y] = tmp;
+
+        return state[(state[x] + tmp) & 0xff];
     }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
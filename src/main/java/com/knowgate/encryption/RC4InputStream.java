@@ -0,0 +1,74 @@
+package com.knowgate.encryption;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decrypt or encrypt with RC4 the bytes read from another stream
+ * <p>Bytes are processed in place inside the array given to read(),
+ * so reading does not allocate whatever the length of the stream.
+ * Skipped bytes advance the keystream, mark and reset are not supported.</p>
+ * <code>
+ * InputStream clear = new RC4InputStream(new FileInputStream(blob), new RC4(key));<br>
+ * </code>
+ * @version 9.1
+ */
+public class RC4InputStream extends FilterInputStream {
+
+	private final RC4 cipher;
+
+	private final byte[] single = new byte[1];
+
+	/**
+	 * @param in InputStream Source of the bytes to be processed
+	 * @param cipher RC4 Initialized cipher, its keystream position advances as bytes are read
+	 * @throws NullPointerException if cipher is null
+	 */
+	public RC4InputStream(InputStream in, RC4 cipher)
+		throws NullPointerException {
+		super(in);
+		if (null == cipher)
+			throw new NullPointerException("RC4InputStream cipher may not be null");
+		this.cipher = cipher;
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int b = in.read();
+		if (b < 0)
+			return b;
+		single[0] = (byte) b;
+		cipher.process(single, 0, 1);
+		return single[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		final int read = in.read(b, off, len);
+		if (read > 0)
+			cipher.process(b, off, read);
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		final long skipped = in.skip(n);
+		if (skipped > 0l)
+			cipher.skip(skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) { }
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("RC4InputStream does not support mark and reset");
+	}
+}
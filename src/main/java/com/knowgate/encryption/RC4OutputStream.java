@@ -0,0 +1,74 @@
+package com.knowgate.encryption;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encrypt or decrypt with RC4 the bytes written to another stream
+ * <p>The arrays given to write() are not modified. Their bytes are copied
+ * into a buffer allocated once per stream, processed there and written
+ * in chunks of the buffer size.</p>
+ * <code>
+ * OutputStream blob = new RC4OutputStream(new FileOutputStream(file), new RC4(key));<br>
+ * </code>
+ * @version 9.1
+ */
+public class RC4OutputStream extends FilterOutputStream {
+
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private final RC4 cipher;
+
+	private final byte[] chunk;
+
+	/**
+	 * Create stream with a buffer of DEFAULT_BUFFER_SIZE bytes
+	 * @param out OutputStream Destination of the processed bytes
+	 * @param cipher RC4 Initialized cipher, its keystream position advances as bytes are written
+	 * @throws NullPointerException if cipher is null
+	 */
+	public RC4OutputStream(OutputStream out, RC4 cipher)
+		throws NullPointerException {
+		this(out, cipher, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param out OutputStream Destination of the processed bytes
+	 * @param cipher RC4 Initialized cipher, its keystream position advances as bytes are written
+	 * @param bufferSize int Size of the buffer where bytes are processed
+	 * @throws NullPointerException if cipher is null
+	 * @throws IllegalArgumentException if bufferSize is less than 1
+	 */
+	public RC4OutputStream(OutputStream out, RC4 cipher, int bufferSize)
+		throws NullPointerException, IllegalArgumentException {
+		super(out);
+		if (null == cipher)
+			throw new NullPointerException("RC4OutputStream cipher may not be null");
+		if (bufferSize < 1)
+			throw new IllegalArgumentException("RC4OutputStream buffer size must be greater than zero");
+		this.cipher = cipher;
+		this.chunk = new byte[bufferSize];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		chunk[0] = (byte) b;
+		cipher.process(chunk, 0, 1);
+		out.write(chunk[0]);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || off + len > b.length)
+			throw new IndexOutOfBoundsException("RC4OutputStream slice " + off + "+" + len + " is outside an array of " + b.length + " bytes");
+		while (len > 0) {
+			final int count = Math.min(len, chunk.length);
+			System.arraycopy(b, off, chunk, 0, count);
+			cipher.process(chunk, 0, count);
+			out.write(chunk, 0, count);
+			off += count;
+			len -= count;
+		}
+	}
+}
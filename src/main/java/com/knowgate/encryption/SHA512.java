@@ -1,23 +1,105 @@
 package com.knowgate.encryption;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
+/**
+ * SHA-512 hash of a salt followed by all the values given to Update()
+ * <p>Input is fed to a MessageDigest as it arrives, so hashing a stream
+ * takes constant memory whatever its length.</p>
+ * <p>Each instance gets its MessageDigest by cloning a shared prototype instead of
+ * looking up the security provider again, and Init() lets an instance be reused.</p>
+ */
 public class SHA512 implements HashProvider {
 
-	private String inputValue;
+	private static final int CHUNK_SIZE = 8192;
 
-	private String salt;
+	private static final MessageDigest PROTOTYPE = prototype();
+
+	private MessageDigest md;
+
+	private boolean updated;
+
+	private byte[] finals;
+
+	private boolean finished;
+
+	private byte[] saltBytes;
 
 	public SHA512() {
-		salt = null;
+		saltBytes = null;
 	}
 
 	public SHA512(final String salt) {
-		this.salt = salt;
+		if (null!=salt)
+			saltBytes = salt.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static MessageDigest prototype() {
+		try {
+			return MessageDigest.getInstance("SHA-512");
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
+	private static MessageDigest newDigest()
+		throws IllegalStateException {
+		if (null!=PROTOTYPE) {
+			// The prototype is never updated, so concurrent clones of it are safe
+			try {
+				return (MessageDigest) PROTOTYPE.clone();
+			} catch (CloneNotSupportedException e) { }
+		}
+		try {
+			return MessageDigest.getInstance("SHA-512");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("No such algorithm SHA-512");
+		}
+	}
+
+	private MessageDigest digest()
+		throws IllegalStateException {
+		if (finished)
+			throw new IllegalStateException("SHA512 digest has already been finalized");
+		if (null==md) {
+			md = newDigest();
+			if (null!=saltBytes)
+				md.update(saltBytes);
+		}
+		updated = true;
+		finals = null;
+		return md;
+	}
+
+	/**
+	 * Discard all the values given so far and start a new hash of the same salt.
+	 * The MessageDigest is kept and reset, so reusing an instance does not allocate a new one.
+	 * @since 9.1
+	 */
+	@Override
+	public void Init() {
+		if (null!=md) {
+			md.reset();
+			if (null!=saltBytes)
+				md.update(saltBytes);
+		}
+		updated = false;
+		finished = false;
+		finals = null;
 	}
 
+	/**
+	 * Append a string encoded as UTF-8 to the hashed value.
+	 * Previous versions kept only the last string given to this method.
+	 * @param s String
+	 * @throws NullPointerException if s is null
+	 * @throws IllegalStateException if s is an empty String
+	 */
 	@Override
 	public void Update(String s)
 		throws NullPointerException, IllegalStateException {
@@ -25,22 +107,79 @@ public class SHA512 implements HashProvider {
 			throw new NullPointerException("SHA512 no input value provided");
 		else if (s.length() == 0)
 			throw new IllegalStateException("SHA512 empty input value provided");
-		inputValue = s;
+		digest().update(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public void Update(byte[] buffer, int offset, int length)
+		throws NullPointerException {
+		if (null == buffer)
+			throw new NullPointerException("SHA512 array of bytes to be hashed may not be null");
+		digest().update(buffer, offset, length);
 	}
 
+	@Override
+	public void Update(ByteBuffer buffer)
+		throws NullPointerException {
+		if (null == buffer)
+			throw new NullPointerException("SHA512 buffer to be hashed may not be null");
+		digest().update(buffer);
+	}
+
+	@Override
+	public long Update(InputStream input)
+		throws IOException, NullPointerException {
+		if (null == input)
+			throw new NullPointerException("SHA512 stream to be hashed may not be null");
+		final MessageDigest dig = digest();
+		final byte[] chunk = new byte[CHUNK_SIZE];
+		long total = 0l;
+		int read;
+		while ((read = input.read(chunk)) >= 0) {
+			dig.update(chunk, 0, read);
+			total += read;
+		}
+		return total;
+	}
+
+	/**
+	 * Get the hash of the salt and all the values given so far.
+	 * Calling Final() does not prevent further updates unless the underlying
+	 * MessageDigest can not be cloned.
+	 * @return byte[] 64 bytes
+	 */
 	@Override
 	public byte[] Final()
 		throws NoSuchAlgorithmException {
-		MessageDigest md = MessageDigest.getInstance("SHA-512");
-		if (null!=salt)
-			md.update(salt.getBytes(StandardCharsets.UTF_8));
-		return md.digest(inputValue.getBytes(StandardCharsets.UTF_8));
+		if (null==finals) {
+			final MessageDigest dig = null==md ? digest() : md;
+			try {
+				finals = ((MessageDigest) dig.clone()).digest();
+			} catch (CloneNotSupportedException e) {
+				finals = dig.digest();
+				finished = true;
+			}
+		}
+		return finals;
+	}
+
+	/**
+	 * Get the hash without cloning the MessageDigest.
+	 * No further updates are allowed until Init() is called.
+	 * @return byte[] 64 bytes
+	 */
+	byte[] digestOnce() {
+		if (!finished) {
+			finals = digest().digest();
+			finished = true;
+		}
+		return finals;
 	}
 
 	@Override
 	public String asHex() 
 		throws IllegalStateException {
-		if (null == inputValue)
+		if (!updated)
 			throw new IllegalStateException("SHA512 no input value provided");
 		try {
 			return asHex(Final());
@@ -55,16 +194,6 @@ public class SHA512 implements HashProvider {
 	 * @return	Generated hex string
 	 */
 	public static String asHex (byte hash[]) {
-		StringBuffer buf = new StringBuffer(hash.length * 2);
-		int i;
-
-		for (i = 0; i < hash.length; i++) {
-			if (((int) hash[i] & 0xff) < 0x10)
-				buf.append("0");
-
-			buf.append(Long.toString((int) hash[i] & 0xff, 16));
-		}
-
-		return buf.toString();
+		return HexCodec.encode(hash);
 	}
 }
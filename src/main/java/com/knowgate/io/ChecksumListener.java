@@ -0,0 +1,27 @@
+package com.knowgate.io;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+/**
+ * <p>Receives the checksums computed by ChecksumService as each file is finished</p>
+ * It is called from the worker threads of the service, synchronized on the listener itself,
+ * so implementations need not be thread safe.
+ * @version 9.1
+ */
+public interface ChecksumListener {
+
+	/**
+	 * @param oResult Checksum or error of a file
+	 */
+	void completed(ChecksumResult oResult);
+
+}
@@ -0,0 +1,102 @@
+package com.knowgate.io;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import com.knowgate.encryption.HashAlgorithm;
+import com.knowgate.encryption.HexCodec;
+
+/**
+ * <p>Checksum of a file computed by ChecksumService</p>
+ * Either getDigest() or getError() is <b>null</b>.
+ * @version 9.1
+ */
+public final class ChecksumResult {
+
+	private final File oFile;
+	private final HashAlgorithm eAlgorithm;
+	private final byte[] aDigest;
+	private final long lSize;
+	private final long lNanos;
+	private final IOException oError;
+
+	// ----------------------------------------------------------
+
+	ChecksumResult(File oFile, HashAlgorithm eAlgorithm, byte[] aDigest, long lSize, long lNanos, IOException oError) {
+		this.oFile = oFile;
+		this.eAlgorithm = eAlgorithm;
+		this.aDigest = aDigest;
+		this.lSize = lSize;
+		this.lNanos = lNanos;
+		this.oError = oError;
+	}
+
+	// ----------------------------------------------------------
+
+	public File getFile() {
+		return oFile;
+	}
+
+	public HashAlgorithm getAlgorithm() {
+		return eAlgorithm;
+	}
+
+	/**
+	 * @return Checksum bytes or <b>null</b> if the file could not be read
+	 */
+	public byte[] getDigest() {
+		return aDigest;
+	}
+
+	/**
+	 * @return Checksum as lowercase hexadecimal digits or <b>null</b> if the file could not be read
+	 */
+	public String getHex() {
+		return null==aDigest ? null : HexCodec.encode(aDigest);
+	}
+
+	/**
+	 * @return Length of the file when it was hashed
+	 */
+	public long getSize() {
+		return lSize;
+	}
+
+	/**
+	 * @return Time in nanoseconds spent reading and hashing the file
+	 */
+	public long getNanos() {
+		return lNanos;
+	}
+
+	/**
+	 * @return Exception thrown while reading the file or <b>null</b>
+	 */
+	public IOException getError() {
+		return oError;
+	}
+
+	public boolean isOk() {
+		return null==oError;
+	}
+
+	/**
+	 * @return Hexadecimal checksum and file path separated by two spaces, as md5sum and sha512sum print them
+	 */
+	@Override
+	public String toString() {
+		return (null==aDigest ? "ERROR " + oError.getMessage() : getHex()) + "  " + oFile.getPath();
+	}
+
+}
@@ -0,0 +1,249 @@
+package com.knowgate.io;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.knowgate.encryption.HashAlgorithm;
+import com.knowgate.encryption.HashProvider;
+import com.knowgate.encryption.HashProviderFactory;
+
+/**
+ * <p>Compute the checksums of many files concurrently</p>
+ * <p>Files are read through a FileChannel into a heap buffer owned by each worker thread
+ * and fed to the HashProvider of the requested algorithm. Providers hash the backing array
+ * of a heap buffer in place, whereas they would copy a direct one into chunks.
+ * Each result is handed to a ChecksumListener as soon as its file is finished, so results
+ * arrive in completion order and are not accumulated in memory.</p>
+ * <p>Each request keeps at most twice as many files in flight as there are worker threads,
+ * the thread submitting them waits when that limit is reached. Directory trees are walked
+ * while their files are being hashed, without listing the whole tree first.</p>
+ * <code>
+ * try (ChecksumService service = new ChecksumService(4)) {<br>
+ * &nbsp;&nbsp;service.checksumTree(dir, null, HashAlgorithm.SHA512, listener);<br>
+ * }<br>
+ * </code>
+ * @version 9.1
+ */
+public class ChecksumService implements AutoCloseable {
+
+	public static final int DEFAULT_BUFFER_SIZE = 262144;
+
+	private static final AtomicInteger iPoolNumber = new AtomicInteger(0);
+
+	private final ExecutorService oPool;
+	private final int nThreads;
+	private final int iBufferSize;
+	private final ThreadLocal<ByteBuffer> tBuffer;
+	private final EnumMap<HashAlgorithm,HashProviderFactory> oFactories;
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Create service with a buffer of DEFAULT_BUFFER_SIZE bytes per thread
+	 * @param nThreads Number of worker threads
+	 * @throws IllegalArgumentException If nThreads is less than 1
+	 */
+	public ChecksumService(int nThreads) {
+		this(nThreads, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param nThreads Number of worker threads
+	 * @param iBufferSize Size of the read buffer of each worker thread
+	 * @throws IllegalArgumentException If nThreads or iBufferSize are less than 1
+	 */
+	public ChecksumService(int nThreads, int iBufferSize) {
+		if (nThreads<1)
+			throw new IllegalArgumentException("ChecksumService number of threads must be greater than zero");
+		if (iBufferSize<1)
+			throw new IllegalArgumentException("ChecksumService buffer size must be greater than zero");
+		this.nThreads = nThreads;
+		this.iBufferSize = iBufferSize;
+		this.oFactories = new EnumMap<HashAlgorithm,HashProviderFactory>(HashAlgorithm.class);
+		for (HashAlgorithm eAlgorithm : HashAlgorithm.values())
+			oFactories.put(eAlgorithm, new HashProviderFactory(eAlgorithm, null, true));
+		final String sPoolName = "ChecksumService-" + String.valueOf(iPoolNumber.incrementAndGet()) + "-";
+		oPool = new ThreadPoolExecutor(nThreads, nThreads, 0l, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			private final AtomicInteger iThreadNumber = new AtomicInteger(0);
+			@Override
+			public Thread newThread(Runnable oTask) {
+				Thread oThread = new Thread(oTask, sPoolName + String.valueOf(iThreadNumber.incrementAndGet()));
+				oThread.setDaemon(true);
+				return oThread;
+			}
+		});
+		tBuffer = new ThreadLocal<ByteBuffer>() {
+			@Override
+			protected ByteBuffer initialValue() {
+				return ByteBuffer.allocate(ChecksumService.this.iBufferSize);
+			}
+		};
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Per request bookkeeping of files in flight
+	 */
+	private final class Request {
+		final HashAlgorithm eAlgorithm;
+		final ChecksumListener oListener;
+		final Semaphore oSlots;
+		final int nSlots;
+		long nFiles;
+
+		Request(HashAlgorithm eAlgorithm, ChecksumListener oListener) {
+			this.eAlgorithm = eAlgorithm;
+			this.oListener = oListener;
+			this.nSlots = nThreads * 2;
+			this.oSlots = new Semaphore(nSlots);
+			this.nFiles = 0l;
+		}
+
+		void submit(final File oFile) throws InterruptedException {
+			oSlots.acquire();
+			nFiles++;
+			try {
+				oPool.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							final ChecksumResult oResult = hash(oFile, eAlgorithm);
+							synchronized (oListener) {
+								oListener.completed(oResult);
+							}
+						} finally {
+							oSlots.release();
+						}
+					}
+				});
+			} catch (RuntimeException rejected) {
+				oSlots.release();
+				throw rejected;
+			}
+		}
+
+		long await() throws InterruptedException {
+			oSlots.acquire(nSlots);
+			oSlots.release(nSlots);
+			return nFiles;
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	private ChecksumResult hash(File oFile, HashAlgorithm eAlgorithm) {
+		final long lStart = System.nanoTime();
+		try {
+			final HashProvider oProvider = oFactories.get(eAlgorithm).createProvider();
+			FileUtils.checksum(oFile, oProvider, tBuffer.get());
+			return new ChecksumResult(oFile, eAlgorithm, oProvider.Final(), oFile.length(), System.nanoTime()-lStart, null);
+		} catch (IOException ioe) {
+			return new ChecksumResult(oFile, eAlgorithm, null, 0l, System.nanoTime()-lStart, ioe);
+		} catch (NoSuchAlgorithmException nsae) {
+			return new ChecksumResult(oFile, eAlgorithm, null, 0l, System.nanoTime()-lStart, new IOException(nsae.getMessage(), nsae));
+		} catch (RuntimeException xcpt) {
+			return new ChecksumResult(oFile, eAlgorithm, null, 0l, System.nanoTime()-lStart, new IOException(xcpt.getMessage(), xcpt));
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Compute the checksums of a list of files and wait until all of them are done
+	 * @param oFiles Files to be hashed, directories are reported as errors
+	 * @param eAlgorithm HashAlgorithm
+	 * @param oListener Receives each result as soon as it is ready
+	 * @return Number of files hashed
+	 * @throws InterruptedException If the calling thread is interrupted while waiting,
+	 * files already submitted are still hashed and reported
+	 */
+	public long checksum(Iterable<File> oFiles, HashAlgorithm eAlgorithm, ChecksumListener oListener) throws InterruptedException {
+		final Request oRequest = new Request(eAlgorithm, oListener);
+		for (File oFile : oFiles)
+			oRequest.submit(oFile);
+		return oRequest.await();
+	}
+
+	/**
+	 * Compute the checksums of all the files of a directory and its subdirectories and wait until all of them are done
+	 * @param oDirectory Root directory
+	 * @param oFilter Filter for files, <b>null</b> for hashing all of them. Subdirectories are always walked.
+	 * Symbolic links below oDirectory are skipped, both to files and to directories.
+	 * @param eAlgorithm HashAlgorithm
+	 * @param oListener Receives each result as soon as it is ready
+	 * @return Number of files hashed
+	 * @throws IOException If oDirectory is not a directory
+	 * @throws InterruptedException If the calling thread is interrupted while waiting
+	 */
+	public long checksumTree(File oDirectory, FileFilter oFilter, HashAlgorithm eAlgorithm, ChecksumListener oListener) throws IOException, InterruptedException {
+		if (!oDirectory.isDirectory())
+			throw new IOException(oDirectory.getPath() + " is not a directory");
+		final Request oRequest = new Request(eAlgorithm, oListener);
+		final ArrayDeque<File> oPending = new ArrayDeque<File>();
+		oPending.push(oDirectory);
+		while (!oPending.isEmpty()) {
+			final File[] aEntries = oPending.pop().listFiles();
+			if (null!=aEntries) {
+				for (File oEntry : aEntries) {
+					// isDirectory() follows links, a link to an ancestor would make the walk endless
+					if (Files.isSymbolicLink(oEntry.toPath()))
+						continue;
+					if (oEntry.isDirectory())
+						oPending.push(oEntry);
+					else if (null==oFilter || oFilter.accept(oEntry))
+						oRequest.submit(oEntry);
+				}
+			}
+		}
+		return oRequest.await();
+	}
+
+	// ----------------------------------------------------------
+
+	public int getThreads() {
+		return nThreads;
+	}
+
+	public int getBufferSize() {
+		return iBufferSize;
+	}
+
+	/**
+	 * Stop the worker threads once the files already submitted are done
+	 */
+	@Override
+	public void close() {
+		oPool.shutdown();
+		try {
+			oPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException xcpt) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
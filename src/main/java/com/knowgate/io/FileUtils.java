@@ -26,6 +26,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
@@ -35,6 +38,7 @@ import java.util.zip.CRC32;
 import java.util.zip.CheckedInputStream;
 import java.util.zip.Checksum;
 
+import com.knowgate.encryption.HashProvider;
 import com.knowgate.io.filefilter.DirectoryFileFilter;
 import com.knowgate.io.filefilter.FalseFileFilter;
 import com.knowgate.io.filefilter.FileFilterUtils;
@@ -1654,6 +1658,42 @@ public class FileUtils {
         return checksum;
     }
 
+    /**
+     * Feeds the content of a file to a hash provider reading it through a FileChannel.
+     * For example:
+     * <pre>
+     *   String md5 = FileUtils.checksum(file, new MD5(), ByteBuffer.allocate(65536)).asHex();
+     * </pre>
+     *
+     * @param file  the file to checksum, must not be <code>null</code>
+     * @param provider  the hash provider to be updated, must not be <code>null</code>
+     * @param buffer  buffer used for reading, it is cleared before and after use.
+     * Providers hash the backing array of a heap buffer in place and copy a direct buffer into chunks
+     * @return the hash provider specified, updated with the content of the file
+     * @throws NullPointerException if the file, provider or buffer is <code>null</code>
+     * @throws IllegalArgumentException if the file is a directory
+     * @throws IOException if an IO error occurs reading the file
+     * @since 9.1
+     */
+    public static HashProvider checksum(File file, HashProvider provider, ByteBuffer buffer) throws IOException {
+        if (file.isDirectory()) {
+            throw new IllegalArgumentException("Checksums can't be computed on directories");
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                provider.Update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            buffer.clear();
+            channel.close();
+        }
+        return provider;
+    }
+
     /**
      * Moves a directory.
      * <p>
@@ -0,0 +1,142 @@
+package com.knowgate.stringutils;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.Arrays;
+
+/**
+ * <p>Report of the values which could not be converted by a typed column getter of CSVParser</p>
+ * <p>All errors are counted but only the row numbers and values of the first
+ * MAX_DETAILS errors are kept. Empty fields are counted apart and are not errors.</p>
+ * <p>An instance may be reused, each typed column getter clears it before filling it.</p>
+ * @version 9.1
+ */
+public final class CSVColumnErrors {
+
+	/**
+	 * Maximum number of errors whose row and value are kept
+	 */
+	public static final int MAX_DETAILS = 100;
+
+	private int iCol;
+	private int iErrors;
+	private int iEmpty;
+	private int[] aRows;
+	private String[] aValues;
+
+	// ----------------------------------------------------------
+
+	public CSVColumnErrors() {
+		aRows = new int[8];
+		aValues = new String[8];
+		clear(-1);
+	}
+
+	// ----------------------------------------------------------
+
+	void clear(int iColumn) {
+		iCol = iColumn;
+		iErrors = iEmpty = 0;
+		Arrays.fill(aValues, null);
+	}
+
+	// ----------------------------------------------------------
+
+	void empty() {
+		iEmpty++;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @param iRow Row of invalid value
+	 * @param sValue Invalid value or <b>null</b> if the field could not be located
+	 */
+	void error(int iRow, String sValue) {
+		if (iErrors<MAX_DETAILS) {
+			if (iErrors==aRows.length) {
+				aRows = Arrays.copyOf(aRows, Math.min(aRows.length*2, MAX_DETAILS));
+				aValues = Arrays.copyOf(aValues, aRows.length);
+			}
+			aRows[iErrors] = iRow;
+			aValues[iErrors] = sValue;
+		}
+		iErrors++;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Index of the column reported or -1 if no column has been read yet
+	 */
+	public int getColumn() {
+		return iCol;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return <b>true</b> if all non empty values were converted
+	 */
+	public boolean isEmpty() {
+		return 0==iErrors;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Number of values which could not be converted
+	 */
+	public int getErrorCount() {
+		return iErrors;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Number of empty fields
+	 */
+	public int getEmptyCount() {
+		return iEmpty;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Rows of the first MAX_DETAILS values which could not be converted
+	 */
+	public int[] getRows() {
+		return Arrays.copyOf(aRows, Math.min(iErrors, MAX_DETAILS));
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return First MAX_DETAILS values which could not be converted,
+	 * <b>null</b> entries are rows whose field could not be located
+	 */
+	public String[] getValues() {
+		return Arrays.copyOf(aValues, Math.min(iErrors, MAX_DETAILS));
+	}
+
+	// ----------------------------------------------------------
+
+	@Override
+	public String toString() {
+		StringBuilder oStr = new StringBuilder();
+		oStr.append("column ").append(iCol).append(" has ").append(iErrors).append(" errors and ").append(iEmpty).append(" empty values");
+		for (int e=0; e<Math.min(iErrors, MAX_DETAILS); e++)
+			oStr.append("\n row ").append(aRows[e]).append(" \"").append(aValues[e]).append('"');
+		return oStr.toString();
+	}
+
+}
@@ -0,0 +1,151 @@
+package com.knowgate.stringutils;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+/**
+ * <p>Hash index of the values of a CSVParser column</p>
+ * <p>Distinct values are kept at an open addressing table of row numbers
+ * and rows having the same value are chained in ascending order,
+ * so no String nor boxed Integer is created for indexing.</p>
+ * <p>Rows whose field can not be located because they are malformed are not indexed.</p>
+ * @version 9.1
+ */
+final class CSVColumnIndex {
+
+	private static final int[] NO_ROWS = new int[0];
+
+	private final CSVParser oParser;
+	private final int iCol;
+	private final boolean bIgnoreCase;
+
+	private final int[] aHeads;  // First row of each distinct value plus one, zero for empty slots
+	private final int[] aHashes; // Hash code of each distinct value
+	private final int[] aNext;   // Next row having the same value or -1
+	private final int iMask;
+	private int iDistinct;
+
+	// ----------------------------------------------------------
+
+	CSVColumnIndex(CSVParser oCsv, int iColumn, boolean bCaseInsensitive) {
+		oParser = oCsv;
+		iCol = iColumn;
+		bIgnoreCase = bCaseInsensitive;
+
+		final int iRows = oCsv.getLineCount();
+		int iCapacity = 16;
+		while (iCapacity < iRows*2 && iCapacity < (1<<30)) iCapacity <<= 1;
+		aHeads = new int[iCapacity];
+		aHashes = new int[iCapacity];
+		aNext = new int[iRows];
+		iMask = iCapacity-1;
+		iDistinct = 0;
+
+		final CSVField oFld = new CSVField();
+		final CSVField oCmp = new CSVField();
+
+		// Rows are added backwards so that each chain ends up in ascending order
+		for (int r=iRows-1; r>=0; r--) {
+			aNext[r] = -1;
+			try {
+				oCsv.getFieldView(iCol, r, oFld);
+			} catch (StringIndexOutOfBoundsException malformed) {
+				continue;
+			}
+			final int iHash = hash(oFld);
+			int iSlot = mix(iHash) & iMask;
+			while (aHeads[iSlot]!=0) {
+				if (aHashes[iSlot]==iHash && matches(oFld, oCsv.getFieldView(iCol, aHeads[iSlot]-1, oCmp)))
+					break;
+				iSlot = (iSlot+1) & iMask;
+			}
+			if (aHeads[iSlot]==0) {
+				aHashes[iSlot] = iHash;
+				iDistinct++;
+			} else {
+				aNext[r] = aHeads[iSlot]-1;
+			}
+			aHeads[iSlot] = r+1;
+		} // next
+	}
+
+	// ----------------------------------------------------------
+
+	private int hash(CharSequence oSeq) {
+		return bIgnoreCase ? CSVField.hashCodeIgnoreCase(oSeq) : oSeq.hashCode();
+	}
+
+	private boolean matches(CSVField oFld, CharSequence oSeq) {
+		return bIgnoreCase ? oFld.equalsIgnoreCase(oSeq) : oFld.contentEquals(oSeq);
+	}
+
+	private static int mix(int iHash) {
+		return iHash ^ (iHash>>>16);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Slot index of a value or -1 if it is not indexed
+	 */
+	private int slotOf(CharSequence oVal, CSVField oFld) {
+		final int iHash = hash(oVal);
+		int iSlot = mix(iHash) & iMask;
+		while (aHeads[iSlot]!=0) {
+			if (aHashes[iSlot]==iHash && matches(oParser.getFieldView(iCol, aHeads[iSlot]-1, oFld), oVal))
+				return iSlot;
+			iSlot = (iSlot+1) & iMask;
+		}
+		return -1;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return First row having the given value or -1 if no row has it
+	 */
+	int first(CharSequence oVal) {
+		final int iSlot = slotOf(oVal, new CSVField());
+		return iSlot<0 ? -1 : aHeads[iSlot]-1;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return All rows having the given value in ascending order
+	 */
+	int[] all(CharSequence oVal) {
+		final int iSlot = slotOf(oVal, new CSVField());
+		if (iSlot<0) return NO_ROWS;
+		int iCount = 0;
+		for (int r=aHeads[iSlot]-1; r>=0; r=aNext[r]) iCount++;
+		final int[] aRows = new int[iCount];
+		iCount = 0;
+		for (int r=aHeads[iSlot]-1; r>=0; r=aNext[r]) aRows[iCount++] = r;
+		return aRows;
+	}
+
+	// ----------------------------------------------------------
+
+	int distinctValues() {
+		return iDistinct;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Approximate heap size in bytes of this index
+	 */
+	long sizeInBytes() {
+		return 64l + 4l * (aHeads.length + aHashes.length + aNext.length);
+	}
+
+}
@@ -0,0 +1,393 @@
+package com.knowgate.stringutils;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.math.BigDecimal;
+
+/**
+ * <p>Reusable view of a field value inside a character buffer</p>
+ * <p>Instances of this class do not copy the characters of the field,
+ * they just point to a region of the buffer of a CSVParser or a CSVRow.
+ * The same instance can be passed again and again to getFieldView() methods
+ * for scanning a column without creating a new String per row.</p>
+ * <p>Comparison and numeric conversion methods do not allocate memory
+ * except when an exception must be thrown.</p>
+ * @version 9.1
+ */
+public final class CSVField implements CharSequence {
+
+	private static final char[] EMPTY = new char[0];
+
+	private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	// Largest integer which can be exactly represented by a double
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	private char[] cBuffer;
+	private int iStart;
+	private int iEnd;
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Create empty field view
+	 */
+	public CSVField() {
+		cBuffer = EMPTY;
+		iStart = iEnd = 0;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Create field view for a region of a character buffer
+	 * @param aBuffer char[]
+	 * @param iOffset int Start of the field at the buffer
+	 * @param iLength int Length of the field
+	 * @throws StringIndexOutOfBoundsException
+	 */
+	public CSVField(char[] aBuffer, int iOffset, int iLength) throws StringIndexOutOfBoundsException {
+		wrap(aBuffer, iOffset, iOffset+iLength);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Point this view to a region of a character buffer
+	 * @param aBuffer char[]
+	 * @param iFrom int Start position (inclusive)
+	 * @param iTo int End position (exclusive)
+	 * @return This same view
+	 * @throws StringIndexOutOfBoundsException if iFrom or iTo are out of buffer bounds or iTo&lt;iFrom
+	 */
+	CSVField wrap(char[] aBuffer, int iFrom, int iTo) throws StringIndexOutOfBoundsException {
+		if (iFrom<0 || iTo>aBuffer.length || iTo<iFrom)
+			throw new StringIndexOutOfBoundsException("CSVField invalid region from " + String.valueOf(iFrom) + " to " + String.valueOf(iTo));
+		cBuffer = aBuffer;
+		iStart = iFrom;
+		iEnd = iTo;
+		return this;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Character buffer backing this view
+	 */
+	public char[] buffer() {
+		return cBuffer;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Position at the backing buffer of the first character of this view
+	 */
+	public int offset() {
+		return iStart;
+	}
+
+	// ----------------------------------------------------------
+
+	@Override
+	public int length() {
+		return iEnd-iStart;
+	}
+
+	// ----------------------------------------------------------
+
+	public boolean isEmpty() {
+		return iEnd==iStart;
+	}
+
+	// ----------------------------------------------------------
+
+	@Override
+	public char charAt(int iIndex) throws StringIndexOutOfBoundsException {
+		if (iIndex<0 || iIndex>=iEnd-iStart)
+			throw new StringIndexOutOfBoundsException(iIndex);
+		return cBuffer[iStart+iIndex];
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return A new CSVField view sharing the same backing buffer
+	 */
+	@Override
+	public CharSequence subSequence(int iFrom, int iTo) throws StringIndexOutOfBoundsException {
+		if (iFrom<0 || iTo>iEnd-iStart || iTo<iFrom)
+			throw new StringIndexOutOfBoundsException("CSVField invalid subsequence from " + String.valueOf(iFrom) + " to " + String.valueOf(iTo));
+		return new CSVField(cBuffer, iStart+iFrom, iTo-iFrom);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Remove leading and trailing spaces from this view.
+	 * The backing buffer is not modified.
+	 * @return This same view
+	 */
+	public CSVField trim() {
+		while (iStart<iEnd && cBuffer[iStart]<=' ') iStart++;
+		while (iEnd>iStart && cBuffer[iEnd-1]<=' ') iEnd--;
+		return this;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Case sensitive comparison
+	 * @param oSeq CharSequence
+	 * @return <b>true</b> if this view has the same characters as the given sequence
+	 */
+	public boolean contentEquals(CharSequence oSeq) {
+		if (null==oSeq) return false;
+		final int iLen = iEnd-iStart;
+		if (oSeq.length()!=iLen) return false;
+		for (int n=0; n<iLen; n++)
+			if (cBuffer[iStart+n]!=oSeq.charAt(n))
+				return false;
+		return true;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Case insensitive comparison using the same rules as String.equalsIgnoreCase()
+	 * @param oSeq CharSequence
+	 * @return <b>true</b> if this view has the same characters as the given sequence ignoring case
+	 */
+	public boolean equalsIgnoreCase(CharSequence oSeq) {
+		if (null==oSeq) return false;
+		final int iLen = iEnd-iStart;
+		if (oSeq.length()!=iLen) return false;
+		for (int n=0; n<iLen; n++) {
+			final char c1 = cBuffer[iStart+n];
+			final char c2 = oSeq.charAt(n);
+			if (c1!=c2) {
+				final char u1 = Character.toUpperCase(c1);
+				final char u2 = Character.toUpperCase(c2);
+				if (u1!=u2 && Character.toLowerCase(u1)!=Character.toLowerCase(u2))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return The same value as toString().hashCode() would return
+	 */
+	@Override
+	public int hashCode() {
+		int iHash = 0;
+		for (int n=iStart; n<iEnd; n++)
+			iHash = 31*iHash + cBuffer[n];
+		return iHash;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return A hash code which is the same for sequences that are equal ignoring case
+	 */
+	public int hashCodeIgnoreCase() {
+		return hashCodeIgnoreCase(cBuffer, iStart, iEnd);
+	}
+
+	// ----------------------------------------------------------
+
+	static int hashCodeIgnoreCase(CharSequence oSeq) {
+		int iHash = 0;
+		final int iLen = oSeq.length();
+		for (int n=0; n<iLen; n++)
+			iHash = 31*iHash + Character.toLowerCase(Character.toUpperCase(oSeq.charAt(n)));
+		return iHash;
+	}
+
+	// ----------------------------------------------------------
+
+	static int hashCodeIgnoreCase(char[] aBuffer, int iFrom, int iTo) {
+		int iHash = 0;
+		for (int n=iFrom; n<iTo; n++)
+			iHash = 31*iHash + Character.toLowerCase(Character.toUpperCase(aBuffer[n]));
+		return iHash;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Two CSVField instances are equal if they have the same characters.
+	 * Use contentEquals() for comparing with other CharSequence implementations.
+	 */
+	@Override
+	public boolean equals(Object oObj) {
+		if (this==oObj) return true;
+		if (oObj instanceof CSVField)
+			return contentEquals((CSVField) oObj);
+		return false;
+	}
+
+	// ----------------------------------------------------------
+
+	private NumberFormatException numberFormatException() {
+		return new NumberFormatException("For input string: \"" + toString() + "\"");
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Parse this view as a decimal integer using the same rules as Integer.parseInt()
+	 * @return int
+	 * @throws NumberFormatException
+	 */
+	public int parseInt() throws NumberFormatException {
+		final long lVal = parseLong();
+		if (lVal<Integer.MIN_VALUE || lVal>Integer.MAX_VALUE)
+			throw numberFormatException();
+		return (int) lVal;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Parse this view as a decimal integer using the same rules as Long.parseLong()
+	 * @return long
+	 * @throws NumberFormatException
+	 */
+	public long parseLong() throws NumberFormatException {
+		int p = iStart;
+		if (p==iEnd) throw numberFormatException();
+
+		boolean bNegative = false;
+		long lLimit = -Long.MAX_VALUE;
+		final char cFirst = cBuffer[p];
+		if (cFirst=='-') {
+			bNegative = true;
+			lLimit = Long.MIN_VALUE;
+			p++;
+		} else if (cFirst=='+') {
+			p++;
+		}
+		if (p==iEnd) throw numberFormatException();
+
+		// Accumulate negatively to be able to parse Long.MIN_VALUE
+		final long lMultMin = lLimit / 10;
+		long lResult = 0;
+		for (; p<iEnd; p++) {
+			final int iDigit = cBuffer[p] - '0';
+			if (iDigit<0 || iDigit>9 || lResult<lMultMin) throw numberFormatException();
+			lResult *= 10;
+			if (lResult<lLimit+iDigit) throw numberFormatException();
+			lResult -= iDigit;
+		}
+		return bNegative ? lResult : -lResult;
+	} // parseLong
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Parse this view as a double.</p>
+	 * Plain decimal numbers with up to 15 significant digits and a small exponent
+	 * are converted without allocating memory, any other value is delegated to Double.parseDouble()
+	 * @return double
+	 * @throws NumberFormatException
+	 */
+	public double parseDouble() throws NumberFormatException {
+		int p = iStart;
+		boolean bNegative = false;
+		if (p<iEnd && (cBuffer[p]=='-' || cBuffer[p]=='+')) {
+			bNegative = cBuffer[p]=='-';
+			p++;
+		}
+
+		long lMantissa = 0;
+		int iDigits = 0;
+		int iFraction = -1;
+		int iExponent = 0;
+		boolean bFastPath = true;
+
+		for (; p<iEnd && bFastPath; p++) {
+			final char c = cBuffer[p];
+			if (c>='0' && c<='9') {
+				lMantissa = lMantissa*10 + (c-'0');
+				iDigits++;
+				if (iFraction>=0) iFraction++;
+				if (lMantissa>MAX_EXACT_MANTISSA) bFastPath = false;
+			} else if (c=='.' && iFraction<0) {
+				iFraction = 0;
+			} else if ((c=='e' || c=='E') && iDigits>0) {
+				p++;
+				boolean bNegExp = false;
+				if (p<iEnd && (cBuffer[p]=='-' || cBuffer[p]=='+')) {
+					bNegExp = cBuffer[p]=='-';
+					p++;
+				}
+				if (p==iEnd || iEnd-p>3) {
+					bFastPath = false;
+				} else {
+					for (; p<iEnd && bFastPath; p++) {
+						final int iDigit = cBuffer[p] - '0';
+						if (iDigit<0 || iDigit>9)
+							bFastPath = false;
+						else
+							iExponent = iExponent*10 + iDigit;
+					}
+					if (bNegExp) iExponent = -iExponent;
+				}
+				break;
+			} else {
+				bFastPath = false;
+			}
+		} // next
+
+		if (bFastPath && iDigits>0) {
+			if (iFraction>0) iExponent -= iFraction;
+			if (iExponent>=-22 && iExponent<=22) {
+				double dVal = (double) lMantissa;
+				if (iExponent<0)
+					dVal /= POW10[-iExponent];
+				else
+					dVal *= POW10[iExponent];
+				return bNegative ? -dVal : dVal;
+			}
+		}
+
+		return Double.parseDouble(toString());
+	} // parseDouble
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Parse this view as a BigDecimal without creating an intermediate String
+	 * @return BigDecimal
+	 * @throws NumberFormatException
+	 */
+	public BigDecimal parseDecimal() throws NumberFormatException {
+		if (iStart==iEnd) throw numberFormatException();
+		return new BigDecimal(cBuffer, iStart, iEnd-iStart);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return A new String with the characters of this view
+	 */
+	@Override
+	public String toString() {
+		return iStart==iEnd ? "" : new String(cBuffer, iStart, iEnd-iStart);
+	}
+
+}
@@ -0,0 +1,28 @@
+package com.knowgate.stringutils;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+/**
+ * <p>Memory layout of the field offsets kept by CSVParser</p>
+ * <p>FLAT keeps the absolute start of every field at a single int array of rows times columns.</p>
+ * <p>DELTA keeps the absolute start of each row at an int array and the start of every other column
+ * as a 16 bit distance from its row start, which takes roughly half the memory of FLAT.
+ * Fields starting more than 65534 characters after their row start are kept at a separate map.</p>
+ * @version 9.1
+ */
+public enum CSVOffsetLayout {
+
+	FLAT,
+
+	DELTA;
+
+}
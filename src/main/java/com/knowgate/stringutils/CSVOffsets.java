@@ -0,0 +1,165 @@
+package com.knowgate.stringutils;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Start position of each field of a parsed buffer</p>
+ * <p>Positions which have never been set are zero.
+ * Different rows may be set concurrently from different threads
+ * provided that each row is set by a single thread and that its
+ * column zero is set before any other column.</p>
+ * @version 9.1
+ */
+abstract class CSVOffsets {
+
+	protected final int iRows;
+	protected final int iCols;
+
+	// ----------------------------------------------------------
+
+	protected CSVOffsets(int iRowCount, int iColCount) {
+		iRows = iRowCount;
+		iCols = iColCount;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Create offsets index
+	 * @param eLayout CSVOffsetLayout
+	 * @param iRowCount Number of rows
+	 * @param iColCount Number of columns
+	 * @throws ArrayIndexOutOfBoundsException If the number of fields is greater than the maximum array size
+	 */
+	static CSVOffsets create(CSVOffsetLayout eLayout, int iRowCount, int iColCount)
+		throws ArrayIndexOutOfBoundsException {
+		if (((long) iRowCount) * iColCount > Integer.MAX_VALUE - 8)
+			throw new ArrayIndexOutOfBoundsException("Offset index for " + String.valueOf(iRowCount) + " rows and " + String.valueOf(iColCount) + " columns exceeds maximum array size");
+		if (eLayout==CSVOffsetLayout.DELTA && iColCount>1)
+			return new Delta(iRowCount, iColCount);
+		else
+			return new Flat(iRowCount, iColCount);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Start position of a field
+	 */
+	abstract int get(int iRow, int iCol);
+
+	/**
+	 * Set start position of a field
+	 */
+	abstract void set(int iRow, int iCol, int iPos);
+
+	/**
+	 * @return Approximate heap size in bytes of this index
+	 */
+	abstract long sizeInBytes();
+
+	abstract CSVOffsetLayout layout();
+
+	// ----------------------------------------------------------
+
+	static final class Flat extends CSVOffsets {
+
+		private final int[] aOffsets;
+
+		Flat(int iRowCount, int iColCount) {
+			super(iRowCount, iColCount);
+			aOffsets = new int[iRowCount*iColCount];
+		}
+
+		@Override
+		int get(int iRow, int iCol) {
+			return aOffsets[iRow*iCols+iCol];
+		}
+
+		@Override
+		void set(int iRow, int iCol, int iPos) {
+			aOffsets[iRow*iCols+iCol] = iPos;
+		}
+
+		@Override
+		long sizeInBytes() {
+			return 16l + 4l * aOffsets.length;
+		}
+
+		@Override
+		CSVOffsetLayout layout() {
+			return CSVOffsetLayout.FLAT;
+		}
+	} // Flat
+
+	// ----------------------------------------------------------
+
+	static final class Delta extends CSVOffsets {
+
+		private static final char OVERFLOW = (char) 0xFFFF;
+
+		private final int[] aRowStarts;
+		private final char[] aDeltas;
+		private final ConcurrentHashMap<Integer,Integer> oOverflow;
+
+		Delta(int iRowCount, int iColCount) {
+			super(iRowCount, iColCount);
+			aRowStarts = new int[iRowCount];
+			aDeltas = new char[iRowCount*(iColCount-1)];
+			oOverflow = new ConcurrentHashMap<Integer,Integer>();
+		}
+
+		@Override
+		int get(int iRow, int iCol) {
+			if (iCol==0)
+				return aRowStarts[iRow];
+			final int iIndex = iRow*(iCols-1)+iCol-1;
+			final char cDelta = aDeltas[iIndex];
+			// Any column but the first one starts after a delimiter, so a zero distance means not set
+			if (cDelta==0)
+				return 0;
+			else if (cDelta==OVERFLOW)
+				return oOverflow.get(iIndex);
+			else
+				return aRowStarts[iRow] + cDelta;
+		}
+
+		@Override
+		void set(int iRow, int iCol, int iPos) {
+			if (iCol==0) {
+				aRowStarts[iRow] = iPos;
+			} else {
+				final int iIndex = iRow*(iCols-1)+iCol-1;
+				final int iDelta = iPos - aRowStarts[iRow];
+				if (iDelta>0 && iDelta<OVERFLOW) {
+					aDeltas[iIndex] = (char) iDelta;
+				} else {
+					aDeltas[iIndex] = OVERFLOW;
+					oOverflow.put(iIndex, iPos);
+				}
+			}
+		}
+
+		@Override
+		long sizeInBytes() {
+			return 32l + 4l * aRowStarts.length + 2l * aDeltas.length + 64l * oOverflow.size();
+		}
+
+		@Override
+		CSVOffsetLayout layout() {
+			return CSVOffsetLayout.DELTA;
+		}
+	} // Delta
+
+}
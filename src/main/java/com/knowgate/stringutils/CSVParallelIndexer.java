@@ -0,0 +1,274 @@
+package com.knowgate.stringutils;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>Build the row and column pointers of a CSVParser using several threads</p>
+ * <p>The buffer is cut into chunks of equal size which are scanned concurrently
+ * in two passes. The first pass counts line feeds and double quotes at each chunk,
+ * which is enough for knowing the quoting state and the row number at any chunk start.
+ * Chunk starts are then moved forward to the first line feed which is not inside quotes
+ * and the second pass fills the pointers of the rows of each chunk.</p>
+ * <p>The result, including row count and exceptions thrown for malformed rows,
+ * is the same as the one of the serial parser.</p>
+ * @version 9.1
+ */
+final class CSVParallelIndexer {
+
+	/**
+	 * Minimum number of characters per chunk
+	 */
+	static final int MIN_CHUNK_SIZE = 65536;
+
+	private final char[] cBuffer;
+	private final int iBuffer;
+	private final char cDelimiter;
+	private final boolean bQuoted;
+	private final int iCols;
+	private final int iChunks;
+	private final CSVOffsetLayout eLayout;
+
+	// Chunk boundaries as cut by size
+	private final int[] aChunkBounds;
+	// Line feeds per chunk
+	private final int[] aNewLines;
+	// Line feeds found at even quoting parity relative to the chunk start
+	private final int[] aEvenNewLines;
+	// Double quotes per chunk
+	private final int[] aQuotes;
+
+	// Real chunk starts after a line feed and their row numbers and quoting state
+	private final int[] aStarts;
+	private final int[] aStartRows;
+	private final boolean[] aStartQuoted;
+
+	// First error found at each chunk
+	private final int[] aErrLines;
+	private final String[] aErrMessages;
+
+	private CSVOffsets ColPointers;
+	private int iErrLine;
+
+	// ----------------------------------------------------------
+
+	CSVParallelIndexer(char[] aBuffer, int iLength, char cDelim, boolean bQuotedFields, int iColCount, int iParallelism, CSVOffsetLayout eOffsetLayout) {
+		cBuffer = aBuffer;
+		iBuffer = iLength;
+		cDelimiter = cDelim;
+		bQuoted = bQuotedFields;
+		iCols = iColCount;
+		iChunks = chunkCount(iLength, iParallelism);
+		eLayout = eOffsetLayout;
+		aChunkBounds = new int[iChunks+1];
+		for (int k=0; k<iChunks; k++)
+			aChunkBounds[k] = (int) (((long) iLength * k) / iChunks);
+		aChunkBounds[iChunks] = iLength;
+		aNewLines = new int[iChunks];
+		aEvenNewLines = new int[iChunks];
+		aQuotes = new int[iChunks];
+		aStarts = new int[iChunks+1];
+		aStartRows = new int[iChunks];
+		aStartQuoted = new boolean[iChunks];
+		aErrLines = new int[iChunks];
+		aErrMessages = new String[iChunks];
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Number of chunks into which a buffer of the given length should be cut
+	 */
+	static int chunkCount(int iLength, int iParallelism) {
+		return Math.max(1, Math.min(iParallelism*4, iLength/MIN_CHUNK_SIZE));
+	}
+
+	// ----------------------------------------------------------
+
+	int chunks() {
+		return iChunks;
+	}
+
+	CSVOffsets colPointers() {
+		return ColPointers;
+	}
+
+	int errorLine() {
+		return iErrLine;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Index the buffer
+	 * @param oPool ForkJoinPool used to run chunk tasks
+	 * @return Number of rows as counted by the serial parser
+	 * @throws ArrayIndexOutOfBoundsException If a row has more or less columns than the descriptor
+	 */
+	int index(ForkJoinPool oPool) throws ArrayIndexOutOfBoundsException {
+
+		oPool.invoke(new ChunkTask(0, iChunks, true));
+
+		// Row count includes line feeds inside quotes as the serial parser does
+		int iRows = 1;
+		for (int k=0; k<iChunks; k++)
+			iRows += aNewLines[k];
+
+		locateStarts();
+
+		ColPointers = CSVOffsets.create(eLayout, iRows, iCols);
+
+		oPool.invoke(new ChunkTask(0, iChunks, false));
+
+		for (int k=0; k<iChunks; k++)
+			if (aErrMessages[k]!=null) {
+				iErrLine = aErrLines[k];
+				throw new ArrayIndexOutOfBoundsException(aErrMessages[k]);
+			}
+
+		return iRows;
+	} // index
+
+	// ----------------------------------------------------------
+
+	/**
+	 * First pass: count line feeds and double quotes of a chunk
+	 */
+	private void count(int k) {
+		final int iTo = aChunkBounds[k+1];
+		int iNewLines = 0, iEvenNewLines = 0, iQuotes = 0;
+		for (int p=aChunkBounds[k]; p<iTo; p++) {
+			final char cAt = cBuffer[p];
+			if (cAt=='\n') {
+				iNewLines++;
+				if ((iQuotes & 1)==0) iEvenNewLines++;
+			} else if (cAt=='"' && bQuoted) {
+				iQuotes++;
+			}
+		}
+		aNewLines[k] = iNewLines;
+		aEvenNewLines[k] = bQuoted ? iEvenNewLines : iNewLines;
+		aQuotes[k] = iQuotes;
+	} // count
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Move each chunk start to the position following the first line feed not inside quotes
+	 */
+	private void locateStarts() {
+		boolean bIgnore = false;
+		int iUnquotedNewLines = 0;
+		aStarts[0] = 0;
+		aStartRows[0] = 0;
+		aStartQuoted[0] = false;
+		for (int k=0; k<iChunks; k++) {
+			if (k>0) {
+				int p = aChunkBounds[k];
+				boolean bIgn = bIgnore;
+				while (p<iBuffer && (bIgn || cBuffer[p]!='\n')) {
+					if (cBuffer[p]=='"' && bQuoted) bIgn = !bIgn;
+					p++;
+				}
+				aStarts[k] = p<iBuffer ? p+1 : iBuffer;
+				aStartRows[k] = iUnquotedNewLines + 1;
+				aStartQuoted[k] = bIgn;
+			}
+			iUnquotedNewLines += bIgnore ? aNewLines[k] - aEvenNewLines[k] : aEvenNewLines[k];
+			if ((aQuotes[k] & 1)==1) bIgnore = !bIgnore;
+		}
+		aStarts[iChunks] = iBuffer;
+		// A chunk whose first line feed is beyond the next chunk start is empty
+		for (int k=iChunks-1; k>0; k--)
+			if (aStarts[k]>aStarts[k+1]) aStarts[k] = aStarts[k+1];
+	} // locateStarts
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Second pass: fill row and column pointers for the rows of a chunk
+	 */
+	private void fill(int k) {
+		final int iFrom = aStarts[k];
+		final int iTo = aStarts[k+1];
+		if (iFrom>=iTo && k>0) return;
+
+		int iRow = aStartRows[k], iCol = 0;
+		boolean bIgnore = aStartQuoted[k];
+
+		ColPointers.set(iRow, 0, iFrom);
+
+		for (int p=iFrom; p<iTo; p++) {
+			final char cAt = cBuffer[p];
+			if (cAt=='"' && bQuoted) bIgnore = !bIgnore;
+			if (!bIgnore) {
+				if (cAt==cDelimiter) {
+					iCol++;
+					if (iCol>=iCols) {
+						aErrLines[k] = iRow+1;
+						aErrMessages[k] = "Columns count mismatch for line " + String.valueOf(iRow+1) + " expected " + String.valueOf(iCols) + " but found more.";
+						return;
+					}
+					ColPointers.set(iRow, iCol, p+1);
+				}
+				else if (cAt=='\n') {
+					if (iCol!=iCols-1) {
+						aErrLines[k] = iRow+1;
+						aErrMessages[k] = "Columns count mismatch for line " + String.valueOf(iRow+1) + " expected " + String.valueOf(iCols) + " and found only " + String.valueOf(iCol+1);
+						return;
+					}
+					// The row following the last line feed belongs to the next chunk
+					if (p+1<iTo) {
+						iRow++;
+						iCol = 0;
+						ColPointers.set(iRow, 0, p+1);
+					}
+				}
+			}
+		} // next
+	} // fill
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Split a range of chunks until each task has a single chunk
+	 */
+	private final class ChunkTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int iLo, iHi;
+		private final boolean bCount;
+
+		ChunkTask(int iFrom, int iTo, boolean bCountPass) {
+			iLo = iFrom;
+			iHi = iTo;
+			bCount = bCountPass;
+		}
+
+		@Override
+		protected void compute() {
+			if (iHi-iLo==1) {
+				if (bCount)
+					count(iLo);
+				else
+					fill(iLo);
+			} else {
+				final int iMid = (iLo+iHi) >>> 1;
+				invokeAll(new ChunkTask(iLo, iMid, bCount), new ChunkTask(iMid, iHi, bCount));
+			}
+		}
+	} // ChunkTask
+
+}
@@ -22,18 +22,23 @@ import java.io.BufferedOutputStream;
 import java.io.Reader;
 import java.io.InputStreamReader;
 import java.io.FileInputStream;
+import java.io.InputStream;
 
 import java.text.SimpleDateFormat;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
 
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFRow;
 import org.apache.poi.hssf.usermodel.HSSFCell;
 
+import com.knowgate.currency.CurrencyCode;
+import com.knowgate.currency.Money;
 import com.knowgate.debug.DebugFile;
+import com.knowgate.debug.TraceLevel;
 
 /**
  * <p>Delimited Text Parser</p>
@@ -46,20 +51,27 @@ public class CSVParser  {
 	private char cBuffer[];      // Buffer interno que contiene los caracteres del fichero a parsear
 	private int  iBuffer;        // Longuitud del buffer interno
 	private String ColNames[];   // Nombres de columnas leidos del descriptor de fichero
-	private int RowPointers[];   // Punteros al inicio de cada línea en el buffer interno
-	private int ColPointers[][]; // Punteros al inicio de cada columna en el buffer interno
+	private CSVOffsets ColPointers; // Punteros al inicio de cada columna en el buffer interno
+	private CSVOffsetLayout eLayout;
+	private boolean bIndexed;    // Construir índices hash por columna bajo demanda
+	private CSVColumnIndex[] aColIndexes;
+	private CSVColumnIndex[] aColIndexesI;
 	private int iCols;           // Número de columnas contadas en el descriptor
 	private int iRows;           // Número de filas encontradas en el fichero leído
 	private int iErrLine;        // Línea del fichero donde se produjo el último error de parseo
 	private char cDelimiter;
 	private boolean bQuoted;
 	private String sCharSet;
+	private int iParallelism;    // Número de hilos usados para indexar el buffer
 
 	// ----------------------------------------------------------
 
 	public CSVParser() {
 		iRows = iBuffer = 0;
 		sCharSet = null;
+		iParallelism = 1;
+		eLayout = CSVOffsetLayout.FLAT;
+		bIndexed = false;
 	}
 
 	// ----------------------------------------------------------
@@ -71,6 +83,9 @@ public class CSVParser  {
 	public CSVParser(String sCharSetName) {
 		iRows = iBuffer = 0;
 		sCharSet = sCharSetName;
+		iParallelism = 1;
+		eLayout = CSVOffsetLayout.FLAT;
+		bIndexed = false;
 	}
 
 	// ----------------------------------------------------------
@@ -87,6 +102,133 @@ public class CSVParser  {
 
 	// ----------------------------------------------------------
 
+	/**
+	 * Get number of threads used by parseData() and parseFile()
+	 * @return int
+	 * @since 9.1
+	 */
+	public int parallelism() {
+		return iParallelism;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Set number of threads used by parseData() and parseFile()</p>
+	 * If greater than one, buffers larger than 128K characters are cut at line boundaries
+	 * into chunks which are indexed concurrently. Parsing results are the same as when using a single thread.
+	 * @param iThreads Number of threads, by default 1
+	 * @throws IllegalArgumentException if iThreads is less than 1
+	 * @since 9.1
+	 */
+	public void parallelism(int iThreads) throws IllegalArgumentException {
+		if (iThreads<1)
+			throw new IllegalArgumentException("CSVParser parallelism must be at least 1");
+		iParallelism = iThreads;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Get memory layout of field offsets
+	 * @return CSVOffsetLayout
+	 * @since 9.1
+	 */
+	public CSVOffsetLayout offsetLayout() {
+		return eLayout;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Set memory layout of field offsets</p>
+	 * The new layout is used by the next call to parseData() or parseFile()
+	 * @param eOffsetLayout CSVOffsetLayout.FLAT (default) or CSVOffsetLayout.DELTA
+	 * @throws NullPointerException if eOffsetLayout is <b>null</b>
+	 * @since 9.1
+	 */
+	public void offsetLayout(CSVOffsetLayout eOffsetLayout) throws NullPointerException {
+		if (null==eOffsetLayout)
+			throw new NullPointerException("CSVParser offset layout may not be null");
+		eLayout = eOffsetLayout;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Get approximate heap size taken by field offsets of last parsed data
+	 * @return long Size in bytes or zero if no data has been parsed
+	 * @since 9.1
+	 */
+	public long offsetIndexSize() {
+		return null==ColPointers || 0==iRows ? 0l : ColPointers.sizeInBytes();
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Whether find() findi() findAll() and findAlli() use column hash indexes
+	 * @since 9.1
+	 */
+	public boolean indexed() {
+		return bIndexed;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Enable or disable column hash indexes</p>
+	 * When enabled, the first lookup at a column builds a case sensitive or case insensitive
+	 * index of its values which is used by subsequent lookups at the same column until
+	 * the next call to parseData() or parseFile().
+	 * @param bUseIndexes boolean
+	 * @since 9.1
+	 */
+	public void indexed(boolean bUseIndexes) {
+		bIndexed = bUseIndexes;
+		if (!bUseIndexes) clearIndexes();
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Get approximate heap size taken by the column hash indexes built so far
+	 * @return long Size in bytes
+	 * @since 9.1
+	 */
+	public long columnIndexSize() {
+		long lSize = 0l;
+		if (aColIndexes!=null)
+			for (int c=0; c<aColIndexes.length; c++) {
+				if (aColIndexes[c]!=null) lSize += aColIndexes[c].sizeInBytes();
+				if (aColIndexesI[c]!=null) lSize += aColIndexesI[c].sizeInBytes();
+			}
+		return lSize;
+	}
+
+	// ----------------------------------------------------------
+
+	private void clearIndexes() {
+		aColIndexes = aColIndexesI = null;
+	}
+
+	// ----------------------------------------------------------
+
+	private CSVColumnIndex columnIndex(int iCol, boolean bIgnoreCase) {
+		if (null==aColIndexes) {
+			aColIndexes = new CSVColumnIndex[iCols];
+			aColIndexesI = new CSVColumnIndex[iCols];
+		}
+		CSVColumnIndex[] aIndexes = bIgnoreCase ? aColIndexesI : aColIndexes;
+		if (null==aIndexes[iCol]) {
+			if (DebugFile.trace) DebugFile.writeln("CSVParser building " + (bIgnoreCase ? "case insensitive" : "case sensitive") + " index for column " + ColNames[iCol]);
+			aIndexes[iCol] = new CSVColumnIndex(this, iCol, bIgnoreCase);
+		}
+		return aIndexes[iCol];
+	}
+
+	// ----------------------------------------------------------
+
 	/**
 	 * Get line count
 	 * @return int
@@ -122,10 +264,24 @@ public class CSVParser  {
 	// ----------------------------------------------------------
 
 	private char extractDelimiter(String sFileDescriptor) {
+		if (cDelimiter==(char)0)
+			cDelimiter = delimiterOf(sFileDescriptor);
+		return cDelimiter;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Get the delimiter used by a file descriptor
+	 * @param sFileDescriptor A list of column names separated by ',' ';' '|' '`' or '\t'
+	 * @return The first unquoted delimiter found at the descriptor or '\t' if none was found
+	 */
+	static char delimiterOf(String sFileDescriptor) {
 		boolean bIgnore = false;
+		char cDelim = (char)0;
 		final int iFileDescLen = sFileDescriptor.length();
 
-		for (int p=0; p<iFileDescLen && cDelimiter==(char)0; p++) {
+		for (int p=0; p<iFileDescLen && cDelim==(char)0; p++) {
 
 			char cAt = sFileDescriptor.charAt(p);
 
@@ -133,32 +289,57 @@ public class CSVParser  {
 			if (!bIgnore) {
 				switch (cAt) {
 				case ',':
-					cDelimiter = ',';
-					break;
 				case ';':
-					cDelimiter = ';';
-					break;
 				case '|':
-					cDelimiter = '|';
-					break;
 				case '`':
-					cDelimiter = '`';
-					break;
 				case '¨':
-					cDelimiter = '¨';
-					break;
 				case '\t':
-					cDelimiter = '\t';
+					cDelim = cAt;
 					break;
 				} // end switch()
 			} // fi ()
 		} // next
 
 		// If no delimiter is found, then assume that file has just one column and use Tab as default
-		if (cDelimiter==(char)0) cDelimiter = '\t';  	
+		if (cDelim==(char)0) cDelim = '\t';
 
-		return cDelimiter;
-	}
+		return cDelim;
+	} // delimiterOf
+
+	// ----------------------------------------------------------
+
+	/**
+	 * If the first non blank character of the descriptor is a double quote
+	 * then fields are assumed to be quoted.
+	 * @param sFileDescriptor String
+	 * @return boolean
+	 */
+	static boolean isQuoted(String sFileDescriptor) {
+		final int iFileDescLen = sFileDescriptor.length();
+		for (int p=0; p<iFileDescLen; p++) {
+			char cAt = sFileDescriptor.charAt(p);
+			if (cAt!=' ' && cAt!='\t' && cAt!='\n' && cAt!='\r')
+				return cAt=='"';
+		} // next
+		return false;
+	} // isQuoted
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Split a file descriptor into its column names
+	 * @param sFileDescriptor String
+	 * @param cDelim char Delimiter
+	 * @param bQuotedNames boolean If <b>true</b> then double quotes are removed from column names
+	 * @return String[]
+	 */
+	static String[] columnNamesOf(String sFileDescriptor, char cDelim, boolean bQuotedNames) {
+		String[] aNames = sFileDescriptor.split(Pattern.quote(String.valueOf(cDelim)));
+		if (bQuotedNames)
+			for (int c=0; c<aNames.length; c++)
+				aNames[c] = (aNames[c].replace('"',' ')).trim();
+		return aNames;
+	} // columnNamesOf
 
 	// ----------------------------------------------------------
 
@@ -204,12 +385,12 @@ public class CSVParser  {
 				sFileDescriptor += (sFileDescriptor.length()==0 ? "" : "\t") + oCel.getStringCellValue();
 				oCel = oRow.getCell(++iCel);
 			} // wend
-			aFileDescriptor = sFileDescriptor.split(new String(new char[]{cDelim}));
+			aFileDescriptor = sFileDescriptor.split(Pattern.quote(String.valueOf(cDelim)));
 			iFileDescLen = aFileDescriptor.length;
 		} else {
 			iRow = 1;
 			cDelim = extractDelimiter(sFileDescriptor);
-			aFileDescriptor = sFileDescriptor.split(new String(new char[]{cDelim}));
+			aFileDescriptor = sFileDescriptor.split(Pattern.quote(String.valueOf(cDelim)));
 			iFileDescLen = aFileDescriptor.length;
 			for (int c=0; c<iFileDescLen; c++) {
 				oCel = oRow.getCell(c);
@@ -298,6 +479,8 @@ public class CSVParser  {
 
 		iErrLine = 0;
 
+		clearIndexes();
+
 		if (DebugFile.trace) DebugFile.writeln("trimming leading whitespaces");
 
 		// Ignorar los espacios en blanco al final del fichero
@@ -321,16 +504,7 @@ public class CSVParser  {
 		// Si el primer caracter no en blanco es comillas,
 		// entonces se entiende que los campos van entrecomillados
 
-		final int iFileDescLen = sFileDescriptor.length();
-
-		for (int p=0; p<iBuffer; p++) {
-			cAt = sFileDescriptor.charAt(p);
-
-			if (cAt!=' ' && cAt!='\t' && cAt!='\n' && cAt!='\r') {
-				bQuoted = (cAt == '"');
-				break;
-			}
-		} // next
+		bQuoted = isQuoted(sFileDescriptor);
 
 		if (DebugFile.trace) {
 			if (bQuoted) DebugFile.writeln("asume quoted identifiers");
@@ -339,7 +513,7 @@ public class CSVParser  {
 		cDelimiter = extractDelimiter(sFileDescriptor);
 
 		// Almacenar los nombres de campo y contar el número de columnas
-		ColNames = sFileDescriptor.split(new String(new char[]{cDelimiter}));
+		ColNames = columnNamesOf(sFileDescriptor, cDelimiter, bQuoted);
 		iCols = ColNames.length;
 
 		if (DebugFile.trace) {
@@ -347,9 +521,14 @@ public class CSVParser  {
 			DebugFile.writeln("descriptor has " + String.valueOf(iCols) + " columns");
 		}
 
-		if (bQuoted)
-			for (int c=0; c<iCols; c++)
-				ColNames[c] = (ColNames[c].replace('"',' ')).trim();
+		if (iParallelism>1 && CSVParallelIndexer.chunkCount(iBuffer, iParallelism)>1) {
+			parseDataParallel();
+			if (DebugFile.trace) {
+				DebugFile.decIdent();
+				DebugFile.writeln("End CSVParser.parseData()");
+			}
+			return;
+		}
 
 		// Contar el número de filas a partir de los saltos de línea
 		iRows = 1;
@@ -359,15 +538,16 @@ public class CSVParser  {
 
 		if (DebugFile.trace) DebugFile.writeln("input data has " + String.valueOf(iRows) + " lines");
 
-		RowPointers = new int[iRows];
-		ColPointers = new int[iRows][iCols];
+		ColPointers = CSVOffsets.create(eLayout, iRows, iCols);
 
 		int iRow = 0, iCol = 0;
 
-		if (DebugFile.trace) DebugFile.writeln("parsing line 0");
+		// Checked once per parse rather than once per row
+		final boolean bTraceRows = DebugFile.isEnabled(CSVParser.class, TraceLevel.TRACE);
+
+		if (bTraceRows) DebugFile.writeln(CSVParser.class, TraceLevel.TRACE, "parsing line 0");
 
-		RowPointers[iRow] = 0;
-		ColPointers[iRow][iCol] = 0;
+		ColPointers.set(iRow, iCol, 0);
 
 		bIgnore = false;
 
@@ -385,7 +565,7 @@ public class CSVParser  {
 						throw new ArrayIndexOutOfBoundsException("Columns count mismatch for line " + String.valueOf(iErrLine) + " expected " + String.valueOf(iCols) + " but found more.");
 					}
 					else
-						ColPointers[iRow][iCol] = p+1;
+						ColPointers.set(iRow, iCol, p+1);
 				}
 				else if (cAt=='\n') {
 					if (iCol!=iCols-1) {
@@ -395,10 +575,9 @@ public class CSVParser  {
 					iRow++;
 					iCol = 0;
 
-					if (DebugFile.trace) DebugFile.writeln("parsing line " + String.valueOf(iRow));
+					if (bTraceRows) DebugFile.writeln(CSVParser.class, TraceLevel.TRACE, "parsing line {}", iRow);
 
-					RowPointers[iRow] = p+1;
-					ColPointers[iRow][iCol] = p+1;
+					ColPointers.set(iRow, iCol, p+1);
 				}
 			} // fi (bIgnore)
 		} // next
@@ -413,10 +592,44 @@ public class CSVParser  {
 
 	// ----------------------------------------------------------
 
+	private void parseDataParallel() throws ArrayIndexOutOfBoundsException {
+		CSVParallelIndexer oIndexer = new CSVParallelIndexer(cBuffer, iBuffer, cDelimiter, bQuoted, iCols, iParallelism, eLayout);
+
+		if (DebugFile.trace) DebugFile.writeln("parsing " + String.valueOf(oIndexer.chunks()) + " chunks using " + String.valueOf(iParallelism) + " threads");
+
+		ForkJoinPool oPool = new ForkJoinPool(iParallelism);
+		try {
+			iRows = oIndexer.index(oPool);
+			ColPointers = oIndexer.colPointers();
+		} catch (ArrayIndexOutOfBoundsException aiob) {
+			iErrLine = oIndexer.errorLine();
+			if (DebugFile.trace) DebugFile.decIdent();
+			throw aiob;
+		} finally {
+			oPool.shutdown();
+		}
+
+		if (DebugFile.trace) DebugFile.writeln("input data has " + String.valueOf(iRows) + " lines");
+
+		iErrLine = 0;
+	} // parseDataParallel
+
+	// ----------------------------------------------------------
+
+	private static boolean isSpreadsheet(File oFile) {
+		final String sName = oFile.getName().toLowerCase();
+		return sName.endsWith(".xls") || sName.endsWith(".xlsx");
+	}
+
+	// ----------------------------------------------------------
+
 	/**
 	 * <p>Parse a delimited text file</p>
 	 * Parsed values are stored at an internal array in this CSVParser.<br>
-	 * File is readed using the character set specifid at constructor
+	 * File is readed using the character set specifid at constructor.<br>
+	 * Files with .xls or .xlsx extension are read as spreadsheets one cell at a time
+	 * applying the same rules as parseSheet() to their first sheet.
+	 * For spreadsheets the descriptor may be empty for taking column names from the first row.
 	 * @param oFile CSV File
 	 * @param sFileDescriptor A list of column names separated by ',' ';' '|' '`' or '\t'.
 	 * Column names may be quoted. Lines are delimiter by '\n' characters<br>
@@ -447,12 +660,14 @@ public class CSVParser  {
 			DebugFile.incIdent();
 		}
 
-		if (sFileDescriptor==null && !oFile.getName().endsWith(".xls")) {
+		final boolean bSpreadsheet = isSpreadsheet(oFile);
+
+		if (sFileDescriptor==null && !bSpreadsheet) {
 			if (DebugFile.trace) DebugFile.decIdent();
 			throw new NullPointerException("CSVParser.parseFile() File Descriptor parameter may not be null");
 		}
 
-		if (sFileDescriptor.trim().length()==0 && !oFile.getName().endsWith(".xls")) {
+		if (!bSpreadsheet && sFileDescriptor.trim().length()==0) {
 			if (DebugFile.trace) DebugFile.decIdent();
 			throw new IllegalArgumentException("File Descriptor parameter may not be an empty string");
 		}
@@ -470,12 +685,17 @@ public class CSVParser  {
 			return;
 		}
 
-		if (oFile.getName().endsWith(".xls")) {
-			FileInputStream oFistrm = new FileInputStream(oFile);
-			HSSFWorkbook oWrkb = new HSSFWorkbook(oFistrm);
-			HSSFSheet oSheet = oWrkb.getSheetAt(0);
-			oFistrm.close();
-			parseSheet(oSheet, sFileDescriptor);
+		if (bSpreadsheet) {
+			// Read cells as events without building the workbook object model
+			CSVSheetBuffer oSheet = new CSVSheetBuffer(sFileDescriptor);
+			if (oFile.getName().toLowerCase().endsWith(".xlsx"))
+				CSVSheetStream.readXLSX(oFile, oSheet);
+			else
+				CSVSheetStream.readXLS(oFile, oSheet);
+			if (DebugFile.trace) DebugFile.writeln("read " + String.valueOf(oSheet.length()) + " characters from first sheet");
+			cBuffer = oSheet.buffer();
+			iBuffer = oSheet.length();
+			parseData(cBuffer, oSheet.descriptor());
 		} else {
 
 			cBuffer = new char[iBuffer];
@@ -485,9 +705,16 @@ public class CSVParser  {
 			} else {
 				oReader = new InputStreamReader(new FileInputStream(oFile), sCharSet);
 			}
-			oReader.read(cBuffer);
+			// Multibyte encodings decode into less characters than bytes
+			int iRead = 0, iChars = 0;
+			while (iChars<iBuffer && (iRead=oReader.read(cBuffer, iChars, iBuffer-iChars))>0)
+				iChars += iRead;
 			oReader.close();
 			oReader = null;
+			if (iChars<iBuffer) {
+				cBuffer = Arrays.copyOf(cBuffer, iChars);
+				iBuffer = iChars;
+			}
 
 			// Skip Unicode characters prolog
 			if (sCharSet==null) {
@@ -496,7 +723,7 @@ public class CSVParser  {
 				if (sCharSet.startsWith("UTF") || sCharSet.startsWith("utf") || sCharSet.startsWith("Unicode")) {
 					int iSkip = 0;
 					if  ((int) cBuffer[0] == 65279 || (int) cBuffer[0] == 65533 || (int) cBuffer[0] == 65534) iSkip++;
-					if  ((int) cBuffer[1] == 65279 || (int) cBuffer[1] == 65533 || (int) cBuffer[1] == 65534) iSkip++;
+					if  (iBuffer>1 && ((int) cBuffer[1] == 65279 || (int) cBuffer[1] == 65533 || (int) cBuffer[1] == 65534)) iSkip++;
 
 					if (0==iSkip)
 						parseData (cBuffer, sFileDescriptor);
@@ -542,6 +769,100 @@ public class CSVParser  {
 
 	// ----------------------------------------------------------
 
+	/**
+	 * <p>Parse delimited text from a Reader one row at a time</p>
+	 * Unlike parseData() and parseFile() the input is not stored at this CSVParser,
+	 * only a window as large as the longest row is kept in memory.
+	 * @param oReader Reader
+	 * @param sFileDescriptor A list of column names separated by ',' ';' '|' '`' or '\t'.
+	 * Column names may be quoted. Lines are delimiter by '\n' characters<br>
+	 * @return CSVRowIterator which must be closed after use
+	 * @throws NullPointerException if oReader or sFileDescriptor are <b>null</b>
+	 * @throws IllegalArgumentException if sFileDescriptor is ""
+	 * @since 9.1
+	 */
+	public static CSVRowIterator stream(Reader oReader, String sFileDescriptor)
+		throws NullPointerException, IllegalArgumentException {
+		return new CSVRowIterator(oReader, sFileDescriptor);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Parse delimited text from an InputStream one row at a time</p>
+	 * @param oInStrm InputStream
+	 * @param sCharSetName Name of charset encoding or <b>null</b> for using the platform default
+	 * @param sFileDescriptor A list of column names separated by ',' ';' '|' '`' or '\t'.
+	 * @return CSVRowIterator which must be closed after use
+	 * @throws NullPointerException if oInStrm or sFileDescriptor are <b>null</b>
+	 * @throws IllegalArgumentException if sFileDescriptor is ""
+	 * @throws UnsupportedEncodingException
+	 * @since 9.1
+	 */
+	public static CSVRowIterator stream(InputStream oInStrm, String sCharSetName, String sFileDescriptor)
+		throws NullPointerException, IllegalArgumentException, UnsupportedEncodingException {
+		if (null==oInStrm)
+			throw new NullPointerException("CSVParser.stream() InputStream parameter may not be null");
+		if (null==sCharSetName)
+			return new CSVRowIterator(new InputStreamReader(oInStrm), sFileDescriptor);
+		else
+			return new CSVRowIterator(new InputStreamReader(oInStrm, sCharSetName), sFileDescriptor);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Parse a delimited text file one row at a time</p>
+	 * File is readed using the character set specified at constructor
+	 * @param oFile CSV File
+	 * @param sFileDescriptor A list of column names separated by ',' ';' '|' '`' or '\t'.
+	 * @return CSVRowIterator which must be closed after use
+	 * @throws FileNotFoundException
+	 * @throws NullPointerException if oFile or sFileDescriptor are <b>null</b>
+	 * @throws IllegalArgumentException if sFileDescriptor is ""
+	 * @throws UnsupportedEncodingException
+	 * @since 9.1
+	 */
+	public CSVRowIterator stream(File oFile, String sFileDescriptor)
+		throws FileNotFoundException, NullPointerException, IllegalArgumentException, UnsupportedEncodingException {
+		if (oFile==null)
+			throw new NullPointerException("CSVParser.stream() File parameter may not be null");
+		FileInputStream oFistrm = new FileInputStream(oFile);
+		try {
+			return stream(oFistrm, sCharSet, sFileDescriptor);
+		} catch (RuntimeException | UnsupportedEncodingException xcpt) {
+			try { oFistrm.close(); } catch (IOException ignore) { }
+			throw xcpt;
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Parse a delimited text file without loading it into memory</p>
+	 * The file is memory mapped and decoded using the character set specified at constructor,
+	 * which must be UTF-8 or a single byte character set compatible with ASCII.
+	 * @param oFile CSV File
+	 * @param sFileDescriptor A list of column names separated by ',' ';' '|' '`' or '\t'.
+	 * @return MappedCSVParser
+	 * @throws IOException
+	 * @throws FileNotFoundException
+	 * @throws ArrayIndexOutOfBoundsException If a line has more or less columns than the descriptor
+	 * @throws NullPointerException if oFile or sFileDescriptor are <b>null</b>
+	 * @throws IllegalArgumentException if sFileDescriptor is ""
+	 * @throws UnsupportedEncodingException If the character set is not supported by MappedCSVParser
+	 * @since 9.1
+	 */
+	public MappedCSVParser map(File oFile, String sFileDescriptor)
+		throws IOException, FileNotFoundException, ArrayIndexOutOfBoundsException,
+		NullPointerException, IllegalArgumentException, UnsupportedEncodingException {
+		MappedCSVParser oMapped = new MappedCSVParser(sCharSet);
+		oMapped.parseFile(oFile, sFileDescriptor);
+		return oMapped;
+	}
+
+	// ----------------------------------------------------------
+
 	/**
 	 * @param sColumnName Column Name
 	 * @return Zero based index for column position or -1 if column was not found.
@@ -572,6 +893,28 @@ public class CSVParser  {
 
 	// ----------------------------------------------------------
 
+	/**
+	 * Point a field view to the characters of a line without its trailing Carriage Return
+	 */
+	private CSVField locateLine(int iLine, CSVField oLine) {
+		final int iStart = ColPointers.get(iLine, 0);
+		int iEnd = iBuffer;
+
+		// Search for line feed
+		for (int p=iStart; p<iBuffer; p++)
+			if (cBuffer[p]=='\n') {
+				iEnd = p;
+				break;
+			} // fi ()
+
+		// Remove last Carriage Return (CR, CHAR(13), '\r') character
+		if (iEnd>iStart && cBuffer[iEnd-1]=='\r') --iEnd;
+
+		return oLine.wrap(cBuffer, iStart, iEnd);
+	} // locateLine
+
+	// ----------------------------------------------------------
+
 	/**
 	 * <p>Get line from a parsed file.</p>
 	 * Lines are delimited by the Line Feed (LF, CHAR(10), '\n') character
@@ -582,7 +925,6 @@ public class CSVParser  {
 	 */
 	public String getLine(int iLine) throws IllegalStateException, UnsupportedEncodingException {
 		String sRetVal;
-		int iStart, iEnd;
 
 		if (DebugFile.trace) {
 			DebugFile.writeln("Begin CSVParser.getLine(" + String.valueOf(iLine) + ")");
@@ -593,41 +935,9 @@ public class CSVParser  {
 			throw new IllegalStateException("Must call parseFile() on a valid non-empty delimited file before calling getField() method");
 
 		if (iLine<0 || iLine>iRows-1)
-
 			sRetVal = null;
-
-		else {
-
-			iStart = ColPointers[iLine][0];
-			iEnd = iBuffer;
-
-			// Search for line feed
-			for (int p=iStart; p<iBuffer; p++)
-				if (cBuffer[p]=='\n') {
-					iEnd = p;
-					break;
-				} // fi ()
-
-			if (iStart==iEnd)
-				sRetVal = "";
-			else {
-				// Remove last Carriage Return (CR, CHAR(13), '\r') character
-				if (iEnd-1>iStart) {
-					if (cBuffer[iEnd-1]=='\r') --iEnd;
-					if (iStart==iEnd)
-						sRetVal = "";
-					else
-						sRetVal = new String(cBuffer, iStart, iEnd - iStart);
-				}
-				else {
-					if (cBuffer[iStart]=='\r')
-						sRetVal = "";
-					else
-						sRetVal = new String(cBuffer, iStart, iEnd - iStart);
-				}
-			}
-
-		} // fi (iRow<0 || iRow>iRows-1)
+		else
+			sRetVal = locateLine(iLine, new CSVField()).toString();
 
 		if (DebugFile.trace) {
 			DebugFile.decIdent();
@@ -639,6 +949,24 @@ public class CSVParser  {
 
 	// ----------------------------------------------------------
 
+	/**
+	 * <p>Get a view of a line from a parsed file without copying its characters.</p>
+	 * @param iLine Line Number [0..getLineCount()-1]
+	 * @param oReuse CSVField instance that will be pointed to the line or <b>null</b> for creating a new one
+	 * @return Line view or <b>null</b> if iLine&lt;0 or iLine&gt;=getLineCount()
+	 * @throws IllegalStateException If parseFile() has not been called prior to getLineView()
+	 * @since 9.1
+	 */
+	public CSVField getLineView(int iLine, CSVField oReuse) throws IllegalStateException {
+		if (0 == iBuffer)
+			throw new IllegalStateException("Must call parseFile() on a valid non-empty delimited file before calling getLineView() method");
+		if (iLine<0 || iLine>iRows-1)
+			return null;
+		return locateLine(iLine, oReuse==null ? new CSVField() : oReuse);
+	} // getLineView
+
+	// ----------------------------------------------------------
+
 	/**
 	 * <p>Get line from a parsed file as a Map of named values.</p>
 	 * This method is usefull when parsing plain text lines into DBPersist instances
@@ -663,6 +991,46 @@ public class CSVParser  {
 
 	// ----------------------------------------------------------
 
+	/**
+	 * Point a field view to the characters of a field removing its trailing blanks and its quotes
+	 * @throws StringIndexOutOfBoundsException If Row is malformed.
+	 */
+	private CSVField locateField(int iCol, int iRow, CSVField oField)
+		throws ArrayIndexOutOfBoundsException, StringIndexOutOfBoundsException {
+		final int iStart = ColPointers.get(iRow, iCol);
+		int iEnd;
+
+		if (iCol<iCols-1)
+			iEnd = ColPointers.get(iRow, iCol+1)-1;
+		else if (iRow<iRows-1)
+			iEnd = ColPointers.get(iRow+1, 0)-1;
+		else
+			iEnd = iBuffer;
+
+		if (iEnd>0 && iEnd<iBuffer) {
+			if (bQuoted) {
+				while (cBuffer[iEnd - 1] == '\r' || cBuffer[iEnd - 1] == ' ' ||
+						cBuffer[iEnd - 1] == '\t')
+					if (--iEnd == 0)
+						break;
+			}
+			else {
+				if (cBuffer[iEnd-1]=='\r') iEnd--;
+			}
+		}
+		else if (iEnd<0)
+			iEnd = 0;
+
+		if (iStart==iEnd)
+			return oField.wrap(cBuffer, iStart, iStart);
+		else if (bQuoted)
+			return oField.wrap(cBuffer, iStart+1, iEnd-1);
+		else
+			return oField.wrap(cBuffer, iStart, iEnd);
+	} // locateField
+
+	// ----------------------------------------------------------
+
 	/**
 	 * <p>Get value for a field at a given row and column.</p>
 	 * Column indexes are zero based.<br>
@@ -679,8 +1047,6 @@ public class CSVParser  {
 	public String getField(int iCol, int iRow)
 			throws IllegalStateException, ArrayIndexOutOfBoundsException,
 			StringIndexOutOfBoundsException, UnsupportedEncodingException {
-		int iStart;
-		int iEnd;
 		String sRetVal;
 
 		if (DebugFile.trace) {
@@ -703,41 +1069,7 @@ public class CSVParser  {
 
 		iErrLine = iRow;
 
-		iStart = ColPointers[iRow][iCol];
-
-		if (DebugFile.trace) DebugFile.writeln("iStart=" + String.valueOf(iStart));
-
-		if (iCol<iCols-1)
-			iEnd = ColPointers[iRow][iCol+1]-1;
-		else if (iRow<iRows-1)
-			iEnd = ColPointers[iRow+1][0]-1;
-		else
-			iEnd = iBuffer;
-
-		if (DebugFile.trace) DebugFile.writeln("triming trailing spaces from " + String.valueOf(iEnd));
-
-		if (iEnd>0 && iEnd<iBuffer) {
-			if (bQuoted) {
-				while (cBuffer[iEnd - 1] == '\r' || cBuffer[iEnd - 1] == ' ' ||
-						cBuffer[iEnd - 1] == '\t')
-					if (--iEnd == 0)
-						break;
-			}
-			else {
-				if (cBuffer[iEnd-1]=='\r') iEnd--;
-			}
-		}
-		else if (iEnd<0)
-			iEnd = 0;
-
-		if (DebugFile.trace) DebugFile.writeln("iEnd=" + String.valueOf(iEnd));
-
-		if (iStart==iEnd)
-			sRetVal = "";
-		else if (bQuoted)
-			sRetVal = new String(cBuffer, iStart+1, iEnd-iStart-2);
-		else
-			sRetVal = new String(cBuffer, iStart, iEnd-iStart);
+		sRetVal = locateField(iCol, iRow, new CSVField()).toString();
 
 		iErrLine = 0;
 
@@ -751,6 +1083,34 @@ public class CSVParser  {
 
 	// ----------------------------------------------------------
 
+	/**
+	 * <p>Get a view of a field at a given row and column without copying its characters.</p>
+	 * The returned view points to the internal buffer of this CSVParser
+	 * and it is valid only until next call to parseData() or parseFile().
+	 * For scanning a column pass the same CSVField instance on every call.
+	 * @param iCol Column Index
+	 * @param iRow Row Index
+	 * @param oReuse CSVField instance that will be pointed to the field or <b>null</b> for creating a new one
+	 * @return Field view or <b>null</b> if iCol or iRow are -1
+	 * @throws IllegalStateException If parseFile() method was not called prior to getFieldView()
+	 * @throws ArrayIndexOutOfBoundsException If Column or Row Index is out of bounds.
+	 * @throws StringIndexOutOfBoundsException If Row is malformed.
+	 * @since 9.1
+	 */
+	public CSVField getFieldView(int iCol, int iRow, CSVField oReuse)
+			throws IllegalStateException, ArrayIndexOutOfBoundsException, StringIndexOutOfBoundsException {
+
+		if (0 == iBuffer)
+			throw new IllegalStateException("Must call parseFile() on a valid non-empty delimited file before calling getFieldView() method");
+
+		if (-1==iCol || -1==iRow)
+			return null;
+
+		return locateField(iCol, iRow, oReuse==null ? new CSVField() : oReuse);
+	} // getFieldView
+
+	// ----------------------------------------------------------
+
 	/**
 	 * <p>Get value for a field at a given row and column.</p>
 	 * @param sCol Column name
@@ -785,13 +1145,17 @@ public class CSVParser  {
 	 * @since 3.0
 	 */
 	public int find (int iCol, String sVal) throws UnsupportedEncodingException {
+		if (bIndexed && iRows>0)
+			return columnIndex(iCol, false).first(sVal);
 		int iFound = -1;
 		int r = 0;
+		CSVField oFld = new CSVField();
 		while (r<iRows) {
-			if (getField(iCol,r).equals(sVal)) {
+			if (getFieldView(iCol,r,oFld).contentEquals(sVal)) {
 				iFound = r;
 				break;
 			}
+			r++;
 		} // wend
 		return iFound;
 	} // find
@@ -808,19 +1172,252 @@ public class CSVParser  {
 	 * @since 3.0
 	 */
 	public int findi (int iCol, String sVal) throws UnsupportedEncodingException {
+		if (bIndexed && iRows>0)
+			return columnIndex(iCol, true).first(sVal);
 		int iFound = -1;
 		int r = 0;
+		CSVField oFld = new CSVField();
 		while (r<iRows) {
-			if (getField(iCol,r).equalsIgnoreCase(sVal)) {
+			if (getFieldView(iCol,r,oFld).equalsIgnoreCase(sVal)) {
 				iFound = r;
 				break;
 			}
+			r++;
 		} // wend
 		return iFound;
 	} // findi
 
 	// ----------------------------------------------------------
 
+	private int[] scanAll(int iCol, String sVal, boolean bIgnoreCase) {
+		int[] aFound = new int[8];
+		int nFound = 0;
+		CSVField oFld = new CSVField();
+		for (int r=0; r<iRows; r++) {
+			getFieldView(iCol,r,oFld);
+			if (bIgnoreCase ? oFld.equalsIgnoreCase(sVal) : oFld.contentEquals(sVal)) {
+				if (nFound==aFound.length) aFound = Arrays.copyOf(aFound, nFound*2);
+				aFound[nFound++] = r;
+			}
+		} // next
+		return Arrays.copyOf(aFound, nFound);
+	} // scanAll
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Find all occurences of a value at a given column</p>
+	 * Search is case sensitive
+	 * @param iCol int Column index [0..getColumnCount()-1]
+	 * @param sVal String Value sought
+	 * @return int[] Indexes of matching rows in ascending order or an empty array if no row matches
+	 * @since 9.1
+	 */
+	public int[] findAll (int iCol, String sVal) {
+		if (bIndexed && iRows>0)
+			return columnIndex(iCol, false).all(sVal);
+		else
+			return scanAll(iCol, sVal, false);
+	} // findAll
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Find all occurences of a value at a given column</p>
+	 * Search is case insensitive
+	 * @param iCol int Column index [0..getColumnCount()-1]
+	 * @param sVal String Value sought
+	 * @return int[] Indexes of matching rows in ascending order or an empty array if no row matches
+	 * @since 9.1
+	 */
+	public int[] findAlli (int iCol, String sVal) {
+		if (bIndexed && iRows>0)
+			return columnIndex(iCol, true).all(sVal);
+		else
+			return scanAll(iCol, sVal, true);
+	} // findAlli
+
+	// ----------------------------------------------------------
+
+	private void checkColumn(int iCol, CSVColumnErrors oErrors)
+		throws IllegalStateException, ArrayIndexOutOfBoundsException {
+		if (0 == iBuffer)
+			throw new IllegalStateException("Must call parseFile() on a valid non-empty delimited file before getting a column");
+		if (iCol<0 || iCol>=iCols)
+			throw new ArrayIndexOutOfBoundsException("Column index " + String.valueOf(iCol) + " out of bounds");
+		if (null!=oErrors) oErrors.clear(iCol);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Point a field view to the trimmed value of a field
+	 * @return CSVField or <b>null</b> if the field is empty or it could not be located
+	 */
+	private CSVField columnValue(int iCol, int iRow, CSVField oFld, CSVColumnErrors oErrors)
+		throws NumberFormatException {
+		try {
+			locateField(iCol, iRow, oFld).trim();
+		} catch (StringIndexOutOfBoundsException sioobe) {
+			if (null==oErrors)
+				throw new NumberFormatException("Malformed field at column " + ColNames[iCol] + " row " + String.valueOf(iRow));
+			oErrors.error(iRow, null);
+			return null;
+		}
+		if (oFld.isEmpty()) {
+			if (null!=oErrors) oErrors.empty();
+			return null;
+		}
+		return oFld;
+	}
+
+	// ----------------------------------------------------------
+
+	private static void columnError(int iRow, String sColName, CSVField oFld, NumberFormatException nfe, CSVColumnErrors oErrors)
+		throws NumberFormatException {
+		if (null==oErrors)
+			throw new NumberFormatException("Invalid value at column " + sColName + " row " + String.valueOf(iRow) + " " + nfe.getMessage());
+		oErrors.error(iRow, oFld.toString());
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Get all the values of a column as int</p>
+	 * Values are parsed directly from the internal buffer without creating intermediate Strings.
+	 * Leading and trailing blanks are ignored.
+	 * @param iCol int Column index [0..getColumnCount()-1]
+	 * @param iDefault Value for empty fields and for fields which can not be parsed
+	 * @param oErrors Report of the values which could not be parsed.
+	 * If <b>null</b> then the first invalid value throws NumberFormatException
+	 * @return int[] with getLineCount() elements
+	 * @throws NumberFormatException If oErrors is <b>null</b> and a value is not a valid int
+	 * @throws IllegalStateException If parseFile() has not been called
+	 * @throws ArrayIndexOutOfBoundsException If column index is out of bounds
+	 * @since 9.1
+	 */
+	public int[] getIntColumn(int iCol, int iDefault, CSVColumnErrors oErrors)
+		throws NumberFormatException, IllegalStateException, ArrayIndexOutOfBoundsException {
+		checkColumn(iCol, oErrors);
+		final int[] aValues = new int[iRows];
+		final CSVField oFld = new CSVField();
+		for (int r=0; r<iRows; r++) {
+			aValues[r] = iDefault;
+			if (null!=columnValue(iCol, r, oFld, oErrors)) {
+				try {
+					aValues[r] = oFld.parseInt();
+				} catch (NumberFormatException nfe) {
+					columnError(r, ColNames[iCol], oFld, nfe, oErrors);
+				}
+			}
+		} // next
+		return aValues;
+	} // getIntColumn
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Get all the values of a column as long</p>
+	 * Values are parsed directly from the internal buffer without creating intermediate Strings.
+	 * Leading and trailing blanks are ignored.
+	 * @param iCol int Column index [0..getColumnCount()-1]
+	 * @param lDefault Value for empty fields and for fields which can not be parsed
+	 * @param oErrors Report of the values which could not be parsed.
+	 * If <b>null</b> then the first invalid value throws NumberFormatException
+	 * @return long[] with getLineCount() elements
+	 * @throws NumberFormatException If oErrors is <b>null</b> and a value is not a valid long
+	 * @throws IllegalStateException If parseFile() has not been called
+	 * @throws ArrayIndexOutOfBoundsException If column index is out of bounds
+	 * @since 9.1
+	 */
+	public long[] getLongColumn(int iCol, long lDefault, CSVColumnErrors oErrors)
+		throws NumberFormatException, IllegalStateException, ArrayIndexOutOfBoundsException {
+		checkColumn(iCol, oErrors);
+		final long[] aValues = new long[iRows];
+		final CSVField oFld = new CSVField();
+		for (int r=0; r<iRows; r++) {
+			aValues[r] = lDefault;
+			if (null!=columnValue(iCol, r, oFld, oErrors)) {
+				try {
+					aValues[r] = oFld.parseLong();
+				} catch (NumberFormatException nfe) {
+					columnError(r, ColNames[iCol], oFld, nfe, oErrors);
+				}
+			}
+		} // next
+		return aValues;
+	} // getLongColumn
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Get all the values of a column as double</p>
+	 * Values are parsed directly from the internal buffer without creating intermediate Strings.
+	 * Leading and trailing blanks are ignored.
+	 * @param iCol int Column index [0..getColumnCount()-1]
+	 * @param dDefault Value for empty fields and for fields which can not be parsed
+	 * @param oErrors Report of the values which could not be parsed.
+	 * If <b>null</b> then the first invalid value throws NumberFormatException
+	 * @return double[] with getLineCount() elements
+	 * @throws NumberFormatException If oErrors is <b>null</b> and a value is not a valid double
+	 * @throws IllegalStateException If parseFile() has not been called
+	 * @throws ArrayIndexOutOfBoundsException If column index is out of bounds
+	 * @since 9.1
+	 */
+	public double[] getDoubleColumn(int iCol, double dDefault, CSVColumnErrors oErrors)
+		throws NumberFormatException, IllegalStateException, ArrayIndexOutOfBoundsException {
+		checkColumn(iCol, oErrors);
+		final double[] aValues = new double[iRows];
+		final CSVField oFld = new CSVField();
+		for (int r=0; r<iRows; r++) {
+			aValues[r] = dDefault;
+			if (null!=columnValue(iCol, r, oFld, oErrors)) {
+				try {
+					aValues[r] = oFld.parseDouble();
+				} catch (NumberFormatException nfe) {
+					columnError(r, ColNames[iCol], oFld, nfe, oErrors);
+				}
+			}
+		} // next
+		return aValues;
+	} // getDoubleColumn
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Get all the values of a column as Money amounts of the same currency</p>
+	 * Values are parsed directly from the internal buffer without creating intermediate Strings.
+	 * They must use dot as decimal delimiter and have no currency sign.
+	 * Leading and trailing blanks are ignored.
+	 * @param iCol int Column index [0..getColumnCount()-1]
+	 * @param oCurrency CurrencyCode
+	 * @param oErrors Report of the values which could not be parsed.
+	 * If <b>null</b> then the first invalid value throws NumberFormatException
+	 * @return Money[] with getLineCount() elements which are <b>null</b> for empty or invalid values
+	 * @throws NumberFormatException If oErrors is <b>null</b> and a value is not a valid decimal number
+	 * @throws IllegalStateException If parseFile() has not been called
+	 * @throws ArrayIndexOutOfBoundsException If column index is out of bounds
+	 * @since 9.1
+	 */
+	public Money[] getMoneyColumn(int iCol, CurrencyCode oCurrency, CSVColumnErrors oErrors)
+		throws NumberFormatException, IllegalStateException, ArrayIndexOutOfBoundsException {
+		checkColumn(iCol, oErrors);
+		final Money[] aValues = new Money[iRows];
+		final CSVField oFld = new CSVField();
+		for (int r=0; r<iRows; r++) {
+			if (null!=columnValue(iCol, r, oFld, oErrors)) {
+				try {
+					aValues[r] = new Money(oFld.parseDecimal(), oCurrency);
+				} catch (NumberFormatException nfe) {
+					columnError(r, ColNames[iCol], oFld, nfe, oErrors);
+				}
+			}
+		} // next
+		return aValues;
+	} // getMoneyColumn
+
+	// ----------------------------------------------------------
+
 	/**
 	 * Write CSVParser matrix to an output stream
 	 * @param oStrm OutputStream
@@ -0,0 +1,212 @@
+package com.knowgate.stringutils;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.HashMap;
+
+/**
+ * <p>View of a single row of delimited text</p>
+ * Instances of this class are returned by CSVRowIterator and point directly
+ * to its read window, so they are only valid until the iterator is advanced.
+ * @version 9.1
+ */
+public class CSVRow {
+
+	private final String[] ColNames;
+	private final int iCols;
+	private final boolean bQuoted;
+	private final int[] ColStarts;
+	private char[] cBuffer;
+	private int iRow;
+	private int iRowStart;
+	private int iRowEnd;
+	private int iNextRowStart;
+	private boolean bLast;
+
+	// ----------------------------------------------------------
+
+	CSVRow(String[] aColNames, boolean bQuotedFields) {
+		ColNames = aColNames;
+		iCols = aColNames.length;
+		bQuoted = bQuotedFields;
+		ColStarts = new int[iCols];
+		iRow = -1;
+	}
+
+	// ----------------------------------------------------------
+
+	int[] colStarts() {
+		return ColStarts;
+	}
+
+	// ----------------------------------------------------------
+
+	int nextRowStart() {
+		return iNextRowStart;
+	}
+
+	// ----------------------------------------------------------
+
+	void set(char[] aBuffer, int iRowNum, int iStart, int iEnd, int iNextStart, boolean bLastRow) {
+		cBuffer = aBuffer;
+		iRow = iRowNum;
+		iRowStart = iStart;
+		iRowEnd = iEnd;
+		iNextRowStart = iNextStart;
+		bLast = bLastRow;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Zero based number of this row
+	 */
+	public int getLineNumber() {
+		return iRow;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Column count as given by the file descriptor
+	 */
+	public int getColumnCount() {
+		return iCols;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @param sColumnName Column Name
+	 * @return Zero based index for column position or -1 if column was not found.
+	 */
+	public int getColumnPosition(String sColumnName) {
+		for (int c=0; c<iCols; c++)
+			if (ColNames[c].equalsIgnoreCase(sColumnName))
+				return c;
+		return -1;
+	} // getColumnPosition
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Get full text of this row.</p>
+	 * The trailing Carriage Return character is removed.
+	 * @return String
+	 */
+	public String getLine() {
+		int iEnd = iRowEnd;
+		if (iEnd>iRowStart && cBuffer[iEnd-1]=='\r') iEnd--;
+		return new String(cBuffer, iRowStart, iEnd-iRowStart);
+	} // getLine
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Get a view of a field of this row without copying its characters.</p>
+	 * Trailing characters are trimmed and quotes are removed the same way as CSVParser.getField() does.
+	 * @param iCol Column Index
+	 * @param oReuse CSVField instance that will be pointed to the field or <b>null</b> for creating a new one
+	 * @return Field view. If the last row has less columns than the descriptor
+	 * then missing columns are returned as empty views.
+	 * @throws ArrayIndexOutOfBoundsException If Column Index is out of bounds.
+	 * @throws StringIndexOutOfBoundsException If Row is malformed.
+	 */
+	public CSVField getFieldView(int iCol, CSVField oReuse)
+		throws ArrayIndexOutOfBoundsException, StringIndexOutOfBoundsException {
+
+		final CSVField oField = oReuse==null ? new CSVField() : oReuse;
+		final int iStart = ColStarts[iCol];
+		int iEnd;
+
+		if (-1==iStart) return oField.wrap(cBuffer, iRowEnd, iRowEnd);
+
+		if (iCol<iCols-1 && ColStarts[iCol+1]!=-1)
+			iEnd = ColStarts[iCol+1]-1;
+		else
+			iEnd = iRowEnd;
+
+		// The last field of the last row has already been trimmed
+		if (!bLast || iEnd!=iRowEnd) {
+			if (bQuoted) {
+				while (iEnd>iStart && (cBuffer[iEnd-1]=='\r' || cBuffer[iEnd-1]==' ' || cBuffer[iEnd-1]=='\t'))
+					iEnd--;
+			} else {
+				if (iEnd>iStart && cBuffer[iEnd-1]=='\r') iEnd--;
+			}
+		}
+
+		if (iStart==iEnd)
+			return oField.wrap(cBuffer, iStart, iStart);
+		else if (bQuoted)
+			return oField.wrap(cBuffer, iStart+1, iEnd-1);
+		else
+			return oField.wrap(cBuffer, iStart, iEnd);
+	} // getFieldView
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Get value for a field of this row.</p>
+	 * Trailing characters are trimmed and quotes are removed the same way as CSVParser.getField() does.
+	 * @param iCol Column Index
+	 * @return Field Value. If the last row has less columns than the descriptor
+	 * then missing columns are returned as empty strings.
+	 * @throws ArrayIndexOutOfBoundsException If Column Index is out of bounds.
+	 * @throws StringIndexOutOfBoundsException If Row is malformed.
+	 */
+	public String getField(int iCol)
+		throws ArrayIndexOutOfBoundsException, StringIndexOutOfBoundsException {
+		return getFieldView(iCol, new CSVField()).toString();
+	} // getField
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Get value for a field of this row.</p>
+	 * @param sCol Column name
+	 * @return Field value
+	 * @throws ArrayIndexOutOfBoundsException If there is no column with the given name
+	 * @throws StringIndexOutOfBoundsException If Row is malformed.
+	 */
+	public String getField(String sCol)
+		throws ArrayIndexOutOfBoundsException, StringIndexOutOfBoundsException {
+
+		int iCol = getColumnPosition(sCol);
+
+		if (iCol==-1)
+			throw new ArrayIndexOutOfBoundsException ("Column " + sCol + " not found");
+
+		return getField (iCol);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Get this row as a Map of named values.</p>
+	 * @return HashMap
+	 */
+	public HashMap<String,String> getLineAsMap() {
+		HashMap<String,String> oMap = new HashMap<String,String>(iCols*2);
+		for (int c=0; c<iCols; c++)
+			oMap.put(ColNames[c], getField(c));
+		return oMap;
+	} // getLineAsMap
+
+	// ----------------------------------------------------------
+
+	@Override
+	public String toString() {
+		return getLine();
+	}
+
+}
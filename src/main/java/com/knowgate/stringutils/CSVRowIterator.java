@@ -0,0 +1,360 @@
+package com.knowgate.stringutils;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.knowgate.debug.DebugFile;
+
+/**
+ * <p>Row at a time delimited text parser</p>
+ * <p>Iterates over the rows of a delimited text read from a Reader
+ * applying the same descriptor, delimiter and quoting rules as CSVParser.parseData()
+ * but holding only a window of the input which is as large as the longest row.</p>
+ * <p>The CSVRow returned by next() is a view over the internal window,
+ * it is reused and it is only valid until the next call to hasNext() or next().</p>
+ * <p>Iteration methods wrap any IOException thrown by the underlying Reader
+ * into a RuntimeException and throw ArrayIndexOutOfBoundsException
+ * if a row has more or less columns than the descriptor.</p>
+ * @version 9.1
+ */
+public class CSVRowIterator implements Iterator<CSVRow>, Closeable {
+
+	public static final int DEFAULT_WINDOW_SIZE = 65536;
+
+	private Reader oReader;
+	private char[] cWindow;     // Ventana de caracteres leídos del Reader
+	private int iWinStart;      // Posición del primer carácter aún no consumido
+	private int iWinEnd;        // Posición siguiente al último carácter leído
+	private boolean bEOF;
+	private boolean bFetched;
+	private boolean bHasNext;
+	private boolean bPrologue;
+	private int iRow;
+	private int iErrLine;
+
+	private final char cDelimiter;
+	private final boolean bQuoted;
+	private final String[] ColNames;
+	private final int iCols;
+	private final CSVRow oRow;
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Create row iterator with default window size
+	 * @param oInput Reader
+	 * @param sFileDescriptor A list of column names separated by ',' ';' '|' '`' or '\t'.
+	 * @throws NullPointerException if oInput or sFileDescriptor are <b>null</b>
+	 * @throws IllegalArgumentException if sFileDescriptor is ""
+	 */
+	public CSVRowIterator(Reader oInput, String sFileDescriptor)
+		throws NullPointerException, IllegalArgumentException {
+		this(oInput, sFileDescriptor, DEFAULT_WINDOW_SIZE);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Create row iterator
+	 * @param oInput Reader
+	 * @param sFileDescriptor A list of column names separated by ',' ';' '|' '`' or '\t'.
+	 * @param iWindowSize Initial size in characters of the read window.
+	 * The window is only enlarged if a single row does not fit into it.
+	 * @throws NullPointerException if oInput or sFileDescriptor are <b>null</b>
+	 * @throws IllegalArgumentException if sFileDescriptor is "" or iWindowSize is less than 16
+	 */
+	public CSVRowIterator(Reader oInput, String sFileDescriptor, int iWindowSize)
+		throws NullPointerException, IllegalArgumentException {
+
+		if (null==oInput)
+			throw new NullPointerException("CSVRowIterator Reader may not be null");
+		if (null==sFileDescriptor)
+			throw new NullPointerException("CSVRowIterator File Descriptor parameter may not be null");
+		if (sFileDescriptor.trim().length()==0)
+			throw new IllegalArgumentException("File Descriptor parameter may not be an empty string");
+		if (iWindowSize<16)
+			throw new IllegalArgumentException("CSVRowIterator window size must be at least 16 characters");
+
+		oReader = oInput;
+		cWindow = new char[iWindowSize];
+		iWinStart = iWinEnd = 0;
+		bEOF = bFetched = bHasNext = false;
+		bPrologue = true;
+		iRow = -1;
+		iErrLine = 0;
+
+		bQuoted = CSVParser.isQuoted(sFileDescriptor);
+		cDelimiter = CSVParser.delimiterOf(sFileDescriptor);
+		ColNames = CSVParser.columnNamesOf(sFileDescriptor, cDelimiter, bQuoted);
+		iCols = ColNames.length;
+		oRow = new CSVRow(ColNames, bQuoted);
+	}
+
+	// ----------------------------------------------------------
+
+	public char getDelimiter() {
+		return cDelimiter;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Get column count
+	 * @return int
+	 */
+	public int getColumnCount() {
+		return iCols;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Line number where the last parsing error happened or zero if there was no error
+	 */
+	public int errorLine() {
+		return iErrLine;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Current size in characters of the read window
+	 */
+	public int windowSize() {
+		return cWindow.length;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Read more characters into the window.
+	 * Already consumed characters are discarded and the window is only enlarged
+	 * when the unconsumed characters fill it completely.
+	 * @return <b>false</b> if end of input was reached and no more characters were read
+	 * @throws IOException
+	 */
+	private boolean fill() throws IOException {
+		if (bEOF) return false;
+		if (iWinStart>0) {
+			System.arraycopy(cWindow, iWinStart, cWindow, 0, iWinEnd-iWinStart);
+			iWinEnd -= iWinStart;
+			iWinStart = 0;
+		}
+		if (iWinEnd==cWindow.length) {
+			char[] cLarger = new char[cWindow.length*2];
+			System.arraycopy(cWindow, 0, cLarger, 0, iWinEnd);
+			cWindow = cLarger;
+		}
+		int iRead = oReader.read(cWindow, iWinEnd, cWindow.length-iWinEnd);
+		if (iRead<0) {
+			bEOF = true;
+			return false;
+		}
+		iWinEnd += iRead;
+		return true;
+	} // fill
+
+	// ----------------------------------------------------------
+
+	private static boolean isBlank(char c) {
+		return c==' ' || c=='\n' || c=='\r' || c=='\t';
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Check whether there are only blanks from a position to the end of input.
+	 * @param iOffset int Offset relative to the window start
+	 * @throws IOException
+	 */
+	private boolean restIsBlank(int iOffset) throws IOException {
+		while (true) {
+			while (iWinStart+iOffset<iWinEnd) {
+				if (!isBlank(cWindow[iWinStart+iOffset])) return false;
+				iOffset++;
+			}
+			if (!fill()) return true;
+		}
+	} // restIsBlank
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Skip Unicode characters prolog
+	 * @throws IOException
+	 */
+	private void skipPrologue() throws IOException {
+		bPrologue = false;
+		for (int s=0; s<2; s++) {
+			if (iWinStart==iWinEnd && !fill()) return;
+			final int c = (int) cWindow[iWinStart];
+			if (c == 65279 || c == 65533 || c == 65534)
+				iWinStart++;
+			else
+				break;
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Locate column starts for a row
+	 * @param iLength Number of row characters to be scanned
+	 * @param bCheckCount Whether to check that the row has exactly as many columns as the descriptor
+	 * @return Number of columns found
+	 */
+	private int scanColumns(int iLength, boolean bCheckCount) {
+		final int[] aColStarts = oRow.colStarts();
+		boolean bIgnore = false;
+		int iCol = 0;
+		aColStarts[0] = iWinStart;
+		for (int p=iWinStart; p<iWinStart+iLength; p++) {
+			final char cAt = cWindow[p];
+			if (cAt=='"' && bQuoted) bIgnore = !bIgnore;
+			if (!bIgnore && cAt==cDelimiter) {
+				if (++iCol>=iCols) {
+					iErrLine = iRow+1;
+					throw new ArrayIndexOutOfBoundsException("Columns count mismatch for line " + String.valueOf(iErrLine) + " expected " + String.valueOf(iCols) + " but found more.");
+				}
+				aColStarts[iCol] = p+1;
+			}
+		}
+		if (bCheckCount && iCol!=iCols-1) {
+			iErrLine = iRow+1;
+			throw new ArrayIndexOutOfBoundsException("Columns count mismatch for line " + String.valueOf(iErrLine) + " expected " + String.valueOf(iCols) + " and found only " + String.valueOf(iCol+1));
+		}
+		for (int c=iCol+1; c<iCols; c++)
+			aColStarts[c] = -1;
+		return iCol+1;
+	} // scanColumns
+
+	// ----------------------------------------------------------
+
+	private void fetch() throws IOException {
+		bFetched = true;
+		bHasNext = false;
+
+		if (bPrologue) skipPrologue();
+
+		// Move window start past the previous row
+		if (iRow>=0) iWinStart = oRow.nextRowStart();
+
+		// Trailing blanks at the end of input are ignored
+		if (restIsBlank(0)) return;
+
+		iRow++;
+
+		// Find the next line feed which is not inside quotes
+		boolean bIgnore = false;
+		int iOffset = 0;
+		int iLength = -1;
+		while (iLength<0) {
+			if (iWinStart+iOffset==iWinEnd) {
+				if (!fill()) {
+					iLength = iOffset;
+					break;
+				}
+			}
+			final char cAt = cWindow[iWinStart+iOffset];
+			if (cAt=='"' && bQuoted) bIgnore = !bIgnore;
+			if (!bIgnore && cAt=='\n')
+				iLength = iOffset;
+			else
+				iOffset++;
+		} // wend
+
+		final boolean bLast = restIsBlank(iLength);
+
+		if (bLast) {
+			// Remove trailing blanks from the last row
+			while (iLength>0 && isBlank(cWindow[iWinStart+iLength-1])) iLength--;
+			scanColumns(iLength, false);
+			oRow.set(cWindow, iRow, iWinStart, iWinStart+iLength, iWinEnd, true);
+		} else {
+			scanColumns(iLength, true);
+			oRow.set(cWindow, iRow, iWinStart, iWinStart+iLength, iWinStart+iLength+1, false);
+		}
+
+		iErrLine = 0;
+		bHasNext = true;
+	} // fetch
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return <b>true</b> if there are more rows to be read
+	 * @throws RuntimeException wrapping an IOException thrown by the Reader
+	 * @throws ArrayIndexOutOfBoundsException if next row does not have as many columns as the descriptor
+	 */
+	@Override
+	public boolean hasNext() throws RuntimeException, ArrayIndexOutOfBoundsException {
+		if (!bFetched) {
+			try {
+				fetch();
+			} catch (IOException ioe) {
+				if (DebugFile.trace) DebugFile.writeln("IOException at CSVRowIterator.hasNext() " + ioe.getMessage());
+				throw new RuntimeException(ioe.getMessage(), ioe);
+			}
+		}
+		return bHasNext;
+	} // hasNext
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Get next row
+	 * @return CSVRow This instance is reused by every call to next()
+	 * @throws NoSuchElementException if there are no more rows
+	 * @throws RuntimeException wrapping an IOException thrown by the Reader
+	 * @throws ArrayIndexOutOfBoundsException if next row does not have as many columns as the descriptor
+	 */
+	@Override
+	public CSVRow next() throws NoSuchElementException, RuntimeException, ArrayIndexOutOfBoundsException {
+		if (!hasNext())
+			throw new NoSuchElementException("CSVRowIterator no more rows");
+		bFetched = false;
+		return oRow;
+	} // next
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @throws UnsupportedOperationException
+	 */
+	@Override
+	public void remove() throws UnsupportedOperationException {
+		throw new UnsupportedOperationException("CSVRowIterator.remove() is not supported");
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Close underlying Reader
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		if (oReader!=null) {
+			oReader.close();
+			oReader = null;
+		}
+		bFetched = true;
+		bHasNext = false;
+	} // close
+
+}
@@ -0,0 +1,167 @@
+package com.knowgate.stringutils;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Delimited text buffer filled with spreadsheet rows as they are read</p>
+ * <p>Applies the same rules as CSVParser.parseSheet(): if the file descriptor is empty
+ * then column names are taken from the first row, else the first row is skipped
+ * if its cells match the column names of the descriptor. Rows are appended until
+ * the first missing or empty row. Delimiters and line feeds inside cell values are
+ * replaced by spaces.</p>
+ * @version 9.1
+ */
+final class CSVSheetBuffer {
+
+	private char[] cBuffer;
+	private int iBuffer;
+	private String sDescriptor;
+	private String[] aColNames;
+	private char cDelimiter;
+	private int iCols;
+	private int iNextRow;
+	private boolean bDone;
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @param sFileDescriptor A list of column names separated by ',' ';' '|' '`' or '\t'
+	 * or <b>null</b> or "" for taking column names from the first row.
+	 */
+	CSVSheetBuffer(String sFileDescriptor) {
+		cBuffer = new char[8192];
+		iBuffer = 0;
+		iNextRow = 0;
+		bDone = false;
+		if (isVoid(sFileDescriptor)) {
+			sDescriptor = null;
+			cDelimiter = '\t';
+			iCols = -1;
+		} else {
+			sDescriptor = sFileDescriptor;
+			cDelimiter = CSVParser.delimiterOf(sFileDescriptor);
+			aColNames = sFileDescriptor.split(Pattern.quote(String.valueOf(cDelimiter)));
+			iCols = aColNames.length;
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	private static boolean isVoid(String sStr) {
+		return sStr==null || sStr.trim().length()==0;
+	}
+
+	// ----------------------------------------------------------
+
+	private static String cell(String[] aCells, int nCells, int iCol) {
+		return iCol<nCells ? aCells[iCol] : null;
+	}
+
+	// ----------------------------------------------------------
+
+	private void append(char c) {
+		if (iBuffer==cBuffer.length)
+			cBuffer = Arrays.copyOf(cBuffer, cBuffer.length*2);
+		cBuffer[iBuffer++] = c;
+	}
+
+	// ----------------------------------------------------------
+
+	private void append(String sValue) {
+		final int iLen = sValue.length();
+		if (iBuffer+iLen>cBuffer.length)
+			cBuffer = Arrays.copyOf(cBuffer, Math.max(iBuffer+iLen, cBuffer.length*2));
+		for (int n=0; n<iLen; n++) {
+			final char c = sValue.charAt(n);
+			cBuffer[iBuffer++] = (c==cDelimiter || c=='\n') ? ' ' : c;
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Add a row read from the spreadsheet
+	 * @param iRowNum Zero based row number
+	 * @param aCells Formatted cell values indexed by column, <b>null</b> for blank cells
+	 * @param nCells Number of significant entries at aCells
+	 * @return <b>false</b> if no more rows will be accepted
+	 */
+	boolean row(int iRowNum, String[] aCells, int nCells) {
+		if (bDone) return false;
+
+		if (iRowNum==0) {
+			if (null==sDescriptor) {
+				StringBuilder oDesc = new StringBuilder();
+				int c = 0;
+				while (!isVoid(cell(aCells, nCells, c))) {
+					if (c>0) oDesc.append('\t');
+					oDesc.append(aCells[c]);
+					c++;
+				}
+				sDescriptor = oDesc.toString();
+				iCols = c;
+				iNextRow = 1;
+				return true;
+			} else {
+				boolean bHeader = true;
+				for (int c=0; c<iCols && bHeader; c++)
+					bHeader = aColNames[c].equalsIgnoreCase(cell(aCells, nCells, c));
+				if (bHeader) {
+					iNextRow = 1;
+					return true;
+				}
+			}
+		}
+
+		// Stop at the first missing or empty row
+		boolean bEmpty = iRowNum!=iNextRow;
+		if (!bEmpty) {
+			bEmpty = true;
+			for (int c=0; c<iCols && bEmpty; c++)
+				bEmpty = isVoid(cell(aCells, nCells, c));
+		}
+		if (bEmpty) {
+			bDone = true;
+			return false;
+		}
+
+		for (int c=0; c<iCols; c++) {
+			if (c>0) append(cDelimiter);
+			final String sValue = cell(aCells, nCells, c);
+			if (sValue!=null) append(sValue);
+		}
+		append('\n');
+		iNextRow = iRowNum+1;
+		return true;
+	} // row
+
+	// ----------------------------------------------------------
+
+	char[] buffer() {
+		return cBuffer;
+	}
+
+	int length() {
+		return iBuffer;
+	}
+
+	/**
+	 * @return File descriptor given at constructor or the one built from the first row
+	 */
+	String descriptor() {
+		return null==sDescriptor ? "" : sDescriptor;
+	}
+
+}
@@ -0,0 +1,458 @@
+package com.knowgate.stringutils;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.text.SimpleDateFormat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.ExtendedFormatRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * <p>Event based readers of the first sheet of XLS and XLSX files</p>
+ * <p>Cells are read in file order and each row is passed to a CSVSheetBuffer
+ * as soon as it is complete, so the workbook object model is never built.
+ * Reading stops at the first missing or empty row.</p>
+ * <p>Cell values are formatted as CSVParser.parseSheet() does: strings as they are,
+ * numbers with String.valueOf(double) and numbers with data formats 15 and 16 as yyyy-MM-dd dates.
+ * Formula, boolean and error cells are left empty.</p>
+ * <p>XLSX files are read with the JDK zip and SAX parsers and only
+ * the shared strings table is kept in memory.</p>
+ * @version 9.1
+ */
+final class CSVSheetStream {
+
+	private CSVSheetStream() { }
+
+	// ----------------------------------------------------------
+
+	private static boolean isDateFormat(int iFormat) {
+		return iFormat==15 || iFormat==16;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Cells of the row being read
+	 */
+	private static final class RowCells {
+		private final CSVSheetBuffer oBuffer;
+		private final SimpleDateFormat oFmt4;
+		private String[] aCells;
+		private int nCells;
+		private int iRow;
+
+		RowCells(CSVSheetBuffer oSheetBuffer) {
+			oBuffer = oSheetBuffer;
+			oFmt4 = new SimpleDateFormat("yyyy-MM-dd");
+			aCells = new String[32];
+			nCells = 0;
+			iRow = -1;
+		}
+
+		/**
+		 * @return <b>false</b> if no more rows are accepted
+		 */
+		boolean cell(int iRowNum, int iCol, String sValue) {
+			if (iRowNum!=iRow) {
+				if (!flush()) return false;
+				iRow = iRowNum;
+			}
+			if (iCol>=aCells.length)
+				aCells = Arrays.copyOf(aCells, Math.max(iCol+1, aCells.length*2));
+			aCells[iCol] = sValue;
+			if (iCol>=nCells) nCells = iCol+1;
+			return true;
+		}
+
+		boolean number(int iRowNum, int iCol, double dValue, int iFormat, boolean b1904) {
+			if (isDateFormat(iFormat))
+				return cell(iRowNum, iCol, oFmt4.format(DateUtil.getJavaDate(dValue, b1904)));
+			else
+				return cell(iRowNum, iCol, String.valueOf(dValue));
+		}
+
+		boolean flush() {
+			boolean bMore = true;
+			if (iRow>=0) {
+				bMore = oBuffer.row(iRow, aCells, nCells);
+				Arrays.fill(aCells, 0, nCells, null);
+				nCells = 0;
+				iRow = -1;
+			}
+			return bMore;
+		}
+	} // RowCells
+
+	// ----------------------------------------------------------
+
+	private static final class XLSListener extends AbortableHSSFListener {
+		private final RowCells oRow;
+		private final ArrayList<Short> aXFFormats;
+		private SSTRecord oSST;
+		private boolean b1904;
+		private int iSheets;
+
+		XLSListener(CSVSheetBuffer oBuffer) {
+			oRow = new RowCells(oBuffer);
+			aXFFormats = new ArrayList<Short>();
+			b1904 = false;
+			iSheets = 0;
+		}
+
+		private int formatOf(CellValueRecordInterface oCell) {
+			final int iXF = oCell.getXFIndex();
+			return iXF<aXFFormats.size() ? aXFFormats.get(iXF) : -1;
+		}
+
+		@Override
+		public short abortableProcessRecord(Record oRec) throws HSSFUserException {
+			boolean bMore = true;
+			switch (oRec.getSid()) {
+			case BOFRecord.sid:
+				if (((BOFRecord) oRec).getType()==BOFRecord.TYPE_WORKSHEET) iSheets++;
+				break;
+			case EOFRecord.sid:
+				if (iSheets==1) {
+					// Only the first sheet is read
+					oRow.flush();
+					bMore = false;
+				}
+				break;
+			case DateWindow1904Record.sid:
+				b1904 = ((DateWindow1904Record) oRec).getWindowing()==1;
+				break;
+			case ExtendedFormatRecord.sid:
+				aXFFormats.add(((ExtendedFormatRecord) oRec).getFormatIndex());
+				break;
+			case SSTRecord.sid:
+				oSST = (SSTRecord) oRec;
+				break;
+			case LabelSSTRecord.sid:
+				if (iSheets==1) {
+					LabelSSTRecord oLbl = (LabelSSTRecord) oRec;
+					bMore = oRow.cell(oLbl.getRow(), oLbl.getColumn(), oSST.getString(oLbl.getSSTIndex()).getString());
+				}
+				break;
+			case LabelRecord.sid:
+				if (iSheets==1) {
+					LabelRecord oLbl = (LabelRecord) oRec;
+					bMore = oRow.cell(oLbl.getRow(), oLbl.getColumn(), oLbl.getValue());
+				}
+				break;
+			case NumberRecord.sid:
+				if (iSheets==1) {
+					NumberRecord oNum = (NumberRecord) oRec;
+					bMore = oRow.number(oNum.getRow(), oNum.getColumn(), oNum.getValue(), formatOf(oNum), b1904);
+				}
+				break;
+			}
+			return bMore ? (short) 0 : (short) 1;
+		}
+	} // XLSListener
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Read first sheet of an XLS file
+	 * @param oFile File
+	 * @param oBuffer CSVSheetBuffer
+	 * @throws IOException
+	 */
+	static void readXLS(File oFile, CSVSheetBuffer oBuffer) throws IOException {
+		POIFSFileSystem oFs = new POIFSFileSystem(oFile, true);
+		try {
+			HSSFRequest oReq = new HSSFRequest();
+			XLSListener oListener = new XLSListener(oBuffer);
+			oReq.addListenerForAllRecords(oListener);
+			new HSSFEventFactory().abortableProcessWorkbookEvents(oReq, oFs);
+			oListener.oRow.flush();
+		} catch (HSSFUserException xcpt) {
+			throw new IOException(xcpt.getMessage(), xcpt);
+		} finally {
+			oFs.close();
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Thrown for stopping SAX parsing once no more rows are accepted
+	 */
+	private static final class StopParsing extends SAXException {
+		private static final long serialVersionUID = 1L;
+		StopParsing() {
+			super("no more rows");
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	private static SAXParser newSAXParser() throws IOException {
+		try {
+			SAXParserFactory oFactory = SAXParserFactory.newInstance();
+			oFactory.setNamespaceAware(true);
+			oFactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+			return oFactory.newSAXParser();
+		} catch (ParserConfigurationException | SAXException xcpt) {
+			throw new IOException(xcpt.getMessage(), xcpt);
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	private static void parse(ZipFile oZip, String sEntry, DefaultHandler oHandler, boolean bRequired)
+		throws IOException {
+		ZipEntry oEntry = oZip.getEntry(sEntry);
+		if (null==oEntry) {
+			if (bRequired)
+				throw new IOException("Entry " + sEntry + " not found at XLSX file");
+			return;
+		}
+		InputStream oIn = oZip.getInputStream(oEntry);
+		try {
+			newSAXParser().parse(oIn, oHandler);
+		} catch (StopParsing stop) {
+			// No more rows needed
+		} catch (SAXException xcpt) {
+			throw new IOException(xcpt.getMessage(), xcpt);
+		} finally {
+			oIn.close();
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Find first sheet, its relationship id and the date system of a workbook
+	 */
+	private static final class WorkbookHandler extends DefaultHandler {
+		String sFirstSheetRelId = null;
+		boolean b1904 = false;
+		@Override
+		public void startElement(String sUri, String sLocalName, String sQName, Attributes oAttrs) {
+			if (sLocalName.equals("workbookPr")) {
+				String s1904 = oAttrs.getValue("date1904");
+				b1904 = "1".equals(s1904) || "true".equals(s1904);
+			} else if (sLocalName.equals("sheet") && null==sFirstSheetRelId) {
+				for (int a=0; a<oAttrs.getLength(); a++)
+					if (oAttrs.getLocalName(a).equals("id"))
+						sFirstSheetRelId = oAttrs.getValue(a);
+			}
+		}
+	} // WorkbookHandler
+
+	// ----------------------------------------------------------
+
+	private static final class RelsHandler extends DefaultHandler {
+		final HashMap<String,String> oTargets = new HashMap<String,String>();
+		@Override
+		public void startElement(String sUri, String sLocalName, String sQName, Attributes oAttrs) {
+			if (sLocalName.equals("Relationship"))
+				oTargets.put(oAttrs.getValue("Id"), oAttrs.getValue("Target"));
+		}
+	} // RelsHandler
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Number format of each cell style
+	 */
+	private static final class StylesHandler extends DefaultHandler {
+		final ArrayList<Integer> aFormats = new ArrayList<Integer>();
+		private boolean bCellXfs = false;
+		@Override
+		public void startElement(String sUri, String sLocalName, String sQName, Attributes oAttrs) {
+			if (sLocalName.equals("cellXfs")) {
+				bCellXfs = true;
+			} else if (bCellXfs && sLocalName.equals("xf")) {
+				String sFmt = oAttrs.getValue("numFmtId");
+				aFormats.add(null==sFmt ? 0 : Integer.valueOf(sFmt));
+			}
+		}
+		@Override
+		public void endElement(String sUri, String sLocalName, String sQName) {
+			if (sLocalName.equals("cellXfs")) bCellXfs = false;
+		}
+	} // StylesHandler
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Shared strings table, phonetic runs are ignored
+	 */
+	private static final class SharedStringsHandler extends DefaultHandler {
+		final ArrayList<String> aStrings = new ArrayList<String>();
+		private final StringBuilder oText = new StringBuilder();
+		private boolean bText = false;
+		private boolean bPhonetic = false;
+		@Override
+		public void startElement(String sUri, String sLocalName, String sQName, Attributes oAttrs) {
+			if (sLocalName.equals("si")) oText.setLength(0);
+			else if (sLocalName.equals("rPh")) bPhonetic = true;
+			else if (sLocalName.equals("t") && !bPhonetic) bText = true;
+		}
+		@Override
+		public void endElement(String sUri, String sLocalName, String sQName) {
+			if (sLocalName.equals("si")) aStrings.add(oText.toString());
+			else if (sLocalName.equals("rPh")) bPhonetic = false;
+			else if (sLocalName.equals("t")) bText = false;
+		}
+		@Override
+		public void characters(char[] aChars, int iStart, int iLength) {
+			if (bText) oText.append(aChars, iStart, iLength);
+		}
+	} // SharedStringsHandler
+
+	// ----------------------------------------------------------
+
+	private static final class SheetHandler extends DefaultHandler {
+		private final RowCells oRow;
+		private final ArrayList<String> aStrings;
+		private final ArrayList<Integer> aFormats;
+		private final boolean b1904;
+		private final StringBuilder oValue = new StringBuilder();
+		private int iRowNum = -1;
+		private int iCol = -1;
+		private String sType;
+		private int iFormat;
+		private boolean bFormula;
+		private boolean bValue;
+
+		SheetHandler(CSVSheetBuffer oBuffer, ArrayList<String> aSharedStrings, ArrayList<Integer> aStyleFormats, boolean bDate1904) {
+			oRow = new RowCells(oBuffer);
+			aStrings = aSharedStrings;
+			aFormats = aStyleFormats;
+			b1904 = bDate1904;
+		}
+
+		private static int columnOf(String sRef) {
+			int iColumn = 0;
+			for (int n=0; n<sRef.length(); n++) {
+				final char c = sRef.charAt(n);
+				if (c<'A' || c>'Z') break;
+				iColumn = iColumn*26 + (c-'A'+1);
+			}
+			return iColumn-1;
+		}
+
+		@Override
+		public void startElement(String sUri, String sLocalName, String sQName, Attributes oAttrs) {
+			if (sLocalName.equals("row")) {
+				String sRow = oAttrs.getValue("r");
+				iRowNum = null==sRow ? iRowNum+1 : Integer.parseInt(sRow)-1;
+				iCol = -1;
+			} else if (sLocalName.equals("c")) {
+				String sRef = oAttrs.getValue("r");
+				iCol = null==sRef ? iCol+1 : columnOf(sRef);
+				sType = oAttrs.getValue("t");
+				String sStyle = oAttrs.getValue("s");
+				final int iStyle = null==sStyle ? 0 : Integer.parseInt(sStyle);
+				iFormat = iStyle<aFormats.size() ? aFormats.get(iStyle) : 0;
+				bFormula = false;
+				oValue.setLength(0);
+			} else if (sLocalName.equals("f")) {
+				bFormula = true;
+			} else if (sLocalName.equals("v") || (sLocalName.equals("t") && "inlineStr".equals(sType))) {
+				bValue = true;
+			}
+		}
+
+		@Override
+		public void characters(char[] aChars, int iStart, int iLength) {
+			if (bValue) oValue.append(aChars, iStart, iLength);
+		}
+
+		@Override
+		public void endElement(String sUri, String sLocalName, String sQName) throws SAXException {
+			if (sLocalName.equals("v") || sLocalName.equals("t")) {
+				bValue = false;
+			} else if (sLocalName.equals("c")) {
+				boolean bMore = true;
+				if (!bFormula && oValue.length()>0) {
+					if ("s".equals(sType))
+						bMore = oRow.cell(iRowNum, iCol, aStrings.get(Integer.parseInt(oValue.toString().trim())));
+					else if ("inlineStr".equals(sType) || "str".equals(sType))
+						bMore = oRow.cell(iRowNum, iCol, oValue.toString());
+					else if (null==sType || "n".equals(sType))
+						bMore = oRow.number(iRowNum, iCol, Double.parseDouble(oValue.toString()), iFormat, b1904);
+				}
+				if (!bMore) throw new StopParsing();
+			} else if (sLocalName.equals("sheetData")) {
+				oRow.flush();
+			}
+		}
+	} // SheetHandler
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Read first sheet of an XLSX file
+	 * @param oFile File
+	 * @param oBuffer CSVSheetBuffer
+	 * @throws IOException
+	 */
+	static void readXLSX(File oFile, CSVSheetBuffer oBuffer) throws IOException {
+		ZipFile oZip = new ZipFile(oFile);
+		try {
+			WorkbookHandler oWrkb = new WorkbookHandler();
+			parse(oZip, "xl/workbook.xml", oWrkb, true);
+			RelsHandler oRels = new RelsHandler();
+			parse(oZip, "xl/_rels/workbook.xml.rels", oRels, true);
+			String sTarget = oRels.oTargets.get(oWrkb.sFirstSheetRelId);
+			if (null==sTarget)
+				throw new IOException("First sheet not found at XLSX file");
+			sTarget = sTarget.startsWith("/") ? sTarget.substring(1) : "xl/" + sTarget;
+
+			StylesHandler oStyles = new StylesHandler();
+			parse(oZip, "xl/styles.xml", oStyles, false);
+			SharedStringsHandler oStrings = new SharedStringsHandler();
+			parse(oZip, "xl/sharedStrings.xml", oStrings, false);
+
+			parse(oZip, sTarget, new SheetHandler(oBuffer, oStrings.aStrings, oStyles.aFormats, oWrkb.b1904), true);
+		} finally {
+			oZip.close();
+		}
+	}
+
+}
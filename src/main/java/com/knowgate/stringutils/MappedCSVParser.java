@@ -0,0 +1,515 @@
+package com.knowgate.stringutils;
+
+/**
+ * This file is licensed under the Apache License version 2.0.
+ * You may not use this file except in compliance with the license.
+ * You may obtain a copy of the License at:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+
+import java.util.Arrays;
+
+import com.knowgate.debug.DebugFile;
+
+/**
+ * <p>Memory mapped delimited text parser</p>
+ * <p>Parses a delimited text file without loading it into the heap.
+ * The file is mapped into memory with FileChannel.map() and delimiters are sought
+ * directly on its bytes. Only the start of each row is kept, column starts are located
+ * when a field of a row is requested and only requested fields are decoded into Strings.</p>
+ * <p>Descriptor, delimiter and quoting rules are the same as for CSVParser.parseFile()
+ * but line feeds inside quoted fields do not add phantom rows to the line count.</p>
+ * <p>Supported character sets are UTF-8 and single byte character sets which are
+ * compatible with ASCII, such as ISO-8859-1 or Windows-1252.</p>
+ * <p>This class is not thread safe.</p>
+ * @version 9.1
+ */
+public class MappedCSVParser implements Closeable {
+
+	/**
+	 * Default size of each mapped region of the file
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 1<<30;
+
+	private static final String ASCII_SYMBOLS = "\n\r\t \",;|`";
+
+	private final Charset oCharset;
+	private final int iSegmentSize;
+
+	private MappedByteBuffer[] aSegments; // Regiones mapeadas del fichero
+	private long lStart;                  // Posición del primer byte tras la marca BOM
+	private long lEnd;                    // Posición siguiente al último byte no en blanco
+	private int[] aRowOffsets;            // Inicio de cada fila relativo al inicio de su región
+	private int[] aSegmentFirstRow;       // Primera fila que comienza en cada región
+	private int iRows;
+	private int iErrLine;
+
+	private String ColNames[];
+	private int iCols;
+	private char cDelimiter;
+	private byte bDelimiter;
+	private boolean bQuoted;
+
+	private int iCachedRow;               // Fila cuyas columnas están en aColStarts
+	private long[] aColStarts;
+	private byte[] aBytes;                // Buffer reutilizado para decodificar campos
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Create memory mapped parser
+	 * @param sCharSetName Name of charset encoding. If <b>null</b> then the platform default is used.
+	 * @throws UnsupportedEncodingException If the charset is not UTF-8 nor a single byte ASCII compatible charset
+	 */
+	public MappedCSVParser(String sCharSetName) throws UnsupportedEncodingException {
+		this(sCharSetName, DEFAULT_SEGMENT_SIZE);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Create memory mapped parser
+	 * @param sCharSetName Name of charset encoding. If <b>null</b> then the platform default is used.
+	 * @param iMaxSegmentSize Maximum size in bytes of each mapped region of the file
+	 * @throws UnsupportedEncodingException If the charset is not UTF-8 nor a single byte ASCII compatible charset
+	 * @throws IllegalArgumentException If iMaxSegmentSize is less than 16
+	 */
+	public MappedCSVParser(String sCharSetName, int iMaxSegmentSize)
+		throws UnsupportedEncodingException, IllegalArgumentException {
+		if (iMaxSegmentSize<16)
+			throw new IllegalArgumentException("MappedCSVParser segment size must be at least 16 bytes");
+		oCharset = charsetFor(sCharSetName);
+		iSegmentSize = iMaxSegmentSize;
+		iRows = 0;
+		iCachedRow = -1;
+		aBytes = new byte[256];
+	}
+
+	// ----------------------------------------------------------
+
+	private static Charset charsetFor(String sCharSetName) throws UnsupportedEncodingException {
+		Charset oCset;
+		try {
+			oCset = null==sCharSetName ? Charset.defaultCharset() : Charset.forName(sCharSetName);
+		} catch (IllegalCharsetNameException | UnsupportedCharsetException xcpt) {
+			throw new UnsupportedEncodingException(sCharSetName);
+		}
+		if (oCset.name().equals("UTF-8"))
+			return oCset;
+		if (!oCset.canEncode() || oCset.newEncoder().maxBytesPerChar()!=1f)
+			throw new UnsupportedEncodingException("MappedCSVParser does not support multibyte character set " + oCset.name());
+		// Delimiters, quotes and line feeds must have their ASCII values
+		if (!Arrays.equals(ASCII_SYMBOLS.getBytes(oCset), ASCII_SYMBOLS.getBytes(Charset.forName("US-ASCII"))))
+			throw new UnsupportedEncodingException("MappedCSVParser does not support non ASCII compatible character set " + oCset.name());
+		return oCset;
+	}
+
+	// ----------------------------------------------------------
+
+	public String charSet() {
+		return oCharset.name();
+	}
+
+	// ----------------------------------------------------------
+
+	public char getDelimiter() {
+		return cDelimiter;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Get line count
+	 * @return int
+	 */
+	public int getLineCount() {
+		return iRows;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Get column count
+	 * @return int
+	 */
+	public int getColumnCount() {
+		return iCols;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Line number where the last parsing error happened or zero if there was no error
+	 */
+	public int errorLine() {
+		return iErrLine;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Approximate heap size in bytes taken by the row index
+	 */
+	public long indexSize() {
+		return null==aRowOffsets ? 0l : 16l + 4l * aRowOffsets.length;
+	}
+
+	// ----------------------------------------------------------
+
+	private byte byteAt(long lPos) {
+		return aSegments[(int) (lPos / iSegmentSize)].get((int) (lPos % iSegmentSize));
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Copy bytes from the mapped regions into aBytes
+	 */
+	private void copy(long lPos, int iLen) {
+		if (aBytes.length<iLen)
+			aBytes = new byte[Math.max(iLen, aBytes.length*2)];
+		int iCopied = 0;
+		while (iCopied<iLen) {
+			final long lAt = lPos + iCopied;
+			final ByteBuffer oSegment = aSegments[(int) (lAt / iSegmentSize)].duplicate();
+			final int iOffset = (int) (lAt % iSegmentSize);
+			final int iChunk = Math.min(iLen-iCopied, oSegment.limit()-iOffset);
+			oSegment.position(iOffset);
+			oSegment.get(aBytes, iCopied, iChunk);
+			iCopied += iChunk;
+		}
+	}
+
+	// ----------------------------------------------------------
+
+	private String decode(long lPos, long lTo) {
+		if (lTo<=lPos) return "";
+		final int iLen = (int) (lTo-lPos);
+		copy(lPos, iLen);
+		return new String(aBytes, 0, iLen, oCharset);
+	}
+
+	// ----------------------------------------------------------
+
+	private void addRow(long lPos) {
+		final int iSegment = (int) (lPos / iSegmentSize);
+		for (int s=iSegment; s>=0 && aSegmentFirstRow[s]<0; s--)
+			aSegmentFirstRow[s] = iRows;
+		aRowOffsets[iRows++] = (int) (lPos % iSegmentSize);
+	}
+
+	// ----------------------------------------------------------
+
+	private long rowStart(int iRow) {
+		int s = aSegmentFirstRow.length-1;
+		while (aSegmentFirstRow[s]>iRow) s--;
+		return ((long) s) * iSegmentSize + aRowOffsets[iRow];
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @return Position of the line feed which ends a row or the end of data for the last row
+	 */
+	private long rowEnd(int iRow) {
+		return iRow<iRows-1 ? rowStart(iRow+1)-1 : lEnd;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Map and index a delimited text file</p>
+	 * The file is mapped read only and it must not be truncated while it is being parsed.
+	 * @param oFile CSV File
+	 * @param sFileDescriptor A list of column names separated by ',' ';' '|' '`' or '\t'.
+	 * Column names may be quoted. Lines are delimiter by '\n' characters<br>
+	 * @throws IOException
+	 * @throws FileNotFoundException
+	 * @throws ArrayIndexOutOfBoundsException If a line has more or less columns than the descriptor
+	 * @throws RuntimeException If delimiter is not one of { ',' ';' '|' '`' or '\t' }
+	 * @throws NullPointerException if oFile or sFileDescriptor are <b>null</b>
+	 * @throws IllegalArgumentException if sFileDescriptor is "" or its delimiter is not a single byte in the charset of this parser,
+	 * which is the case of '¨' in UTF-8
+	 */
+	public void parseFile(File oFile, String sFileDescriptor)
+		throws ArrayIndexOutOfBoundsException,IOException,FileNotFoundException,
+		RuntimeException,NullPointerException,IllegalArgumentException {
+
+		if (oFile==null)
+			throw new NullPointerException("MappedCSVParser.parseFile() File parameter may not be null");
+		if (sFileDescriptor==null)
+			throw new NullPointerException("MappedCSVParser.parseFile() File Descriptor parameter may not be null");
+		if (sFileDescriptor.trim().length()==0)
+			throw new IllegalArgumentException("File Descriptor parameter may not be an empty string");
+
+		// Delimiters are sought byte by byte, so they must be encoded as a single byte
+		final char cDelim = CSVParser.delimiterOf(sFileDescriptor);
+		final byte[] aDelim = String.valueOf(cDelim).getBytes(oCharset);
+		if (aDelim.length!=1 || !oCharset.newEncoder().canEncode(cDelim))
+			throw new IllegalArgumentException("MappedCSVParser.parseFile() delimiter " + cDelim + " is not a single byte in " + oCharset.name());
+
+		if (DebugFile.trace) {
+			DebugFile.writeln("Begin MappedCSVParser.parseFile(\"" + oFile.getAbsolutePath() + "\",\"" + sFileDescriptor + "\")");
+			DebugFile.incIdent();
+		}
+
+		close();
+
+		bQuoted = CSVParser.isQuoted(sFileDescriptor);
+		cDelimiter = cDelim;
+		bDelimiter = aDelim[0];
+		ColNames = CSVParser.columnNamesOf(sFileDescriptor, cDelimiter, bQuoted);
+		iCols = ColNames.length;
+		aColStarts = new long[iCols];
+		iErrLine = 0;
+
+		RandomAccessFile oRaf = new RandomAccessFile(oFile, "r");
+		try {
+			FileChannel oChannel = oRaf.getChannel();
+			final long lSize = oChannel.size();
+			final int iSegments = (int) ((lSize + iSegmentSize - 1) / iSegmentSize);
+			aSegments = new MappedByteBuffer[iSegments];
+			for (int s=0; s<iSegments; s++) {
+				final long lFrom = ((long) s) * iSegmentSize;
+				aSegments[s] = oChannel.map(FileChannel.MapMode.READ_ONLY, lFrom, Math.min(iSegmentSize, lSize-lFrom));
+			}
+			lEnd = lSize;
+		} finally {
+			// Mappings remain valid after the channel is closed
+			oRaf.close();
+		}
+
+		// Skip UTF-8 byte order mark
+		lStart = 0;
+		if (lEnd>=3 && byteAt(0)==(byte) 0xEF && byteAt(1)==(byte) 0xBB && byteAt(2)==(byte) 0xBF)
+			lStart = 3;
+
+		// Ignorar los espacios en blanco al final del fichero
+		while (lEnd>lStart) {
+			final byte bAt = byteAt(lEnd-1);
+			if (bAt==' ' || bAt=='\n' || bAt=='\r' || bAt=='\t')
+				lEnd--;
+			else
+				break;
+		}
+
+		if (lEnd==lStart) {
+			if (DebugFile.trace) {
+				DebugFile.decIdent();
+				DebugFile.writeln("End MappedCSVParser.parseFile() : zero length file");
+			}
+			return;
+		}
+
+		// Upper bound of the row count including line feeds inside quotes
+		int iMaxRows = 1;
+		for (int s=0; s<aSegments.length; s++) {
+			final ByteBuffer oSegment = aSegments[s];
+			final long lBase = ((long) s) * iSegmentSize;
+			final int iTo = (int) Math.min(oSegment.limit(), lEnd-lBase);
+			for (int p=(int) Math.max(0, lStart-lBase); p<iTo; p++)
+				if (oSegment.get(p)=='\n') iMaxRows++;
+		}
+
+		aRowOffsets = new int[iMaxRows];
+		aSegmentFirstRow = new int[aSegments.length];
+		Arrays.fill(aSegmentFirstRow, -1);
+		addRow(lStart);
+
+		boolean bIgnore = false;
+		int iCol = 0;
+		for (int s=0; s<aSegments.length; s++) {
+			final ByteBuffer oSegment = aSegments[s];
+			final long lBase = ((long) s) * iSegmentSize;
+			final int iTo = (int) Math.min(oSegment.limit(), lEnd-lBase);
+			for (int p=(int) Math.max(0, lStart-lBase); p<iTo; p++) {
+				final byte bAt = oSegment.get(p);
+				if (bAt=='"' && bQuoted) bIgnore = !bIgnore;
+				if (!bIgnore) {
+					if (bAt==bDelimiter) {
+						if (++iCol>=iCols) {
+							iErrLine = iRows;
+							close();
+							if (DebugFile.trace) DebugFile.decIdent();
+							throw new ArrayIndexOutOfBoundsException("Columns count mismatch for line " + String.valueOf(iErrLine) + " expected " + String.valueOf(iCols) + " but found more.");
+						}
+					} else if (bAt=='\n') {
+						if (iCol!=iCols-1) {
+							iErrLine = iRows;
+							close();
+							if (DebugFile.trace) DebugFile.decIdent();
+							throw new ArrayIndexOutOfBoundsException("Columns count mismatch for line " + String.valueOf(iErrLine) + " expected " + String.valueOf(iCols) + " and found only " + String.valueOf(iCol+1));
+						}
+						iCol = 0;
+						addRow(lBase+p+1);
+					}
+				}
+			} // next
+		} // next
+		for (int s=aSegments.length-1; s>=0 && aSegmentFirstRow[s]<0; s--)
+			aSegmentFirstRow[s] = iRows;
+
+		if (DebugFile.trace) {
+			DebugFile.writeln("input data has " + String.valueOf(iRows) + " lines");
+			DebugFile.decIdent();
+			DebugFile.writeln("End MappedCSVParser.parseFile()");
+		}
+	} // parseFile
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Locate column starts of a row. Missing columns of the last row are set to -1.
+	 */
+	private void locateColumns(int iRow) {
+		if (iRow==iCachedRow) return;
+		final long lFrom = rowStart(iRow);
+		final long lTo = rowEnd(iRow);
+		boolean bIgnore = false;
+		int iCol = 0;
+		aColStarts[0] = lFrom;
+		for (long p=lFrom; p<lTo && iCol<iCols-1; p++) {
+			final byte bAt = byteAt(p);
+			if (bAt=='"' && bQuoted) bIgnore = !bIgnore;
+			if (!bIgnore && bAt==bDelimiter)
+				aColStarts[++iCol] = p+1;
+		}
+		for (int c=iCol+1; c<iCols; c++)
+			aColStarts[c] = -1;
+		iCachedRow = iRow;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * @param sColumnName Column Name
+	 * @return Zero based index for column position or -1 if column was not found.
+	 */
+	public int getColumnPosition(String sColumnName) {
+		for (int c=0; c<iCols; c++)
+			if (ColNames[c].equalsIgnoreCase(sColumnName))
+				return c;
+		return -1;
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Get line from a parsed file.</p>
+	 * @param iLine Line Number [0..getLineCount()-1]
+	 * @return Full Text for Line without its trailing Carriage Return.
+	 * If iLine&lt;0 or iLine&gt;=getLineCount() then <b>null</b>
+	 * @throws IllegalStateException If parseFile() has not been called prior to getLine()
+	 */
+	public String getLine(int iLine) throws IllegalStateException {
+		if (null==aSegments)
+			throw new IllegalStateException("Must call parseFile() on a valid delimited file before calling getLine() method");
+		if (iLine<0 || iLine>=iRows)
+			return null;
+		final long lFrom = rowStart(iLine);
+		long lTo = rowEnd(iLine);
+		if (lTo>lFrom && byteAt(lTo-1)=='\r') lTo--;
+		return decode(lFrom, lTo);
+	} // getLine
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Get value for a field at a given row and column.</p>
+	 * Only the bytes of the requested field are decoded.
+	 * @param iCol Column Index [0..getColumnCount()-1]
+	 * @param iRow Row Index [0..getLineCount()-1]
+	 * @return Field Value without its quotes and trailing Carriage Return.
+	 * Missing fields at the last row are returned as empty Strings.
+	 * @throws IllegalStateException If parseFile() method was not called prior to getField()
+	 * @throws ArrayIndexOutOfBoundsException If column or row index is out of bounds
+	 */
+	public String getField(int iCol, int iRow)
+		throws IllegalStateException, ArrayIndexOutOfBoundsException {
+
+		if (null==aSegments)
+			throw new IllegalStateException("Must call parseFile() on a valid delimited file before calling getField() method");
+		if (iRow<0 || iRow>=iRows)
+			throw new ArrayIndexOutOfBoundsException("MappedCSVParser.getField() row " + String.valueOf(iRow) + " out of bounds");
+		if (iCol<0 || iCol>=iCols)
+			throw new ArrayIndexOutOfBoundsException("MappedCSVParser.getField() column " + String.valueOf(iCol) + " out of bounds");
+
+		locateColumns(iRow);
+
+		final long lFrom = aColStarts[iCol];
+		if (lFrom<0) return "";
+
+		long lTo;
+		if (iCol<iCols-1 && aColStarts[iCol+1]>=0)
+			lTo = aColStarts[iCol+1]-1;
+		else
+			lTo = rowEnd(iRow);
+
+		if (bQuoted) {
+			while (lTo>lFrom) {
+				final byte bAt = byteAt(lTo-1);
+				if (bAt=='\r' || bAt==' ' || bAt=='\t')
+					lTo--;
+				else
+					break;
+			}
+			return lTo-lFrom<2 ? "" : decode(lFrom+1, lTo-1);
+		} else {
+			if (lTo>lFrom && byteAt(lTo-1)=='\r') lTo--;
+			return decode(lFrom, lTo);
+		}
+	} // getField
+
+	// ----------------------------------------------------------
+
+	/**
+	 * <p>Get value for a field at a given row and column.</p>
+	 * @param sCol Column name
+	 * @param iRow Row Index [0..getLineCount()-1]
+	 * @return Field Value
+	 * @throws IllegalStateException If parseFile() method was not called prior to getField()
+	 * @throws ArrayIndexOutOfBoundsException If column is not found or row index is out of bounds
+	 */
+	public String getField(String sCol, int iRow)
+		throws IllegalStateException, ArrayIndexOutOfBoundsException {
+		final int iCol = getColumnPosition(sCol);
+		if (iCol==-1)
+			throw new ArrayIndexOutOfBoundsException ("Column " + sCol + " not found");
+		return getField(iCol, iRow);
+	}
+
+	// ----------------------------------------------------------
+
+	/**
+	 * Drop the references to the mapped regions and the row index.
+	 * The mappings themselves are only unmapped when the regions are garbage collected,
+	 * so the file may stay mapped and, on Windows, locked for a while after this call.
+	 */
+	@Override
+	public void close() {
+		aSegments = null;
+		aRowOffsets = null;
+		aSegmentFirstRow = null;
+		iRows = 0;
+		iCachedRow = -1;
+	}
+
+}
@@ -135,12 +135,12 @@ public class ObjectFactory {
 				constructorCache.put(constructorSignature, objectContructor);
 		} else {
 			if (debug && DebugFile.trace)
-				DebugFile.writeln("ObjectFactory hit cached constructor "+constructorSignature);
+				DebugFile.writeln("ObjectFactory hit cached constructor {}", constructorSignature);
 		}
 
 		if (debug && DebugFile.trace) {
 			DebugFile.decIdent();
-			DebugFile.writeln("End ObjectFactory.getConstructor() " + objectContructor);
+			DebugFile.writeln("End ObjectFactory.getConstructor() {}", objectContructor);
 		}
 
 		return objectContructor;
@@ -481,4 +481,4 @@ public class ObjectFactory {
 
 	private static final Object[] NoParams = new Object[0];
 
-}
\ No newline at end of file
+}
\ No newline at end of file
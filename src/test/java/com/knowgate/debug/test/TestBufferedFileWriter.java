@@ -0,0 +1,121 @@
+package com.knowgate.debug.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.knowgate.debug.BufferedFileWriter;
+
+public class TestBufferedFileWriter {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Test
+	public void testCharsets() throws IOException {
+		StringBuilder longLine = new StringBuilder();
+		for (int c=0; c<5000; c++)
+			longLine.append("a\u00f1\ud83d\ude00");
+		final String[] lines = new String[]{"", "plain ascii", "e\u00f1e \u20ac", longLine.toString()};
+		StringBuilder expected = new StringBuilder();
+		for (String line : lines)
+			expected.append(line).append('\n');
+
+		for (boolean pipelined : new boolean[]{false, true}) {
+			for (int bufferSize : new int[]{16, 1000, BufferedFileWriter.DEFAULT_BUFFER_SIZE}) {
+				File file = File.createTempFile("temp-bufferedwriter", ".txt");
+				try {
+					BufferedFileWriter writer = new BufferedFileWriter(UTF8, bufferSize, 0, 0l, pipelined);
+					writer.open(file.getAbsolutePath());
+					for (int r=0; r<3; r++)
+						for (String line : lines)
+							writer.writeln(line);
+					writer.close();
+					final byte[] bytes = Files.readAllBytes(file.toPath());
+					final String text = expected.toString();
+					assertEquals(text+text+text, new String(bytes, UTF8));
+					assertEquals(bytes.length, writer.getBytesWritten());
+					assertEquals(12l, writer.getLinesWritten());
+					assertTrue(writer.getBytesPerSecond()>0d);
+				} finally {
+					file.delete();
+				}
+			}
+		}
+
+		File latin = File.createTempFile("temp-bufferedwriter", ".txt");
+		try {
+			BufferedFileWriter writer = new BufferedFileWriter(Charset.forName("ISO-8859-1"));
+			writer.open(latin.getAbsolutePath());
+			writer.writeln("e\u00f1e");
+			writer.close();
+			assertEquals(4l, latin.length());
+		} finally {
+			latin.delete();
+		}
+	}
+
+	@Test
+	public void testFlushPolicy() throws IOException {
+		for (boolean pipelined : new boolean[]{false, true}) {
+			File file = File.createTempFile("temp-bufferedwriter", ".txt");
+			try {
+				BufferedFileWriter writer = new BufferedFileWriter(UTF8, 4096, 10, 0l, pipelined);
+				writer.open(file.getAbsolutePath());
+				for (int l=0; l<9; l++)
+					writer.writeln("line " + l);
+				assertEquals(0l, file.length());
+				writer.writeln("line 9");
+				assertEquals(70l, file.length());
+				writer.writeln("line 10");
+				writer.flush();
+				assertEquals(78l, file.length());
+				writer.close();
+
+				writer = new BufferedFileWriter(UTF8, 4096, 0, 1l, pipelined);
+				writer.open(file.getAbsolutePath(), true);
+				writer.writeln("first");
+				try {
+					Thread.sleep(5l);
+				} catch (InterruptedException ignore) { }
+				writer.writeln("second");
+				assertEquals(91l, file.length());
+				writer.close();
+			} finally {
+				file.delete();
+			}
+		}
+	}
+
+	@Test
+	public void testCloseAfterFailedFlush() throws IOException {
+		File file = File.createTempFile("temp-bufferedwriter", ".txt");
+		try {
+			BufferedFileWriter writer = new BufferedFileWriter(UTF8, 4096, 0, 0l, true);
+			writer.open(file.getAbsolutePath());
+			writer.writeln("line");
+			// An interrupted thread makes flush fail when handing over the buffer
+			Thread.currentThread().interrupt();
+			try {
+				writer.close();
+				fail("close() should have thrown InterruptedIOException");
+			} catch (InterruptedIOException expected) {
+				assertTrue(Thread.interrupted());
+			}
+			for (Thread thread : Thread.getAllStackTraces().keySet())
+				assertFalse(thread.getName().equals("BufferedFileWriter " + file.getAbsolutePath()));
+		} finally {
+			Thread.interrupted();
+			file.delete();
+		}
+	}
+
+}
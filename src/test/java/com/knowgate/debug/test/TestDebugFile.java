@@ -13,16 +13,29 @@ import org.apache.logging.log4j.core.layout.PatternLayout;
 import org.apache.logging.log4j.core.Appender;
 import org.apache.logging.log4j.core.Layout;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Files;
 
 import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertEquals;
 
+import com.knowgate.debug.DebugConfig;
+import com.knowgate.debug.TraceDecoder;
+import com.knowgate.debug.TraceLevel;
+import com.knowgate.debug.TraceMessage;
+import com.knowgate.debug.TraceSampling;
 import com.knowgate.io.FileUtils;
 
 import static com.knowgate.debug.Log.out;
@@ -61,6 +74,464 @@ public class TestDebugFile {
 		}
 	}
 
+	@Test
+	public void testAsync() throws IOException, InterruptedException {
+		final File dir = File.createTempFile("temp-debugdir", "");
+		dir.delete();
+		dir.mkdir();
+		File conf = File.createTempFile("temp-debugfile", ".conf");
+		FileUtils.writeLines(conf, Arrays.asList("sink=file","debug=true","debugdir_win32="+chomp(dir.getAbsolutePath()),"debugdir_linux="+chomp(dir.getAbsolutePath()),"async=true","async_capacity=64","async_backpressure=block"));
+		final boolean wasTracing = trace;
+		final short wasDumpingTo = dumpTo;
+		try {
+			setConfFile(conf.getAbsolutePath());
+			refresh();
+			setFile(chomp(dir.getAbsolutePath()) + "javatrc.");
+			assertTrue(isAsync());
+
+			final int lines = 2000;
+			Thread[] writers = new Thread[4];
+			for (int t=0; t<writers.length; t++) {
+				writers[t] = new Thread() {
+					@Override
+					public void run() {
+						for (int l=0; l<lines; l++)
+							writeln("async trace " + l);
+					}
+				};
+				writers[t].start();
+			}
+			for (Thread writer : writers)
+				writer.join();
+			flush();
+
+			assertEquals(0l, getDroppedTraces());
+			for (Thread writer : writers) {
+				String[] traces = FileUtils.readFileToString(new File(getFile(writer.getId()))).split("\n");
+				assertEquals(lines, traces.length);
+				assertTrue(traces[lines-1].endsWith("async trace " + (lines-1)));
+			}
+		} finally {
+			setAsync(false, 0, null, 0);
+			setFile(null);
+			setConfFile(null);
+			refresh();
+			trace = wasTracing;
+			dumpTo = wasDumpingTo;
+			conf.delete();
+			for (File trc : dir.listFiles())
+				trc.delete();
+			dir.delete();
+		}
+		assertFalse(isAsync());
+	}
+
+	@Test
+	public void testBinary() throws IOException, InterruptedException {
+		final File dir = File.createTempFile("temp-debugdir", "");
+		dir.delete();
+		dir.mkdir();
+		File conf = File.createTempFile("temp-debugfile", ".conf");
+		FileUtils.writeLines(conf, Arrays.asList("sink=file","debug=true","debugdir_win32="+chomp(dir.getAbsolutePath()),"debugdir_linux="+chomp(dir.getAbsolutePath()),"format=binary"));
+		final boolean wasTracing = trace;
+		final short wasDumpingTo = dumpTo;
+		try {
+			setConfFile(conf.getAbsolutePath());
+			refresh();
+			setFile(chomp(dir.getAbsolutePath()) + "javatrc.");
+			assertTrue(isBinary());
+
+			final int depth = getDepth();
+			for (int l=0; l<100; l++) {
+				writeln("Begin binary trace");
+				incIdent();
+				writeln("Line {} \u00f1", l);
+				decIdent();
+				writeln("End binary trace");
+			}
+			write("raw text\n");
+			flush();
+
+			final long threadId = Thread.currentThread().getId();
+			final File bin = new File(chomp(dir.getAbsolutePath()) + "javatrc." + threadId + ".bin");
+			assertTrue(bin.exists());
+			assertFalse(new File(getFile(threadId)).exists());
+
+			StringBuilder text = new StringBuilder();
+			TraceDecoder decoder = new TraceDecoder(new FileInputStream(bin));
+			assertEquals(301l, decoder.decodeAll(text));
+			decoder.close();
+
+			String[] lines = text.toString().split("\n");
+			assertEquals(301, lines.length);
+			final String ident = String.format("%" + (2*depth+2) + "s", "");
+			assertTrue(lines[0].startsWith(threadId + " "));
+			assertTrue(lines[0].endsWith(" " + ident.substring(2) + "Begin binary trace"));
+			assertTrue(lines[298].endsWith(" " + ident + "Line 99 \u00f1"));
+			assertEquals("raw text", lines[300]);
+			// Begin and End are written inline, only the Line template is interned
+			assertTrue(bin.length() < text.length() * 2 / 3);
+
+			// Messages without arguments are written inline and do not fill the template table
+			for (int m=0; m<5000; m++)
+				writeln("Message " + m);
+			for (int t=0; t<10; t++)
+				writeln("Template {}", t);
+			flush();
+			final String bytes = new String(Files.readAllBytes(bin.toPath()), "ISO-8859-1");
+			assertEquals(bytes.indexOf("Template {}"), bytes.lastIndexOf("Template {}"));
+			assertTrue(bytes.contains("Message 4999"));
+
+			// Files of finished threads do not stay open
+			for (int t=0; t<200; t++) {
+				Thread writer = new Thread() {
+					@Override
+					public void run() {
+						writeln("Short lived {}", getId());
+					}
+				};
+				writer.start();
+				writer.join();
+			}
+			final File[] fds = new File("/proc/self/fd").listFiles();
+			if (null!=fds) {
+				int open = 0;
+				for (File fd : fds)
+					if (fd.getCanonicalPath().startsWith(dir.getCanonicalPath()))
+						open++;
+				assertTrue(open <= 64);
+			}
+		} finally {
+			setBinary(false);
+			setFile(null);
+			setConfFile(null);
+			refresh();
+			trace = wasTracing;
+			dumpTo = wasDumpingTo;
+			conf.delete();
+			for (File trc : dir.listFiles())
+				trc.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testLazyMessages() throws IOException {
+		final boolean wasTracing = trace;
+		final short wasDumpingTo = dumpTo;
+		final PrintStream stdout = System.out;
+		final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+		final int[] built = new int[]{0};
+		TraceMessage message = new TraceMessage() {
+			@Override
+			public String get() {
+				built[0]++;
+				return "lazy message";
+			}
+		};
+		try {
+			System.setOut(new PrintStream(captured, true, "UTF-8"));
+			dumpTo = DUMP_TO_STDOUT;
+			trace = false;
+			writeln(message);
+			writeln("never {}", "written");
+			assertEquals(0, built[0]);
+
+			trace = true;
+			setLevel("com.knowgate.debug", TraceLevel.INFO);
+			assertEquals(TraceLevel.INFO, getLevel(TestDebugFile.class));
+			assertEquals(TraceLevel.TRACE, getLevel(String.class));
+			writeln(TestDebugFile.class, TraceLevel.DEBUG, message);
+			assertEquals(0, built[0]);
+			writeln(TestDebugFile.class, TraceLevel.INFO, message);
+			assertEquals(1, built[0]);
+			setLevel("com.knowgate.debug.test.TestDebugFile", TraceLevel.OFF);
+			assertFalse(isEnabled(TestDebugFile.class, TraceLevel.INFO));
+			writeln(TestDebugFile.class, TraceLevel.INFO, "filtered {}", "out");
+			writeln("x={} y={} {}", 1, "two");
+		} finally {
+			System.setOut(stdout);
+			setLevel("com.knowgate.debug", null);
+			setLevel("com.knowgate.debug.test.TestDebugFile", null);
+			trace = wasTracing;
+			dumpTo = wasDumpingTo;
+		}
+		final String output = captured.toString("UTF-8");
+		assertTrue(output.contains("lazy message\n"));
+		assertFalse(output.contains("filtered"));
+		assertTrue(output.contains("x=1 y=two {}\n"));
+		assertEquals(TraceLevel.TRACE, getLevel(TestDebugFile.class));
+	}
+
+	@Test
+	public void testWatch() throws IOException, InterruptedException {
+		final File dir = File.createTempFile("temp-confdir", "");
+		dir.delete();
+		dir.mkdir();
+		final File conf = new File(dir, "debugfile.conf");
+		FileUtils.writeLines(conf, Arrays.asList("sink=stdout","debug=false","watch=true"));
+		final boolean wasTracing = trace;
+		final short wasDumpingTo = dumpTo;
+		try {
+			setConfFile(conf.getAbsolutePath());
+			refresh();
+			assertTrue(isWatching());
+			assertFalse(trace);
+			final DebugConfig before = getConfig();
+			assertEquals(DUMP_TO_STDOUT, before.getDumpTo());
+
+			FileUtils.writeLines(conf, Arrays.asList("sink=stdout","debug=true","watch=true","level.com.knowgate=info"));
+			for (int w=0; w<200 && getConfig()==before; w++)
+				Thread.sleep(50l);
+			assertTrue(trace);
+			assertTrue(getConfig().isTrace());
+			assertEquals(TraceLevel.INFO, getConfig().getLevels().get("com.knowgate"));
+			assertEquals(TraceLevel.INFO, getLevel(TestDebugFile.class));
+			assertFalse(before.isTrace());
+		} finally {
+			setWatching(false);
+			setConfFile(null);
+			refresh();
+			trace = wasTracing;
+			dumpTo = wasDumpingTo;
+			conf.delete();
+			dir.delete();
+		}
+		assertFalse(isWatching());
+	}
+
+	private static int traced;
+
+	private static void callTree(int n) {
+		if (trace) {
+			writeln("Begin tree " + n);
+			incIdent();
+		}
+		if (isTracing())
+			traced++;
+		writeln("inner {}", n);
+		if (trace) {
+			decIdent();
+			writeln("End tree " + n);
+		}
+	}
+
+	@Test
+	public void testSampling() throws IOException {
+		final boolean wasTracing = trace;
+		final short wasDumpingTo = dumpTo;
+		final PrintStream stdout = System.out;
+		final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+		try {
+			System.setOut(new PrintStream(captured, true, "UTF-8"));
+			dumpTo = DUMP_TO_STDOUT;
+			trace = true;
+
+			setSampling(TraceSampling.RATIO, 3, 0, 0l, 0);
+			traced = 0;
+			for (int t=0; t<9; t++)
+				callTree(t);
+			assertEquals(6l, getSkippedTrees());
+			assertEquals(3, traced);
+			String[] lines = captured.toString("UTF-8").split("\n");
+			assertEquals(9, lines.length);
+			assertTrue(lines[0].endsWith("Begin tree 0"));
+			assertTrue(lines[1].endsWith("  inner 0"));
+			assertTrue(lines[2].endsWith("End tree 0"));
+			assertTrue(lines[3].endsWith("Begin tree 3"));
+			assertTrue(lines[8].endsWith("End tree 6"));
+
+			captured.reset();
+			setSampling(TraceSampling.BURST, 0, 2, 3600000l, 0);
+			for (int t=0; t<5; t++)
+				callTree(t);
+			assertEquals(3l, getSkippedTrees());
+			assertEquals(6, captured.toString("UTF-8").split("\n").length);
+
+			setSampling(TraceSampling.RATE, 0, 0, 0l, 5);
+			for (int t=0; t<20; t++)
+				callTree(t);
+			assertTrue(getSkippedTrees()>0l);
+		} finally {
+			System.setOut(stdout);
+			setSampling(TraceSampling.ALL, 0, 0, 0l, 0);
+			trace = wasTracing;
+			dumpTo = wasDumpingTo;
+		}
+		assertEquals(TraceSampling.ALL, getSampling());
+	}
+
+	@Test
+	public void testRolling() throws IOException, InterruptedException {
+		final File dir = File.createTempFile("temp-debugdir", "");
+		dir.delete();
+		dir.mkdir();
+		File conf = File.createTempFile("temp-debugfile", ".conf");
+		FileUtils.writeLines(conf, Arrays.asList("sink=file","debug=true","debugdir_win32="+chomp(dir.getAbsolutePath()),"debugdir_linux="+chomp(dir.getAbsolutePath()),"rolling_max_size=4K","rolling_keep=3"));
+		final boolean wasTracing = trace;
+		final short wasDumpingTo = dumpTo;
+		final PrintStream stderr = System.err;
+		final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+		try {
+			System.setErr(new PrintStream(errors, true));
+			setConfFile(conf.getAbsolutePath());
+			refresh();
+			setFile(chomp(dir.getAbsolutePath()) + "javatrc.");
+			assertTrue(isRolling());
+			assertEquals(4096l, getConfig().getRollingMaxSize());
+
+			final long threadId = Thread.currentThread().getId();
+			for (int l=0; l<1000; l++)
+				writeln("rolling trace " + l);
+			final File current = new File(getFile(threadId));
+			assertTrue(current.length() < 8192l);
+
+			// Rolled files are compressed and pruned by a background thread
+			File[] rolled = null;
+			for (int w=0; w<100; w++) {
+				rolled = dir.listFiles(new FilenameFilter() {
+					@Override
+					public boolean accept(File d, String name) {
+						return name.startsWith("javatrc." + threadId + ".") && !name.equals(current.getName());
+					}
+				});
+				if (rolled.length==3 && rolled[0].getName().endsWith(".gz") && rolled[1].getName().endsWith(".gz") && rolled[2].getName().endsWith(".gz"))
+					break;
+				Thread.sleep(50l);
+			}
+			assertEquals(3, rolled.length);
+			final boolean[] kept = new boolean[1000];
+			for (File gz : rolled) {
+				assertTrue(gz.getName().endsWith(".txt.gz"));
+				BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(gz))));
+				String line = reader.readLine();
+				assertTrue(line.startsWith(threadId + " ") && line.contains("rolling trace "));
+				for (; line!=null; line = reader.readLine())
+					kept[Integer.parseInt(line.substring(line.lastIndexOf(' ')+1))] = true;
+				reader.close();
+			}
+			// The newest segments are kept, so their traces run without gaps up to the first one of the current segment
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(current)));
+			final String first = reader.readLine();
+			reader.close();
+			int l = Integer.parseInt(first.substring(first.lastIndexOf(' ')+1));
+			assertFalse(kept[l]);
+			int newest = 0;
+			for (l--; l>=0 && kept[l]; l--)
+				newest++;
+			assertTrue(newest>0);
+			for (; l>=0; l--)
+				assertFalse(kept[l]);
+			assertEquals("", errors.toString());
+
+			setRolling(0l, 0l, 0, false);
+			setMultiplexed(true);
+			Thread writer = new Thread() {
+				@Override
+				public void run() {
+					writeln("multiplexed trace");
+				}
+			};
+			writer.start();
+			writer.join();
+			writeln("multiplexed trace");
+			write("raw text\n");
+			assertEquals(getFile(threadId), getFile(writer.getId()));
+			final String[] lines = FileUtils.readFileToString(new File(chomp(dir.getAbsolutePath()) + "javatrc.txt")).split("\n");
+			assertEquals(3, lines.length);
+			assertTrue(lines[0].startsWith(writer.getId() + " ") && lines[0].endsWith("multiplexed trace"));
+			assertTrue(lines[1].startsWith(threadId + " ") && lines[1].endsWith("multiplexed trace"));
+			assertEquals(threadId + " raw text", lines[2]);
+		} finally {
+			System.setErr(stderr);
+			setMultiplexed(false);
+			setRolling(0l, 0l, 0, false);
+			setFile(null);
+			setConfFile(null);
+			refresh();
+			trace = wasTracing;
+			dumpTo = wasDumpingTo;
+			conf.delete();
+			for (File trc : dir.listFiles())
+				trc.delete();
+			dir.delete();
+		}
+		assertFalse(isRolling());
+	}
+
+	@Test
+	public void testMultiplexedThreads() throws IOException, InterruptedException {
+		final File dir = File.createTempFile("temp-debugdir", "");
+		dir.delete();
+		dir.mkdir();
+		File conf = File.createTempFile("temp-debugfile", ".conf");
+		FileUtils.writeLines(conf, Arrays.asList("sink=file","debug=true","multiplex=true","debugdir_win32="+chomp(dir.getAbsolutePath()),"debugdir_linux="+chomp(dir.getAbsolutePath())));
+		final boolean wasTracing = trace;
+		final short wasDumpingTo = dumpTo;
+		try {
+			setConfFile(conf.getAbsolutePath());
+			refresh();
+			setFile(chomp(dir.getAbsolutePath()) + "javatrc.");
+			assertTrue(isMultiplexed());
+			assertFalse(isRolling());
+
+			StringBuilder padding = new StringBuilder();
+			for (int c=0; c<500; c++)
+				padding.append('x');
+			final String tail = padding.toString();
+			Thread[] writers = new Thread[8];
+			for (int t=0; t<writers.length; t++) {
+				writers[t] = new Thread() {
+					@Override
+					public void run() {
+						for (int l=0; l<200; l++)
+							writeln("multiplexed " + l + " " + tail);
+					}
+				};
+				writers[t].start();
+			}
+			for (Thread writer : writers)
+				writer.join();
+
+			final String[] lines = FileUtils.readFileToString(new File(chomp(dir.getAbsolutePath()) + "javatrc.txt")).split("\n");
+			assertEquals(1600, lines.length);
+			for (String line : lines)
+				assertTrue(line, line.matches("\\d+ .*multiplexed \\d+ " + tail));
+		} finally {
+			setMultiplexed(false);
+			setFile(null);
+			setConfFile(null);
+			refresh();
+			trace = wasTracing;
+			dumpTo = wasDumpingTo;
+			conf.delete();
+			for (File trc : dir.listFiles())
+				trc.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testIdent() {
+		final int depth = getDepth();
+		incIdent();
+		incIdent();
+		assertEquals(depth+2, getDepth());
+		decIdent();
+		decIdent();
+		decIdent();
+		assertEquals(Math.max(0, depth-1), getDepth());
+		while (getDepth()>0)
+			decIdent();
+		decIdent();
+		assertEquals(0, getDepth());
+		// Indentation wraps to one level after 41 levels
+		for (int l=0; l<42; l++)
+			incIdent();
+		assertEquals(1, getDepth());
+		decIdent();
+	}
+
 	@SuppressWarnings("deprecation")
 	private File setUpDebugLog4j2() throws IOException {
 		Logger lgr = (Logger) out;
@@ -85,4 +556,4 @@ public class TestDebugFile {
 		return filePath.endsWith(File.separator) ? filePath : filePath + File.separator;
 	} // chomp
 	
-}
\ No newline at end of file
+}
@@ -0,0 +1,87 @@
+package com.knowgate.debug.test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.knowgate.debug.LatencyHistogram;
+import com.knowgate.debug.LatencySnapshot;
+import com.knowgate.debug.Profiler;
+
+public class TestProfiler {
+
+	@Test
+	public void testHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long v=1; v<=100000; v++)
+			histogram.record(v*1000l);
+		LatencySnapshot snapshot = histogram.snapshot("uniform");
+		assertEquals(100000l, snapshot.getCount());
+		assertEquals(1000l, snapshot.getMin());
+		assertEquals(100000000l, snapshot.getMax());
+		assertEquals(50000500l, snapshot.getMean());
+		assertNear(50000000l, snapshot.getP50());
+		assertNear(99000000l, snapshot.getP99());
+		assertNear(99900000l, snapshot.getP999());
+		assertEquals(100000000l, snapshot.percentile(100d));
+
+		histogram.reset();
+		assertEquals(0l, histogram.snapshot("empty").getP99());
+		histogram.record(5l);
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(5l, histogram.snapshot("extremes").getP50());
+		assertEquals(Long.MAX_VALUE, histogram.snapshot("extremes").getMax());
+	}
+
+	private static void assertNear(long expected, long actual) {
+		assertTrue("expected " + expected + " but was " + actual, Math.abs(actual-expected) <= expected/64l);
+	}
+
+	@Test
+	public void testScopes() throws IOException {
+		Profiler.reset();
+		for (int i=0; i<10; i++) {
+			try (Profiler.Scope outer = Profiler.start("test.import")) {
+				assertEquals("test.import", outer.getPath());
+				try (Profiler.Scope inner = Profiler.start("parse")) {
+					assertEquals("test.import/parse", inner.getPath());
+				}
+				try (Profiler.Scope inner = Profiler.start("hash")) {
+					assertEquals("test.import/hash", inner.getPath());
+				}
+			}
+		}
+		try (Profiler.Scope after = Profiler.start("parse")) {
+			assertEquals("parse", after.getPath());
+		}
+		Profiler.record("test.import/copy", 2000000l);
+
+		Map<String,LatencySnapshot> snapshots = Profiler.snapshot();
+		assertEquals(10l, snapshots.get("test.import").getCount());
+		assertEquals(10l, snapshots.get("test.import/parse").getCount());
+		assertEquals(10l, snapshots.get("test.import/hash").getCount());
+		assertEquals(1l, snapshots.get("parse").getCount());
+		assertEquals(2000000l, snapshots.get("test.import/copy").getMax());
+		assertTrue(snapshots.get("test.import").getMin() >= snapshots.get("test.import/parse").getMin());
+
+		StringBuilder export = new StringBuilder();
+		Profiler.export(export);
+		assertTrue(export.toString().startsWith("operation\tcount"));
+		assertTrue(export.toString().contains("\ntest.import/copy\t1\t2000\t2000\t2000\t2000\t2000\n"));
+
+		Profiler.setEnabled(false);
+		try (Profiler.Scope off = Profiler.start("off")) {
+			assertNull(off.getPath());
+		} finally {
+			Profiler.setEnabled(true);
+		}
+		Profiler.reset();
+		assertTrue(Profiler.snapshot().isEmpty());
+	}
+
+}
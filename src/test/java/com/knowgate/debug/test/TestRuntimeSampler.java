@@ -0,0 +1,65 @@
+package com.knowgate.debug.test;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+import com.knowgate.debug.JavaInfo;
+import com.knowgate.debug.RuntimeSampler;
+import com.knowgate.debug.RuntimeSnapshot;
+
+public class TestRuntimeSampler {
+
+	@Test
+	public void testSnapshot() {
+		System.gc();
+		RuntimeSnapshot snapshot = JavaInfo.snapshot();
+		assertTrue(snapshot.getHeapUsed()>0l);
+		assertTrue(snapshot.getHeapCommitted()>=snapshot.getHeapUsed());
+		assertTrue(snapshot.getPoolCount()>0);
+		assertTrue(snapshot.getCollectorCount()>0);
+		assertTrue(snapshot.getTotalCollectionCount()>0l);
+		assertTrue(snapshot.getThreadCount()>0);
+		assertTrue(snapshot.getThreadCount(Thread.State.RUNNABLE)>0);
+		assertTrue(snapshot.getLoadedClassCount()>0);
+		assertTrue(snapshot.getDirectCount()>=0l);
+		assertTrue(snapshot.toString().contains(" threads.runnable="));
+		assertEquals(-1, JavaInfo.snapshot(false).getThreadCount(Thread.State.RUNNABLE));
+
+		Map<String,Number> metrics = snapshot.toMap();
+		for (int p=0; p<snapshot.getPoolCount(); p++)
+			assertEquals(snapshot.getPoolUsed(p), metrics.get("pool[" + snapshot.getPoolName(p) + "].used").longValue());
+		for (int c=0; c<snapshot.getCollectorCount(); c++)
+			assertEquals(snapshot.getCollectionCount(c), metrics.get("gc[" + snapshot.getCollectorName(c) + "].count").longValue());
+		assertEquals(snapshot.getThreadCount(), metrics.get("threads").intValue());
+	}
+
+	@Test
+	public void testSampler() throws InterruptedException {
+		RuntimeSampler sampler = new RuntimeSampler(5l, 4, false);
+		assertNull(sampler.latest());
+		sampler.start();
+		assertTrue(sampler.isStarted());
+		for (int w=0; w<200 && sampler.size()<4; w++)
+			Thread.sleep(10l);
+		Thread.sleep(20l);
+		sampler.close();
+		assertFalse(sampler.isStarted());
+		assertEquals(4, sampler.size());
+		List<RuntimeSnapshot> history = sampler.history();
+		assertEquals(4, history.size());
+		for (int s=1; s<history.size(); s++)
+			assertTrue(history.get(s).getUptime()>=history.get(s-1).getUptime());
+		assertTrue(history.get(3)==sampler.latest());
+		RuntimeSnapshot taken = sampler.sample();
+		assertTrue(taken==sampler.latest());
+		assertTrue(sampler.history().get(2)==history.get(3));
+	}
+
+}
@@ -0,0 +1,146 @@
+package com.knowgate.encryption.test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+import com.knowgate.encryption.AuthenticationOutcome;
+import com.knowgate.encryption.CredentialVerifier;
+import com.knowgate.encryption.MD5;
+import com.knowgate.encryption.PasswordEncryption;
+import com.knowgate.encryption.RC4;
+
+public class TestCredentialVerifier {
+
+	private static final byte[] KEY = "secret key".getBytes(StandardCharsets.UTF_8);
+
+	private static final EnumSet<PasswordEncryption> POOLED = EnumSet.of(PasswordEncryption.MD5, PasswordEncryption.RC4, PasswordEncryption.RC4_64);
+
+	@Test
+	public void testVerify() throws Exception {
+		final String password = "p\u00e4ssword";
+		final String md5 = new MD5(password).asHex();
+		final byte[] encrypted = new RC4(KEY).rc4(password, StandardCharsets.UTF_8);
+		final String rc4 = new String(encrypted, StandardCharsets.ISO_8859_1);
+		final String rc4base64 = "HCoAjwpK\neBsN";
+
+		try (CredentialVerifier verifier = new CredentialVerifier(KEY, StandardCharsets.UTF_8, 2, 100, 60000l, POOLED)) {
+			assertEquals(AuthenticationOutcome.OK, verifier.verify("user", password, password, PasswordEncryption.CLEAR_TEXT));
+			assertEquals(AuthenticationOutcome.OK, verifier.verify("user", password, md5, PasswordEncryption.MD5));
+			assertEquals(AuthenticationOutcome.OK, verifier.verify("user", password, md5.toUpperCase(), PasswordEncryption.MD5));
+			assertEquals(AuthenticationOutcome.OK, verifier.verify("user", password, rc4, PasswordEncryption.RC4));
+			assertEquals(AuthenticationOutcome.OK, verifier.verify("user", password, rc4base64, PasswordEncryption.RC4_64));
+
+			assertEquals(AuthenticationOutcome.INVALID_PASSWORD, verifier.verify("user", "wrong", password, PasswordEncryption.CLEAR_TEXT));
+			assertEquals(AuthenticationOutcome.INVALID_PASSWORD, verifier.verify("user", "wrong", md5, PasswordEncryption.MD5));
+			assertEquals(AuthenticationOutcome.INVALID_PASSWORD, verifier.verify("user", "wrong", rc4, PasswordEncryption.RC4));
+			assertEquals(AuthenticationOutcome.INVALID_PASSWORD, verifier.verify("user", "wrong", rc4base64, PasswordEncryption.RC4_64));
+			assertEquals(AuthenticationOutcome.INVALID_PASSWORD, verifier.verify("user", password, "not hex", PasswordEncryption.MD5));
+			assertEquals(AuthenticationOutcome.INVALID_PASSWORD, verifier.verify("user", password, "*!", PasswordEncryption.RC4_64));
+			assertEquals(AuthenticationOutcome.INVALID_PASSWORD, verifier.verify("user", "", md5, PasswordEncryption.MD5));
+			assertEquals(AuthenticationOutcome.INVALID_PASSWORD, verifier.verify("user", null, md5, PasswordEncryption.MD5));
+			assertEquals(AuthenticationOutcome.USER_NOT_FOUND, verifier.verify("user", password, null, PasswordEncryption.MD5));
+		}
+
+		try (CredentialVerifier noKey = new CredentialVerifier(null)) {
+			assertEquals(AuthenticationOutcome.INVALID_KEY, noKey.verify("user", password, rc4, PasswordEncryption.RC4));
+			assertEquals(AuthenticationOutcome.OK, noKey.verify("user", password, md5, PasswordEncryption.MD5));
+			assertEquals(0, noKey.getThreads());
+			assertEquals(0l, noKey.getCacheMisses());
+		}
+	}
+
+	@Test
+	public void testLegacyRC4Charset() throws Exception {
+		final String password = "\u00f1and\u00fa \u20ac";
+		// Values stored by RC4.rc4(String) use the platform default charset
+		final String legacy = new String(new RC4(KEY).rc4(password), StandardCharsets.ISO_8859_1);
+		try (CredentialVerifier verifier = new CredentialVerifier(KEY)) {
+			assertEquals(AuthenticationOutcome.OK, verifier.verify("user", password, legacy, PasswordEncryption.RC4));
+		}
+
+		final Charset cp1252 = Charset.forName("windows-1252");
+		final String windows = new String(new RC4(KEY).rc4(password, cp1252), StandardCharsets.ISO_8859_1);
+		try (CredentialVerifier verifier = new CredentialVerifier(KEY, cp1252)) {
+			assertEquals(AuthenticationOutcome.OK, verifier.verify("user", password, windows, PasswordEncryption.RC4));
+		}
+		try (CredentialVerifier verifier = new CredentialVerifier(KEY, StandardCharsets.UTF_8)) {
+			assertEquals(AuthenticationOutcome.INVALID_PASSWORD, verifier.verify("user", password, windows, PasswordEncryption.RC4));
+		}
+	}
+
+	@Test
+	public void testCache() throws Exception {
+		final String md5 = new MD5("password").asHex();
+		try (CredentialVerifier verifier = new CredentialVerifier(KEY, StandardCharsets.UTF_8, 2, 2, 60000l, POOLED)) {
+			assertEquals(AuthenticationOutcome.OK, verifier.verify("user", "password", md5, PasswordEncryption.MD5));
+			assertEquals(AuthenticationOutcome.OK, verifier.verify("user", "password", md5, PasswordEncryption.MD5));
+			assertEquals(1l, verifier.getCacheHits());
+			assertEquals(1l, verifier.getCacheMisses());
+			assertEquals(AuthenticationOutcome.INVALID_PASSWORD, verifier.verify("user", "wrong", md5, PasswordEncryption.MD5));
+			assertEquals(AuthenticationOutcome.INVALID_PASSWORD, verifier.verify("user", "wrong", md5, PasswordEncryption.MD5));
+			assertEquals(1, verifier.getCacheSize());
+
+			final String other = new MD5("other").asHex();
+			verifier.verify("user2", "other", other, PasswordEncryption.MD5);
+			verifier.verify("user3", "other", other, PasswordEncryption.MD5);
+			assertEquals(2, verifier.getCacheSize());
+			final long misses = verifier.getCacheMisses();
+			assertEquals(AuthenticationOutcome.OK, verifier.verify("user", "password", md5, PasswordEncryption.MD5));
+			assertEquals(misses+1l, verifier.getCacheMisses());
+			verifier.clearCache();
+			assertEquals(0, verifier.getCacheSize());
+		}
+
+		try (CredentialVerifier shortLived = new CredentialVerifier(KEY, StandardCharsets.UTF_8, 1, 10, 1l, POOLED)) {
+			shortLived.verify("user", "password", md5, PasswordEncryption.MD5);
+			assertEquals(1, shortLived.getCacheSize());
+			Thread.sleep(5l);
+			assertEquals(1, shortLived.purgeCache());
+			assertEquals(AuthenticationOutcome.OK, shortLived.verify("user", "password", md5, PasswordEncryption.MD5));
+			assertEquals(0l, shortLived.getCacheHits());
+		}
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		final String md5 = new MD5("password").asHex();
+		final CredentialVerifier verifier = new CredentialVerifier(KEY, StandardCharsets.UTF_8, 2, 1000, 60000l, POOLED);
+		ExecutorService callers = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int t=0; t<8; t++) {
+				results.add(callers.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						int ok = 0;
+						for (int n=0; n<500; n++) {
+							final String password = n % 2 == 0 ? "password" : "wrong";
+							if (AuthenticationOutcome.OK==verifier.verify("user" + (n % 50), password, md5, PasswordEncryption.MD5))
+								ok++;
+						}
+						return ok;
+					}
+				}));
+			}
+			for (Future<Integer> result : results)
+				assertEquals(250, result.get().intValue());
+			assertEquals(4000l, verifier.getCacheHits() + verifier.getCacheMisses());
+		} finally {
+			callers.shutdown();
+			verifier.close();
+		}
+		assertEquals(AuthenticationOutcome.INTERNAL_ERROR, verifier.verify("user", "password", md5, PasswordEncryption.MD5));
+	}
+
+}
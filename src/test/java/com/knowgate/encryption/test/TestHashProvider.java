@@ -0,0 +1,168 @@
+package com.knowgate.encryption.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.knowgate.encryption.CRC32C;
+import com.knowgate.encryption.HashAlgorithm;
+import com.knowgate.encryption.HashProvider;
+import com.knowgate.encryption.HashProviderFactory;
+import com.knowgate.encryption.MD5;
+import com.knowgate.encryption.SHA512;
+
+public class TestHashProvider {
+
+	private static final String[] ALGORITHMS = new String[]{"MD5", "SHA-512"};
+
+	private static HashProvider create(String algorithm) {
+		return new HashProviderFactory(algorithm.equals("MD5") ? HashAlgorithm.MD5 : HashAlgorithm.SHA512, null).createProvider();
+	}
+
+	private static byte[] expected(String algorithm, byte[] data, int offset, int length) throws NoSuchAlgorithmException {
+		MessageDigest md = MessageDigest.getInstance(algorithm);
+		md.update(data, offset, length);
+		return md.digest();
+	}
+
+	@Test
+	public void testStreaming() throws NoSuchAlgorithmException, IOException {
+		final byte[] data = new byte[1024*1024+77];
+		new Random(7).nextBytes(data);
+		for (String algorithm : ALGORITHMS) {
+			HashProvider slice = create(algorithm);
+			slice.Update(data, 13, 100000);
+			assertArrayEquals(algorithm, expected(algorithm, data, 13, 100000), slice.Final());
+
+			HashProvider heap = create(algorithm);
+			ByteBuffer wrapped = ByteBuffer.wrap(data, 5, 4000).slice();
+			heap.Update(wrapped);
+			assertEquals(0, wrapped.remaining());
+			assertArrayEquals(algorithm, expected(algorithm, data, 5, 4000), heap.Final());
+
+			HashProvider direct = create(algorithm);
+			ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+			buffer.put(data).flip();
+			direct.Update(buffer);
+			assertArrayEquals(algorithm, expected(algorithm, data, 0, data.length), direct.Final());
+
+			HashProvider stream = create(algorithm);
+			assertEquals((long) data.length, stream.Update(new ByteArrayInputStream(data)));
+			assertArrayEquals(algorithm, expected(algorithm, data, 0, data.length), stream.Final());
+
+			HashProvider chunks = create(algorithm);
+			for (int offset=0; offset<data.length; offset+=1000)
+				chunks.Update(data, offset, Math.min(1000, data.length-offset));
+			assertArrayEquals(algorithm, expected(algorithm, data, 0, data.length), chunks.Final());
+		}
+	}
+
+	@Test
+	public void testMD5() throws NoSuchAlgorithmException {
+		final byte[] data = new byte[300];
+		new Random(3).nextBytes(data);
+		MD5 md5 = new MD5();
+		for (int b=0; b<data.length; b++) {
+			md5.Update(data[b]);
+			if (b % 61 == 0)
+				assertArrayEquals(expected("MD5", data, 0, b+1), md5.Final());
+		}
+		assertArrayEquals(expected("MD5", data, 0, data.length), md5.Final());
+		assertArrayEquals(expected("MD5", data, 0, data.length), md5.Final());
+		md5.Init();
+		md5.Update(data, 0, 56);
+		md5.Update(data, 56, 8);
+		assertArrayEquals(expected("MD5", data, 0, 64), md5.Final());
+		assertEquals("9e107d9d372bb6826bd81d3542a419d6", new MD5("The quick brown fox jumps over the lazy dog").asHex());
+	}
+
+	@Test
+	public void testCRC32C() {
+		CRC32C crc = new CRC32C();
+		crc.Update("123456789");
+		assertEquals(0xe3069283l, crc.getValue());
+		assertEquals("e3069283", crc.asHex());
+		final byte[] data = new byte[1000];
+		new Random(5).nextBytes(data);
+		crc.reset();
+		crc.Update(data, 0, data.length);
+		CRC32C bytewise = new CRC32C();
+		for (int b=0; b<data.length; b++)
+			bytewise.Update(data, b, 1);
+		assertEquals(bytewise.getValue(), crc.getValue());
+	}
+
+	@Test
+	public void testPooled() throws NoSuchAlgorithmException, InterruptedException {
+		final byte[] salted = "saltvalue".getBytes(StandardCharsets.UTF_8);
+		final HashProviderFactory pooled = new HashProviderFactory(HashAlgorithm.SHA512, "salt", true);
+		assertTrue(pooled.isPooled());
+		final HashProvider first = pooled.createProvider();
+		first.Update("other");
+		final HashProvider second = pooled.createProvider();
+		assertSame(first, second);
+		second.Update("value");
+		assertArrayEquals(expected("SHA-512", salted, 0, salted.length), second.Final());
+		for (int n=0; n<3; n++) {
+			assertEquals(SHA512.asHex(expected("SHA-512", salted, 0, salted.length)), pooled.hashHex("value"));
+			assertArrayEquals(expected("SHA-512", salted, 0, salted.length), pooled.hash("value".getBytes(StandardCharsets.UTF_8)));
+		}
+		// One-shot hashes do not touch the provider handed out by createProvider()
+		assertArrayEquals(expected("SHA-512", salted, 0, salted.length), second.Final());
+
+		final byte[] data = "value".getBytes(StandardCharsets.UTF_8);
+		pooled.algo = HashAlgorithm.MD5;
+		assertEquals(MD5.asHex(expected("MD5", data, 0, data.length)), pooled.hashHex("value"));
+		assertFalse(first==pooled.createProvider());
+
+		final HashProviderFactory md5 = new HashProviderFactory(HashAlgorithm.MD5, null);
+		assertFalse(md5.isPooled());
+		assertFalse(md5.createProvider()==md5.createProvider());
+		assertArrayEquals(expected("MD5", data, 0, data.length), md5.hash(data));
+
+		final HashProvider[] others = new HashProvider[1];
+		Thread other = new Thread() {
+			@Override
+			public void run() {
+				others[0] = pooled.createProvider();
+			}
+		};
+		other.start();
+		other.join();
+		assertFalse(others[0]==pooled.createProvider());
+	}
+
+	@Test
+	public void testStrings() throws NoSuchAlgorithmException {
+		final byte[] both = "first second".getBytes(StandardCharsets.UTF_8);
+		SHA512 sha = new SHA512();
+		sha.Update("first ");
+		sha.Update("second");
+		assertArrayEquals(expected("SHA-512", both, 0, both.length), sha.Final());
+		assertEquals(SHA512.asHex(sha.Final()), sha.asHex());
+
+		MD5 md5 = new MD5();
+		md5.Update("first ");
+		md5.Update("second");
+		assertArrayEquals(expected("MD5", both, 0, both.length), md5.Final());
+		assertEquals("d41d8cd98f00b204e9800998ecf8427e", new MD5().asHex());
+
+		final byte[] salted = "saltvalue".getBytes(StandardCharsets.UTF_8);
+		SHA512 withSalt = new SHA512("salt");
+		withSalt.Update("value");
+		assertArrayEquals(expected("SHA-512", salted, 0, salted.length), withSalt.Final());
+	}
+
+}
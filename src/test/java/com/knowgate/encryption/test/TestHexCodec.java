@@ -0,0 +1,86 @@
+package com.knowgate.encryption.test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.knowgate.encryption.HexCodec;
+import com.knowgate.encryption.MD5;
+
+public class TestHexCodec {
+
+	private static String reference(byte[] data) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : data)
+			hex.append(String.format("%02x", b & 0xff));
+		return hex.toString();
+	}
+
+	@Test
+	public void testEncode() {
+		final byte[] all = new byte[256];
+		for (int b=0; b<256; b++)
+			all[b] = (byte) b;
+		final String hex = reference(all);
+		assertEquals(hex, HexCodec.encode(all));
+		assertEquals("", HexCodec.encode(new byte[0]));
+		assertEquals(hex.substring(20, 40), HexCodec.encode(all, 10, 10));
+		assertEquals(hex, MD5.asHex(all));
+
+		final char[] chars = new char[12];
+		assertEquals(10, HexCodec.encode(all, 0x7e, 4, chars, 2));
+		assertEquals("7e7f8081", new String(chars, 2, 8));
+
+		final byte[] ascii = new byte[8];
+		assertEquals(8, HexCodec.encode(all, 0xfc, 4, ascii, 0));
+		assertEquals("fcfdfeff", new String(ascii, StandardCharsets.US_ASCII));
+
+		StringBuilder builder = new StringBuilder("etag:");
+		assertEquals("etag:00010a", HexCodec.encode(all, 0, 2, builder).append("0a").toString());
+
+		for (boolean direct : new boolean[]{false, true}) {
+			ByteBuffer out = direct ? ByteBuffer.allocateDirect(514) : ByteBuffer.allocate(514);
+			ByteBuffer in = ByteBuffer.wrap(all);
+			out.put((byte) '#');
+			HexCodec.encode(in, out);
+			assertEquals(0, in.remaining());
+			assertEquals(513, out.position());
+			out.flip().position(1);
+			final byte[] written = new byte[512];
+			out.get(written);
+			assertEquals(hex, new String(written, StandardCharsets.US_ASCII));
+		}
+	}
+
+	@Test
+	public void testDecode() {
+		final byte[] data = new byte[1000];
+		new Random(11).nextBytes(data);
+		final String hex = HexCodec.encode(data);
+		assertArrayEquals(data, HexCodec.decode(hex));
+		assertArrayEquals(data, HexCodec.decode(hex.toUpperCase()));
+		assertArrayEquals(new byte[0], HexCodec.decode(""));
+
+		final byte[] out = new byte[3];
+		assertEquals(3, HexCodec.decode("xxABcd01", 2, 6, out, 0));
+		assertArrayEquals(new byte[]{(byte) 0xab, (byte) 0xcd, 1}, out);
+
+		ByteBuffer decoded = ByteBuffer.allocate(data.length);
+		HexCodec.decode(ByteBuffer.wrap(hex.getBytes(StandardCharsets.US_ASCII)), decoded);
+		assertArrayEquals(data, decoded.array());
+
+		for (String invalid : new String[]{"abc", "0g", "\u00e90"}) {
+			try {
+				HexCodec.decode(invalid);
+				fail("Expected IllegalArgumentException for " + invalid);
+			} catch (IllegalArgumentException expected) { }
+		}
+	}
+
+}
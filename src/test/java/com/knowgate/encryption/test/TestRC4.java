@@ -0,0 +1,101 @@
+package com.knowgate.encryption.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.knowgate.encryption.HexCodec;
+import com.knowgate.encryption.RC4;
+import com.knowgate.encryption.RC4InputStream;
+import com.knowgate.encryption.RC4OutputStream;
+
+public class TestRC4 {
+
+	private static final byte[] KEY = "Key".getBytes(StandardCharsets.US_ASCII);
+
+	@Test
+	public void testProcess() {
+		assertEquals("bbf316e8d940af0ad3", HexCodec.encode(new RC4(KEY).rc4("Plaintext".getBytes(StandardCharsets.US_ASCII))));
+		assertEquals("bbf316e8d940af0ad3", HexCodec.encode(new RC4("Key").rc4("Plaintext", StandardCharsets.UTF_8)));
+
+		final byte[] data = new byte[10000];
+		new Random(13).nextBytes(data);
+		final byte[] expected = new RC4(KEY).rc4(data);
+
+		final byte[] inPlace = data.clone();
+		RC4 chunked = new RC4(KEY);
+		for (int offset=0; offset<inPlace.length; offset+=333)
+			chunked.process(inPlace, offset, Math.min(333, inPlace.length-offset));
+		assertArrayEquals(expected, inPlace);
+		new RC4(KEY).process(inPlace, 0, inPlace.length);
+		assertArrayEquals(data, inPlace);
+
+		for (boolean direct : new boolean[]{false, true}) {
+			ByteBuffer src = direct ? ByteBuffer.allocateDirect(data.length) : ByteBuffer.allocate(data.length);
+			src.put(data).flip();
+			ByteBuffer dst = direct ? ByteBuffer.allocate(data.length) : ByteBuffer.allocateDirect(data.length);
+			RC4 cipher = new RC4(KEY);
+			src.limit(100);
+			cipher.process(src, dst);
+			src.limit(data.length);
+			cipher.process(src, dst);
+			assertEquals(0, src.remaining());
+			assertEquals(0, dst.remaining());
+			dst.flip();
+			final byte[] out = new byte[data.length];
+			dst.get(out);
+			assertArrayEquals(expected, out);
+
+			src.clear();
+			new RC4(KEY).process(src, src);
+			src.flip();
+			src.get(out);
+			assertArrayEquals(expected, out);
+		}
+
+		RC4 skipped = new RC4(KEY);
+		skipped.skip(5000l);
+		final byte[] tail = skipped.rc4(Arrays.copyOfRange(data, 5000, data.length));
+		assertArrayEquals(Arrays.copyOfRange(expected, 5000, data.length), tail);
+	}
+
+	@Test
+	public void testStreams() throws IOException {
+		final byte[] data = new byte[100000];
+		new Random(17).nextBytes(data);
+		final byte[] expected = new RC4(KEY).rc4(data);
+
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		OutputStream out = new RC4OutputStream(encrypted, new RC4(KEY), 1000);
+		out.write(data[0]);
+		out.write(data, 1, 4999);
+		out.write(data, 5000, data.length-5000);
+		out.close();
+		assertArrayEquals(expected, encrypted.toByteArray());
+
+		InputStream in = new RC4InputStream(new ByteArrayInputStream(expected), new RC4(KEY));
+		final byte[] decrypted = new byte[data.length];
+		decrypted[0] = (byte) in.read();
+		assertEquals(999l, in.skip(999l));
+		int offset = 1000, read;
+		while ((read = in.read(decrypted, offset, Math.min(777, data.length-offset))) > 0)
+			offset += read;
+		assertEquals(-1, in.read());
+		in.close();
+		assertEquals(data.length, offset);
+		assertEquals(data[0], decrypted[0]);
+		assertArrayEquals(Arrays.copyOfRange(data, 1000, data.length), Arrays.copyOfRange(decrypted, 1000, data.length));
+	}
+
+}
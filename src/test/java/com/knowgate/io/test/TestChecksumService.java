@@ -0,0 +1,145 @@
+package com.knowgate.io.test;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.knowgate.encryption.CRC32C;
+import com.knowgate.encryption.HashAlgorithm;
+import com.knowgate.encryption.MD5;
+import com.knowgate.io.ChecksumListener;
+import com.knowgate.io.ChecksumResult;
+import com.knowgate.io.ChecksumService;
+import com.knowgate.io.FileUtils;
+
+public class TestChecksumService {
+
+	@Test
+	public void testTree() throws Exception {
+		final File dir = File.createTempFile("temp-checksums", "");
+		dir.delete();
+		dir.mkdir();
+		final Random rnd = new Random(11);
+		final HashMap<String,byte[]> contents = new HashMap<String,byte[]>();
+		try {
+			for (int d=0; d<3; d++) {
+				File sub = new File(dir, "sub" + d + File.separator + "inner");
+				sub.mkdirs();
+				for (int f=0; f<7; f++) {
+					final byte[] data = new byte[f==0 ? 0 : rnd.nextInt(200000)];
+					rnd.nextBytes(data);
+					File file = new File(f % 2 == 0 ? sub : sub.getParentFile(), "file" + f + ".bin");
+					FileOutputStream out = new FileOutputStream(file);
+					out.write(data);
+					out.close();
+					contents.put(file.getPath(), data);
+				}
+			}
+			new File(dir, "skipped.txt").createNewFile();
+
+			ChecksumService service = new ChecksumService(3, 65536);
+			try {
+				for (final HashAlgorithm algorithm : HashAlgorithm.values()) {
+					final List<ChecksumResult> results = new ArrayList<ChecksumResult>();
+					final long count = service.checksumTree(dir, new FileFilter() {
+						@Override
+						public boolean accept(File file) {
+							return file.getName().endsWith(".bin");
+						}
+					}, algorithm, new ChecksumListener() {
+						@Override
+						public void completed(ChecksumResult result) {
+							results.add(result);
+						}
+					});
+					assertEquals(21l, count);
+					assertEquals(21, results.size());
+					for (ChecksumResult result : results) {
+						assertTrue(result.isOk());
+						final byte[] data = contents.get(result.getFile().getPath());
+						assertEquals(data.length, result.getSize());
+						if (algorithm==HashAlgorithm.CRC32C) {
+							CRC32C crc = new CRC32C();
+							crc.Update(data, 0, data.length);
+							assertArrayEquals(crc.Final(), result.getDigest());
+						} else {
+							MessageDigest md = MessageDigest.getInstance(algorithm==HashAlgorithm.MD5 ? "MD5" : "SHA-512");
+							assertArrayEquals(md.digest(data), result.getDigest());
+						}
+					}
+				}
+
+				final List<ChecksumResult> errors = new ArrayList<ChecksumResult>();
+				assertEquals(1l, service.checksum(Arrays.asList(new File(dir, "missing.bin")), HashAlgorithm.MD5, new ChecksumListener() {
+					@Override
+					public void completed(ChecksumResult result) {
+						errors.add(result);
+					}
+				}));
+				assertFalse(errors.get(0).isOk());
+				assertNull(errors.get(0).getDigest());
+			} finally {
+				service.close();
+			}
+
+			final byte[] single = contents.values().iterator().next();
+			File file = File.createTempFile("temp-checksum", ".bin");
+			Files.write(file.toPath(), single);
+			assertArrayEquals(MessageDigest.getInstance("MD5").digest(single), FileUtils.checksum(file, new MD5(), ByteBuffer.allocate(1000)).Final());
+			file.delete();
+		} finally {
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Test(timeout=60000l)
+	public void testLinkCycle() throws Exception {
+		final File dir = File.createTempFile("temp-checksums", "");
+		dir.delete();
+		dir.mkdir();
+		final File sub = new File(dir, "sub");
+		sub.mkdir();
+		final File file = new File(sub, "file.bin");
+		Files.write(file.toPath(), new byte[]{1, 2, 3});
+		final File parentLink = new File(sub, "parent");
+		final File fileLink = new File(dir, "link.bin");
+		try {
+			Files.createSymbolicLink(parentLink.toPath(), dir.toPath());
+			Files.createSymbolicLink(fileLink.toPath(), file.toPath());
+			ChecksumService service = new ChecksumService(2, 4096);
+			try {
+				final List<ChecksumResult> results = new ArrayList<ChecksumResult>();
+				assertEquals(1l, service.checksumTree(dir, null, HashAlgorithm.MD5, new ChecksumListener() {
+					@Override
+					public void completed(ChecksumResult result) {
+						results.add(result);
+					}
+				}));
+				assertEquals(file.getPath(), results.get(0).getFile().getPath());
+			} finally {
+				service.close();
+			}
+		} finally {
+			Files.deleteIfExists(parentLink.toPath());
+			Files.deleteIfExists(fileLink.toPath());
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+}
@@ -0,0 +1,412 @@
+package com.knowgate.stringutils.test;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.knowgate.currency.CurrencyCode;
+import com.knowgate.currency.Money;
+import com.knowgate.stringutils.CSVColumnErrors;
+import com.knowgate.stringutils.CSVField;
+import com.knowgate.stringutils.CSVOffsetLayout;
+import com.knowgate.stringutils.CSVParser;
+import com.knowgate.stringutils.CSVRow;
+import com.knowgate.stringutils.CSVRowIterator;
+import com.knowgate.stringutils.MappedCSVParser;
+
+public class TestCSVParser {
+
+	private static final String UNQUOTED_DESC = "tx_email,tx_name,tx_surname";
+	private static final String UNQUOTED_DATA = "john@domain.com,John,Smith\r\nmary@domain.com,Mary,\r\n,,Doe\r\npeter@domain.com,Peter,Pan  \n\n \n";
+
+	private static final String QUOTED_DESC = "\"tx_email\";\"tx_name\";\"tx_surname\"";
+	private static final String QUOTED_DATA = "\"john@domain.com\";\"John\";\"Smith; Jr\"\n\"mary@domain.com\" ;\"Mary\";\"\"\n\"bob@domain.com\";\"Bob\";\"Doe\"\n";
+
+	private void assertSameAsParseData(String sData, String sDesc, int iWindow) throws IOException {
+		CSVParser oParser = new CSVParser();
+		oParser.parseData(sData.toCharArray(), sDesc);
+		CSVRowIterator oIter = new CSVRowIterator(new StringReader(sData), sDesc, iWindow);
+		int r = 0;
+		while (oIter.hasNext()) {
+			CSVRow oRow = oIter.next();
+			assertEquals(r, oRow.getLineNumber());
+			for (int c=0; c<oParser.getColumnCount(); c++)
+				assertEquals(oParser.getField(c, r), oRow.getField(c));
+			r++;
+		}
+		oIter.close();
+		assertEquals(oParser.getLineCount(), r);
+	}
+
+	@Test
+	public void test01Stream() throws IOException {
+		assertSameAsParseData(UNQUOTED_DATA, UNQUOTED_DESC, 16);
+		assertSameAsParseData(UNQUOTED_DATA, UNQUOTED_DESC, CSVRowIterator.DEFAULT_WINDOW_SIZE);
+		assertSameAsParseData(QUOTED_DATA, QUOTED_DESC, 16);
+
+		CSVRowIterator oIter = CSVParser.stream(new StringReader("\uFEFF" + UNQUOTED_DATA), UNQUOTED_DESC);
+		assertTrue(oIter.hasNext());
+		CSVRow oRow = oIter.next();
+		assertEquals("john@domain.com", oRow.getField("tx_email"));
+		assertEquals("john@domain.com,John,Smith", oRow.getLine());
+		oIter.close();
+		assertFalse(oIter.hasNext());
+	}
+
+	@Test
+	public void test02StreamColumnMismatch() throws IOException {
+		CSVRowIterator oIter = CSVParser.stream(new StringReader("a,b,c\nd,e\nf,g,h"), UNQUOTED_DESC);
+		oIter.next();
+		try {
+			oIter.next();
+			fail("Expected ArrayIndexOutOfBoundsException");
+		} catch (ArrayIndexOutOfBoundsException expected) {
+			assertEquals(2, oIter.errorLine());
+		}
+		oIter.close();
+	}
+
+	@Test
+	public void test03FieldView() throws IOException {
+		CSVParser oParser = new CSVParser();
+		oParser.parseData("1|-9223372036854775808|12.50|Alice\n2|2147483647|-0.001e3|BOB\n".toCharArray(), "id|amount|price|name");
+		CSVField oFld = new CSVField();
+		assertEquals(1, oParser.getFieldView(0, 0, oFld).parseInt());
+		assertEquals(Long.MIN_VALUE, oParser.getFieldView(1, 0, oFld).parseLong());
+		assertEquals(Integer.MAX_VALUE, oParser.getFieldView(1, 1, oFld).parseInt());
+		assertEquals(12.5d, oParser.getFieldView(2, 0, oFld).parseDouble(), 0d);
+		assertEquals(-1d, oParser.getFieldView(2, 1, oFld).parseDouble(), 0d);
+		assertEquals(new BigDecimal("12.50"), oParser.getFieldView(2, 0, oFld).parseDecimal());
+		assertTrue(oParser.getFieldView(3, 1, oFld).equalsIgnoreCase("bob"));
+		assertFalse(oParser.getFieldView(3, 1, oFld).contentEquals("bob"));
+		assertEquals("BOB".hashCode(), oFld.hashCode());
+		assertEquals("2|2147483647|-0.001e3|BOB", oParser.getLineView(1, oFld).toString());
+		try {
+			oParser.getFieldView(3, 0, oFld).parseInt();
+			fail("Expected NumberFormatException");
+		} catch (NumberFormatException expected) { }
+		assertEquals(1, oParser.find(3, "BOB"));
+		assertEquals(1, oParser.findi(3, "bob"));
+		assertEquals(-1, oParser.find(3, "bob"));
+	}
+
+	private static String generateQuotedData(int iRows) {
+		StringBuilder oData = new StringBuilder(iRows*48);
+		for (int r=0; r<iRows; r++) {
+			oData.append("\"").append(r).append("@domain.com\";\"Name ").append(r);
+			if (r%7==0) oData.append("\nsecond line");
+			oData.append("\";\"Surname; ").append(r%13).append("\"\r\n");
+		}
+		return oData.toString();
+	}
+
+	private static String fieldOrError(CSVParser oParser, int iCol, int iRow) throws IOException {
+		try {
+			return oParser.getField(iCol, iRow);
+		} catch (StringIndexOutOfBoundsException sioobe) {
+			return sioobe.getMessage();
+		}
+	}
+
+	private void assertSameParallel(char[] aData, String sDesc, int iParallelism) throws IOException {
+		CSVParser oSerial = new CSVParser();
+		CSVParser oParallel = new CSVParser();
+		oParallel.parallelism(iParallelism);
+		String sSerialError = null, sParallelError = null;
+		try {
+			oSerial.parseData(aData, sDesc);
+		} catch (ArrayIndexOutOfBoundsException aiob) {
+			sSerialError = aiob.getMessage();
+		}
+		try {
+			oParallel.parseData(aData, sDesc);
+		} catch (ArrayIndexOutOfBoundsException aiob) {
+			sParallelError = aiob.getMessage();
+		}
+		assertEquals(sSerialError, sParallelError);
+		assertEquals(oSerial.errorLine(), oParallel.errorLine());
+		if (null==sSerialError) {
+			assertEquals(oSerial.getLineCount(), oParallel.getLineCount());
+			for (int r=0; r<oSerial.getLineCount(); r++)
+				for (int c=0; c<oSerial.getColumnCount(); c++)
+					assertEquals(fieldOrError(oSerial, c, r), fieldOrError(oParallel, c, r));
+		}
+	}
+
+	@Test
+	public void test04Parallel() throws IOException {
+		final String sData = generateQuotedData(40000);
+		assertSameParallel(sData.toCharArray(), QUOTED_DESC, 2);
+		assertSameParallel(sData.toCharArray(), QUOTED_DESC, 4);
+		assertSameParallel((sData + sData).toCharArray(), QUOTED_DESC, 3);
+
+		final int iBad = sData.indexOf("\n", sData.length()/2);
+		final String sMissing = sData.substring(0, iBad) + "\n\"x\";\"y\"" + sData.substring(iBad);
+		assertSameParallel(sMissing.toCharArray(), QUOTED_DESC, 4);
+		final String sExtra = sData.substring(0, iBad) + "\n\"x\";\"y\";\"z\";\"w\"" + sData.substring(iBad);
+		assertSameParallel(sExtra.toCharArray(), QUOTED_DESC, 4);
+	}
+
+	@Test
+	public void test05OffsetLayout() throws IOException {
+		StringBuilder oLong = new StringBuilder(70000);
+		for (int c=0; c<70000; c++) oLong.append((char) ('a'+c%26));
+		final String sData = "1,,x\n" + oLong + ",2,y\n3," + oLong + ",\n4,5,z";
+		CSVParser oFlat = new CSVParser();
+		CSVParser oDelta = new CSVParser();
+		oDelta.offsetLayout(CSVOffsetLayout.DELTA);
+		assertEquals(CSVOffsetLayout.FLAT, oFlat.offsetLayout());
+		assertEquals(0l, oDelta.offsetIndexSize());
+		oFlat.parseData(sData.toCharArray(), UNQUOTED_DESC);
+		oDelta.parseData(sData.toCharArray(), UNQUOTED_DESC);
+		assertEquals(oFlat.getLineCount(), oDelta.getLineCount());
+		for (int r=0; r<oFlat.getLineCount(); r++) {
+			assertEquals(oFlat.getLine(r), oDelta.getLine(r));
+			for (int c=0; c<oFlat.getColumnCount(); c++)
+				assertEquals(oFlat.getField(c, r), oDelta.getField(c, r));
+		}
+		assertEquals(oLong.toString(), oDelta.getField(1, 2));
+		assertEquals("2", oDelta.getField(1, 1));
+
+		final char[] aData = generateQuotedData(20000).toCharArray();
+		oFlat.parseData(aData, QUOTED_DESC);
+		oDelta.parseData(aData, QUOTED_DESC);
+		assertTrue(oDelta.offsetIndexSize() < oFlat.offsetIndexSize());
+		oDelta.parallelism(2);
+		CSVParser oSerialDelta = new CSVParser();
+		oSerialDelta.offsetLayout(CSVOffsetLayout.DELTA);
+		oSerialDelta.parseData(aData, QUOTED_DESC);
+		oDelta.parseData(aData, QUOTED_DESC);
+		for (int r=0; r<oFlat.getLineCount(); r++)
+			for (int c=0; c<oFlat.getColumnCount(); c++)
+				assertEquals(fieldOrError(oFlat, c, r), fieldOrError(oDelta, c, r));
+	}
+
+	private static File writeTemp(String sData, String sCharSet) throws IOException {
+		File oFile = File.createTempFile("testcsv", ".csv");
+		oFile.deleteOnExit();
+		FileOutputStream oFos = new FileOutputStream(oFile);
+		oFos.write(sData.getBytes(sCharSet));
+		oFos.close();
+		return oFile;
+	}
+
+	@Test
+	public void test06Mapped() throws IOException {
+		final String sData = "\uFEFF\"jose@domain.com\";\"José\";\"Müller; 日本\"\r\n\"mary@domain.com\" ;\"Mary\";\"\"\r\n\"bob@domain.com\";\"Bob\";\"Doe\"\r\n\n";
+		File oFile = writeTemp(sData, "UTF-8");
+		CSVParser oParser = new CSVParser("UTF-8");
+		oParser.parseFile(oFile, QUOTED_DESC);
+		for (int iSegment : new int[]{16, 37, MappedCSVParser.DEFAULT_SEGMENT_SIZE}) {
+			MappedCSVParser oMapped = new MappedCSVParser("UTF-8", iSegment);
+			oMapped.parseFile(oFile, QUOTED_DESC);
+			assertEquals(oParser.getLineCount(), oMapped.getLineCount());
+			for (int r=0; r<oParser.getLineCount(); r++) {
+				for (int c=0; c<oParser.getColumnCount(); c++)
+					assertEquals(oParser.getField(c, r), oMapped.getField(c, r));
+				assertEquals(oParser.getLine(r).replace("\uFEFF", ""), oMapped.getLine(r));
+			}
+			assertEquals("Müller; 日本", oMapped.getField("tx_surname", 0));
+			oMapped.close();
+		}
+
+		MappedCSVParser oMapped = oParser.map(writeTemp("\"a\",\"b\nc\",\"d\"\n\"e\",\"f\",\"g\"", "UTF-8"), "\"x\",\"y\",\"z\"");
+		assertEquals(2, oMapped.getLineCount());
+		assertEquals("b\nc", oMapped.getField(1, 0));
+		assertEquals("g", oMapped.getField(2, 1));
+		oMapped.close();
+
+		oMapped = new MappedCSVParser("ISO-8859-1", 16);
+		oMapped.parseFile(writeTemp("1,Peña,Ñu\n2,Çà,\n3,x", "ISO-8859-1"), UNQUOTED_DESC);
+		assertEquals(3, oMapped.getLineCount());
+		assertEquals("Peña", oMapped.getField(1, 0));
+		assertEquals("", oMapped.getField(2, 1));
+		assertEquals("", oMapped.getField(2, 2));
+
+		try {
+			oMapped.parseFile(writeTemp("1,2,3\n4,5\n6,7,8", "ISO-8859-1"), UNQUOTED_DESC);
+			fail("Expected ArrayIndexOutOfBoundsException");
+		} catch (ArrayIndexOutOfBoundsException expected) {
+			assertEquals(2, oMapped.errorLine());
+		}
+
+		// A non ASCII delimiter is a single byte in ISO-8859-1 but not in UTF-8
+		oMapped.parseFile(writeTemp("a¨b\nc¨d", "ISO-8859-1"), "x¨y");
+		assertEquals(2, oMapped.getLineCount());
+		assertEquals("d", oMapped.getField(1, 1));
+		try {
+			new MappedCSVParser("UTF-8").parseFile(writeTemp("a¨b\nc¨d", "UTF-8"), "x¨y");
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException expected) { }
+
+		try {
+			new MappedCSVParser("UTF-16");
+			fail("Expected UnsupportedEncodingException");
+		} catch (UnsupportedEncodingException expected) { }
+	}
+
+	@Test
+	public void test07ColumnIndex() throws IOException {
+		StringBuilder oData = new StringBuilder();
+		for (int r=0; r<1000; r++)
+			oData.append(r).append(",user").append(r%10).append(r%3==0 ? "@Domain.com," : "@domain.com,").append(r%7).append('\n');
+		CSVParser oScan = new CSVParser();
+		CSVParser oIndexed = new CSVParser();
+		oIndexed.indexed(true);
+		oScan.parseData(oData.toString().toCharArray(), UNQUOTED_DESC);
+		oIndexed.parseData(oData.toString().toCharArray(), UNQUOTED_DESC);
+		assertEquals(0l, oIndexed.columnIndexSize());
+		for (String sVal : new String[]{"user3@domain.com", "USER3@DOMAIN.COM", "user3@Domain.com", "nobody", ""}) {
+			assertEquals(oScan.find(1, sVal), oIndexed.find(1, sVal));
+			assertEquals(oScan.findi(1, sVal), oIndexed.findi(1, sVal));
+			assertArrayEquals(oScan.findAll(1, sVal), oIndexed.findAll(1, sVal));
+			assertArrayEquals(oScan.findAlli(1, sVal), oIndexed.findAlli(1, sVal));
+		}
+		assertEquals(100, oIndexed.findAlli(1, "USER3@DOMAIN.COM").length);
+		assertEquals(999, oIndexed.find(0, "999"));
+		assertTrue(oIndexed.columnIndexSize()>0l);
+		oIndexed.parseData("1,a,b\n2,c,d".toCharArray(), UNQUOTED_DESC);
+		assertEquals(0l, oIndexed.columnIndexSize());
+		assertEquals(1, oIndexed.find(1, "c"));
+	}
+
+	private static HSSFWorkbook createWorkbook() {
+		HSSFWorkbook oWrkb = new HSSFWorkbook();
+		HSSFSheet oSheet = oWrkb.createSheet("data");
+		HSSFCellStyle oDate = oWrkb.createCellStyle();
+		oDate.setDataFormat((short) 15);
+		HSSFRow oRow = oSheet.createRow(0);
+		oRow.createCell(0).setCellValue("tx_email");
+		oRow.createCell(1).setCellValue("tx_name");
+		oRow.createCell(2).setCellValue("dt_birth");
+		for (int r=1; r<=300; r++) {
+			oRow = oSheet.createRow(r);
+			oRow.createCell(0).setCellValue("user" + r + "@domain.com");
+			if (r%5!=0) oRow.createCell(1).setCellValue("Name, " + r + "\nsecond line");
+			else oRow.createCell(1).setCellValue(r * 1.5d);
+			oRow.createCell(2).setCellValue(new java.util.GregorianCalendar(2000, 0, 1 + r%28));
+			oRow.getCell(2).setCellStyle(oDate);
+		}
+		// Rows after an empty row are ignored
+		oSheet.createRow(302).createCell(0).setCellValue("ignored");
+		oWrkb.createSheet("other").createRow(0).createCell(0).setCellValue("other");
+		return oWrkb;
+	}
+
+	@Test
+	public void test08SpreadsheetStream() throws IOException {
+		HSSFWorkbook oWrkb = createWorkbook();
+		File oXls = File.createTempFile("testcsv", ".xls");
+		oXls.deleteOnExit();
+		FileOutputStream oFos = new FileOutputStream(oXls);
+		oWrkb.write(oFos);
+		oFos.close();
+
+		for (String sDesc : new String[]{"tx_email,tx_name,dt_birth", "tx_email;tx_name;tx_surname", "tx_email|tx_name|dt_birth", ""}) {
+			CSVParser oModel = new CSVParser();
+			oModel.parseSheet(oWrkb.getSheetAt(0), sDesc);
+			CSVParser oStream = new CSVParser();
+			oStream.parseFile(oXls, sDesc);
+			assertEquals(oModel.getLineCount(), oStream.getLineCount());
+			assertEquals(oModel.getColumnCount(), oStream.getColumnCount());
+			for (int r=0; r<oModel.getLineCount(); r++)
+				for (int c=0; c<oModel.getColumnCount(); c++)
+					assertEquals(oModel.getField(c, r), oStream.getField(c, r));
+		}
+
+		CSVParser oStream = new CSVParser();
+		oStream.parseFile(oXls, "");
+		assertEquals(300, oStream.getLineCount());
+		assertEquals("Name, 1 second line", oStream.getField("tx_name", 0));
+		assertEquals("7.5", oStream.getField(1, 4));
+		assertEquals("2000-01-02", oStream.getField("dt_birth", 0));
+
+		File oXlsx = File.createTempFile("testcsv", ".xlsx");
+		oXlsx.deleteOnExit();
+		ZipOutputStream oZip = new ZipOutputStream(new FileOutputStream(oXlsx));
+		String[][] aEntries = new String[][] {
+			{"xl/workbook.xml", "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\"><sheets><sheet name=\"data\" sheetId=\"1\" r:id=\"rId7\"/></sheets></workbook>"},
+			{"xl/_rels/workbook.xml.rels", "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\"><Relationship Id=\"rId7\" Type=\"worksheet\" Target=\"worksheets/sheet9.xml\"/></Relationships>"},
+			{"xl/styles.xml", "<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><cellXfs count=\"2\"><xf numFmtId=\"0\"/><xf numFmtId=\"15\"/></cellXfs></styleSheet>"},
+			{"xl/sharedStrings.xml", "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><si><t>tx_email</t></si><si><t>tx_name</t></si><si><r><t>Jos</t></r><r><t>é</t></r><rPh><t>ignored</t></rPh></si></sst>"},
+			{"xl/worksheets/sheet9.xml", "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>"
+				+ "<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c><c r=\"B1\" t=\"s\"><v>1</v></c></row>"
+				+ "<row r=\"2\"><c r=\"A2\" t=\"inlineStr\"><is><t>jose@domain.com</t></is></c><c r=\"B2\" t=\"s\"><v>2</v></c></row>"
+				+ "<row r=\"3\"><c r=\"A3\"><v>42</v></c><c r=\"B3\" s=\"1\"><v>36526</v></c></row>"
+				+ "<row r=\"4\"><c r=\"B4\"><f>A3*2</f><v>84</v></c><c r=\"C4\" t=\"s\"><v>1</v></c></row>"
+				+ "<row r=\"5\"><c r=\"A5\" t=\"inlineStr\"><is><t>after</t></is></c></row>"
+				+ "</sheetData></worksheet>"}};
+		for (String[] aEntry : aEntries) {
+			oZip.putNextEntry(new ZipEntry(aEntry[0]));
+			oZip.write(aEntry[1].getBytes("UTF-8"));
+			oZip.closeEntry();
+		}
+		oZip.close();
+
+		oStream.parseFile(oXlsx, "tx_email,tx_name");
+		assertEquals(2, oStream.getLineCount());
+		assertEquals("jose@domain.com", oStream.getField(0, 0));
+		assertEquals("José", oStream.getField(1, 0));
+		assertEquals("42.0", oStream.getField(0, 1));
+		assertEquals("2000-01-01", oStream.getField(1, 1));
+	}
+
+	@Test
+	public void test09TypedColumns() throws IOException {
+		CSVParser oParser = new CSVParser();
+		oParser.parseData("1|10000000000| 2.5 |12.30\n-7||x|\n 42 |-3|1e3|abc\n2147483648|5|-0.25|0.01".toCharArray(), "id|big|ratio|amount");
+		CSVColumnErrors oErrs = new CSVColumnErrors();
+
+		assertArrayEquals(new int[]{1, -7, 42, -1}, oParser.getIntColumn(0, -1, oErrs));
+		assertEquals(0, oErrs.getColumn());
+		assertEquals(1, oErrs.getErrorCount());
+		assertArrayEquals(new int[]{3}, oErrs.getRows());
+		assertArrayEquals(new String[]{"2147483648"}, oErrs.getValues());
+
+		assertArrayEquals(new long[]{10000000000l, 0l, -3l, 5l}, oParser.getLongColumn(1, 0l, oErrs));
+		assertTrue(oErrs.isEmpty());
+		assertEquals(1, oErrs.getEmptyCount());
+
+		double[] aRatios = oParser.getDoubleColumn(2, Double.NaN, oErrs);
+		assertEquals(2.5d, aRatios[0], 0d);
+		assertTrue(Double.isNaN(aRatios[1]));
+		assertEquals(1000d, aRatios[2], 0d);
+		assertEquals(-0.25d, aRatios[3], 0d);
+		assertEquals(1, oErrs.getErrorCount());
+
+		Money[] aAmounts = oParser.getMoneyColumn(3, CurrencyCode.EUR, oErrs);
+		assertEquals(new BigDecimal("12.30"), aAmounts[0]);
+		assertEquals(CurrencyCode.EUR, aAmounts[0].currencyCode());
+		assertEquals(null, aAmounts[1]);
+		assertEquals(null, aAmounts[2]);
+		assertEquals(new BigDecimal("0.01"), aAmounts[3]);
+		assertEquals(1, oErrs.getErrorCount());
+		assertEquals(1, oErrs.getEmptyCount());
+
+		try {
+			oParser.getIntColumn(0, 0, null);
+			fail("Expected NumberFormatException");
+		} catch (NumberFormatException expected) {
+			assertTrue(expected.getMessage().contains("row 3"));
+		}
+	}
+
+}